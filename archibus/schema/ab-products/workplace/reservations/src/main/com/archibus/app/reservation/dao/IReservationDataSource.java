@@ -63,6 +63,16 @@ public interface IReservationDataSource<T extends AbstractReservation> extends I
     List<T> getByParentId(final Integer parentId, final String timeZoneId, final Date startDate,
             final Date endDate);
     
+    /**
+     * Get the start dates of the active reservations with the given parent id, without loading
+     * the reservations and their allocations.
+     * 
+     * @param parentId the parent id
+     * @param startDate the start date, or null to include all occurrences
+     * @return map of reservation id to start date, sorted by start date
+     */
+    Map<Integer, Date> getOccurrenceDates(final Integer parentId, final Date startDate);
+    
     /**
      * Get the active reservation with the given ID.
      * 
@@ -90,4 +100,15 @@ public interface IReservationDataSource<T extends AbstractReservation> extends I
      * @param recurringRule the recurring rule to set
      */
     void markRecurring(final T reservation, final Integer parentId, final String recurringRule);
+    
+    /**
+     * Move all active reservations of a recurring series to another parent id, using a single
+     * update statement.
+     * 
+     * @param oldParentId the current parent id of the series
+     * @param parentId the parent id to set
+     * @param recurringRule the recurring rule to set, or null to keep the current rule
+     */
+    void markRecurringSeries(final Integer oldParentId, final Integer parentId,
+            final String recurringRule);
 }
@@ -60,6 +60,41 @@ public interface IRoomArrangementDataSource extends IDao<RoomArrangement> {
             final String rmId, final String arrangeTypeId, final TimePeriod timePeriod,
             final Integer numberAttendees, final List<String> fixedResourceStandards);
     
+    /**
+     * Search available rooms for display to the user. Results can be served from a short-lived
+     * cache, so never use this method to verify availability before saving a reservation.
+     * 
+     * @param reservation the reservation
+     * @param numberAttendees the number attendees
+     * @param externalAllowed whether to return only rooms suitable for external guests
+     * @param fixedResourceStandards the fixed resource standards
+     * @param allDayEvent true for all day events, false for regular reservations
+     * @param timeZone time zone to convert to
+     * @return the list
+     * @throws ReservationException the reservation exception
+     */
+    List<RoomArrangement> searchAvailableRooms(final RoomReservation reservation,
+            final Integer numberAttendees, final boolean externalAllowed,
+            final List<String> fixedResourceStandards, final boolean allDayEvent,
+            final String timeZone) throws ReservationException;
+    
+    /**
+     * Search available rooms for display to the user. Results can be served from a short-lived
+     * cache, so never use this method to verify availability before saving a reservation.
+     * 
+     * @param blId the bl id
+     * @param flId the fl id
+     * @param rmId the rm id
+     * @param arrangeTypeId the arrange type id
+     * @param timePeriod the time period within which the rooms must be available
+     * @param numberAttendees the number attendees
+     * @param fixedResourceStandards the fixed resource standards
+     * @return the list
+     */
+    List<RoomArrangement> searchAvailableRooms(final String blId, final String flId,
+            final String rmId, final String arrangeTypeId, final TimePeriod timePeriod,
+            final Integer numberAttendees, final List<String> fixedResourceStandards);
+    
     /**
      * Gets the room arrangement.
      * 
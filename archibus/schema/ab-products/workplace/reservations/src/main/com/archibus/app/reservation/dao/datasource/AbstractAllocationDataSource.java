@@ -24,6 +24,9 @@ ObjectDataSourceImpl<T> implements IAllocationDataSource<T> {
     /** Multiplier for a percentage value. */
     private static final Double PERCENTAGE_MULTIPLIER = 0.01;
 
+    /** Log of allocation writes for refreshing timelines, null if not used. */
+    private AllocationChangeLog allocationChangeLog;
+
     /**
      * Constructor.
      * 
@@ -106,7 +109,9 @@ ObjectDataSourceImpl<T> implements IAllocationDataSource<T> {
         allocation.setLastModifiedBy(user.getEmployee().getId());
         // TODO timezone??
         allocation.setLastModifiedDate(Utility.currentDate());
+        final T previous = getStoredAllocation(allocation);
         super.update(allocation);
+        afterWrite(allocation, previous);
     }
 
     /**
@@ -125,7 +130,9 @@ ObjectDataSourceImpl<T> implements IAllocationDataSource<T> {
         allocation.setCancelledDate(Utility.currentDate());
         allocation.setLastModifiedDate(Utility.currentDate());
 
+        final T previous = getStoredAllocation(allocation);
         super.update(allocation);
+        afterWrite(allocation, previous);
     }
 
     /**
@@ -176,7 +183,68 @@ ObjectDataSourceImpl<T> implements IAllocationDataSource<T> {
         this.log
         .debug("Status for allocation " + allocation.getId() + " " + allocation.getStatus());
 
-        return super.save(allocation);
+        final T previous = getStoredAllocation(allocation);
+        final T savedAllocation = super.save(allocation);
+        afterWrite(allocation, previous);
+        return savedAllocation;
+    }
+
+    /**
+     * Called after an allocation was inserted, updated or cancelled. Registers the write in the
+     * allocation change log.
+     * 
+     * @param allocation the allocation that was written
+     * @param previous the allocation as stored before the write, null if it was inserted or not
+     *            retrieved
+     */
+    protected void afterWrite(final T allocation, final T previous) {
+        if (this.allocationChangeLog != null) {
+            this.allocationChangeLog.recordChange(this.tableName, allocation, previous);
+        }
+    }
+
+    /**
+     * Get the allocation as stored in the database, before it is written. The location and date
+     * of an allocation can change, so the listeners of a write can need the previous values. The
+     * allocation is only retrieved if isStoredAllocationUsed returns true.
+     * 
+     * @param allocation the allocation to be written
+     * @return the stored allocation, or null if it is new or not used
+     */
+    protected final T getStoredAllocation(final T allocation) {
+        T previous = null;
+        if (allocation.getId() != null && isStoredAllocationUsed()) {
+            previous = this.get(allocation.getId());
+        }
+        return previous;
+    }
+    
+    /**
+     * Check whether the listeners of a write use the allocation as stored before the write. The
+     * timelines only use the previous location of room allocations, so by default it is not.
+     * 
+     * @return true if the stored allocation must be retrieved before writing
+     */
+    protected boolean isStoredAllocationUsed() {
+        return false;
+    }
+    
+    /**
+     * Check whether writes are registered in an allocation change log.
+     * 
+     * @return true if an allocation change log is set
+     */
+    protected final boolean hasAllocationChangeLog() {
+        return this.allocationChangeLog != null;
+    }
+
+    /**
+     * Setter for the allocation change log.
+     * 
+     * @param allocationChangeLog the log to register allocation writes in
+     */
+    public final void setAllocationChangeLog(final AllocationChangeLog allocationChangeLog) {
+        this.allocationChangeLog = allocationChangeLog;
     }
 
     /**
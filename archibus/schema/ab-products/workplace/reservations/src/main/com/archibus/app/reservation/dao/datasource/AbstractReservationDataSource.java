@@ -35,6 +35,9 @@ public abstract class AbstractReservationDataSource<T extends AbstractReservatio
     /** The resource data source. */
     protected IResourceDataSource resourceDataSource;
     
+    /** The attendee table, updated each time the attendees can change. */
+    protected ReservationAttendeeDataSource reservationAttendeeDataSource;
+    
     /**
      * Constructor.
      * 
@@ -94,6 +97,7 @@ public abstract class AbstractReservationDataSource<T extends AbstractReservatio
         reservation.setLastModifiedDate(Utility.currentDate());
         
         super.update(reservation);
+        this.reservationAttendeeDataSource.delete(reservation.getReserveId());
     }
     
     /**
@@ -128,6 +132,7 @@ public abstract class AbstractReservationDataSource<T extends AbstractReservatio
             reservation.setLastModifiedDate(Utility.currentDate());
             super.update(reservation);
         }
+        this.reservationAttendeeDataSource.update(reservation);
         
         // cancel all allocation that are removed from the incoming reservation
         this.resourceAllocationDataSource.cancelOther(reservation);
@@ -164,6 +169,32 @@ public abstract class AbstractReservationDataSource<T extends AbstractReservatio
         reservation.setRecurringRule(recurringRule);
     }
     
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Suppress warning PMD.AvoidUsingSql in this method.
+     * <p>
+     * Justification: case #2.2 bulk update
+     */
+    @SuppressWarnings("PMD.AvoidUsingSql")
+    public final void markRecurringSeries(final Integer oldParentId, final Integer parentId,
+            final String recurringRule) {
+        final StringBuilder sql = new StringBuilder("UPDATE ");
+        sql.append(this.tableName).append(" SET ").append(Constants.RES_PARENT).append(" = ")
+            .append(parentId);
+        if (recurringRule != null) {
+            // the reservation type changes together with the rule, as in AbstractReservation
+            sql.append(", recurring_rule = ").append(SqlUtils.formatValueForSql(recurringRule))
+                .append(", res_type = ")
+                .append(SqlUtils.formatValueForSql(Constants.TYPE_RECURRING));
+        }
+        sql.append(" WHERE ").append(Constants.RES_PARENT).append(" = ").append(oldParentId)
+            .append(" AND ").append(Constants.STATUS).append(" NOT IN (")
+            .append(SqlUtils.formatValueForSql(Constants.STATUS_CANCELLED)).append(", ")
+            .append(SqlUtils.formatValueForSql(Constants.STATUS_REJECTED)).append(')');
+        SqlUtils.executeUpdate(this.tableName, sql.toString());
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -250,6 +281,36 @@ public abstract class AbstractReservationDataSource<T extends AbstractReservatio
         return this.getByParentId(parentId, timeZoneId, startDate, null);
     }
     
+    /** {@inheritDoc} */
+    public Map<Integer, Date> getOccurrenceDates(final Integer parentId, final Date startDate) {
+        final String resIdField = this.tableName + Constants.DOT + Constants.RES_ID;
+        final String dateStartField =
+                this.tableName + Constants.DOT + Constants.DATE_START_FIELD_NAME;
+        final DataSource dataSource =
+                DataSourceFactory.createDataSourceForFields(this.tableName, new String[] {
+                        Constants.RES_ID, Constants.DATE_START_FIELD_NAME });
+        dataSource.addSort(this.tableName, Constants.DATE_START_FIELD_NAME, DataSource.SORT_ASC);
+        
+        final ParsedRestrictionDef restriction = new ParsedRestrictionDef();
+        restriction.addClause(this.tableName, Constants.RES_PARENT, parentId, Operation.EQUALS);
+        if (startDate != null) {
+            restriction.addClause(this.tableName, Constants.DATE_START_FIELD_NAME, startDate,
+                Operation.GTE);
+        }
+        restriction.addClause(this.tableName, Constants.STATUS, Constants.STATUS_CANCELLED,
+            Operation.NOT_EQUALS);
+        restriction.addClause(this.tableName, Constants.STATUS, Constants.STATUS_REJECTED,
+            Operation.NOT_EQUALS);
+        
+        // only the id and date are read, so all occurrences can be retrieved in one query
+        dataSource.setMaxRecords(0);
+        final Map<Integer, Date> dates = new LinkedHashMap<Integer, Date>();
+        for (final DataRecord record : dataSource.getRecords(restriction)) {
+            dates.put(record.getInt(resIdField), record.getDate(dateStartField));
+        }
+        return dates;
+    }
+    
     /**
      * Setter for resourceAllocationDataSource.
      * 
@@ -260,6 +321,16 @@ public abstract class AbstractReservationDataSource<T extends AbstractReservatio
         this.resourceAllocationDataSource = resourceAllocationDataSource;
     }
     
+    /**
+     * Setter for the attendee table.
+     * 
+     * @param reservationAttendeeDataSource the attendee table to update when saving or cancelling
+     */
+    public final void setReservationAttendeeDataSource(
+            final ReservationAttendeeDataSource reservationAttendeeDataSource) {
+        this.reservationAttendeeDataSource = reservationAttendeeDataSource;
+    }
+    
     /**
      * Get all active reservations linked to the same parent reservation ID.
      * 
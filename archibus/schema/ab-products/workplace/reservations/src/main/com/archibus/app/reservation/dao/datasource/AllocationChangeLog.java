@@ -0,0 +1,453 @@
+package com.archibus.app.reservation.dao.datasource;
+
+import java.util.*;
+
+import com.archibus.app.reservation.domain.AbstractAllocation;
+
+/**
+ * Log of recent writes to room and resource allocations, used to refresh a timeline with only the
+ * changes since it was loaded.
+ * <p>
+ * Each write gets the next version number and registers the location and date of the allocation
+ * before and after the write, so a timeline can also remove the events of allocations that were
+ * moved away from it. A timeline is returned with a version token, which
+ * also contains the scope of the timeline as provided by the caller, e.g. a hash of the search
+ * parameters. Given that token, getChangesSince returns the writes since the timeline was loaded.
+ * It returns null when the changes can no longer be determined, so the caller must reload the
+ * complete timeline: when the token was created by another instance of the log (e.g. before a
+ * restart), is older than the maximum token age or when some of the changes since the token were
+ * already removed from the log. Renewing a token keeps its creation time, so a timeline that is
+ * only refreshed with changes is still reloaded completely after the maximum token age.
+ * <p>
+ * The maximum token age limits how long a timeline can miss writes that don't go through the
+ * allocation data sources, such as approvals or writes on another application server. Writes with
+ * SQL on this server call invalidate, which rejects all tokens created before it.
+ * <p>
+ * Writes are registered when they are executed, before their transaction is committed. A token
+ * therefore never includes the changes registered during the commit delay: getStableVersion
+ * returns the version before them. Those changes are reported again for each refresh until the
+ * commit delay has passed, so the refresh that follows reads the committed data. Changes that
+ * were rolled back are reported as well, which only causes the allocations to be read again.
+ * <p>
+ * Defined as a singleton Spring bean and shared by the RoomAllocationDataSource and
+ * ResourceAllocationDataSource instances.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public class AllocationChangeLog {
+
+    /** Default maximum number of changes kept in the log. */
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /** Default maximum age of a version token, in seconds. */
+    private static final int DEFAULT_MAX_TOKEN_AGE_SECONDS = 600;
+
+    /** Default maximum time between a write and the commit of its transaction, in seconds. */
+    private static final int DEFAULT_COMMIT_DELAY_SECONDS = 60;
+
+    /** Milliseconds in a second. */
+    private static final long SECOND_MILLISECONDS = 1000L;
+
+    /** Separator between the parts of a version token. */
+    private static final String SEPARATOR = "-";
+
+    /** Number of parts in a version token. */
+    private static final int TOKEN_PARTS = 4;
+
+    /** Index of the version in a version token. */
+    private static final int TOKEN_VERSION = 1;
+
+    /** Index of the creation time in a version token. */
+    private static final int TOKEN_CREATED = 2;
+
+    /** Index of the scope in a version token. */
+    private static final int TOKEN_SCOPE = 3;
+
+    /** Identifies this instance of the log, so tokens from before a restart are rejected. */
+    private final String logId = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    /** The recent changes, oldest first. */
+    private final LinkedList<Change> changes = new LinkedList<Change>();
+
+    /** Version of the most recent change. */
+    private long version;
+
+    /** Maximum number of changes kept in the log. */
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    /** Maximum age of a version token, in milliseconds. */
+    private long maxTokenAge = DEFAULT_MAX_TOKEN_AGE_SECONDS * SECOND_MILLISECONDS;
+
+    /** Maximum time between a write and the commit of its transaction, in milliseconds. */
+    private long commitDelay = DEFAULT_COMMIT_DELAY_SECONDS * SECOND_MILLISECONDS;
+
+    /** Version of the last invalidation, tokens for an older version are rejected. */
+    private long invalidatedVersion;
+
+    /** Time of the last invalidation, in milliseconds. */
+    private long invalidatedTime;
+
+    /**
+     * Register a write to an allocation.
+     *
+     * @param tableName the table of the allocation, i.e. reserve_rm or reserve_rs
+     * @param allocation the allocation that was written
+     * @param previous the allocation as stored before the write, null if it was inserted or the
+     *            previous location is not used (resource allocations)
+     */
+    public synchronized void recordChange(final String tableName,
+            final AbstractAllocation allocation, final AbstractAllocation previous) {
+        ++this.version;
+        this.changes.addLast(new Change(this.version, System.currentTimeMillis(), tableName,
+            allocation, previous));
+        while (this.changes.size() > this.maxEntries) {
+            this.changes.removeFirst();
+        }
+    }
+
+    /**
+     * Register that allocations were changed without the allocation data sources, e.g. with SQL.
+     * All tokens created before are rejected, also the ones created until the commit delay has
+     * passed, so those timelines are reloaded completely.
+     */
+    public synchronized void invalidate() {
+        ++this.version;
+        this.invalidatedVersion = this.version;
+        this.invalidatedTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Get the current version.
+     *
+     * @return the version of the most recent change
+     */
+    public synchronized long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Get the version to create a token with. Get it before reading the allocations, so writes
+     * that happen while reading are reported as changes for the token created with this version.
+     * The changes registered during the commit delay might not be committed yet, so the version
+     * before the oldest of them is returned.
+     *
+     * @return the version up to which all changes are committed or rolled back
+     */
+    public synchronized long getStableVersion() {
+        final long settled = System.currentTimeMillis() - this.commitDelay;
+        long stableVersion = this.version;
+        final Iterator<Change> iterator = this.changes.descendingIterator();
+        while (iterator.hasNext()) {
+            final Change change = iterator.next();
+            if (change.recorded <= settled) {
+                break;
+            }
+            stableVersion = change.version - 1;
+        }
+        if (this.invalidatedTime > settled) {
+            stableVersion = Math.min(stableVersion, this.invalidatedVersion - 1);
+        }
+        return stableVersion;
+    }
+
+    /**
+     * Create a version token.
+     *
+     * @param tokenVersion the version retrieved before reading the allocations
+     * @param scope the scope of the timeline the token is for, must not contain a dash
+     * @return the version token
+     */
+    public String createToken(final long tokenVersion, final String scope) {
+        return createToken(tokenVersion, System.currentTimeMillis(), scope);
+    }
+
+    /**
+     * Create a token for the version of the most recent change in the list, with the same scope
+     * and creation time as the given token. The changes registered during the commit delay are
+     * not included, so they are reported again with the next refresh.
+     *
+     * @param token the version token the changes were retrieved for
+     * @param changesSinceToken all changes retrieved for the token, not only the relevant ones
+     * @return the renewed version token
+     */
+    public synchronized String renewToken(final String token,
+            final List<Change> changesSinceToken) {
+        final String[] parts = token.split(SEPARATOR);
+        long tokenVersion = Long.parseLong(parts[TOKEN_VERSION]);
+        if (!changesSinceToken.isEmpty()) {
+            tokenVersion =
+                    Math.max(tokenVersion, Math.min(getStableVersion(),
+                        changesSinceToken.get(changesSinceToken.size() - 1).version));
+        }
+        return createToken(tokenVersion,
+            Long.parseLong(parts[TOKEN_CREATED], Character.MAX_RADIX), parts[TOKEN_SCOPE]);
+    }
+
+    /**
+     * Get the scope from a version token.
+     *
+     * @param token the version token
+     * @return the scope, or null if the token is not valid
+     */
+    public String getScope(final String token) {
+        final String[] parts = token == null ? new String[0] : token.split(SEPARATOR);
+        return parts.length == TOKEN_PARTS ? parts[TOKEN_SCOPE] : null;
+    }
+
+    /**
+     * Get the changes since the given version token was created.
+     *
+     * @param token the version token
+     * @return the changes since the token was created, or null if they cannot be determined
+     */
+    public synchronized List<Change> getChangesSince(final String token) {
+        List<Change> result = null;
+        final long tokenVersion = parseToken(token);
+        // the change after the token version must still be in the log
+        final long oldestVersion =
+                this.changes.isEmpty() ? this.version + 1 : this.changes.getFirst().version;
+        if (tokenVersion >= this.invalidatedVersion && tokenVersion <= this.version
+                && oldestVersion <= tokenVersion + 1) {
+            final LinkedList<Change> changesSince = new LinkedList<Change>();
+            final Iterator<Change> iterator = this.changes.descendingIterator();
+            while (iterator.hasNext()) {
+                final Change change = iterator.next();
+                if (change.version <= tokenVersion) {
+                    break;
+                }
+                changesSince.addFirst(change);
+            }
+            result = changesSince;
+        }
+        return result;
+    }
+
+    /**
+     * Set the maximum number of changes kept in the log.
+     *
+     * @param maxEntries the maximum number of changes
+     */
+    public synchronized void setMaxEntries(final int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Set the maximum age of a version token.
+     *
+     * @param maxTokenAgeSeconds the maximum age in seconds
+     */
+    public synchronized void setMaxTokenAgeSeconds(final int maxTokenAgeSeconds) {
+        this.maxTokenAge = maxTokenAgeSeconds * SECOND_MILLISECONDS;
+    }
+
+    /**
+     * Set the maximum time between a write and the commit of its transaction.
+     *
+     * @param commitDelaySeconds the maximum time in seconds
+     */
+    public synchronized void setCommitDelaySeconds(final int commitDelaySeconds) {
+        this.commitDelay = commitDelaySeconds * SECOND_MILLISECONDS;
+    }
+
+    /**
+     * Create a version token.
+     *
+     * @param tokenVersion the version
+     * @param created the creation time in milliseconds
+     * @param scope the scope
+     * @return the version token
+     */
+    private String createToken(final long tokenVersion, final long created, final String scope) {
+        return this.logId + SEPARATOR + tokenVersion + SEPARATOR
+                + Long.toString(created, Character.MAX_RADIX) + SEPARATOR + scope;
+    }
+
+    /**
+     * Get the version from a version token.
+     *
+     * @param token the version token
+     * @return the version, or -1 if the token is not valid for this log or too old
+     */
+    private long parseToken(final String token) {
+        long tokenVersion = -1;
+        final String[] parts = token == null ? new String[0] : token.split(SEPARATOR);
+        if (parts.length == TOKEN_PARTS && this.logId.equals(parts[0])) {
+            try {
+                final long created = Long.parseLong(parts[TOKEN_CREATED], Character.MAX_RADIX);
+                if (created + this.maxTokenAge > System.currentTimeMillis()) {
+                    tokenVersion = Long.parseLong(parts[TOKEN_VERSION]);
+                }
+            } catch (final NumberFormatException exception) {
+                // not a valid token
+                tokenVersion = -1;
+            }
+        }
+        return tokenVersion;
+    }
+
+    /**
+     * A write to an allocation.
+     */
+    public static final class Change {
+
+        /** Version of the change. */
+        private final long version;
+
+        /** Time the change was registered, in milliseconds. */
+        private final long recorded;
+
+        /** Table of the allocation. */
+        private final String tableName;
+
+        /** Id of the allocation. */
+        private final Integer allocationId;
+
+        /** Building of the allocation. */
+        private final String blId;
+
+        /** Floor of the allocation. */
+        private final String flId;
+
+        /** Room of the allocation. */
+        private final String rmId;
+
+        /** Date of the allocation. */
+        private final Date date;
+
+        /** Building of the allocation before the write, null if unknown. */
+        private final String previousBlId;
+
+        /** Floor of the allocation before the write, null if unknown. */
+        private final String previousFlId;
+
+        /** Room of the allocation before the write, null if unknown. */
+        private final String previousRmId;
+
+        /** Date of the allocation before the write, null if unknown. */
+        private final Date previousDate;
+
+        /**
+         * Create a change.
+         *
+         * @param version version of the change
+         * @param recorded time the change was registered
+         * @param tableName table of the allocation
+         * @param allocation the allocation that was written
+         * @param previous the allocation as stored before the write, null if unknown
+         */
+        Change(final long version, final long recorded, final String tableName,
+                final AbstractAllocation allocation, final AbstractAllocation previous) {
+            this.version = version;
+            this.recorded = recorded;
+            this.tableName = tableName;
+            this.allocationId = allocation.getId();
+            this.blId = allocation.getBlId();
+            this.flId = allocation.getFlId();
+            this.rmId = allocation.getRmId();
+            this.date = allocation.getStartDate();
+            if (previous == null) {
+                this.previousBlId = null;
+                this.previousFlId = null;
+                this.previousRmId = null;
+                this.previousDate = null;
+            } else {
+                this.previousBlId = previous.getBlId();
+                this.previousFlId = previous.getFlId();
+                this.previousRmId = previous.getRmId();
+                this.previousDate = previous.getStartDate();
+            }
+        }
+
+        /**
+         * Get the table of the allocation.
+         *
+         * @return the table name
+         */
+        public String getTableName() {
+            return this.tableName;
+        }
+
+        /**
+         * Get the id of the allocation.
+         *
+         * @return the allocation id
+         */
+        public Integer getAllocationId() {
+            return this.allocationId;
+        }
+
+        /**
+         * Get the building of the allocation.
+         *
+         * @return the building id
+         */
+        public String getBlId() {
+            return this.blId;
+        }
+
+        /**
+         * Get the floor of the allocation.
+         *
+         * @return the floor id
+         */
+        public String getFlId() {
+            return this.flId;
+        }
+
+        /**
+         * Get the room of the allocation.
+         *
+         * @return the room id
+         */
+        public String getRmId() {
+            return this.rmId;
+        }
+
+        /**
+         * Get the date of the allocation.
+         *
+         * @return the date
+         */
+        public Date getDate() {
+            return this.date;
+        }
+
+        /**
+         * Get the building of the allocation before the write.
+         *
+         * @return the building id, null if inserted or unknown
+         */
+        public String getPreviousBlId() {
+            return this.previousBlId;
+        }
+
+        /**
+         * Get the floor of the allocation before the write.
+         *
+         * @return the floor id, null if inserted or unknown
+         */
+        public String getPreviousFlId() {
+            return this.previousFlId;
+        }
+
+        /**
+         * Get the room of the allocation before the write.
+         *
+         * @return the room id, null if inserted or unknown
+         */
+        public String getPreviousRmId() {
+            return this.previousRmId;
+        }
+
+        /**
+         * Get the date of the allocation before the write.
+         *
+         * @return the date, null if inserted or unknown
+         */
+        public Date getPreviousDate() {
+            return this.previousDate;
+        }
+    }
+
+}
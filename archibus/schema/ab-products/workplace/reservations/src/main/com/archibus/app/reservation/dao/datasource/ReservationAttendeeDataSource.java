@@ -0,0 +1,125 @@
+package com.archibus.app.reservation.dao.datasource;
+
+import java.util.*;
+
+import com.archibus.app.reservation.domain.AbstractReservation;
+import com.archibus.app.reservation.util.ReservationTables;
+import com.archibus.datasource.SqlUtils;
+
+/**
+ * Maintains the reserve_attendee table: one record per reservation and attendee email address.
+ * <p>
+ * The attendees are stored in reserve.attendees as a semicolon separated list, which can only be
+ * searched with a LIKE restriction that scans all reservations. The attendee table is indexed on
+ * the email address so the reservations of an attendee are found with an index lookup. The email
+ * addresses are stored in lower case. The table is replaced for the reservation each time it is
+ * saved and emptied when it is cancelled or archived; queries still restrict on the reservation
+ * status, so changing the status without the data sources doesn't return wrong results.
+ * <p>
+ * The table is created by ReservationUpgradeService. The records are written with SQL so they can
+ * be maintained before the data dictionary is reloaded. Defined as a singleton Spring bean.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public class ReservationAttendeeDataSource {
+
+    /** The attendee table. */
+    public static final String TABLE_NAME = ReservationTables.RESERVE_ATTENDEE;
+
+    /** Separator between the attendees in reserve.attendees. */
+    private static final String SEPARATOR = ";";
+
+    /**
+     * Replace the attendees of a saved reservation.
+     *
+     * @param reservation the reservation
+     */
+    public void update(final AbstractReservation reservation) {
+        update(reservation.getReserveId(), reservation.getAttendees());
+    }
+
+    /**
+     * Replace the attendees of a reservation.
+     * <p>
+     * Suppress warning PMD.AvoidUsingSql in this method.
+     * <p>
+     * Justification: case #2.2 bulk delete and insert.
+     *
+     * @param reserveId the reservation id
+     * @param attendees the semicolon separated list of attendees, can be null
+     * @return the number of attendees stored
+     */
+    @SuppressWarnings("PMD.AvoidUsingSql")
+    public int update(final Integer reserveId, final String attendees) {
+        delete(reserveId);
+        final Set<String> emails = parseAttendees(attendees);
+        for (final String email : emails) {
+            SqlUtils.executeUpdate(TABLE_NAME, "INSERT INTO " + TABLE_NAME + " (res_id, email)"
+                    + " VALUES (" + reserveId + ", " + SqlUtils.formatValueForSql(email) + ")");
+        }
+        return emails.size();
+    }
+
+    /**
+     * Delete the attendees of a reservation.
+     * <p>
+     * Suppress warning PMD.AvoidUsingSql in this method.
+     * <p>
+     * Justification: case #2.2 bulk delete.
+     *
+     * @param reserveId the reservation id
+     */
+    @SuppressWarnings("PMD.AvoidUsingSql")
+    public void delete(final Integer reserveId) {
+        SqlUtils.executeUpdate(TABLE_NAME, "DELETE FROM " + TABLE_NAME + " WHERE res_id = "
+                + reserveId);
+    }
+
+    /**
+     * Get the SQL restriction that selects the reservations having the attendee with the email
+     * address in the given parameter. Uses the index on the email address.
+     *
+     * @param reserveTable the name or alias of the reserve table in the query
+     * @param parameterName the name of the data source parameter containing the email address, in
+     *            lower case
+     * @return the SQL restriction
+     */
+    public static String getAttendeeRestriction(final String reserveTable,
+            final String parameterName) {
+        return " EXISTS (SELECT 1 FROM " + TABLE_NAME + " WHERE " + TABLE_NAME + ".email = "
+                + "${parameters['" + parameterName + "']} AND " + TABLE_NAME + ".res_id = "
+                + reserveTable + Constants.DOT + Constants.RES_ID + ")";
+    }
+
+    /**
+     * Get the distinct email addresses in a semicolon separated list of attendees, in lower case.
+     * Addresses longer than the email field are skipped.
+     *
+     * @param attendees the attendees, can be null
+     * @return the email addresses, in the order of the list
+     */
+    public static Set<String> parseAttendees(final String attendees) {
+        final Set<String> emails = new LinkedHashSet<String>();
+        if (attendees != null) {
+            for (final String attendee : attendees.split(SEPARATOR)) {
+                final String email = normalizeEmail(attendee);
+                if (email.length() > 0 && email.length() <= ReservationTables.EMAIL_SIZE) {
+                    emails.add(email);
+                }
+            }
+        }
+        return emails;
+    }
+
+    /**
+     * Normalize an email address for storing it in or looking it up in the attendee table.
+     *
+     * @param email the email address
+     * @return the trimmed email address in lower case
+     */
+    public static String normalizeEmail(final String email) {
+        return email.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+}
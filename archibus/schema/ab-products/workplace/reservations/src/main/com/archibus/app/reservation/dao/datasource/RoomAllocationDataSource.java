@@ -25,6 +25,9 @@ public class RoomAllocationDataSource extends AbstractAllocationDataSource<RoomA
     /** roomArrangementDataSource roomArrangementDataSource. */
     private IRoomArrangementDataSource roomArrangementDataSource;
     
+    /** Cache of room search results to invalidate when writing, null if not used. */
+    private RoomSearchCache roomSearchCache;
+    
     /**
      * Instantiates a new room allocation data source.
      */
@@ -166,6 +169,42 @@ public class RoomAllocationDataSource extends AbstractAllocationDataSource<RoomA
         return convertRecordsToObjects(dataSource.getRecords());
     }
     
+    /**
+     * Get all active room allocations in a building on a date, with one query.
+     * 
+     * @param blId the building id
+     * @param date the date in building time
+     * @return the room allocations that are awaiting approval or confirmed
+     */
+    public final List<RoomAllocation> getActiveRoomAllocations(final String blId,
+            final Date date) {
+        return getActiveRoomAllocations(blId, date, date);
+    }
+    
+    /**
+     * Get all active room allocations in a building in a range of dates, with one query.
+     * 
+     * @param blId the building id
+     * @param startDate the first date in building time
+     * @param endDate the last date in building time
+     * @return the room allocations that are awaiting approval or confirmed
+     */
+    public final List<RoomAllocation> getActiveRoomAllocations(final String blId,
+            final Date startDate, final Date endDate) {
+        final DataSource dataSource = this.createCopy();
+        dataSource.addRestriction(Restrictions.gte(this.tableName,
+            Constants.DATE_START_FIELD_NAME, startDate));
+        dataSource.addRestriction(Restrictions.lte(this.tableName,
+            Constants.DATE_START_FIELD_NAME, endDate));
+        dataSource.addRestriction(Restrictions.eq(this.tableName, Constants.BL_ID_FIELD_NAME,
+            blId));
+        dataSource.addRestriction(Restrictions
+            .sql(" (reserve_rm.status = 'Awaiting App.' or reserve_rm.status = 'Confirmed') "));
+        // all allocations of the day are needed
+        dataSource.setMaxRecords(0);
+        return convertRecordsToObjects(dataSource.getRecords());
+    }
+    
     /**
      * Calculate the total cost for the allocation.
      * 
@@ -263,6 +302,33 @@ public class RoomAllocationDataSource extends AbstractAllocationDataSource<RoomA
         }
     }
     
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Invalidate the cached room searches for the building and date of the allocation, both before
+     * and after the write, so moving an allocation also frees its previous slot.
+     */
+    @Override
+    protected void afterWrite(final RoomAllocation allocation, final RoomAllocation previous) {
+        super.afterWrite(allocation, previous);
+        if (this.roomSearchCache != null) {
+            this.roomSearchCache.invalidate(allocation.getBlId(), allocation.getStartDate());
+            if (previous != null) {
+                this.roomSearchCache.invalidate(previous.getBlId(), previous.getStartDate());
+            }
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The previous location is used if room searches are cached or writes are logged.
+     */
+    @Override
+    protected boolean isStoredAllocationUsed() {
+        return this.roomSearchCache != null || hasAllocationChangeLog();
+    }
+    
     /**
      * Create fields to properties mapping. To be compatible with version 19.
      * 
@@ -293,4 +359,13 @@ public class RoomAllocationDataSource extends AbstractAllocationDataSource<RoomA
         this.roomArrangementDataSource = roomArrangementDataSource;
     }
     
+    /**
+     * Setter for the room search cache.
+     * 
+     * @param roomSearchCache the room search cache to invalidate when writing allocations
+     */
+    public final void setRoomSearchCache(final RoomSearchCache roomSearchCache) {
+        this.roomSearchCache = roomSearchCache;
+    }
+    
 }
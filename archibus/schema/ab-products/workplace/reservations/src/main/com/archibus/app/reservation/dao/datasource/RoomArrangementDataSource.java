@@ -20,6 +20,9 @@ import com.archibus.utility.*;
 public class RoomArrangementDataSource extends AbstractReservableDataSource<RoomArrangement>
         implements IRoomArrangementDataSource {
     
+    /** Cache for interactive room searches, null if searches are not cached. */
+    private RoomSearchCache roomSearchCache;
+    
     /**
      * Instantiates a new room arrangement data source.
      */
@@ -55,20 +58,29 @@ public class RoomArrangementDataSource extends AbstractReservableDataSource<Room
             final boolean externalAllowed, final List<String> fixedResourceStandards,
             final boolean allDayEvent) throws ReservationException {
         
-        RoomReservation reservation = receivedReservation;
-        final List<RoomAllocation> rooms = receivedReservation.getRoomAllocations();
-        
-        if (rooms == null || rooms.isEmpty()) {
-            // @translatable
-            throw new ReservationException("No rooms in reservation", RoomArrangementDataSource.class);
-        }
-        
-        final RoomAllocation roomAllocation = rooms.get(0);
-        
-        if (StringUtil.notNullOrEmpty(reservation.getTimeZone()) && !allDayEvent) {
-            reservation = createReservation(receivedReservation, reservation, roomAllocation);
-        }
+        final RoomAllocation roomAllocation = getRoomAllocation(receivedReservation);
+        final RoomReservation reservation =
+                toLocalReservation(receivedReservation, roomAllocation, allDayEvent);
         
+        return findAvailableRoomRecordsForLocalReservation(reservation, roomAllocation,
+            numberAttendees, externalAllowed, fixedResourceStandards, allDayEvent);
+    }
+    
+    /**
+     * Find available room records for a reservation that is already in building time.
+     * 
+     * @param reservation the reservation in the time zone of the building
+     * @param roomAllocation domain object representing the location restrictions
+     * @param numberAttendees number of attendees
+     * @param externalAllowed whether to return only rooms that allow external visitors
+     * @param fixedResourceStandards fixed resource standards
+     * @param allDayEvent true to look for rooms available for all day events
+     * @return the list of results
+     */
+    private List<DataRecord> findAvailableRoomRecordsForLocalReservation(
+            final RoomReservation reservation, final RoomAllocation roomAllocation,
+            final Integer numberAttendees, final boolean externalAllowed,
+            final List<String> fixedResourceStandards, final boolean allDayEvent) {
         List<DataRecord> results = null;
         if (reservation.getEndDate() == null
                 || reservation.getStartDate().equals(reservation.getEndDate())
@@ -119,6 +131,63 @@ public class RoomArrangementDataSource extends AbstractReservableDataSource<Room
                         roomAllocation.getBlId()).getTime());
             
         }
+        addLocationRestrictions(dataSource, roomAllocation);
+        
+        this.log.debug("Local current date " + localCurrentDate);
+        this.log.debug("Local current time " + localCurrentTime);
+        
+        addRestrictions(dataSource, reservation, localCurrentDate, localCurrentTime, allDayEvent,
+            externalAllowed);
+        
+        // extra
+        addNumberOfAttendeesRestriction(numberAttendees, dataSource);
+        RoomArrangementDataSourceRestrictionsHelper.addFixedResourcesRestriction(
+            fixedResourceStandards, dataSource);
+        
+        addSearchSort(dataSource);
+        return dataSource.getRecords();
+    }
+    
+    /**
+     * Find the reservable room arrangements that match the location, number of attendees,
+     * external visitors and fixed resources, regardless of their reservations. Used to compute
+     * availability in memory for several time periods at once, so the date dependent rules are
+     * not applied. Always verify availability before saving a reservation.
+     * 
+     * @param reservation the reservation, only its attendees are used
+     * @param roomAllocation domain object representing the location restrictions
+     * @param numberAttendees number of attendees
+     * @param externalAllowed whether to return only rooms that allow external visitors
+     * @param fixedResourceStandards fixed resource standards
+     * @return the room arrangements, in the same order as the available rooms
+     */
+    public final List<RoomArrangement> findReservableRooms(final IReservation reservation,
+            final RoomAllocation roomAllocation, final Integer numberAttendees,
+            final boolean externalAllowed, final List<String> fixedResourceStandards) {
+        final DataSource dataSource = this.createCopy();
+        if (StringUtil.notNullOrEmpty(roomAllocation.getBlId())) {
+            dataSource.addRestriction(Restrictions.eq(this.tableName, Constants.BL_ID_FIELD_NAME,
+                roomAllocation.getBlId()));
+        }
+        addLocationRestrictions(dataSource, roomAllocation);
+        addSecurityRestriction(dataSource);
+        addExternalAllowedRestriction(dataSource, reservation, externalAllowed);
+        addNumberOfAttendeesRestriction(numberAttendees, dataSource);
+        RoomArrangementDataSourceRestrictionsHelper.addFixedResourcesRestriction(
+            fixedResourceStandards, dataSource);
+        addSearchSort(dataSource);
+        return convertRecordsToObjects(dataSource.getRecords());
+    }
+    
+    /**
+     * Add the restrictions on floor, room, configuration and arrangement type and the restrictions
+     * to only include reservable rooms.
+     * 
+     * @param dataSource the data source
+     * @param roomAllocation domain object representing the location restrictions
+     */
+    private void addLocationRestrictions(final DataSource dataSource,
+            final RoomAllocation roomAllocation) {
         if (StringUtil.notNullOrEmpty(roomAllocation.getFlId())) {
             dataSource.addRestriction(Restrictions.eq(this.tableName, Constants.FL_ID_FIELD_NAME,
                 roomAllocation.getFlId()));
@@ -143,18 +212,14 @@ public class RoomArrangementDataSource extends AbstractReservableDataSource<Room
         // also see if they are reservable in rm (KB#3036598)
         dataSource.addRestriction(Restrictions.eq(Constants.ROOM_TABLE,
             Constants.RESERVABLE_FIELD_NAME, 1));
-        
-        this.log.debug("Local current date " + localCurrentDate);
-        this.log.debug("Local current time " + localCurrentTime);
-        
-        addRestrictions(dataSource, reservation, localCurrentDate, localCurrentTime, allDayEvent,
-            externalAllowed);
-        
-        // extra
-        addNumberOfAttendeesRestriction(numberAttendees, dataSource);
-        RoomArrangementDataSourceRestrictionsHelper.addFixedResourcesRestriction(
-            fixedResourceStandards, dataSource);
-        
+    }
+    
+    /**
+     * Add the sort order of the room search results.
+     * 
+     * @param dataSource the data source
+     */
+    private void addSearchSort(final DataSource dataSource) {
         // sort on building, default arrangement and capacity first
         dataSource.addSort(this.tableName, "bl_id", DataSource.SORT_ASC);
         dataSource.addSort(this.tableName, "is_default", DataSource.SORT_DESC);
@@ -167,8 +232,6 @@ public class RoomArrangementDataSource extends AbstractReservableDataSource<Room
         // finally sort on arrangement and configuration for each room
         dataSource.addSort(this.tableName, "rm_arrange_type_id", DataSource.SORT_ASC);
         dataSource.addSort(this.tableName, "config_id", DataSource.SORT_ASC);
-        
-        return dataSource.getRecords();
     }
     
     /**
@@ -178,11 +241,83 @@ public class RoomArrangementDataSource extends AbstractReservableDataSource<Room
             final Integer numberAttendees, final boolean externalAllowed,
             final List<String> fixedResourceStandards, final boolean allDayEvent,
             final String timeZone) throws ReservationException {
-        final List<RoomArrangement> results =
-                convertRecordsToObjects(this.findAvailableRoomRecords(reservation, numberAttendees,
-                    externalAllowed, fixedResourceStandards, allDayEvent));
+        return convertToTimeZone(
+            convertRecordsToObjects(this.findAvailableRoomRecords(reservation, numberAttendees,
+                externalAllowed, fixedResourceStandards, allDayEvent)), timeZone);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Results are served from the room search cache if one is configured. Do not use this method
+     * to verify availability before saving a reservation.
+     */
+    public final List<RoomArrangement> searchAvailableRooms(final RoomReservation reservation,
+            final Integer numberAttendees, final boolean externalAllowed,
+            final List<String> fixedResourceStandards, final boolean allDayEvent,
+            final String timeZone) throws ReservationException {
+        List<DataRecord> records = null;
+        if (this.roomSearchCache == null) {
+            records =
+                    this.findAvailableRoomRecords(reservation, numberAttendees, externalAllowed,
+                        fixedResourceStandards, allDayEvent);
+        } else {
+            final RoomAllocation roomAllocation = getRoomAllocation(reservation);
+            final RoomReservation localReservation =
+                    toLocalReservation(reservation, roomAllocation, allDayEvent);
+            
+            // the security groups of the user determine which restrictions are applied
+            final String key =
+                    RoomSearchCache.createKey(roomAllocation.getBlId(),
+                        localReservation.getStartDate(), roomAllocation.getFlId(),
+                        roomAllocation.getRmId(), roomAllocation.getConfigId(),
+                        roomAllocation.getArrangeTypeId(), localReservation.getEndDate(),
+                        localReservation.getStartTime(), localReservation.getEndTime(),
+                        localReservation.getReserveId(), localReservation.getAttendees(),
+                        numberAttendees, externalAllowed, fixedResourceStandards, allDayEvent,
+                        ContextStore.get().getUser().getGroups());
+            records = this.roomSearchCache.get(key);
+            if (records == null) {
+                records =
+                        findAvailableRoomRecordsForLocalReservation(localReservation,
+                            roomAllocation, numberAttendees, externalAllowed,
+                            fixedResourceStandards, allDayEvent);
+                this.roomSearchCache.put(key, roomAllocation.getBlId(),
+                    localReservation.getStartDate(), records);
+            }
+        }
+        
+        return convertToTimeZone(convertRecordsToObjects(records), timeZone);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Results are served from the room search cache if one is configured. Do not use this method
+     * to verify availability before saving a reservation.
+     */
+    public final List<RoomArrangement> searchAvailableRooms(final String blId, final String flId,
+            final String rmId, final String arrangeTypeId, final TimePeriod timePeriod,
+            final Integer numberAttendees, final List<String> fixedResourceStandards)
+            throws ReservationException {
+        final RoomArrangement roomArrangement =
+                new RoomArrangement(blId, flId, rmId, null, arrangeTypeId);
+        final RoomReservation reservation = new RoomReservation(timePeriod, roomArrangement);
         
-        // Convert the dayStart and dayEnd properties to the requested time zone.
+        return this.searchAvailableRooms(reservation, numberAttendees, false,
+            fixedResourceStandards, false, null);
+    }
+    
+    /**
+     * Convert the dayStart and dayEnd properties of the room arrangements to the requested time
+     * zone.
+     * 
+     * @param results the room arrangements to convert
+     * @param timeZone the requested time zone, or null to leave the arrangements unchanged
+     * @return the room arrangements
+     */
+    private List<RoomArrangement> convertToTimeZone(final List<RoomArrangement> results,
+            final String timeZone) {
         if (StringUtil.notNullOrEmpty(timeZone)) {
             final Date now = new Date();
             for (final RoomArrangement arrangement : results) {
@@ -389,6 +524,73 @@ public class RoomArrangementDataSource extends AbstractReservableDataSource<Room
     }
     
     
+    /**
+     * Get all reservable room arrangements in a building that the current user may reserve, for
+     * an overview of room availability.
+     * 
+     * @param blId the building id
+     * @return the reservable room arrangements, sorted on floor and room
+     */
+    public final List<RoomArrangement> getReservableRoomArrangements(final String blId) {
+        final DataSource dataSource = this.createCopy();
+        dataSource.addRestriction(Restrictions.eq(this.tableName, Constants.BL_ID_FIELD_NAME,
+            blId));
+        dataSource.addRestriction(Restrictions.eq(this.tableName, Constants.RESERVABLE_FIELD_NAME,
+            1));
+        dataSource.addRestriction(Restrictions.eq(Constants.ROOM_TABLE,
+            Constants.RESERVABLE_FIELD_NAME, 1));
+        addSecurityRestriction(dataSource);
+        dataSource.addSort(this.tableName, Constants.FL_ID_FIELD_NAME, DataSource.SORT_ASC);
+        dataSource.addSort(this.tableName, Constants.RM_ID_FIELD_NAME, DataSource.SORT_ASC);
+        // all arrangements of the building are needed
+        dataSource.setMaxRecords(0);
+        return convertRecordsToObjects(dataSource.getRecords());
+    }
+    
+    /**
+     * Setter for the room search cache.
+     * 
+     * @param roomSearchCache the cache to use for interactive room searches
+     */
+    public final void setRoomSearchCache(final RoomSearchCache roomSearchCache) {
+        this.roomSearchCache = roomSearchCache;
+    }
+    
+    /**
+     * Get the room allocation that holds the location restrictions of a room search.
+     * 
+     * @param reservation the reservation
+     * @return the first room allocation of the reservation
+     * @throws ReservationException when the reservation has no room allocations
+     */
+    private RoomAllocation getRoomAllocation(final RoomReservation reservation)
+            throws ReservationException {
+        final List<RoomAllocation> rooms = reservation.getRoomAllocations();
+        
+        if (rooms == null || rooms.isEmpty()) {
+            // @translatable
+            throw new ReservationException("No rooms in reservation", RoomArrangementDataSource.class);
+        }
+        return rooms.get(0);
+    }
+    
+    /**
+     * Get the reservation to search for in the time zone of the building.
+     * 
+     * @param reservation the reservation received for the search
+     * @param roomAllocation the room allocation with the location restrictions
+     * @param allDayEvent true for all day events, which are never converted
+     * @return the reservation in building time
+     */
+    private RoomReservation toLocalReservation(final RoomReservation reservation,
+            final RoomAllocation roomAllocation, final boolean allDayEvent) {
+        RoomReservation localReservation = reservation;
+        if (StringUtil.notNullOrEmpty(reservation.getTimeZone()) && !allDayEvent) {
+            localReservation = createReservation(reservation, reservation, roomAllocation);
+        }
+        return localReservation;
+    }
+    
     /**
      * Configure reservation.
      *
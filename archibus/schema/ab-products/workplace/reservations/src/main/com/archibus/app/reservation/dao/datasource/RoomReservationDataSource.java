@@ -30,6 +30,9 @@ implements IRoomReservationDataSource {
     /** The room arrangement data source. */
     protected IRoomArrangementDataSource roomArrangementDataSource;
 
+    /** The daily room utilization summary, null if not maintained. */
+    private RoomUtilizationSummary roomUtilizationSummary;
+
     /**
      * Instantiates a new room reservation data source.
      */
@@ -207,11 +210,17 @@ implements IRoomReservationDataSource {
         // calculate costs for all allocations and total before saving.
         calculateCosts(roomReservation);
 
+        // the room and day of existing allocations before they are changed
+        final Set<RoomUtilizationSummary.RoomDay> roomDays =
+                new LinkedHashSet<RoomUtilizationSummary.RoomDay>();
+        addStoredRoomDays(roomReservation, roomDays);
+
         // save reservation and resources
         super.checkAndSave(roomReservation);
 
         if (roomReservation.getRoomAllocations() != null) {
             saveRoomAllocations(roomReservation);
+            refreshUtilization(roomReservation, roomDays);
         }
 
         return roomReservation;
@@ -280,6 +289,11 @@ implements IRoomReservationDataSource {
         // Then call the super method.
         super.cancel(unmodifiedReservation); 
 
+        if (unmodifiedReservation.getRoomAllocations() != null) {
+            refreshUtilization(unmodifiedReservation,
+                new LinkedHashSet<RoomUtilizationSummary.RoomDay>());
+        }
+
     }
 
     /**
@@ -298,6 +312,68 @@ implements IRoomReservationDataSource {
         this.roomArrangementDataSource = roomArrangementDataSource;
     }
 
+    /**
+     * Setter for the daily room utilization summary.
+     * 
+     * @param roomUtilizationSummary the summary to refresh when saving or cancelling
+     */
+    public final void setRoomUtilizationSummary(
+            final RoomUtilizationSummary roomUtilizationSummary) {
+        this.roomUtilizationSummary = roomUtilizationSummary;
+    }
+
+    /**
+     * Check whether the daily room utilization summary is maintained.
+     * 
+     * @return true if a summary is set and enabled
+     */
+    private boolean isUtilizationSummaryEnabled() {
+        return this.roomUtilizationSummary != null && this.roomUtilizationSummary.isEnabled();
+    }
+
+    /**
+     * Add the room and day of the stored version of the existing room allocations, so the summary
+     * of the old location is refreshed when an allocation moves.
+     * 
+     * @param reservation the reservation being saved
+     * @param roomDays the set to add the rooms and days to
+     */
+    private void addStoredRoomDays(final RoomReservation reservation,
+            final Set<RoomUtilizationSummary.RoomDay> roomDays) {
+        if (isUtilizationSummaryEnabled() && reservation.getRoomAllocations() != null) {
+            for (final RoomAllocation roomAllocation : reservation.getRoomAllocations()) {
+                if (roomAllocation.getId() != null && roomAllocation.getId() > 0) {
+                    final RoomAllocation stored =
+                            this.roomAllocationDataSource.get(roomAllocation.getId());
+                    if (stored != null) {
+                        roomDays.add(new RoomUtilizationSummary.RoomDay(stored.getBlId(),
+                            stored.getFlId(), stored.getRmId(), stored.getStartDate()));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Refresh the daily room utilization summary for the room allocations of a reservation.
+     * 
+     * @param reservation the reservation that was saved or cancelled
+     * @param roomDays other rooms and days to refresh
+     */
+    private void refreshUtilization(final RoomReservation reservation,
+            final Set<RoomUtilizationSummary.RoomDay> roomDays) {
+        if (isUtilizationSummaryEnabled()) {
+            for (final RoomAllocation roomAllocation : reservation.getRoomAllocations()) {
+                roomDays.add(new RoomUtilizationSummary.RoomDay(roomAllocation.getBlId(),
+                    roomAllocation.getFlId(), roomAllocation.getRmId(),
+                    roomAllocation.getStartDate()));
+            }
+            for (final RoomUtilizationSummary.RoomDay roomDay : roomDays) {
+                this.roomUtilizationSummary.refresh(roomDay);
+            }
+        }
+    }
+
     /**
      * Save a reservation's room allocations.
      * 
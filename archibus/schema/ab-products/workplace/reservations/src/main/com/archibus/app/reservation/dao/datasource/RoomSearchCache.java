@@ -0,0 +1,292 @@
+package com.archibus.app.reservation.dao.datasource;
+
+import java.util.*;
+
+import com.archibus.datasource.data.DataRecord;
+
+/**
+ * Short-lived cache for room search results.
+ * <p>
+ * Entries are keyed by the normalized search criteria (including the security groups of the user)
+ * and remember the building and date they apply to. Any write to a room allocation invalidates all
+ * entries for the building and date of that allocation. Results for a building and date that were
+ * written to less than one time-to-live ago are never stored, so a search that was running while
+ * a booking was being committed cannot put stale availability back in the cache.
+ * <p>
+ * Defined as a singleton Spring bean and shared by all RoomArrangementDataSource and
+ * RoomAllocationDataSource instances. Only used for interactive searches; availability checks
+ * before saving a reservation always query the database.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public class RoomSearchCache {
+
+    /** Default time to live of a cached search result, in seconds. */
+    private static final int DEFAULT_TIME_TO_LIVE_SECONDS = 30;
+
+    /** Default maximum number of cached search results. */
+    private static final int DEFAULT_MAX_ENTRIES = 500;
+
+    /** Milliseconds in a second. */
+    private static final long SECOND_MILLISECONDS = 1000L;
+
+    /** Separator used when building keys. */
+    private static final char SEPARATOR = '|';
+
+    /** Time to live of a cached search result, in milliseconds. */
+    private long timeToLive = DEFAULT_TIME_TO_LIVE_SECONDS * SECOND_MILLISECONDS;
+
+    /** Maximum number of cached search results. */
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    /** The cached search results, in access order so the eldest entry is the least recent. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+        DEFAULT_MAX_ENTRIES, 0.75f, true) {
+
+        /** Generated serial version ID. */
+        private static final long serialVersionUID = -3316466727532735287L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+            return size() > RoomSearchCache.this.maxEntries;
+        }
+    };
+
+    /** Time of the most recent write for each building and date, in milliseconds. */
+    private final Map<String, Long> recentWrites = new HashMap<String, Long>();
+
+    /**
+     * Create a key for a search. The building and date must be the first elements so they can be
+     * compared when invalidating entries.
+     *
+     * @param blId building id of the search (can be null)
+     * @param date date of the search in building time
+     * @param criteria all other criteria of the search, in a fixed order
+     * @return the key
+     */
+    public static String createKey(final String blId, final Date date, final Object... criteria) {
+        final StringBuilder key = new StringBuilder();
+        key.append(blId).append(SEPARATOR).append(date == null ? null : date.getTime());
+        for (final Object criterion : criteria) {
+            key.append(SEPARATOR);
+            if (criterion instanceof Collection<?> || criterion instanceof Object[]) {
+                // sort collections so the order of e.g. security groups doesn't matter
+                final Collection<?> collection =
+                        criterion instanceof Object[] ? Arrays.asList((Object[]) criterion)
+                                : (Collection<?>) criterion;
+                final List<String> values = new ArrayList<String>();
+                for (final Object value : collection) {
+                    values.add(String.valueOf(value));
+                }
+                Collections.sort(values);
+                key.append(values);
+            } else if (criterion instanceof Date) {
+                key.append(((Date) criterion).getTime());
+            } else {
+                key.append(criterion);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Get the cached search result for the given key.
+     *
+     * @param key the key created via createKey
+     * @return the cached records, or null if not in the cache or expired
+     */
+    public synchronized List<DataRecord> get(final String key) {
+        List<DataRecord> records = null;
+        final Entry entry = this.entries.get(key);
+        if (entry != null) {
+            if (entry.expires > System.currentTimeMillis()) {
+                records = entry.records;
+            } else {
+                this.entries.remove(key);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Store a search result in the cache. The result is not stored if a room allocation in the same
+     * building on the same date was written less than one time-to-live ago, since the search might
+     * not have seen that change.
+     *
+     * @param key the key created via createKey
+     * @param blId building id of the search (can be null)
+     * @param date date of the search in building time
+     * @param records the search result
+     */
+    public synchronized void put(final String key, final String blId, final Date date,
+            final List<DataRecord> records) {
+        final long now = System.currentTimeMillis();
+        this.pruneRecentWrites(now);
+        if (!this.isRecentlyWritten(blId, date)) {
+            this.entries.put(key, new Entry(blId, date, Collections.unmodifiableList(records), now
+                    + this.timeToLive));
+        }
+    }
+
+    /**
+     * Invalidate all search results for the given building and date. Searches that were not
+     * restricted to a building are also invalidated.
+     *
+     * @param blId building id of the room allocation that was written
+     * @param date date of the room allocation that was written
+     */
+    public synchronized void invalidate(final String blId, final Date date) {
+        this.recentWrites.put(createWriteKey(blId, date), System.currentTimeMillis());
+
+        final Iterator<Entry> iterator = this.entries.values().iterator();
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            if (entry.matches(blId, date)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all cached search results.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * Get the number of cached search results, including expired results that were not yet
+     * removed.
+     *
+     * @return number of entries
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Set the time to live of cached search results.
+     *
+     * @param timeToLiveSeconds the time to live in seconds
+     */
+    public synchronized void setTimeToLiveSeconds(final int timeToLiveSeconds) {
+        this.timeToLive = timeToLiveSeconds * SECOND_MILLISECONDS;
+    }
+
+    /**
+     * Get the maximum number of cached search results.
+     *
+     * @return the maximum number of entries
+     */
+    public synchronized int getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    /**
+     * Set the maximum number of cached search results.
+     *
+     * @param maxEntries the maximum number of entries
+     */
+    public synchronized void setMaxEntries(final int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Check whether a room allocation in the given building on the given date was written less
+     * than one time-to-live ago. Searches without building check all writes on the date.
+     *
+     * @param blId building id (can be null)
+     * @param date the date
+     * @return true if recently written
+     */
+    private boolean isRecentlyWritten(final String blId, final Date date) {
+        boolean recentlyWritten = false;
+        if (blId == null) {
+            final String dateSuffix =
+                    SEPARATOR + String.valueOf(date == null ? null : date.getTime());
+            for (final String writeKey : this.recentWrites.keySet()) {
+                if (writeKey.endsWith(dateSuffix)) {
+                    recentlyWritten = true;
+                    break;
+                }
+            }
+        } else {
+            recentlyWritten = this.recentWrites.containsKey(createWriteKey(blId, date));
+        }
+        return recentlyWritten;
+    }
+
+    /**
+     * Remove writes older than one time-to-live.
+     *
+     * @param now the current time in milliseconds
+     */
+    private void pruneRecentWrites(final long now) {
+        final Iterator<Long> iterator = this.recentWrites.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() + this.timeToLive <= now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Create the key for registering a write.
+     *
+     * @param blId building id
+     * @param date the date
+     * @return the key
+     */
+    private static String createWriteKey(final String blId, final Date date) {
+        return blId + SEPARATOR + (date == null ? null : date.getTime());
+    }
+
+    /**
+     * A cached search result.
+     */
+    private static final class Entry {
+
+        /** Building of the search. */
+        private final String blId;
+
+        /** Date of the search. */
+        private final Date date;
+
+        /** The result records. */
+        private final List<DataRecord> records;
+
+        /** Expiration time in milliseconds. */
+        private final long expires;
+
+        /**
+         * Create a cache entry.
+         *
+         * @param blId building of the search
+         * @param date date of the search
+         * @param records result records
+         * @param expires expiration time in milliseconds
+         */
+        Entry(final String blId, final Date date, final List<DataRecord> records,
+                final long expires) {
+            this.blId = blId;
+            this.date = date;
+            this.records = records;
+            this.expires = expires;
+        }
+
+        /**
+         * Check whether a write to the given building and date affects this entry.
+         *
+         * @param writtenBlId building of the write
+         * @param writtenDate date of the write
+         * @return true if this entry must be invalidated
+         */
+        boolean matches(final String writtenBlId, final Date writtenDate) {
+            return (this.blId == null || writtenBlId == null || this.blId.equals(writtenBlId))
+                    && (this.date == null || writtenDate == null || this.date.getTime() == writtenDate
+                        .getTime());
+        }
+    }
+
+}
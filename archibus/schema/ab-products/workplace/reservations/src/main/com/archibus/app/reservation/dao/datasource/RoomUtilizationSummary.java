@@ -0,0 +1,458 @@
+package com.archibus.app.reservation.dao.datasource;
+
+import java.sql.Time;
+import java.util.*;
+
+import org.apache.log4j.Logger;
+
+import com.archibus.app.reservation.domain.*;
+import com.archibus.app.reservation.util.ReservationTables;
+import com.archibus.datasource.*;
+import com.archibus.datasource.data.DataRecord;
+import com.archibus.datasource.restriction.Restrictions;
+import com.archibus.utility.ExceptionBase;
+
+/**
+ * Maintains the daily room utilization summary: for each room and day the booked minutes, the
+ * number of reservations, the number of attendees and the cost of the room allocations.
+ * <p>
+ * Utilization reports read the small summary table instead of aggregating reserve_rm and
+ * hreserve_rm when they are queried. Allocations that are awaiting approval, confirmed or closed
+ * are counted, in both tables, so archiving doesn't change the totals. Saving and cancelling a
+ * reservation refreshes the summary of the affected rooms and days and archiving refreshes the
+ * archived days once more, which corrects changes made without the data sources such as
+ * rejections. The rebuild fills the summary for a range of days, e.g. after installing it.
+ * <p>
+ * Failures to update the summary are logged and don't prevent saving the reservation; the
+ * rebuild repairs the summary. Defined as a singleton Spring bean.
+ * <p>
+ * The summary table is created by ReservationUpgradeService. The summary can be disabled in the
+ * bean configuration; when disabled, nothing is refreshed and the rebuild is refused.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public class RoomUtilizationSummary {
+
+    /** The summary table. */
+    public static final String SUMMARY_TABLE = ReservationTables.RESERVE_RM_SUM;
+
+    /** Field name for the booked minutes. */
+    private static final String MINUTES_BOOKED = "minutes_booked";
+
+    /** Field name for the number of reservations. */
+    private static final String RES_COUNT = "res_count";
+
+    /** Field name for the number of attendees. */
+    private static final String ATTENDEE_COUNT = "attendee_count";
+
+    /** Field name for the cost. */
+    private static final String COST = "cost_rmres";
+
+    /** Field name for the start time. */
+    private static final String TIME_START = "time_start";
+
+    /** Field name for the end time. */
+    private static final String TIME_END = "time_end";
+
+    /** Field name for the number of internal guests. */
+    private static final String GUESTS_INTERNAL = "guests_internal";
+
+    /** Field name for the number of external guests. */
+    private static final String GUESTS_EXTERNAL = "guests_external";
+
+    /** Status of archived allocations. */
+    private static final String STATUS_CLOSED = "Closed";
+
+    /** The historical room allocation table. */
+    private static final String HISTORY_TABLE = "hreserve_rm";
+
+    /** The key fields of the summary table. */
+    private static final String[] KEY_FIELDS = { Constants.BL_ID_FIELD_NAME,
+            Constants.FL_ID_FIELD_NAME, Constants.RM_ID_FIELD_NAME,
+            Constants.DATE_START_FIELD_NAME };
+
+    /** Separator between the values in a key. */
+    private static final char SEPARATOR = '|';
+
+    /** The dot between a table and field name. */
+    private static final String DOT = ".";
+
+    /** The logger. */
+    private final Logger logger = Logger.getLogger(this.getClass());
+
+    /** Whether the summary table is maintained. */
+    private boolean enabled = true;
+
+    /**
+     * Check whether the summary is maintained.
+     *
+     * @return true if the summary is enabled
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Set whether the summary is maintained.
+     *
+     * @param enabled true to maintain the summary
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Refresh the summary of a room and day from the current and historical allocations. Nothing
+     * is done if the summary is disabled.
+     *
+     * @param roomDay the room and day
+     */
+    public void refresh(final RoomDay roomDay) {
+        if (!this.enabled) {
+            return;
+        }
+        try {
+            final Totals totals = new Totals();
+            for (final String tableName : new String[] { Constants.RESERVE_RM_TABLE_NAME,
+                    HISTORY_TABLE }) {
+                final DataSource dataSource = createAllocationDataSource(tableName);
+                addRoomDayRestriction(dataSource, tableName, roomDay);
+                for (final DataRecord record : dataSource.getRecords()) {
+                    totals.add(tableName, record);
+                }
+            }
+
+            final DataSource summaryDataSource = createSummaryDataSource();
+            addRoomDayRestriction(summaryDataSource, SUMMARY_TABLE, roomDay);
+            DataRecord summary = summaryDataSource.getRecord();
+            if (totals.getReservations() == 0) {
+                if (summary != null) {
+                    summaryDataSource.deleteRecord(summary);
+                }
+            } else {
+                if (summary == null) {
+                    summary = summaryDataSource.createNewRecord();
+                    setKey(summary, roomDay);
+                }
+                totals.setValues(summary);
+                summaryDataSource.saveRecord(summary);
+            }
+        } catch (final ExceptionBase exception) {
+            this.logger.warn("Room utilization summary not updated for " + roomDay, exception);
+        }
+    }
+
+    /**
+     * Find the rooms and days that have allocations in reserve_rm up to the given date, i.e. the
+     * ones that will be archived.
+     *
+     * @param lastDate the last date to include
+     * @return the rooms and days, empty if the summary is disabled
+     */
+    public List<RoomDay> findRoomDaysUntil(final Date lastDate) {
+        final List<RoomDay> roomDays = new ArrayList<RoomDay>();
+        if (this.enabled) {
+            final DataSource dataSource =
+                    DataSourceFactory.createDataSourceForFields(
+                        Constants.RESERVE_RM_TABLE_NAME, KEY_FIELDS);
+            dataSource.setDistinct(true);
+            dataSource.addRestriction(Restrictions.lte(Constants.RESERVE_RM_TABLE_NAME,
+                Constants.DATE_START_FIELD_NAME, lastDate));
+            dataSource.setMaxRecords(0);
+            for (final DataRecord record : dataSource.getRecords()) {
+                roomDays.add(getKey(Constants.RESERVE_RM_TABLE_NAME, record));
+            }
+        }
+        return roomDays;
+    }
+
+    /**
+     * Rebuild the summary of all rooms for one day.
+     *
+     * @param date the day
+     * @return the number of summary records written
+     * @throws ReservationException when the summary is disabled
+     */
+    public int rebuild(final Date date) throws ReservationException {
+        if (!this.enabled) {
+            // @translatable
+            throw new ReservationException("The room utilization summary is not enabled.",
+                RoomUtilizationSummary.class);
+        }
+        final Map<RoomDay, Totals> totalsByRoom = new LinkedHashMap<RoomDay, Totals>();
+        for (final String tableName : new String[] { Constants.RESERVE_RM_TABLE_NAME,
+                HISTORY_TABLE }) {
+            final DataSource dataSource = createAllocationDataSource(tableName);
+            for (final String field : KEY_FIELDS) {
+                dataSource.addField(tableName, field);
+            }
+            dataSource.addRestriction(Restrictions.eq(tableName,
+                Constants.DATE_START_FIELD_NAME, date));
+            dataSource.setMaxRecords(0);
+            for (final DataRecord record : dataSource.getRecords()) {
+                final RoomDay roomDay = getKey(tableName, record);
+                Totals totals = totalsByRoom.get(roomDay);
+                if (totals == null) {
+                    totals = new Totals();
+                    totalsByRoom.put(roomDay, totals);
+                }
+                totals.add(tableName, record);
+            }
+        }
+
+        final DataSource summaryDataSource = createSummaryDataSource();
+        summaryDataSource.addRestriction(Restrictions.eq(SUMMARY_TABLE,
+            Constants.DATE_START_FIELD_NAME, date));
+        summaryDataSource.setMaxRecords(0);
+        for (final DataRecord summary : summaryDataSource.getRecords()) {
+            summaryDataSource.deleteRecord(summary);
+        }
+        int written = 0;
+        for (final Map.Entry<RoomDay, Totals> entry : totalsByRoom.entrySet()) {
+            if (entry.getValue().getReservations() > 0) {
+                final DataRecord summary = summaryDataSource.createNewRecord();
+                setKey(summary, entry.getKey());
+                entry.getValue().setValues(summary);
+                summaryDataSource.saveRecord(summary);
+                ++written;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Create a data source for the allocations that are counted in the summary.
+     *
+     * @param tableName reserve_rm or hreserve_rm
+     * @return the data source
+     */
+    private static DataSource createAllocationDataSource(final String tableName) {
+        final DataSource dataSource =
+                DataSourceFactory.createDataSourceForFields(tableName, new String[] {
+                        TIME_START, TIME_END, GUESTS_INTERNAL, GUESTS_EXTERNAL, COST });
+        dataSource.addRestriction(Restrictions.sql(tableName + ".status IN ('"
+                + Constants.STATUS_AWAITING_APP + "', '" + Constants.STATUS_CONFIRMED + "', '"
+                + STATUS_CLOSED + "')"));
+        return dataSource;
+    }
+
+    /**
+     * Create a data source for the summary table.
+     *
+     * @return the data source
+     */
+    private static DataSource createSummaryDataSource() {
+        final List<String> fields = new ArrayList<String>(Arrays.asList(KEY_FIELDS));
+        fields.addAll(Arrays.asList(MINUTES_BOOKED, RES_COUNT, ATTENDEE_COUNT, COST));
+        return DataSourceFactory.createDataSourceForFields(SUMMARY_TABLE,
+            fields.toArray(new String[fields.size()]));
+    }
+
+    /**
+     * Restrict a data source to a room and day.
+     *
+     * @param dataSource the data source
+     * @param tableName the main table of the data source
+     * @param roomDay the room and day
+     */
+    private static void addRoomDayRestriction(final DataSource dataSource,
+            final String tableName, final RoomDay roomDay) {
+        dataSource.addRestriction(Restrictions.eq(tableName, Constants.BL_ID_FIELD_NAME,
+            roomDay.blId));
+        dataSource.addRestriction(Restrictions.eq(tableName, Constants.FL_ID_FIELD_NAME,
+            roomDay.flId));
+        dataSource.addRestriction(Restrictions.eq(tableName, Constants.RM_ID_FIELD_NAME,
+            roomDay.rmId));
+        dataSource.addRestriction(Restrictions.eq(tableName, Constants.DATE_START_FIELD_NAME,
+            roomDay.date));
+    }
+
+    /**
+     * Get the room and day of a record.
+     *
+     * @param tableName the main table of the record
+     * @param record the record
+     * @return the room and day
+     */
+    private static RoomDay getKey(final String tableName, final DataRecord record) {
+        return new RoomDay(record.getString(tableName + DOT + Constants.BL_ID_FIELD_NAME),
+            record.getString(tableName + DOT + Constants.FL_ID_FIELD_NAME),
+            record.getString(tableName + DOT + Constants.RM_ID_FIELD_NAME),
+            record.getDate(tableName + DOT + Constants.DATE_START_FIELD_NAME));
+    }
+
+    /**
+     * Set the key values of a summary record.
+     *
+     * @param summary the summary record
+     * @param roomDay the room and day
+     */
+    private static void setKey(final DataRecord summary, final RoomDay roomDay) {
+        summary.setValue(SUMMARY_TABLE + DOT + Constants.BL_ID_FIELD_NAME, roomDay.blId);
+        summary.setValue(SUMMARY_TABLE + DOT + Constants.FL_ID_FIELD_NAME, roomDay.flId);
+        summary.setValue(SUMMARY_TABLE + DOT + Constants.RM_ID_FIELD_NAME, roomDay.rmId);
+        summary.setValue(SUMMARY_TABLE + DOT + Constants.DATE_START_FIELD_NAME, roomDay.date);
+    }
+
+    /**
+     * A room on a day.
+     */
+    public static final class RoomDay {
+
+        /** The building id. */
+        private final String blId;
+
+        /** The floor id. */
+        private final String flId;
+
+        /** The room id. */
+        private final String rmId;
+
+        /** The day. */
+        private final Date date;
+
+        /**
+         * Create a room day.
+         *
+         * @param blId the building id
+         * @param flId the floor id
+         * @param rmId the room id
+         * @param date the day, the time is ignored
+         */
+        public RoomDay(final String blId, final String flId, final String rmId,
+                final Date date) {
+            this.blId = blId;
+            this.flId = flId;
+            this.rmId = rmId;
+            this.date = TimePeriod.clearTime(date);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof RoomDay && toString().equals(other.toString());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return toString().hashCode();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return this.blId + SEPARATOR + this.flId + SEPARATOR + this.rmId + SEPARATOR
+                    + (this.date == null ? null : this.date.getTime());
+        }
+    }
+
+    /**
+     * The totals of the allocations of a room on a day.
+     */
+    static final class Totals {
+
+        /** The booked minutes. */
+        private int minutes;
+
+        /** The number of reservations. */
+        private int reservations;
+
+        /** The number of attendees. */
+        private int attendees;
+
+        /** The cost. */
+        private double cost;
+
+        /**
+         * Add an allocation record.
+         *
+         * @param tableName the main table of the record
+         * @param record the allocation record
+         */
+        void add(final String tableName, final DataRecord record) {
+            add((Time) record.getValue(tableName + DOT + TIME_START),
+                (Time) record.getValue(tableName + DOT + TIME_END),
+                record.getInt(tableName + DOT + GUESTS_INTERNAL)
+                        + record.getInt(tableName + DOT + GUESTS_EXTERNAL),
+                record.getDouble(tableName + DOT + COST));
+        }
+
+        /**
+         * Add an allocation. An end time at or before the start time is the end of the day.
+         *
+         * @param startTime the start time
+         * @param endTime the end time
+         * @param allocationAttendees the number of attendees
+         * @param allocationCost the cost
+         */
+        void add(final Time startTime, final Time endTime, final int allocationAttendees,
+                final double allocationCost) {
+            final int start = startTime == null ? 0 : CompactTimePeriod.toMinuteOfDay(startTime);
+            int end = endTime == null ? 0 : CompactTimePeriod.toMinuteOfDay(endTime);
+            if (end <= start) {
+                end = CompactTimePeriod.MINUTES_IN_DAY;
+            }
+            this.minutes += end - start;
+            ++this.reservations;
+            this.attendees += allocationAttendees;
+            this.cost += allocationCost;
+        }
+
+        /**
+         * Get the booked minutes.
+         *
+         * @return the booked minutes
+         */
+        int getMinutes() {
+            return this.minutes;
+        }
+
+        /**
+         * Get the number of reservations.
+         *
+         * @return the number of reservations
+         */
+        int getReservations() {
+            return this.reservations;
+        }
+
+        /**
+         * Get the number of attendees.
+         *
+         * @return the number of attendees
+         */
+        int getAttendees() {
+            return this.attendees;
+        }
+
+        /**
+         * Get the cost.
+         *
+         * @return the cost
+         */
+        double getCost() {
+            return this.cost;
+        }
+
+        /**
+         * Set the totals in a summary record.
+         *
+         * @param summary the summary record
+         */
+        void setValues(final DataRecord summary) {
+            summary.setValue(SUMMARY_TABLE + DOT + MINUTES_BOOKED, this.minutes);
+            summary.setValue(SUMMARY_TABLE + DOT + RES_COUNT, this.reservations);
+            summary.setValue(SUMMARY_TABLE + DOT + ATTENDEE_COUNT, this.attendees);
+            summary.setValue(SUMMARY_TABLE + DOT + COST, this.cost);
+        }
+    }
+
+}
@@ -0,0 +1,357 @@
+package com.archibus.app.reservation.domain;
+
+import java.sql.Time;
+import java.util.*;
+
+import com.archibus.app.reservation.dao.datasource.Constants;
+
+/**
+ * Compact Time Period.
+ *
+ * Immutable time period stored as two primitive values: the local start and end date/time in
+ * minutes since 1 January 1970. Overlap, containment and intersection are calculated without
+ * creating Date or Time objects. The getters with the same name as in TimePeriod create the Date
+ * and Time values only when requested.
+ * <p>
+ * Local means the date and time as shown in the time zone of the period, in the same way
+ * TimePeriod stores them in its separate date and time values.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public final class CompactTimePeriod {
+
+    /** Number of minutes in a day. */
+    public static final int MINUTES_IN_DAY = 24 * 60;
+
+    /** The year the minutes are counted from. */
+    private static final int EPOCH_YEAR = 1970;
+
+    /** Local start date/time in minutes since 1 January 1970. */
+    private final long startMinute;
+
+    /** Local end date/time in minutes since 1 January 1970. */
+    private final long endMinute;
+
+    /** The time zone. */
+    private final String timeZone;
+
+    /**
+     * Create a compact time period.
+     *
+     * @param startMinute local start date/time in minutes since 1 January 1970
+     * @param endMinute local end date/time in minutes since 1 January 1970
+     * @param timeZone the time zone
+     * @throws ReservationException when the start is after the end
+     */
+    public CompactTimePeriod(final long startMinute, final long endMinute, final String timeZone)
+            throws ReservationException {
+        if (startMinute > endMinute) {
+            // @translatable
+            throw new ReservationException("Start time is after end time",
+                CompactTimePeriod.class);
+        }
+        this.startMinute = startMinute;
+        this.endMinute = endMinute;
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * Create a compact time period from separate date and time values.
+     *
+     * @param startDate start date
+     * @param startTime start time
+     * @param endDate end date
+     * @param endTime end time
+     * @param timeZone the time zone
+     * @return the compact time period
+     */
+    public static CompactTimePeriod create(final Date startDate, final Time startTime,
+            final Date endDate, final Time endTime, final String timeZone) {
+        final TimeZone localTimeZone = TimeZone.getDefault();
+        return new CompactTimePeriod(getDateTimeMinute(startDate, startTime, localTimeZone),
+            getDateTimeMinute(endDate, endTime, localTimeZone), timeZone);
+    }
+
+    /**
+     * Create a compact time period from a time period with all dates and times filled in.
+     *
+     * @param timePeriod the time period
+     * @return the compact time period
+     */
+    public static CompactTimePeriod fromTimePeriod(final TimePeriod timePeriod) {
+        return create(timePeriod.getStartDate(), timePeriod.getStartTime(),
+            timePeriod.getEndDate(), timePeriod.getEndTime(), timePeriod.getTimeZone());
+    }
+
+    /**
+     * Create a compact time period from a reservation or allocation with all dates and times
+     * filled in.
+     *
+     * @param timePeriodBased the reservation or allocation
+     * @return the compact time period
+     */
+    public static CompactTimePeriod fromTimePeriod(final ITimePeriodBased timePeriodBased) {
+        return create(timePeriodBased.getStartDate(), timePeriodBased.getStartTime(),
+            timePeriodBased.getEndDate(), timePeriodBased.getEndTime(),
+            timePeriodBased.getTimeZone());
+    }
+
+    /**
+     * Get the local start date/time.
+     *
+     * @return the start in minutes since 1 January 1970
+     */
+    public long getStartMinute() {
+        return this.startMinute;
+    }
+
+    /**
+     * Get the local end date/time.
+     *
+     * @return the end in minutes since 1 January 1970
+     */
+    public long getEndMinute() {
+        return this.endMinute;
+    }
+
+    /**
+     * Gets the time zone.
+     *
+     * @return the time zone
+     */
+    public String getTimeZone() {
+        return this.timeZone;
+    }
+
+    /**
+     * Get the duration of the time period.
+     *
+     * @return the number of minutes between start and end
+     */
+    public long getDurationMinutes() {
+        return this.endMinute - this.startMinute;
+    }
+
+    /**
+     * Get the start time of day.
+     *
+     * @return the number of minutes since midnight
+     */
+    public int getStartMinuteOfDay() {
+        return getMinuteOfDay(this.startMinute);
+    }
+
+    /**
+     * Get the end time of day.
+     *
+     * @return the number of minutes since midnight
+     */
+    public int getEndMinuteOfDay() {
+        return getMinuteOfDay(this.endMinute);
+    }
+
+    /**
+     * Check whether this time period overlaps with another one. Periods that only touch, i.e. one
+     * ends when the other starts, do not overlap.
+     *
+     * @param other the other time period
+     * @return true if they overlap
+     */
+    public boolean overlaps(final CompactTimePeriod other) {
+        return this.startMinute < other.endMinute && other.startMinute < this.endMinute;
+    }
+
+    /**
+     * Check whether this time period fully contains another one.
+     *
+     * @param other the other time period
+     * @return true if the other time period starts and ends within this time period
+     */
+    public boolean contains(final CompactTimePeriod other) {
+        return this.startMinute <= other.startMinute && other.endMinute <= this.endMinute;
+    }
+
+    /**
+     * Check whether this time period contains the given moment. The end is not included.
+     *
+     * @param minute local date/time in minutes since 1 January 1970
+     * @return true if the moment is within this time period
+     */
+    public boolean contains(final long minute) {
+        return this.startMinute <= minute && minute < this.endMinute;
+    }
+
+    /**
+     * Get the part of this time period that overlaps with another one.
+     *
+     * @param other the other time period
+     * @return the overlapping part, or null if they don't overlap
+     */
+    public CompactTimePeriod intersect(final CompactTimePeriod other) {
+        CompactTimePeriod result = null;
+        if (this.overlaps(other)) {
+            result =
+                    new CompactTimePeriod(Math.max(this.startMinute, other.startMinute), Math.min(
+                        this.endMinute, other.endMinute), this.timeZone);
+        }
+        return result;
+    }
+
+    /**
+     * Get start date.
+     *
+     * @return start date
+     */
+    public Date getStartDate() {
+        return toDate(getDay(this.startMinute) * MINUTES_IN_DAY);
+    }
+
+    /**
+     * Get start time.
+     *
+     * @return start time
+     */
+    public Time getStartTime() {
+        return toTime(getMinuteOfDay(this.startMinute));
+    }
+
+    /**
+     * Get end date.
+     *
+     * @return end date
+     */
+    public Date getEndDate() {
+        return toDate(getDay(this.endMinute) * MINUTES_IN_DAY);
+    }
+
+    /**
+     * Get end time.
+     *
+     * @return end time
+     */
+    public Time getEndTime() {
+        return toTime(getMinuteOfDay(this.endMinute));
+    }
+
+    /**
+     * Get the start date/time.
+     *
+     * @return start date/time
+     */
+    public Date getStartDateTime() {
+        return toDate(this.startMinute);
+    }
+
+    /**
+     * Get the end date/time.
+     *
+     * @return end date/time
+     */
+    public Date getEndDateTime() {
+        return toDate(this.endMinute);
+    }
+
+    /**
+     * Convert to a regular time period.
+     *
+     * @return new time period with the same dates, times and time zone
+     */
+    public TimePeriod toTimePeriod() {
+        return new TimePeriod(this.getStartDate(), this.getEndDate(), this.getStartTime(),
+            this.getEndTime(), this.timeZone);
+    }
+
+    /**
+     * Get the local time of day of a date/time or time value, in the default time zone.
+     *
+     * @param time the date/time or time value
+     * @return the number of minutes since midnight
+     */
+    public static int toMinuteOfDay(final Date time) {
+        return getMinuteOfDay(getLocalMinute(time.getTime(), TimeZone.getDefault()));
+    }
+
+    /**
+     * Get the local date/time of a date and time value, in the given time zone.
+     *
+     * @param date the date, the time of day is ignored
+     * @param time the time, the date is ignored
+     * @param localTimeZone the time zone to determine the local date and time in
+     * @return the date/time in minutes since 1 January 1970
+     */
+    private static long getDateTimeMinute(final Date date, final Time time,
+            final TimeZone localTimeZone) {
+        return getDay(getLocalMinute(date.getTime(), localTimeZone)) * MINUTES_IN_DAY
+                + getMinuteOfDay(getLocalMinute(time.getTime(), localTimeZone));
+    }
+
+    /**
+     * Get the local date/time of a moment.
+     *
+     * @param timeInMillis the moment in milliseconds since 1 January 1970 UTC
+     * @param localTimeZone the time zone to determine the local date and time in
+     * @return the local date/time in minutes since 1 January 1970
+     */
+    private static long getLocalMinute(final long timeInMillis, final TimeZone localTimeZone) {
+        final long localMillis = timeInMillis + localTimeZone.getOffset(timeInMillis);
+        long result = localMillis / TimePeriod.MINUTE_MILLISECONDS;
+        if (localMillis % TimePeriod.MINUTE_MILLISECONDS < 0) {
+            --result;
+        }
+        return result;
+    }
+
+    /**
+     * Get the day of a local date/time.
+     *
+     * @param minute the local date/time in minutes since 1 January 1970
+     * @return the number of days since 1 January 1970
+     */
+    private static long getDay(final long minute) {
+        long result = minute / MINUTES_IN_DAY;
+        if (minute % MINUTES_IN_DAY < 0) {
+            --result;
+        }
+        return result;
+    }
+
+    /**
+     * Get the time of day of a local date/time.
+     *
+     * @param minute the local date/time in minutes since 1 January 1970
+     * @return the number of minutes since midnight
+     */
+    private static int getMinuteOfDay(final long minute) {
+        return (int) (minute - getDay(minute) * MINUTES_IN_DAY);
+    }
+
+    /**
+     * Convert a local date/time to a Date in the default time zone.
+     *
+     * @param minute the local date/time in minutes since 1 January 1970
+     * @return the date
+     */
+    private static Date toDate(final long minute) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        // the calendar is lenient, so it calculates the date from the number of days
+        calendar.set(EPOCH_YEAR, Calendar.JANUARY, 1 + (int) getDay(minute), 0,
+            getMinuteOfDay(minute));
+        return calendar.getTime();
+    }
+
+    /**
+     * Convert a time of day to a Time value on 30 December 1899, like all time values.
+     *
+     * @param minuteOfDay the number of minutes since midnight
+     * @return the time
+     */
+    private static Time toTime(final int minuteOfDay) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(Constants.INIT_YEAR, Calendar.DECEMBER, Constants.INIT_DATE, 0, minuteOfDay);
+        return new Time(calendar.getTimeInMillis());
+    }
+
+}
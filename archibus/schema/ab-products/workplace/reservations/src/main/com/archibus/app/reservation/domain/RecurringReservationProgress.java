@@ -0,0 +1,160 @@
+package com.archibus.app.reservation.domain;
+
+import javax.xml.bind.annotation.*;
+
+/**
+ * Progress of a recurring reservation series being created in the background.
+ * <p>
+ * The first occurrence is saved immediately. The number of occurrences only counts the other
+ * occurrences, which are created by the background job.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlRootElement(name = "RecurringReservationProgress")
+public class RecurringReservationProgress {
+
+    /**
+     * Possible values for the status.
+     */
+    public enum Status {
+        /** Occurrences are still being created. */
+        Running,
+        /** All occurrences are created. */
+        Completed,
+        /** The job was stopped before all occurrences were created. */
+        Stopped,
+        /** An occurrence could not be created. */
+        Failed
+    }
+
+    /** The job id. */
+    private String jobId;
+
+    /** The status. */
+    private Status status;
+
+    /** The number of occurrences to create. */
+    private int total;
+
+    /** The number of occurrences created and committed. */
+    private int created;
+
+    /** The error message when the job failed. */
+    private String message;
+
+    /**
+     * Default constructor.
+     */
+    public RecurringReservationProgress() {
+        super();
+    }
+
+    /**
+     * Constructor with initialization.
+     *
+     * @param jobId the job id
+     * @param status the status
+     * @param total the number of occurrences to create
+     * @param created the number of occurrences created
+     */
+    public RecurringReservationProgress(final String jobId, final Status status, final int total,
+            final int created) {
+        this.setJobId(jobId);
+        this.setStatus(status);
+        this.setTotal(total);
+        this.setCreated(created);
+    }
+
+    /**
+     * Get the job id.
+     *
+     * @return the job id
+     */
+    public final String getJobId() {
+        return this.jobId;
+    }
+
+    /**
+     * Set the job id.
+     *
+     * @param jobId the job id to set
+     */
+    public final void setJobId(final String jobId) {
+        this.jobId = jobId;
+    }
+
+    /**
+     * Get the status.
+     *
+     * @return the status
+     */
+    public final Status getStatus() {
+        return this.status;
+    }
+
+    /**
+     * Set the status.
+     *
+     * @param status the status to set
+     */
+    public final void setStatus(final Status status) {
+        this.status = status;
+    }
+
+    /**
+     * Get the number of occurrences to create.
+     *
+     * @return the total
+     */
+    public final int getTotal() {
+        return this.total;
+    }
+
+    /**
+     * Set the number of occurrences to create.
+     *
+     * @param total the total to set
+     */
+    public final void setTotal(final int total) {
+        this.total = total;
+    }
+
+    /**
+     * Get the number of occurrences created and committed.
+     *
+     * @return the number of occurrences created
+     */
+    public final int getCreated() {
+        return this.created;
+    }
+
+    /**
+     * Set the number of occurrences created and committed.
+     *
+     * @param created the number of occurrences created
+     */
+    public final void setCreated(final int created) {
+        this.created = created;
+    }
+
+    /**
+     * Get the error message.
+     *
+     * @return the error message, or null if the job didn't fail
+     */
+    public final String getMessage() {
+        return this.message;
+    }
+
+    /**
+     * Set the error message.
+     *
+     * @param message the error message to set
+     */
+    public final void setMessage(final String message) {
+        this.message = message;
+    }
+
+}
@@ -79,27 +79,46 @@ public abstract class AbstractIntervalPattern extends Recurrence {
      * @throws ReservationException reservation exception
      */
     public final void loopThroughRepeats(final OccurrenceAction action) throws ReservationException {
-        final List<Date> dateList =
-                RecurrenceService.getDateList(getStartDate(), getEndDate(), this.toString());
+        final OccurrenceIterator occurrences =
+                getOccurrences(action instanceof SaveRecurringReservationOccurrenceAction);
+
+        // the occurrences are calculated one by one, skipping the first one
+        if (occurrences.hasNext()) {
+            occurrences.nextTimeInMillis();
+        }
+        boolean userWantsToContinue = true;
+        while (userWantsToContinue && occurrences.hasNext()) {
+            userWantsToContinue = action.handleOccurrence(occurrences.next());
+        }
+    }
+    
+    /**
+     * Get the occurrences of the pattern, including the first instance, up to the maximum number
+     * of occurrences.
+     * 
+     * @param checkEndDate true to verify that all occurrences until the end date are included
+     * @return iterator over the occurrences
+     * @throws ReservationException when checking the end date and it is after the last occurrence
+     */
+    public final OccurrenceIterator getOccurrences(final boolean checkEndDate)
+            throws ReservationException {
+        final RecurrenceRule rule = RecurrenceRule.parse(this.toString());
+        final int maxOccurrences = RecurrenceService.getMaxOccurrences();
+        
+        final OccurrenceIterator occurrences =
+                rule.iterator(getStartDate(), getEndDate(), maxOccurrences);
         
-        if (action instanceof SaveRecurringReservationOccurrenceAction && getEndDate() != null
-                && !dateList.isEmpty()) {
-            final Date requestedEndDate = getEndDate();
-            final Date actualEndDate = dateList.get(dateList.size() - 1);
-            if (requestedEndDate.after(actualEndDate)) {
+        if (checkEndDate && getEndDate() != null) {
+            // the last occurrence is calculated directly from the rule
+            final int count = occurrences.getCount();
+            if (count > 0 && getEndDate().after(occurrences.getDate(count - 1))) {
                 // @translatable
                 throw new ReservationException(
                     "You can only create reservations for up to {0} occurrences. Use the recurrence dialog to enter a smaller number of occurrences.",
-                    AbstractIntervalPattern.class, dateList.size());
+                    AbstractIntervalPattern.class, count);
             }
         }
-
-        int index = 1;
-        boolean userWantsToContinue = true;
-        while (userWantsToContinue && index < dateList.size()) {
-            userWantsToContinue = action.handleOccurrence(dateList.get(index));
-            index++;
-        }
+        return occurrences;
     }
     
     /**
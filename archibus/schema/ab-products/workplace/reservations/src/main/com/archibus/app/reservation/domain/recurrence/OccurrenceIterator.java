@@ -0,0 +1,607 @@
+package com.archibus.app.reservation.domain.recurrence;
+
+import java.util.*;
+
+import com.archibus.app.common.recurring.RecurringSchedulePattern;
+
+/**
+ * Iterator over the occurrences of a RecurrenceRule.
+ * <p>
+ * Each occurrence is calculated when requested, using day numbers relative to 1 January 1970.
+ * Only next() creates a Date object; nextTimeInMillis() returns the same occurrence without
+ * allocating any objects. Not thread-safe: each thread should create its own iterator.
+ * <p>
+ * The number of occurrences and the date of any occurrence are calculated directly from the
+ * rule, without stepping through the preceding occurrences. This way the first and last date of
+ * a long series can be determined at constant cost.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public final class OccurrenceIterator implements Iterator<Date> {
+
+    /** Day number indicating there are no more occurrences. */
+    private static final int NONE = Integer.MIN_VALUE;
+
+    /** Day of the week of 1 January 1970 (a Thursday), counting from Monday as 0. */
+    private static final int EPOCH_DAY_OF_WEEK = 3;
+
+    /** Index of the first weekend day (Saturday), counting from Monday as 0. */
+    private static final int FIRST_WEEKEND_DAY = 5;
+
+    /** Number of days from 1 March of year 0 to 1 January 1970. */
+    private static final int DAYS_TO_EPOCH = 719468;
+
+    /** Number of days in a cycle of 400 years. */
+    private static final int DAYS_PER_ERA = 146097;
+
+    /** Number of years in a cycle. */
+    private static final int YEARS_PER_ERA = 400;
+
+    /** Number of days in a regular year. */
+    private static final int DAYS_PER_YEAR = 365;
+
+    /** Number of days in a cycle of 4 years. */
+    private static final int DAYS_PER_4_YEARS = 1460;
+
+    /** Number of days in a cycle of 100 years. */
+    private static final int DAYS_PER_CENTURY = 36524;
+
+    /** Number of days in a cycle of 400 years, minus one. */
+    private static final int LAST_DAY_OF_ERA = 146096;
+
+    /** Number of days in the 5-month cycle used for converting months to days (March-July). */
+    private static final int DAYS_PER_5_MONTHS = 153;
+
+    /** Number of months in the cycle used for converting months to days. */
+    private static final int MONTHS_PER_CYCLE = 5;
+
+    /** Month offset for counting months from March. */
+    private static final int MARCH = 3;
+
+    /** Month offset for counting January and February as months 10 and 11. */
+    private static final int MONTH_OFFSET = 9;
+
+    /** Number of days in February of a leap year. */
+    private static final int FEBRUARY_LEAP_DAYS = 29;
+
+    /** Number of days in a long month. */
+    private static final int LONG_MONTH_DAYS = 31;
+
+    /** Number of days in a short month. */
+    private static final int SHORT_MONTH_DAYS = 30;
+
+    /** The months with 30 days, counting January as 1. */
+    private static final int SHORT_MONTHS_MASK = 1 << 4 | 1 << 6 | 1 << 9 | 1 << 11;
+
+    /** The compiled rule. */
+    private final RecurrenceRule rule;
+
+    /** Calendar used for converting day numbers to local dates, reused for all occurrences. */
+    private final Calendar calendar;
+
+    /** Day number of the start date. */
+    private final int startDay;
+
+    /** Day number of the end date, or Integer.MAX_VALUE if not limited. */
+    private final int endDay;
+
+    /** The maximum number of occurrences to return. */
+    private final int limit;
+
+    /** Day number of the first occurrence, or NONE. */
+    private final int firstDay;
+
+    /**
+     * For monthly and yearly rules: index of the month of the first occurrence, counting from
+     * January of year 0.
+     */
+    private final int firstPeriod;
+
+    /** The total number of occurrences, or -1 if not calculated yet. */
+    private int totalCount = -1;
+
+    /** The number of occurrences returned so far. */
+    private int count;
+
+    /** Day number of the next occurrence, or NONE. */
+    private int nextDay;
+
+    /**
+     * For weekly rules: day number of the Monday of the current week. For monthly and yearly
+     * rules: index of the current month counting from January of year 0.
+     */
+    private int period;
+
+    /** For weekly rules: the next day of the current week to check, counting from Monday as 0. */
+    private int dayInWeek;
+
+    /** Year of the last converted day number. */
+    private int year;
+
+    /** Month of the last converted day number, 1 for January up to 12 for December. */
+    private int monthOfYear;
+
+    /** Day of the month of the last converted day number. */
+    private int dayOfMonth;
+
+    /**
+     * Create an iterator.
+     *
+     * @param rule the compiled rule
+     * @param startDate the date of the first occurrence, or null for today
+     * @param endDate the last date an occurrence can fall on, or null if not limited
+     * @param limit the maximum number of occurrences to return
+     */
+    OccurrenceIterator(final RecurrenceRule rule, final Date startDate, final Date endDate,
+            final int limit) {
+        this.rule = rule;
+        this.calendar = Calendar.getInstance();
+        this.startDay = this.toDayNumber(startDate == null ? new Date() : startDate);
+        this.endDay = endDate == null ? Integer.MAX_VALUE : this.toDayNumber(endDate);
+        this.limit = limit;
+
+        if (RecurringSchedulePattern.TYPE_WEEK.equals(rule.getType())) {
+            this.period = this.startDay - getDayOfWeek(this.startDay);
+        } else if (RecurringSchedulePattern.TYPE_YEAR.equals(rule.getType())) {
+            this.toDate(this.startDay);
+            this.period = this.year * RecurrenceRule.MONTHS_IN_YEAR + rule.getMonth();
+        } else {
+            this.toDate(this.startDay);
+            this.period = this.year * RecurrenceRule.MONTHS_IN_YEAR + this.monthOfYear - 1;
+        }
+        this.nextDay = this.limit > 0 ? this.findFirst() : NONE;
+        if (this.nextDay > this.endDay) {
+            this.nextDay = NONE;
+        }
+        this.firstDay = this.nextDay;
+        this.firstPeriod = this.period;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasNext() {
+        return this.nextDay != NONE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Date next() {
+        return new Date(this.nextTimeInMillis());
+    }
+
+    /**
+     * Get the next occurrence without creating a Date object.
+     *
+     * @return the time in milliseconds of the start of the next occurrence date
+     * @throws NoSuchElementException if there are no more occurrences
+     */
+    public long nextTimeInMillis() {
+        if (this.nextDay == NONE) {
+            throw new NoSuchElementException();
+        }
+        final long result = this.toTimeInMillis(this.nextDay);
+        ++this.count;
+        if (this.count < this.limit) {
+            this.nextDay = this.findNext(this.nextDay);
+            if (this.nextDay > this.endDay) {
+                this.nextDay = NONE;
+            }
+        } else {
+            this.nextDay = NONE;
+        }
+        return result;
+    }
+
+    /**
+     * Not supported.
+     */
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Get the total number of occurrences, regardless of how many were already returned. The
+     * number is calculated from the rule, the end date and the limit without enumerating the
+     * occurrences.
+     *
+     * @return the number of occurrences
+     */
+    public int getCount() {
+        if (this.totalCount < 0) {
+            long count = 0;
+            if (this.firstDay != NONE) {
+                count = this.endDay == Integer.MAX_VALUE ? this.limit : this.countUntilEndDay();
+            }
+            this.totalCount = (int) Math.min(count, this.limit);
+        }
+        return this.totalCount;
+    }
+
+    /**
+     * Get the date of an occurrence, regardless of how many were already returned. The date is
+     * calculated from the rule without enumerating the preceding occurrences.
+     *
+     * @param index the index of the occurrence, 0 for the first occurrence
+     * @return the date of the occurrence, or null if there is no occurrence with that index
+     */
+    public Date getDate(final int index) {
+        Date result = null;
+        if (index >= 0 && index < this.getCount()) {
+            result = new Date(this.toTimeInMillis(this.getOccurrenceDay(index)));
+        }
+        return result;
+    }
+
+    /**
+     * Get the day number of an occurrence, ignoring the end date and the limit.
+     *
+     * @param index the index of the occurrence, 0 for the first occurrence
+     * @return the day number
+     */
+    private int getOccurrenceDay(final int index) {
+        int result = this.firstDay;
+        final String type = this.rule.getType();
+        if (RecurringSchedulePattern.TYPE_DAY.equals(type)) {
+            result = this.startDay + index * this.rule.getInterval();
+        } else if (RecurringSchedulePattern.TYPE_WEEK.equals(type)) {
+            final int week = this.startDay - getDayOfWeek(this.startDay);
+            final int firstWeekDays = this.getFirstWeekDays();
+            final int firstWeekCount = Integer.bitCount(firstWeekDays);
+            final int daysPerWeek = Integer.bitCount(this.rule.getWeekDays());
+            if (index < firstWeekCount) {
+                result = week + getSelectedDay(firstWeekDays, index);
+            } else {
+                final int repeat = index - firstWeekCount;
+                result =
+                        week + (1 + repeat / daysPerWeek) * RecurrenceRule.DAYS_IN_WEEK
+                                * this.rule.getInterval()
+                                + getSelectedDay(this.rule.getWeekDays(), repeat % daysPerWeek);
+            }
+        } else if (!RecurringSchedulePattern.TYPE_ONCE.equals(type)) {
+            result = this.getDayInMonth(this.firstPeriod + index * this.getMonthStep());
+        }
+        return result;
+    }
+
+    /**
+     * Count the occurrences on or before the end date, ignoring the limit. Only called when there
+     * is at least one occurrence.
+     *
+     * @return the number of occurrences
+     */
+    private long countUntilEndDay() {
+        long result = 1;
+        final String type = this.rule.getType();
+        if (RecurringSchedulePattern.TYPE_DAY.equals(type)) {
+            result = (this.endDay - this.startDay) / this.rule.getInterval() + 1;
+        } else if (RecurringSchedulePattern.TYPE_WEEK.equals(type)) {
+            final int week = this.startDay - getDayOfWeek(this.startDay);
+            final int daysPerPeriod = RecurrenceRule.DAYS_IN_WEEK * this.rule.getInterval();
+            final int lastPeriod = (this.endDay - week) / daysPerPeriod;
+            final int lastDayInWeek =
+                    Math.min(RecurrenceRule.DAYS_IN_WEEK - 1, this.endDay - week - lastPeriod
+                            * daysPerPeriod);
+            // the selected days up to and including the last day in the last week
+            final int mask = (2 << lastDayInWeek) - 1;
+            if (lastPeriod == 0) {
+                result = Integer.bitCount(this.getFirstWeekDays() & mask);
+            } else {
+                result =
+                        Integer.bitCount(this.getFirstWeekDays()) + (lastPeriod - 1L)
+                                * Integer.bitCount(this.rule.getWeekDays())
+                                + Integer.bitCount(this.rule.getWeekDays() & mask);
+            }
+        } else if (!RecurringSchedulePattern.TYPE_ONCE.equals(type)) {
+            this.toDate(this.endDay);
+            final int endPeriod =
+                    this.year * RecurrenceRule.MONTHS_IN_YEAR + this.monthOfYear - 1;
+            final int step = this.getMonthStep();
+            int lastIndex = (endPeriod - this.firstPeriod) / step;
+            if (this.getDayInMonth(this.firstPeriod + lastIndex * step) > this.endDay) {
+                --lastIndex;
+            }
+            result = lastIndex + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Get the selected days of a weekly rule in the week of the start date, i.e. excluding the
+     * days before the start date.
+     *
+     * @return one bit per selected day, bit 0 for Monday up to bit 6 for Sunday
+     */
+    private int getFirstWeekDays() {
+        return this.rule.getWeekDays() & -(1 << getDayOfWeek(this.startDay));
+    }
+
+    /**
+     * Get the number of months between consecutive occurrences of a monthly or yearly rule.
+     *
+     * @return the number of months
+     */
+    private int getMonthStep() {
+        int step = this.rule.getInterval();
+        if (RecurringSchedulePattern.TYPE_YEAR.equals(this.rule.getType())) {
+            step *= RecurrenceRule.MONTHS_IN_YEAR;
+        }
+        return step;
+    }
+
+    /**
+     * Find the first occurrence on or after the start date.
+     *
+     * @return day number of the first occurrence, or NONE
+     */
+    private int findFirst() {
+        int result = NONE;
+        final String type = this.rule.getType();
+        if (RecurringSchedulePattern.TYPE_ONCE.equals(type)
+                || RecurringSchedulePattern.TYPE_DAY.equals(type)) {
+            result = this.startDay;
+        } else if (RecurringSchedulePattern.TYPE_WEEK.equals(type)) {
+            this.dayInWeek = 0;
+            result = this.findNextWeekDay();
+        } else {
+            result = this.findNextMonthDay(true);
+        }
+        return result;
+    }
+
+    /**
+     * Find the occurrence following the given occurrence.
+     *
+     * @param previousDay day number of the previous occurrence
+     * @return day number of the next occurrence, or NONE
+     */
+    private int findNext(final int previousDay) {
+        int result = NONE;
+        final String type = this.rule.getType();
+        if (RecurringSchedulePattern.TYPE_DAY.equals(type)) {
+            result = previousDay + this.rule.getInterval();
+        } else if (RecurringSchedulePattern.TYPE_WEEK.equals(type)) {
+            result = this.findNextWeekDay();
+        } else if (!RecurringSchedulePattern.TYPE_ONCE.equals(type)) {
+            result = this.findNextMonthDay(false);
+        }
+        return result;
+    }
+
+    /**
+     * Find the next selected day of a weekly rule, starting from the current position.
+     *
+     * @return day number of the next occurrence, or NONE
+     */
+    private int findNextWeekDay() {
+        int result = NONE;
+        if (this.rule.getWeekDays() != 0) {
+            while (result == NONE && this.period <= this.endDay) {
+                while (result == NONE && this.dayInWeek < RecurrenceRule.DAYS_IN_WEEK) {
+                    final int day = this.period + this.dayInWeek;
+                    if ((this.rule.getWeekDays() & 1 << this.dayInWeek) != 0
+                            && day >= this.startDay) {
+                        result = day;
+                    }
+                    ++this.dayInWeek;
+                }
+                if (result == NONE) {
+                    this.period += RecurrenceRule.DAYS_IN_WEEK * this.rule.getInterval();
+                    this.dayInWeek = 0;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the occurrence of a monthly or yearly rule in the next period.
+     *
+     * @param first true to find the first occurrence, in the current period or after it
+     * @return day number of the next occurrence
+     */
+    private int findNextMonthDay(final boolean first) {
+        final int step = this.getMonthStep();
+        if (!first) {
+            this.period += step;
+        }
+        int result = this.getDayInMonth(this.period);
+        while (result < this.startDay) {
+            this.period += step;
+            result = this.getDayInMonth(this.period);
+        }
+        return result;
+    }
+
+    /**
+     * Get the day number of the occurrence of a monthly or yearly rule in the given month.
+     *
+     * @param monthIndex index of the month counting from January of year 0
+     * @return the day number
+     */
+    private int getDayInMonth(final int monthIndex) {
+        final int monthYear = monthIndex / RecurrenceRule.MONTHS_IN_YEAR;
+        final int month = monthIndex % RecurrenceRule.MONTHS_IN_YEAR + 1;
+        final int firstDay = getDayNumber(monthYear, month, 1);
+        final int daysInMonth = getDaysInMonth(monthYear, month);
+        int result;
+        if (this.rule.getDayOfMonth() > 0) {
+            result = firstDay + Math.min(this.rule.getDayOfMonth(), daysInMonth) - 1;
+        } else {
+            result = this.getWeekOfMonthDay(firstDay, daysInMonth);
+        }
+        return result;
+    }
+
+    /**
+     * Get the day number of the occurrence in the week of the month specified by the rule.
+     *
+     * @param firstDay day number of the first day of the month
+     * @param daysInMonth the number of days in the month
+     * @return the day number
+     */
+    private int getWeekOfMonthDay(final int firstDay, final int daysInMonth) {
+        final boolean last = this.rule.getWeekOfMonth() >= RecurrenceRule.LAST_WEEK_OF_MONTH;
+        final int lastDay = firstDay + daysInMonth - 1;
+        // number of matching days to skip before reaching the occurrence
+        int remaining = last ? 0 : this.rule.getWeekOfMonth() - 1;
+        int day = last ? lastDay : firstDay;
+        final int direction = last ? -1 : 1;
+        int result = NONE;
+        while (result == NONE && day >= firstDay && day <= lastDay) {
+            if (this.matchesDayKind(day)) {
+                if (remaining == 0) {
+                    result = day;
+                }
+                --remaining;
+            }
+            day += direction;
+        }
+        return result == NONE ? lastDay : result;
+    }
+
+    /**
+     * Check whether a day matches the day kind of the rule: a specific day of the week, any day,
+     * a weekday or a weekend day.
+     *
+     * @param day the day number
+     * @return true if it matches
+     */
+    private boolean matchesDayKind(final int day) {
+        final DayOfTheWeek kind = this.rule.getDayOfTheWeek();
+        final int dayOfWeek = getDayOfWeek(day);
+        boolean result;
+        if (kind == null || kind == DayOfTheWeek.Day) {
+            result = true;
+        } else if (kind == DayOfTheWeek.Weekday) {
+            result = dayOfWeek < FIRST_WEEKEND_DAY;
+        } else if (kind == DayOfTheWeek.WeekendDay) {
+            result = dayOfWeek >= FIRST_WEEKEND_DAY;
+        } else {
+            // Calendar.MONDAY is 2, so this converts to Monday = 0 and Sunday = 6
+            result =
+                    dayOfWeek == (kind.getIntValue() + FIRST_WEEKEND_DAY)
+                            % RecurrenceRule.DAYS_IN_WEEK;
+        }
+        return result;
+    }
+
+    /**
+     * Convert a date to a day number, using the local date.
+     *
+     * @param date the date
+     * @return the day number
+     */
+    private int toDayNumber(final Date date) {
+        this.calendar.setTime(date);
+        return getDayNumber(this.calendar.get(Calendar.YEAR),
+            this.calendar.get(Calendar.MONTH) + 1, this.calendar.get(Calendar.DAY_OF_MONTH));
+    }
+
+    /**
+     * Convert a day number to the time in milliseconds of the start of that local date.
+     *
+     * @param day the day number
+     * @return the time in milliseconds
+     */
+    private long toTimeInMillis(final int day) {
+        this.toDate(day);
+        this.calendar.clear();
+        this.calendar.set(this.year, this.monthOfYear - 1, this.dayOfMonth);
+        return this.calendar.getTimeInMillis();
+    }
+
+    /**
+     * Convert a day number to year, month and day of the month, stored in this iterator.
+     *
+     * @param day the day number
+     */
+    private void toDate(final int day) {
+        final int shifted = day + DAYS_TO_EPOCH;
+        final int era = shifted / DAYS_PER_ERA;
+        final int dayOfEra = shifted - era * DAYS_PER_ERA;
+        final int yearOfEra =
+                (dayOfEra - dayOfEra / DAYS_PER_4_YEARS + dayOfEra / DAYS_PER_CENTURY - dayOfEra
+                        / LAST_DAY_OF_ERA)
+                        / DAYS_PER_YEAR;
+        final int dayOfYear =
+                dayOfEra - (DAYS_PER_YEAR * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final int monthFromMarch = (MONTHS_PER_CYCLE * dayOfYear + 2) / DAYS_PER_5_MONTHS;
+        this.dayOfMonth =
+                dayOfYear - (DAYS_PER_5_MONTHS * monthFromMarch + 2) / MONTHS_PER_CYCLE + 1;
+        this.monthOfYear =
+                monthFromMarch < RecurrenceRule.MONTHS_IN_YEAR - 2 ? monthFromMarch + MARCH
+                        : monthFromMarch - MONTH_OFFSET;
+        this.year = yearOfEra + era * YEARS_PER_ERA + (this.monthOfYear <= 2 ? 1 : 0);
+    }
+
+    /**
+     * Get the day number of a date, counting from 1 January 1970 as 0. Only supports dates after
+     * 1 March of year 0.
+     *
+     * @param year the year
+     * @param month the month, 1 for January up to 12 for December
+     * @param day the day of the month
+     * @return the day number
+     */
+    static int getDayNumber(final int year, final int month, final int day) {
+        final int marchYear = month <= 2 ? year - 1 : year;
+        final int era = marchYear / YEARS_PER_ERA;
+        final int yearOfEra = marchYear - era * YEARS_PER_ERA;
+        final int dayOfYear =
+                (DAYS_PER_5_MONTHS * (month > 2 ? month - MARCH : month + MONTH_OFFSET) + 2)
+                        / MONTHS_PER_CYCLE + day - 1;
+        final int dayOfEra =
+                yearOfEra * DAYS_PER_YEAR + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_ERA + dayOfEra - DAYS_TO_EPOCH;
+    }
+
+    /**
+     * Get the day in the week of the n-th selected day.
+     *
+     * @param weekDays one bit per selected day, bit 0 for Monday up to bit 6 for Sunday
+     * @param index the index of the selected day, 0 for the first one
+     * @return the day in the week, 0 for Monday up to 6 for Sunday
+     */
+    private static int getSelectedDay(final int weekDays, final int index) {
+        int remaining = weekDays;
+        for (int i = 0; i < index; ++i) {
+            // clear the lowest selected day
+            remaining &= remaining - 1;
+        }
+        return Integer.numberOfTrailingZeros(remaining);
+    }
+
+    /**
+     * Get the day of the week of a day number.
+     *
+     * @param day the day number
+     * @return the day of the week, 0 for Monday up to 6 for Sunday
+     */
+    static int getDayOfWeek(final int day) {
+        final int result = (day + EPOCH_DAY_OF_WEEK) % RecurrenceRule.DAYS_IN_WEEK;
+        return result < 0 ? result + RecurrenceRule.DAYS_IN_WEEK : result;
+    }
+
+    /**
+     * Get the number of days in a month.
+     *
+     * @param year the year
+     * @param month the month, 1 for January up to 12 for December
+     * @return the number of days
+     */
+    static int getDaysInMonth(final int year, final int month) {
+        int result = LONG_MONTH_DAYS;
+        if (month == 2) {
+            final boolean leapYear =
+                    year % 4 == 0 && (year % 100 != 0 || year % YEARS_PER_ERA == 0);
+            result = leapYear ? FEBRUARY_LEAP_DAYS : FEBRUARY_LEAP_DAYS - 1;
+        } else if ((SHORT_MONTHS_MASK & 1 << month) != 0) {
+            result = SHORT_MONTH_DAYS;
+        }
+        return result;
+    }
+
+}
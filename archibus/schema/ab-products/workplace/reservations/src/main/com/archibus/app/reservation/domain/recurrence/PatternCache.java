@@ -0,0 +1,76 @@
+package com.archibus.app.reservation.domain.recurrence;
+
+import java.util.*;
+
+/**
+ * Bounded cache of parsed recurring rules, keyed by the XML text of the rule.
+ * <p>
+ * All reservations in a series share the same recurring rule, so loading or processing a series
+ * only parses its rule once. The cached values must be immutable because they are shared between
+ * threads. When the cache is full, the least recently used rule is removed.
+ *
+ * @param <V> the type of the parsed rule
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+final class PatternCache<V> {
+
+    /** Default maximum number of cached rules. */
+    static final int DEFAULT_MAX_ENTRIES = 256;
+
+    /** Maximum number of cached rules. */
+    private final int maxEntries;
+
+    /** The cached rules, in access order so the eldest entry is the least recent. */
+    private final LinkedHashMap<String, V> entries;
+
+    /**
+     * Create a cache.
+     *
+     * @param maxEntries maximum number of cached rules
+     */
+    PatternCache(final int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, V>(maxEntries, 0.75f, true) {
+
+            /** Generated serial version ID. */
+            private static final long serialVersionUID = 4611826934507325216L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, V> eldest) {
+                return size() > PatternCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the parsed rule.
+     *
+     * @param xmlPattern the XML text of the rule
+     * @return the parsed rule, or null if not in the cache
+     */
+    synchronized V get(final String xmlPattern) {
+        return this.entries.get(xmlPattern);
+    }
+
+    /**
+     * Store a parsed rule.
+     *
+     * @param xmlPattern the XML text of the rule
+     * @param value the parsed rule, which must be immutable
+     */
+    synchronized void put(final String xmlPattern, final V value) {
+        this.entries.put(xmlPattern, value);
+    }
+
+    /**
+     * Get the number of cached rules.
+     *
+     * @return the number of cached rules
+     */
+    synchronized int size() {
+        return this.entries.size();
+    }
+
+}
@@ -6,8 +6,6 @@ import javax.xml.bind.annotation.*;
 
 import com.archibus.app.common.recurring.*;
 import com.archibus.app.reservation.domain.ReservationException;
-import com.archibus.app.reservation.service.RecurrenceService;
-import com.archibus.utility.StringUtil;
 
 /**
  * Recurrence base class.
@@ -18,6 +16,11 @@ import com.archibus.utility.StringUtil;
 @XmlRootElement(name = "Recurrence")
 public class Recurrence {
 
+    /** The days of the week in the order of the flags in a weekly rule, starting on Monday. */
+    private static final DayOfTheWeek[] WEEK_DAYS = { DayOfTheWeek.Monday, DayOfTheWeek.Tuesday,
+            DayOfTheWeek.Wednesday, DayOfTheWeek.Thursday, DayOfTheWeek.Friday,
+            DayOfTheWeek.Saturday, DayOfTheWeek.Sunday };
+
     /** The number of occurrences. */
     private Integer numberOfOccurrences;
 
@@ -40,33 +43,33 @@ public class Recurrence {
      */
     public static Recurrence parseRecurrence(final Date startDate, final Date endDate,
             final String xmlPattern) throws ReservationException {
-        // parse the xml
-        final RecurringScheduleService recurringPattern =
-                RecurrenceService.newRecurringScheduleService();
-        recurringPattern.setRecurringSchedulePattern(startDate, endDate, xmlPattern);
+        // The xml is parsed only once for all reservations in the series: the compiled rule only
+        // holds the values of the XML attributes and is cached by rule text. The start and end
+        // date are applied below, for each call.
+        final RecurrenceRule recurringPattern = RecurrenceRule.parse(xmlPattern);
 
-        // convert to Recurrence object
+        // convert to a new Recurrence object, which the caller can modify
         Recurrence result = null;
-        if (recurringPattern.getRecurringType().equals(RecurringSchedulePattern.TYPE_DAY)) {
+        if (recurringPattern.getType().equals(RecurringSchedulePattern.TYPE_DAY)) {
             result =
                     new DailyPattern(startDate, endDate, recurringPattern.getInterval(),
                         recurringPattern.getTotal());
 
-        } else if (recurringPattern.getRecurringType().equals(RecurringSchedulePattern.TYPE_WEEK)) {
+        } else if (recurringPattern.getType().equals(RecurringSchedulePattern.TYPE_WEEK)) {
             // <recurring type="week" value1="1,1,0,0,0,1,0" value2="1" value3="" total="5"/>
             result = getWeeklyPattern(startDate, endDate, recurringPattern);
 
-        } else if (recurringPattern.getRecurringType().equals(RecurringSchedulePattern.TYPE_MONTH)) {
+        } else if (recurringPattern.getType().equals(RecurringSchedulePattern.TYPE_MONTH)) {
             result = getMonthlyPattern(startDate, endDate, recurringPattern);
 
-        } else if (recurringPattern.getRecurringType().equals(RecurringSchedulePattern.TYPE_YEAR)) {
+        } else if (recurringPattern.getType().equals(RecurringSchedulePattern.TYPE_YEAR)) {
             result = getYearlyPattern(startDate, endDate, recurringPattern);
-        } else if (recurringPattern.getRecurringType().equals(RecurringSchedulePattern.TYPE_ONCE)) {
+        } else if (recurringPattern.getType().equals(RecurringSchedulePattern.TYPE_ONCE)) {
             result = new DailyPattern(startDate, startDate, 1, 1);
         } else {
             // @translatable
             throw new ReservationException("Unknown recurrence type in XML string: {0}",
-                Recurrence.class, recurringPattern.getRecurringType());
+                Recurrence.class, recurringPattern.getType());
         }
         if (recurringPattern.getTotal() > 0) {
             result.setNumberOfOccurrences(recurringPattern.getTotal());
@@ -84,22 +87,21 @@ public class Recurrence {
      * @return the monthly pattern
      */
     private static Recurrence getMonthlyPattern(final Date startDate, final Date endDate,
-            final RecurringScheduleService recurringPattern) {
+            final RecurrenceRule recurringPattern) {
 
         Recurrence monthlyPattern = null;
 
         // check the type of monthly pattern
-        if (StringUtil.isNullOrEmpty(recurringPattern.getDaysOfWeek())) {
+        if (recurringPattern.getWeekOfMonth() == 0) {
             // MonthDay: specified by the day in the month
             monthlyPattern =
                     new MonthlyPattern(startDate, endDate, recurringPattern.getInterval(),
                         recurringPattern.getDayOfMonth());
         } else {
             // MonthWeekIndex: specified by the week day and week index
-            final DayOfTheWeek dayOfTheWeek = DayOfTheWeek.get(recurringPattern.getDaysOfWeek());
             monthlyPattern =
                     new MonthlyPattern(startDate, endDate, recurringPattern.getInterval(),
-                        recurringPattern.getWeekOfMonth(), dayOfTheWeek);
+                        recurringPattern.getWeekOfMonth(), recurringPattern.getDayOfTheWeek());
         }
 
         return monthlyPattern;
@@ -114,13 +116,13 @@ public class Recurrence {
      * @return the weekly pattern
      */
     private static Recurrence getWeeklyPattern(final Date startDate, final Date endDate,
-            final RecurringScheduleService recurringPattern) {
+            final RecurrenceRule recurringPattern) {
         final List<DayOfTheWeek> daysOfTheWeek = new ArrayList<DayOfTheWeek>();
-        final String[] weekDays = recurringPattern.getDaysOfWeek().split(",");
-
-        for (final String weekDay : weekDays) {
-            // get the day of week by name
-            daysOfTheWeek.add(DayOfTheWeek.get(weekDay));
+        for (int i = 0; i < WEEK_DAYS.length; ++i) {
+            // bit 0 is Monday, in the same order as the flags in the XML
+            if ((recurringPattern.getWeekDays() & 1 << i) != 0) {
+                daysOfTheWeek.add(WEEK_DAYS[i]);
+            }
         }
 
         return new WeeklyPattern(startDate, endDate, recurringPattern.getInterval(), daysOfTheWeek);
@@ -135,21 +137,19 @@ public class Recurrence {
      * @return the yearly pattern
      */
     private static Recurrence getYearlyPattern(final Date startDate, final Date endDate,
-            final RecurringScheduleService recurringPattern) {
+            final RecurrenceRule recurringPattern) {
 
         // <recurring type="year" value1="9" value2="mar" value3="1" total="3"/>
-        final int monthIndex = recurringPattern.getMonthOfYear() - 1;
-        final Month month = Month.get(monthIndex);
+        final Month month = Month.get(recurringPattern.getMonth());
         YearlyPattern yearlyPattern = null;
         
         // check the type of yearly pattern
-        if (StringUtil.isNullOrEmpty(recurringPattern.getDaysOfWeek())) {
+        if (recurringPattern.getWeekOfMonth() == 0) {
             yearlyPattern = new YearlyPattern(startDate, month, recurringPattern.getDayOfMonth());
         } else {
-            final DayOfTheWeek dayOfTheWeek = DayOfTheWeek.get(recurringPattern.getDaysOfWeek());
             yearlyPattern =
                     new YearlyPattern(startDate, month, recurringPattern.getWeekOfMonth(),
-                        dayOfTheWeek);
+                        recurringPattern.getDayOfTheWeek());
         }
         yearlyPattern.setEndDate(endDate);
         yearlyPattern.setInterval(recurringPattern.getInterval());
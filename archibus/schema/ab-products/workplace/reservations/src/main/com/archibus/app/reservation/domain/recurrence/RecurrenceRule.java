@@ -0,0 +1,362 @@
+package com.archibus.app.reservation.domain.recurrence;
+
+import java.io.StringReader;
+import java.util.*;
+
+import org.dom4j.*;
+import org.dom4j.io.SAXReader;
+
+import com.archibus.app.common.recurring.RecurringSchedulePattern;
+import com.archibus.app.reservation.domain.ReservationException;
+
+/**
+ * Compiled form of a recurring rule, as stored in reserve.recurring_rule.
+ * <p>
+ * The XML is parsed once with dom4j. The resulting object is immutable and can expand the rule
+ * for any date range via an OccurrenceIterator, which calculates each occurrence on demand
+ * instead of building the full list of dates up front. Compiled rules are cached by their XML
+ * text, so all reservations in a series share the same instance.
+ * <p>
+ * Used by RecurrenceService and AbstractIntervalPattern.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public final class RecurrenceRule {
+
+    /** Value of the week of month attribute for the last week. */
+    static final int LAST_WEEK_OF_MONTH = 5;
+
+    /** Number of days in a week. */
+    static final int DAYS_IN_WEEK = 7;
+
+    /** Number of months in a year. */
+    static final int MONTHS_IN_YEAR = 12;
+
+    /** Separator of the week day flags in a weekly rule. */
+    private static final String FLAG_SEPARATOR = ",";
+
+    /** Value of a selected week day flag. */
+    private static final String FLAG_SELECTED = "1";
+
+    /** Values of the week of month attribute, from the first to the last week. */
+    private static final List<String> WEEKS_OF_MONTH = Arrays.asList("1st", "2nd", "3rd", "4th",
+        "last");
+
+    /** Values of the month attribute, from January to December. */
+    private static final List<String> MONTHS = Arrays.asList("jan", "feb", "mar", "apr", "may",
+        "jun", "jul", "aug", "sep", "oct", "nov", "dec");
+
+    /**
+     * Compiled rules by XML text. A compiled rule only depends on the XML, the start and end date
+     * are passed when getting the dates.
+     */
+    private static final PatternCache<RecurrenceRule> RULES = new PatternCache<RecurrenceRule>(
+        PatternCache.DEFAULT_MAX_ENTRIES);
+
+    /** The recurrence type, one of the RecurringSchedulePattern.TYPE_ constants. */
+    private final String type;
+
+    /** The interval in days, weeks, months or years depending on the type. */
+    private final int interval;
+
+    /** The maximum number of occurrences, or 0 if not limited by the rule. */
+    private final int total;
+
+    /** For weekly rules: one bit per selected day, bit 0 for Monday up to bit 6 for Sunday. */
+    private final int weekDays;
+
+    /** For monthly and yearly rules: the fixed day of the month, or 0 if not fixed. */
+    private final int dayOfMonth;
+
+    /** For monthly and yearly rules: the week of the month 1-4, or 5 for the last week. */
+    private final int weekOfMonth;
+
+    /** For monthly and yearly rules: the day kind in the given week of the month. */
+    private final DayOfTheWeek dayOfTheWeek;
+
+    /** For yearly rules: the month, 0 for January up to 11 for December. */
+    private final int month;
+
+    // CHECKSTYLE:OFF Justification: private constructor of an immutable object.
+    /**
+     * Create a compiled rule.
+     *
+     * @param type the recurrence type
+     * @param interval the interval
+     * @param total the maximum number of occurrences, or 0
+     * @param weekDays the selected week days
+     * @param dayOfMonth the fixed day of the month, or 0
+     * @param weekOfMonth the week of the month, or 0
+     * @param dayOfTheWeek the day kind in the week of the month, or null
+     * @param month the month
+     */
+    private RecurrenceRule(final String type, final int interval, final int total,
+            final int weekDays, final int dayOfMonth, final int weekOfMonth,
+            final DayOfTheWeek dayOfTheWeek, final int month) {
+        this.type = type;
+        this.interval = Math.max(1, interval);
+        this.total = Math.max(0, total);
+        this.weekDays = weekDays;
+        this.dayOfMonth = dayOfMonth;
+        this.weekOfMonth = weekOfMonth;
+        this.dayOfTheWeek = dayOfTheWeek;
+        this.month = month;
+    }
+
+    // CHECKSTYLE:ON
+
+    /**
+     * Parse the XML representation of a recurring rule.
+     *
+     * @param xmlPattern the recurring rule, for example
+     *            &lt;recurring type="week" value1="0,1,0,0,1,0,0" value2="1" value3=""
+     *            value4="" total="5" /&gt;
+     * @return the compiled rule
+     * @throws ReservationException when the recurrence type is not supported
+     */
+    public static RecurrenceRule parse(final String xmlPattern) throws ReservationException {
+        RecurrenceRule rule = RULES.get(xmlPattern);
+        if (rule == null) {
+            rule = compile(xmlPattern);
+            RULES.put(xmlPattern, rule);
+        }
+        return rule;
+    }
+
+    /**
+     * Compile the XML representation of a recurring rule, without using the cache.
+     *
+     * @param xmlPattern the recurring rule
+     * @return the compiled rule
+     * @throws ReservationException when the XML is invalid or the recurrence type is not supported
+     */
+    private static RecurrenceRule compile(final String xmlPattern) throws ReservationException {
+        final Element element = parseElement(xmlPattern);
+        final String type = getAttribute(element, "type");
+        final String value1 = getAttribute(element, "value1");
+        final String value2 = getAttribute(element, "value2");
+        final String value3 = getAttribute(element, "value3");
+        final int total = parseInt(getAttribute(element, "total"), 0);
+
+        RecurrenceRule rule = null;
+        if (RecurringSchedulePattern.TYPE_ONCE.equals(type)) {
+            rule = new RecurrenceRule(type, 1, 1, 0, 0, 0, null, 0);
+        } else if (RecurringSchedulePattern.TYPE_DAY.equals(type)) {
+            rule = new RecurrenceRule(type, parseInt(value1, 1), total, 0, 0, 0, null, 0);
+        } else if (RecurringSchedulePattern.TYPE_WEEK.equals(type)) {
+            rule =
+                    new RecurrenceRule(type, parseInt(value2, 1), total, parseWeekDays(value1), 0,
+                        0, null, 0);
+        } else if (RecurringSchedulePattern.TYPE_MONTH.equals(type)) {
+            final int weekIndex = WEEKS_OF_MONTH.indexOf(value1);
+            if (weekIndex < 0) {
+                rule =
+                        new RecurrenceRule(type, parseInt(value3, 1), total, 0, parseInt(value1,
+                            1), 0, null, 0);
+            } else {
+                rule =
+                        new RecurrenceRule(type, parseInt(value3, 1), total, 0, 0,
+                            weekIndex + 1, DayOfTheWeek.get(value2), 0);
+            }
+        } else if (RecurringSchedulePattern.TYPE_YEAR.equals(type)) {
+            final int weekIndex = WEEKS_OF_MONTH.indexOf(value1);
+            if (weekIndex < 0) {
+                rule =
+                        new RecurrenceRule(type, parseInt(value3, 1), total, 0, parseInt(value1,
+                            1), 0, null, parseMonth(value2));
+            } else {
+                rule =
+                        new RecurrenceRule(type, parseInt(getAttribute(element, "value4"), 1),
+                            total, 0, 0, weekIndex + 1, DayOfTheWeek.get(value2),
+                            parseMonth(value3));
+            }
+        } else {
+            // @translatable
+            throw new ReservationException("Unknown recurrence type in XML string: {0}",
+                RecurrenceRule.class, type);
+        }
+        return rule;
+    }
+
+    /**
+     * Expand the rule lazily.
+     *
+     * @param startDate the date of the first occurrence, or null for today
+     * @param endDate the last date an occurrence can fall on, or null if not limited
+     * @param maxOccurrences the maximum number of occurrences to return
+     * @return iterator over the occurrences, in chronological order
+     */
+    public OccurrenceIterator iterator(final Date startDate, final Date endDate,
+            final int maxOccurrences) {
+        // The number of occurrences in the rule is never exceeded, also not if the end date
+        // allows more occurrences.
+        int limit = maxOccurrences;
+        if (this.total > 0) {
+            limit = Math.min(limit, this.total);
+        }
+        return new OccurrenceIterator(this, startDate, endDate, limit);
+    }
+
+    /**
+     * Expand the rule to a list of dates.
+     *
+     * @param startDate the date of the first occurrence, or null for today
+     * @param endDate the last date an occurrence can fall on, or null if not limited
+     * @param maxOccurrences the maximum number of occurrences to return
+     * @return the dates of all occurrences, in chronological order
+     */
+    public List<Date> getDates(final Date startDate, final Date endDate,
+            final int maxOccurrences) {
+        final List<Date> dates = new ArrayList<Date>();
+        final OccurrenceIterator iterator = this.iterator(startDate, endDate, maxOccurrences);
+        while (iterator.hasNext()) {
+            dates.add(iterator.next());
+        }
+        return dates;
+    }
+
+    /**
+     * Get the recurrence type.
+     *
+     * @return one of the RecurringSchedulePattern.TYPE_ constants
+     */
+    public String getType() {
+        return this.type;
+    }
+
+    /**
+     * Get the interval.
+     *
+     * @return the interval in days, weeks, months or years depending on the type
+     */
+    public int getInterval() {
+        return this.interval;
+    }
+
+    /**
+     * Get the number of occurrences specified in the rule.
+     *
+     * @return the number of occurrences, or 0 if not specified
+     */
+    public int getTotal() {
+        return this.total;
+    }
+
+    /**
+     * Get the selected week days of a weekly rule.
+     *
+     * @return one bit per selected day, bit 0 for Monday up to bit 6 for Sunday
+     */
+    int getWeekDays() {
+        return this.weekDays;
+    }
+
+    /**
+     * Get the fixed day of the month of a monthly or yearly rule.
+     *
+     * @return the day of the month, or 0 if not fixed
+     */
+    int getDayOfMonth() {
+        return this.dayOfMonth;
+    }
+
+    /**
+     * Get the week of the month of a monthly or yearly rule.
+     *
+     * @return the week of the month 1-4, 5 for the last week or 0 if not specified
+     */
+    int getWeekOfMonth() {
+        return this.weekOfMonth;
+    }
+
+    /**
+     * Get the day kind in the week of the month.
+     *
+     * @return the day kind, or null if not specified
+     */
+    DayOfTheWeek getDayOfTheWeek() {
+        return this.dayOfTheWeek;
+    }
+
+    /**
+     * Get the month of a yearly rule.
+     *
+     * @return the month, 0 for January up to 11 for December
+     */
+    int getMonth() {
+        return this.month;
+    }
+
+    /**
+     * Parse the XML pattern to its root element.
+     *
+     * @param xmlPattern the XML pattern
+     * @return the root element
+     * @throws ReservationException when the pattern is not valid XML
+     */
+    private static Element parseElement(final String xmlPattern) throws ReservationException {
+        try {
+            return new SAXReader().read(new StringReader(xmlPattern)).getRootElement();
+        } catch (final DocumentException exception) {
+            // @translatable
+            throw new ReservationException("Invalid recurring rule: {0}", RecurrenceRule.class,
+                xmlPattern);
+        }
+    }
+
+    /**
+     * Get the value of an attribute of the recurring element.
+     *
+     * @param element the recurring element
+     * @param name the attribute name
+     * @return the trimmed attribute value, or an empty string if not present
+     */
+    private static String getAttribute(final Element element, final String name) {
+        final String value = element.attributeValue(name);
+        return value == null ? "" : value.trim();
+    }
+
+    /**
+     * Parse an integer attribute value.
+     *
+     * @param value the attribute value
+     * @param defaultValue the value to return if the attribute is empty
+     * @return the parsed value
+     */
+    private static int parseInt(final String value, final int defaultValue) {
+        int result = defaultValue;
+        if (value.length() > 0) {
+            result = Integer.parseInt(value);
+        }
+        return result;
+    }
+
+    /**
+     * Parse the week day flags of a weekly rule, starting on Monday.
+     *
+     * @param value the comma-separated flags
+     * @return one bit per selected day, bit 0 for Monday up to bit 6 for Sunday
+     */
+    private static int parseWeekDays(final String value) {
+        final String[] flags = value.split(FLAG_SEPARATOR);
+        int result = 0;
+        for (int i = 0; i < flags.length && i < DAYS_IN_WEEK; ++i) {
+            if (FLAG_SELECTED.equals(flags[i].trim())) {
+                result |= 1 << i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parse a month attribute value.
+     *
+     * @param value the three-letter month name
+     * @return the month, 0 for January up to 11 for December
+     */
+    private static int parseMonth(final String value) {
+        return Math.max(0, MONTHS.indexOf(value.toLowerCase()));
+    }
+
+}
@@ -21,6 +21,17 @@ import com.archibus.utility.*;
  */
 public class AppointmentHelper {
     
+    /** Error message when binding to several appointment occurrences failed. */
+    // @translatable
+    private static final String ERROR_BINDING_OCCURRENCES =
+            "Error binding to appointment occurrences. Please refer to archibus.log for details";
+    
+    /** Maximum number of appointments retrieved with one calendar view request. */
+    private static final int CALENDAR_VIEW_PAGE_SIZE = 500;
+    
+    /** Time skipped when a full page of appointments starts at the same time. */
+    private static final long SKIPPED_MILLISECONDS = 1000;
+    
     /** The time zone mapper. */
     private AppointmentTimeZoneMapper timeZoneMapper;
     
@@ -126,7 +137,133 @@ public class AppointmentHelper {
     }
     
     /**
-     * Find all appointments on the specific user's calendar during the specified time period.
+     * Bind to several occurrences of an appointment series at once, based on their current start
+     * date and time in UTC. All appointments between the first and last start date are retrieved
+     * with a single calendar view, in pages if there are many, and matched to the start dates in
+     * memory. The matching occurrences are loaded with the user properties in one request. If the
+     * calendar view could not be retrieved completely, the start dates without a match are bound
+     * one by one.
+     * 
+     * @param exchangeService the service connected to the Exchange user's mailbox
+     * @param iCalUid the iCalendar UID of the appointment series
+     * @param startDateTimes the current start date and time of each appointment occurrence
+     * @return the occurrences by start date and time, start dates without an occurrence are not
+     *         included
+     */
+    public Map<Date, Appointment> bindToOccurrences(final ExchangeService exchangeService,
+            final String iCalUid, final Collection<Date> startDateTimes) {
+        final Map<Date, Appointment> occurrences = new HashMap<Date, Appointment>();
+        if (!startDateTimes.isEmpty()) {
+            final List<Appointment> seriesAppointments = new ArrayList<Appointment>();
+            final boolean complete =
+                    findSeriesAppointments(exchangeService, iCalUid,
+                        Collections.min(startDateTimes), Collections.max(startDateTimes),
+                        seriesAppointments);
+            final List<Date> unmatched = new ArrayList<Date>();
+            try {
+                final List<Item> matches = new ArrayList<Item>();
+                for (final Date startDateTime : startDateTimes) {
+                    final Appointment occurrence =
+                            findOccurrence(seriesAppointments, startDateTime);
+                    if (occurrence == null) {
+                        unmatched.add(startDateTime);
+                    } else {
+                        occurrences.put(startDateTime, occurrence);
+                        matches.add(occurrence);
+                        // each occurrence is only matched and loaded once
+                        seriesAppointments.remove(occurrence);
+                    }
+                }
+                if (!matches.isEmpty()) {
+                    exchangeService.loadPropertiesForItems(matches,
+                        this.appointmentPropertiesHelper.getExtendedPropertySet());
+                }
+                // CHECKSTYLE:OFF : Suppress IllegalCatch warning. Justification: third-party API
+                // method throws a checked Exception, which needs to be wrapped in ExceptionBase.
+            } catch (final Exception exception) {
+                // CHECKSTYLE:ON
+                throw new CalendarException(ERROR_BINDING_OCCURRENCES, exception,
+                    AppointmentHelper.class);
+            }
+            if (!complete) {
+                // the occurrences might not have been in the calendar view
+                for (final Date startDateTime : unmatched) {
+                    final Appointment occurrence =
+                            bindToOccurrence(exchangeService, iCalUid, startDateTime);
+                    if (occurrence != null) {
+                        occurrences.put(startDateTime, occurrence);
+                    }
+                }
+            }
+        }
+        return occurrences;
+    }
+    
+    /**
+     * Find the appointments of a series that occur during the specified time period. The
+     * calendar view is retrieved in pages, each page starting at the last start time of the
+     * previous one. Only the properties required for matching are retrieved.
+     * <p>
+     * A calendar view cannot skip the appointments it already returned, so when a full page of
+     * appointments starts at the same time, the next page starts one second later. The other
+     * appointments starting at that time are not retrieved and the result is incomplete.
+     * 
+     * @param exchangeService the service connected to the Exchange user's mailbox
+     * @param iCalUid the iCalendar UID of the appointment series
+     * @param windowStart start of the time period (UTC)
+     * @param windowEnd end of the time period (UTC)
+     * @param seriesAppointments the list to add the appointments of the series to
+     * @return true if all appointments in the time period were retrieved, false if not
+     */
+    private boolean findSeriesAppointments(final ExchangeService exchangeService,
+            final String iCalUid, final Date windowStart, final Date windowEnd,
+            final List<Appointment> seriesAppointments) {
+        boolean complete = true;
+        try {
+            final PropertySet viewPropertySet =
+                    new PropertySet(BasePropertySet.IdOnly, AppointmentSchema.ICalUid,
+                        AppointmentSchema.Start, AppointmentSchema.End);
+            final Set<String> itemIds = new HashSet<String>();
+            Date pageStart = windowStart;
+            boolean moreAvailable = true;
+            while (moreAvailable) {
+                final CalendarView view =
+                        new CalendarView(pageStart, windowEnd, CALENDAR_VIEW_PAGE_SIZE);
+                view.setPropertySet(viewPropertySet);
+                final FindItemsResults<Appointment> results =
+                        exchangeService.findAppointments(WellKnownFolderName.Calendar, view);
+                Date lastStart = pageStart;
+                for (final Appointment appointment : results.getItems()) {
+                    // skip the appointments that were also in the previous page
+                    if (itemIds.add(appointment.getId().getUniqueId())
+                            && iCalUid.equals(appointment.getICalUid())) {
+                        seriesAppointments.add(appointment);
+                    }
+                    lastStart = appointment.getStart();
+                }
+                moreAvailable = results.isMoreAvailable();
+                if (moreAvailable && !lastStart.after(pageStart)) {
+                    // a full page of appointments starts at the same time, skip that time
+                    complete = false;
+                    lastStart = new Date(pageStart.getTime() + SKIPPED_MILLISECONDS);
+                    moreAvailable = !lastStart.after(windowEnd);
+                }
+                pageStart = lastStart;
+            }
+            // CHECKSTYLE:OFF : Suppress IllegalCatch warning. Justification: third-party API method
+            // throws a checked Exception, which needs to be wrapped in ExceptionBase.
+        } catch (final Exception exception) {
+            // CHECKSTYLE:ON
+            throw new CalendarException(ERROR_BINDING_OCCURRENCES, exception,
+                AppointmentHelper.class);
+        }
+        return complete;
+    }
+    
+    /**
+     * Find all appointments on the specific user's calendar during the specified time period. Only
+     * the properties needed to show the user's free/busy time are retrieved, with the calendar
+     * view itself, so a long time period doesn't require loading each appointment separately.
      * 
      * @param email user's email address
      * @param windowStart start of the time period (UTC)
@@ -139,13 +276,13 @@ public class AppointmentHelper {
         try {
             // Use getService so it doesn't switch to the resource mailbox automatically.
             // This means an Exception will be thrown when the user doesn't exist.
+            final CalendarView view = new CalendarView(windowStart, windowEnd);
+            view.setPropertySet(new PropertySet(BasePropertySet.IdOnly, AppointmentSchema.ICalUid,
+                AppointmentSchema.Subject, AppointmentSchema.Location, AppointmentSchema.Start,
+                AppointmentSchema.End, AppointmentSchema.LegacyFreeBusyStatus));
             final FindItemsResults<Appointment> results =
                     this.serviceHelper.getService(email).findAppointments(
-                        WellKnownFolderName.Calendar, new CalendarView(windowStart, windowEnd));
-            
-            for (final Appointment appointment : results.getItems()) {
-                appointment.load(this.appointmentPropertiesHelper.getExtendedPropertySet());
-            }
+                        WellKnownFolderName.Calendar, view);
             
             return results.getItems();
         } catch (final ExceptionBase exception) {
@@ -258,6 +395,31 @@ public class AppointmentHelper {
         }
     }
     
+    /**
+     * Find the occurrence at the given time. An occurrence that starts at that time is preferred,
+     * otherwise an occurrence that is ongoing at that time is returned, like a calendar view
+     * for that time would.
+     * 
+     * @param appointments the appointments of the series
+     * @param startDateTime the current start date and time of the occurrence
+     * @return the occurrence, or null if not found
+     * @throws ServiceLocalException when the start or end time was not retrieved
+     */
+    private static Appointment findOccurrence(final List<Appointment> appointments,
+            final Date startDateTime) throws ServiceLocalException {
+        Appointment result = null;
+        for (final Appointment appointment : appointments) {
+            if (appointment.getStart().equals(startDateTime)) {
+                result = appointment;
+                break;
+            } else if (result == null && !appointment.getStart().after(startDateTime)
+                    && !appointment.getEnd().before(startDateTime)) {
+                result = appointment;
+            }
+        }
+        return result;
+    }
+    
     /**
      * Sets the time zone mapper.
      * 
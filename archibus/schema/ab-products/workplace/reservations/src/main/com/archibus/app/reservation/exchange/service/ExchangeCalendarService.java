@@ -10,7 +10,7 @@ import com.archibus.app.reservation.dao.datasource.Constants;
 import com.archibus.app.reservation.domain.*;
 import com.archibus.app.reservation.domain.AttendeeResponseStatus.ResponseStatus;
 import com.archibus.app.reservation.exchange.util.*;
-import com.archibus.app.reservation.service.ICalendarService;
+import com.archibus.app.reservation.service.*;
 import com.archibus.utility.*;
 
 /**
@@ -49,6 +49,15 @@ public class ExchangeCalendarService implements ICalendarService {
     /** Email address for whom the cached connection was created. */
     private String cachedOrganizerEmail;
 
+    /** The cache of attendee availability, null if not used. */
+    private AttendeeAvailabilityCache attendeeAvailabilityCache;
+    
+    /** Occurrences retrieved for updating, by their original start date and time in UTC. */
+    private Map<Date, Appointment> preparedOccurrences;
+    
+    /** Unique id of the series of the prepared occurrences. */
+    private String preparedUniqueId;
+
     /** {@inheritDoc} */
     public void checkServiceAvailable() throws ExceptionBase {
         // try to connect to the Exchange server using the organizer account
@@ -84,6 +93,7 @@ public class ExchangeCalendarService implements ICalendarService {
     
     /** {@inheritDoc} */
     public String createAppointment(final IReservation reservation) throws ExceptionBase {
+        invalidateAvailability(reservation);
         if (StringUtil.notNullOrEmpty(reservation.getUniqueId())) {
             throw new ReservationException("Reservation already has an appointment id.",
                 ExchangeCalendarService.class);
@@ -112,6 +122,7 @@ public class ExchangeCalendarService implements ICalendarService {
     
     /** {@inheritDoc} */
     public void updateAppointment(final IReservation reservation) throws ExceptionBase {
+        invalidateAvailability(reservation);
         try {
             final Appointment appointment = this.appointmentHelper.createAppointment(reservation);
             if (appointment.isNew()) {
@@ -144,12 +155,20 @@ public class ExchangeCalendarService implements ICalendarService {
     /** {@inheritDoc} */
     public void updateAppointmentOccurrence(final IReservation reservation,
             final IReservation originalReservation) {
+        invalidateAvailability(reservation);
+        invalidateAvailability(originalReservation);
         try {
             final ExchangeService initializedService = getInitializedService(reservation);
-            final Appointment appointment =
-                    this.appointmentHelper.bindToOccurrence(initializedService, reservation
-                        .getUniqueId(), ((RoomReservation) originalReservation)
-                        .getTimePeriodInTimeZone(Constants.TIMEZONE_UTC).getStartDateTime());
+            final Date originalStartDateTime =
+                    ((RoomReservation) originalReservation).getTimePeriodInTimeZone(
+                        Constants.TIMEZONE_UTC).getStartDateTime();
+            Appointment appointment =
+                    takePreparedOccurrence(reservation.getUniqueId(), originalStartDateTime);
+            if (appointment == null) {
+                appointment =
+                        this.appointmentHelper.bindToOccurrence(initializedService,
+                            reservation.getUniqueId(), originalStartDateTime);
+            }
             if (appointment == null) {
                 // @translatable
                 throw new CalendarException(
@@ -185,9 +204,37 @@ public class ExchangeCalendarService implements ICalendarService {
         }
     }
     
+    /** {@inheritDoc} */
+    public void prepareAppointmentOccurrences(
+            final List<? extends IReservation> originalReservations) throws ExceptionBase {
+        releaseAppointmentOccurrences();
+        if (!originalReservations.isEmpty()
+                && StringUtil.notNullOrEmpty(originalReservations.get(0).getUniqueId())) {
+            final IReservation firstReservation = originalReservations.get(0);
+            final List<Date> startDateTimes = new ArrayList<Date>(originalReservations.size());
+            for (final IReservation originalReservation : originalReservations) {
+                startDateTimes.add(((RoomReservation) originalReservation).getTimePeriodInTimeZone(
+                    Constants.TIMEZONE_UTC).getStartDateTime());
+            }
+            final ExchangeService initializedService = getInitializedService(firstReservation);
+            this.preparedOccurrences =
+                    this.appointmentHelper.bindToOccurrences(initializedService,
+                        firstReservation.getUniqueId(), startDateTimes);
+            this.preparedUniqueId = firstReservation.getUniqueId();
+            updateCachedExchangeService(initializedService, firstReservation);
+        }
+    }
+    
+    /** {@inheritDoc} */
+    public void releaseAppointmentOccurrences() {
+        this.preparedOccurrences = null;
+        this.preparedUniqueId = null;
+    }
+    
     /** {@inheritDoc} */
     public void cancelAppointment(final IReservation reservation, final String message)
             throws ExceptionBase {
+        invalidateAvailability(reservation);
         
         final String uniqueId = reservation.getUniqueId();
         if (StringUtil.isNullOrEmpty(uniqueId)) {
@@ -210,6 +257,7 @@ public class ExchangeCalendarService implements ICalendarService {
     /** {@inheritDoc} */
     public void cancelAppointmentOccurrence(final IReservation reservation, final String message)
             throws ExceptionBase {
+        invalidateAvailability(reservation);
         final String uniqueId = reservation.getUniqueId();
         if (StringUtil.isNullOrEmpty(uniqueId)) {
             // not linked to an appointment, so return
@@ -255,6 +303,28 @@ public class ExchangeCalendarService implements ICalendarService {
         this.exchangeMessagesService = exchangeMessagesService;
     }
     
+    /**
+     * Set the cache of attendee availability.
+     * 
+     * @param attendeeAvailabilityCache the new attendee availability cache
+     */
+    public void setAttendeeAvailabilityCache(
+            final AttendeeAvailabilityCache attendeeAvailabilityCache) {
+        this.attendeeAvailabilityCache = attendeeAvailabilityCache;
+    }
+    
+    /**
+     * Remove the cached availability of the organizer and attendees of a reservation, because
+     * their calendars are being changed.
+     * 
+     * @param reservation the reservation
+     */
+    private void invalidateAvailability(final IReservation reservation) {
+        if (this.attendeeAvailabilityCache != null) {
+            this.attendeeAvailabilityCache.invalidate(reservation);
+        }
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -374,6 +444,22 @@ public class ExchangeCalendarService implements ICalendarService {
         return initializedService;
     }
     
+    /**
+     * Get a prepared occurrence and remove it, so it is only used once.
+     * 
+     * @param uniqueId unique id of the appointment series
+     * @param originalStartDateTime original start date and time of the occurrence in UTC
+     * @return the occurrence, or null if it was not prepared
+     */
+    private Appointment takePreparedOccurrence(final String uniqueId,
+            final Date originalStartDateTime) {
+        Appointment occurrence = null;
+        if (this.preparedOccurrences != null && this.preparedUniqueId.equals(uniqueId)) {
+            occurrence = this.preparedOccurrences.remove(originalStartDateTime);
+        }
+        return occurrence;
+    }
+    
     /**
      * Update the cached Exchange service to the given service. A next call to getInitializedService
      * will reuse the cached Exchange service if possible.
@@ -54,6 +54,7 @@ public class MeetingCancellationHandler extends MeetingItemHandler {
                 if (!reservations.isEmpty()) {
                     final String organizerEmail = reservations.get(0).getEmail();
                     ItemHandlerImpl.setUserFromEmail(organizerEmail, cancellation);
+                    invalidateAvailability(organizerEmail);
                     final Date occurrenceDateTime =
                             (Date) cancellation
                                 .getObjectFromPropertyDefinition(MeetingMessageSchema.ICalRecurrenceId);
@@ -69,6 +70,7 @@ public class MeetingCancellationHandler extends MeetingItemHandler {
                         Appointment.bind(cancellation.getService(), appointmentId);
                 final String organizerEmail = appointment.getOrganizer().getAddress();
                 ItemHandlerImpl.setUserFromEmail(organizerEmail, cancellation);
+                invalidateAvailability(organizerEmail);
                 
                 if (AppointmentType.RecurringMaster.equals(appointment.getAppointmentType())
                         || AppointmentType.Single.equals(appointment.getAppointmentType())) {
@@ -1,6 +1,6 @@
 package com.archibus.app.reservation.exchange.service;
 
-import com.archibus.app.reservation.service.IReservationService;
+import com.archibus.app.reservation.service.*;
 
 /**
  * Base class for handling Meeting Items from Exchange.
@@ -19,6 +19,8 @@ public class MeetingItemHandler {
     protected IReservationService reservationService;
     /** The messages service that builds and sends messages to report actions taken by the listener. */
     protected ExchangeMessagesService messagesService;
+    /** The cache of attendee availability, null if not used. */
+    private AttendeeAvailabilityCache attendeeAvailabilityCache;
 
     /**
      * Set the new appointment helper.
@@ -46,5 +48,26 @@ public class MeetingItemHandler {
     public void setMessagesService(final ExchangeMessagesService messagesService) {
         this.messagesService = messagesService;
     }
+
+    /**
+     * Set the cache of attendee availability.
+     * 
+     * @param attendeeAvailabilityCache the attendee availability cache to set
+     */
+    public void setAttendeeAvailabilityCache(
+            final AttendeeAvailabilityCache attendeeAvailabilityCache) {
+        this.attendeeAvailabilityCache = attendeeAvailabilityCache;
+    }
+
+    /**
+     * Remove the cached availability of a mailbox, because a meeting on its calendar changed.
+     * 
+     * @param email the email address of the mailbox
+     */
+    protected void invalidateAvailability(final String email) {
+        if (this.attendeeAvailabilityCache != null) {
+            this.attendeeAvailabilityCache.invalidate(email);
+        }
+    }
     
 }
\ No newline at end of file
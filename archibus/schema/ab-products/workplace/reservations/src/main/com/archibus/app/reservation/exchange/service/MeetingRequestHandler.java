@@ -1,6 +1,6 @@
 package com.archibus.app.reservation.exchange.service;
 
-import java.util.List;
+import java.util.*;
 
 import microsoft.exchange.webservices.data.*;
 
@@ -27,7 +27,8 @@ public class MeetingRequestHandler extends MeetingItemHandler {
         try {
             request.load(new PropertySet(MeetingRequestSchema.Start, MeetingRequestSchema.ICalUid,
                 MeetingRequestSchema.IsOutOfDate, MeetingRequestSchema.AppointmentType,
-                MeetingRequestSchema.Organizer, MeetingRequestSchema.AssociatedAppointmentId));
+                MeetingRequestSchema.Organizer, MeetingRequestSchema.AssociatedAppointmentId,
+                MeetingRequestSchema.RequiredAttendees, MeetingRequestSchema.OptionalAttendees));
             // Ignore this message if it is already out of date or already processed.
             final boolean outOfDate =
                     (Boolean) request
@@ -42,6 +43,7 @@ public class MeetingRequestHandler extends MeetingItemHandler {
                             .getObjectFromPropertyDefinition(MeetingMessageSchema.ICalUid);
                 final String organizerEmail = request.getOrganizer().getAddress();
                 ItemHandlerImpl.setUserFromEmail(organizerEmail, request);
+                invalidateAvailability(request, organizerEmail);
                 final ItemId appointmentId =
                         (ItemId) request
                             .getObjectFromPropertyDefinition(MeetingRequestSchema.AssociatedAppointmentId);
@@ -104,6 +106,24 @@ public class MeetingRequestHandler extends MeetingItemHandler {
         }
     }
     
+    /**
+     * Remove the cached availability of the organizer and attendees of a meeting request.
+     * 
+     * @param request the request
+     * @param organizerEmail email address of the organizer
+     * @throws ServiceLocalException when the attendees were not loaded
+     */
+    private void invalidateAvailability(final MeetingRequest request,
+            final String organizerEmail) throws ServiceLocalException {
+        invalidateAvailability(organizerEmail);
+        for (final Attendee attendee : request.getRequiredAttendees()) {
+            invalidateAvailability(attendee.getAddress());
+        }
+        for (final Attendee attendee : request.getOptionalAttendees()) {
+            invalidateAvailability(attendee.getAddress());
+        }
+    }
+    
     /**
      * Check the equivalence of a single meeting with its corresponding reservation. This can be a
      * single meeting or an occurrence.
@@ -187,12 +207,19 @@ public class MeetingRequestHandler extends MeetingItemHandler {
             Integer reservationId = null;
             final ExchangeService exchangeService =
                     this.appointmentHelper.getServiceHelper().initializeService(organizerEmail);
+            
+            // Retrieve all occurrences at once rather than one by one.
+            final List<Date> startDateTimes = new ArrayList<Date>(reservations.size());
+            for (final RoomReservation reservation : reservations) {
+                startDateTimes.add(reservation.getStartDateTime());
+            }
+            final Map<Date, Appointment> occurrences =
+                    this.appointmentHelper.bindToOccurrences(exchangeService, iCalUid,
+                        startDateTimes);
 
             for (final RoomReservation reservation : reservations) {
                 reservationId = reservation.getReserveId();
-                final Appointment occurrence =
-                        this.appointmentHelper.bindToOccurrence(exchangeService, iCalUid,
-                            reservation.getStartDateTime());
+                final Appointment occurrence = occurrences.get(reservation.getStartDateTime());
                 if (occurrence == null) {
                     accept = false;
                     break;
@@ -1,12 +1,9 @@
 package com.archibus.app.reservation.exchange.util;
 
-import java.text.*;
 import java.util.*;
 
 import microsoft.exchange.webservices.data.*;
 
-import org.apache.log4j.Logger;
-
 import com.archibus.app.reservation.dao.datasource.Constants;
 import com.archibus.app.reservation.domain.*;
 import com.archibus.utility.ExceptionBase;
@@ -34,28 +31,9 @@ public class AppointmentPropertiesHelper {
     private static final String RECURRING_RESERVATION_IDS_PROPERTYNAME =
             "RecurringReservationIDs-Archibus";
     
-    /** Date format used in the user properties. */
-    private static final String DATE_FORMAT_STRING = "yyyy-MM-dd";
-    
-    /**
-     * Separator used in the recurring reservation IDs property, between the original date and the
-     * reservation ID of each occurrence.
-     */
-    private static final String DATE_SEPARATOR = "|";
-    
-    /**
-     * Regular expression pattern format of the separator used in the recurring reservation IDs
-     * property, between the original date and the reservation ID of each occurrence.
-     */
-    private static final String DATE_SEPARATOR_PATTERN = "\\|";
-    
     /** MAPI Property ID of the ICal UI Property. */
     private static final int UID_PROPERTY = 0x03;
     
-    /** The date formatter used for all Date <-> String conversions. */
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT_STRING,
-        Locale.ENGLISH);
-    
     /**
      * Extended set of properties to retrieve via EWS when binding to an Appointment, including the
      * relevant user properties also used by the Outlook Plugin.
@@ -71,8 +49,18 @@ public class AppointmentPropertiesHelper {
     /** Definition of the ical UID property. */
     private final ExtendedPropertyDefinition icalUidProperty;
     
-    /** The logger. */
-    private final Logger logger = Logger.getLogger(this.getClass());
+    /**
+     * The user properties of recently used appointments, so they are only decoded once for each
+     * value of the properties. The entries are removed when the appointment is no longer used.
+     */
+    private final Map<Appointment, PropertyIndex> indexes = Collections
+        .synchronizedMap(new WeakHashMap<Appointment, PropertyIndex>());
+    
+    /**
+     * Encoding used for writing the recurring reservation IDs. The original encoding is used
+     * unless the compact encoding is enabled in the bean configuration.
+     */
+    private int recurringReservationIdsVersion = RecurringReservationIds.VERSION_1;
     
     /**
      * Create an instance of the Appointment Properties Helper.
@@ -120,12 +108,7 @@ public class AppointmentPropertiesHelper {
      */
     public Integer getReservationIdFromUserProperty(final Appointment appointment)
             throws ServiceLocalException {
-        final Object value = findPropertyValue(appointment, this.reservationIdProperty);
-        Integer reservationId = null;
-        if (value instanceof Integer) {
-            reservationId = (Integer) value;
-        }
-        return reservationId;
+        return getPropertyIndex(appointment).reservationId;
     }
     
     /**
@@ -144,7 +127,7 @@ public class AppointmentPropertiesHelper {
                 // Get the reservation ID from the first date in the recurrence
                 // tracking state.
                 reservationId =
-                        getRecurringReservationIds(appointment).get(
+                        findRecurringReservationId(appointment,
                             TimePeriod.clearTime(appointment.getStart()));
             } else if (AppointmentType.Occurrence.equals(appointmentType)) {
                 // Bind to the master and check there.
@@ -152,7 +135,7 @@ public class AppointmentPropertiesHelper {
                         Appointment.bindToRecurringMaster(appointment.getService(),
                             appointment.getId(), getExtendedPropertySet());
                 reservationId =
-                        getRecurringReservationIds(master).get(
+                        findRecurringReservationId(master,
                             TimePeriod.clearTime(appointment.getStart()));
             } else {
                 // Check the property in the given appointment.
@@ -166,7 +149,7 @@ public class AppointmentPropertiesHelper {
                                 appointment.getId(), getExtendedPropertySet());
                     // Use the ICalRecurrenceId, that is the original date of the occurrence.
                     reservationId =
-                            getRecurringReservationIds(master).get(
+                            findRecurringReservationId(master,
                                 TimePeriod.clearTime(appointment.getICalRecurrenceId()));
                 }
             }
@@ -190,6 +173,7 @@ public class AppointmentPropertiesHelper {
      * @param reservationId the reservation id to set
      */
     public void setReservationId(final Appointment appointment, final Integer reservationId) {
+        this.indexes.remove(appointment);
         try {
             appointment.setExtendedProperty(this.reservationIdProperty, reservationId);
             // CHECKSTYLE:OFF : Suppress IllegalCatch warning. Justification: third-party API method
@@ -208,6 +192,7 @@ public class AppointmentPropertiesHelper {
      * @param appointment the appointment to remove the reservation id from
      */
     public void removeReservationId(final Appointment appointment) {
+        this.indexes.remove(appointment);
         try {
             appointment.removeExtendedProperty(this.reservationIdProperty);
             // CHECKSTYLE:OFF : Suppress IllegalCatch warning. Justification: third-party API method
@@ -224,35 +209,26 @@ public class AppointmentPropertiesHelper {
      * Get the recurrence reservation IDs from the appointment's user property.
      * 
      * @param appointment the appointment to get the dates from
-     * @return a map with keys representing the occurrences' original date and values indicating
-     *         their reservation id
+     * @return an unmodifiable map with keys representing the occurrences' original date and
+     *         values indicating their reservation id, or null if the property doesn't exist
      */
     public Map<Date, Integer> getRecurringReservationIds(final Appointment appointment) {
-        Map<Date, Integer> reservationIds = null;
-        final Object value = findPropertyValue(appointment, this.recurringReservationIdsProperty);
-        if (value instanceof Object[]) {
-            reservationIds = new HashMap<Date, Integer>();
-            
-            for (final Object pair : (Object[]) value) {
-                final String[] splitPair = pair.toString().split(DATE_SEPARATOR_PATTERN);
-                if (splitPair.length == 2) {
-                    try {
-                        final Date originalDate = this.dateFormat.parse(splitPair[0]);
-                        final Integer reservationId = Integer.valueOf(splitPair[1]);
-                        reservationIds.put(originalDate, reservationId);
-                    } catch (final ParseException exception) {
-                        // ignore this pair
-                        this.logger.warn("Invalid date '" + splitPair[0]
-                                + "' in recurring reservation ids.", exception);
-                    }
-                } else {
-                    this.logger.warn("No date separator '" + DATE_SEPARATOR + "' in '" + pair
-                            + "'.");
-                }
-            }
-        }
-        
-        return reservationIds;
+        final RecurringReservationIds reservationIds =
+                getPropertyIndex(appointment).recurringReservationIds;
+        return reservationIds == null ? null : reservationIds.asMap();
+    }
+    
+    /**
+     * Find the reservation ID of an occurrence in the recurring reservation IDs user property.
+     * 
+     * @param master the recurrence master appointment
+     * @param originalDate the original date of the occurrence, without time
+     * @return the reservation ID, or null if not found
+     */
+    private Integer findRecurringReservationId(final Appointment master, final Date originalDate) {
+        final RecurringReservationIds reservationIds =
+                getPropertyIndex(master).recurringReservationIds;
+        return reservationIds == null ? null : reservationIds.get(originalDate);
     }
     
     /**
@@ -261,6 +237,7 @@ public class AppointmentPropertiesHelper {
      * @param appointment the appointment to remove the recurring reservation ids from
      */
     public void removeRecurringReservationIds(final Appointment appointment) {
+        this.indexes.remove(appointment);
         try {
             appointment.removeExtendedProperty(this.recurringReservationIdsProperty);
             // CHECKSTYLE:OFF : Suppress IllegalCatch warning. Justification: third-party API method
@@ -283,18 +260,13 @@ public class AppointmentPropertiesHelper {
      */
     public void setRecurringReservationIds(final Appointment appointment,
             final RoomReservation reservation) {
-        final Map<Date, Integer> reservationIds = getReservationIds(reservation);
-        final ArrayList<String> serializedReservationIds =
-                new ArrayList<String>(reservationIds.size());
-        for (final Map.Entry<Date, Integer> entry : reservationIds.entrySet()) {
-            final String originalDate = this.dateFormat.format(entry.getKey());
-            final String reservationId = String.valueOf(entry.getValue());
-            serializedReservationIds.add(originalDate + DATE_SEPARATOR + reservationId);
-        }
+        final RecurringReservationIds reservationIds =
+                new RecurringReservationIds(getReservationIds(reservation));
         
+        this.indexes.remove(appointment);
         try {
             appointment.setExtendedProperty(this.recurringReservationIdsProperty,
-                serializedReservationIds.toArray(new String[serializedReservationIds.size()]));
+                reservationIds.encode(this.recurringReservationIdsVersion));
             // CHECKSTYLE:OFF : Suppress IllegalCatch warning. Justification: third-party API method
             // throws a checked Exception, which needs to be wrapped in ExceptionBase.
         } catch (final Exception exception) {
@@ -341,28 +313,99 @@ public class AppointmentPropertiesHelper {
     }
     
     /**
-     * Find the value of the user property with the given name in the appointment's user properties.
+     * Set the encoding used for writing the recurring reservation IDs. Only use version 2 when no
+     * Outlook Plugin installations that only read the original encoding are in use.
+     * 
+     * @param recurringReservationIdsVersion RecurringReservationIds.VERSION_1 (default) or
+     *            VERSION_2
+     */
+    public void setRecurringReservationIdsVersion(final int recurringReservationIdsVersion) {
+        this.recurringReservationIdsVersion = recurringReservationIdsVersion;
+    }
+    
+    /**
+     * Get the user properties of the appointment. They are only decoded again when the value of
+     * one of the user properties was replaced, e.g. because the appointment was reloaded.
      * 
      * @param appointment the appointment
-     * @param propertyDef definition of the user property to get the value for
-     * @return the value, or null if it doesn't exist
+     * @return the user properties
      */
-    private static Object findPropertyValue(final Appointment appointment,
-            final ExtendedPropertyDefinition propertyDef) {
-        Object propertyValue = null;
+    private PropertyIndex getPropertyIndex(final Appointment appointment) {
         try {
+            Object reservationIdValue = null;
+            Object recurringReservationIdsValue = null;
             for (final ExtendedProperty property : appointment.getExtendedProperties()) {
-                if (propertyDef.equals(property.getPropertyDefinition())) {
-                    propertyValue = property.getValue();
-                    break;
+                final ExtendedPropertyDefinition definition = property.getPropertyDefinition();
+                if (this.reservationIdProperty.equals(definition)) {
+                    reservationIdValue = property.getValue();
+                } else if (this.recurringReservationIdsProperty.equals(definition)) {
+                    recurringReservationIdsValue = property.getValue();
                 }
             }
+            PropertyIndex index = this.indexes.get(appointment);
+            if (index == null
+                    || !index.isBuiltFrom(reservationIdValue, recurringReservationIdsValue)) {
+                index = new PropertyIndex(reservationIdValue, recurringReservationIdsValue);
+                this.indexes.put(appointment, index);
+            }
+            return index;
         } catch (final ServiceLocalException exception) {
             // @translatable
             throw new CalendarException("Error reading extended appointment properties", exception,
                 AppointmentPropertiesHelper.class);
         }
-        return propertyValue;
+    }
+    
+    /**
+     * The decoded user properties of an appointment.
+     */
+    private static final class PropertyIndex {
+        
+        /** The value of the reservation ID property the index was built from. */
+        private final Object reservationIdValue;
+        
+        /** The value of the recurring reservation IDs property the index was built from. */
+        private final Object recurringReservationIdsValue;
+        
+        /** The reservation ID, or null if the property doesn't exist. */
+        private Integer reservationId;
+        
+        /** The recurring reservation IDs, or null if the property doesn't exist. */
+        private RecurringReservationIds recurringReservationIds;
+        
+        /**
+         * Build the index.
+         * 
+         * @param reservationIdValue value of the reservation ID property, or null
+         * @param recurringReservationIdsValue value of the recurring reservation IDs property, or
+         *            null
+         */
+        PropertyIndex(final Object reservationIdValue, final Object recurringReservationIdsValue) {
+            this.reservationIdValue = reservationIdValue;
+            this.recurringReservationIdsValue = recurringReservationIdsValue;
+            if (reservationIdValue instanceof Integer) {
+                this.reservationId = (Integer) reservationIdValue;
+            }
+            if (recurringReservationIdsValue instanceof Object[]) {
+                this.recurringReservationIds =
+                        RecurringReservationIds.decode((Object[]) recurringReservationIdsValue);
+            }
+        }
+        
+        /**
+         * Check whether the index was built from the given property values. The values are
+         * compared by identity: setting or reloading a property always replaces its value.
+         * 
+         * @param reservationIdValue value of the reservation ID property, or null
+         * @param recurringReservationIdsValue value of the recurring reservation IDs property, or
+         *            null
+         * @return true if the index is still valid
+         */
+        boolean isBuiltFrom(final Object reservationIdValue,
+                final Object recurringReservationIdsValue) {
+            return this.reservationIdValue == reservationIdValue
+                    && this.recurringReservationIdsValue == recurringReservationIdsValue;
+        }
     }
     
 }
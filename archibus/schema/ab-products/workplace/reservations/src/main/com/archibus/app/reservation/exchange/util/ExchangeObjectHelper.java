@@ -41,20 +41,31 @@ public final class ExchangeObjectHelper {
     public static List<ICalendarEvent> convertAvailability(final List<Appointment> appointments,
             final TimeZone requestedTimeZone, final Date start, final Date end)
             throws ServiceLocalException {
-        final List<ICalendarEvent> events = new ArrayList<ICalendarEvent>();
+        final List<Appointment> busyAppointments = new ArrayList<Appointment>();
+        final List<LegacyFreeBusyStatus> statuses = new ArrayList<LegacyFreeBusyStatus>();
         for (final Appointment appointment : appointments) {
             final LegacyFreeBusyStatus status = appointment.getLegacyFreeBusyStatus();
-            if (LegacyFreeBusyStatus.Free.equals(status)) {
-                continue;
+            if (!LegacyFreeBusyStatus.Free.equals(status)) {
+                busyAppointments.add(appointment);
+                statuses.add(status);
             }
-            
-            // dates are received in UTC and should be converted
-            final Date startDateTime =
-                    TimeZoneConverter.calculateDateTime(appointment.getStart(),
-                        Constants.TIMEZONE_UTC, requestedTimeZone.getID(), true);
-            final Date endDateTime =
-                    TimeZoneConverter.calculateDateTime(appointment.getEnd(),
-                        Constants.TIMEZONE_UTC, requestedTimeZone.getID(), true);
+        }
+        
+        // dates are received in UTC and should be converted, all in one go
+        final long[] dateTimes = new long[busyAppointments.size() * 2];
+        for (int i = 0; i < busyAppointments.size(); ++i) {
+            dateTimes[2 * i] = busyAppointments.get(i).getStart().getTime();
+            dateTimes[2 * i + 1] = busyAppointments.get(i).getEnd().getTime();
+        }
+        TimeZoneConverter.calculateDateTimes(dateTimes, Constants.TIMEZONE_UTC,
+            requestedTimeZone.getID(), true);
+        
+        final List<ICalendarEvent> events = new ArrayList<ICalendarEvent>();
+        for (int i = 0; i < busyAppointments.size(); ++i) {
+            final Appointment appointment = busyAppointments.get(i);
+            final LegacyFreeBusyStatus status = statuses.get(i);
+            final Date startDateTime = new Date(dateTimes[2 * i]);
+            final Date endDateTime = new Date(dateTimes[2 * i + 1]);
             
             // Ignore events that occur outside the requested range
             // in the requested time zone.
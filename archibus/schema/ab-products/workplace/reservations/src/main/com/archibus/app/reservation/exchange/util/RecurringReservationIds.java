@@ -0,0 +1,249 @@
+package com.archibus.app.reservation.exchange.util;
+
+import java.text.ParseException;
+import java.util.*;
+
+import org.apache.log4j.Logger;
+
+import com.archibus.app.reservation.util.ThreadSafeDateFormat;
+
+/**
+ * The reservation IDs of a recurring appointment, by the original date of each occurrence, as
+ * stored in the recurring reservation IDs user property.
+ * <p>
+ * Two encodings of the property are supported. Version 1 contains one element for each
+ * occurrence with its date and reservation ID, e.g. "2014-03-05|123". Version 2 is compact: a
+ * header element with the version, an element with the date of the first occurrence and one
+ * element with all occurrences as "days since the previous occurrence.reservation ID" separated
+ * by commas, e.g. {"#2", "20140305", "0.123,7.124,7.125"}. Both versions are read; the version to
+ * write is chosen by the caller.
+ * <p>
+ * The value is decoded once, after which finding the reservation ID of an occurrence is a map
+ * lookup. Instances are immutable.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public final class RecurringReservationIds {
+
+    /** The original encoding, with one element for each occurrence. */
+    public static final int VERSION_1 = 1;
+
+    /** The compact encoding. */
+    public static final int VERSION_2 = 2;
+
+    /** Header element that identifies the compact encoding. */
+    private static final String VERSION_2_HEADER = "#2";
+
+    /** Number of elements in the compact encoding. */
+    private static final int VERSION_2_ELEMENTS = 3;
+
+    /** Index of the element with the occurrences in the compact encoding. */
+    private static final int VERSION_2_OCCURRENCES = 2;
+
+    /** Separator between the date and reservation ID of an occurrence in version 1. */
+    private static final char DATE_SEPARATOR = '|';
+
+    /** Separator between the day offset and reservation ID of an occurrence in version 2. */
+    private static final char OFFSET_SEPARATOR = '.';
+
+    /** Separator between the occurrences in version 2. */
+    private static final char OCCURRENCE_SEPARATOR = ',';
+
+    /** Date format of the first occurrence in version 2. */
+    private static final ThreadSafeDateFormat COMPACT_DATE = ThreadSafeDateFormat.ICAL_DATE;
+
+    /** Milliseconds in a day. */
+    private static final long DAY_MILLISECONDS = 24L * 60 * 60 * 1000;
+
+    /** The logger. */
+    private static final Logger LOGGER = Logger.getLogger(RecurringReservationIds.class);
+
+    /** The reservation IDs by original date, in date order. */
+    private final SortedMap<Date, Integer> reservationIds;
+
+    /**
+     * Create the reservation IDs of a recurring appointment.
+     *
+     * @param reservationIds the reservation IDs by original date, the time of the dates is ignored
+     */
+    public RecurringReservationIds(final Map<Date, Integer> reservationIds) {
+        final SortedMap<Date, Integer> dates = new TreeMap<Date, Integer>();
+        for (final Map.Entry<Date, Integer> entry : reservationIds.entrySet()) {
+            dates.put(toDate(toEpochDay(entry.getKey())), entry.getValue());
+        }
+        this.reservationIds = Collections.unmodifiableSortedMap(dates);
+    }
+
+    /**
+     * Decode the value of the recurring reservation IDs user property. Invalid occurrences are
+     * logged and ignored.
+     *
+     * @param value the value of the property
+     * @return the reservation IDs
+     */
+    public static RecurringReservationIds decode(final Object[] value) {
+        final Map<Date, Integer> reservationIds = new HashMap<Date, Integer>();
+        if (value.length == VERSION_2_ELEMENTS && VERSION_2_HEADER.equals(value[0])) {
+            decodeCompact(String.valueOf(value[1]), String.valueOf(value[VERSION_2_OCCURRENCES]),
+                reservationIds);
+        } else {
+            for (final Object pair : value) {
+                decodeOccurrence(String.valueOf(pair), reservationIds);
+            }
+        }
+        return new RecurringReservationIds(reservationIds);
+    }
+
+    /**
+     * Encode the reservation IDs for the recurring reservation IDs user property.
+     *
+     * @param version the encoding to use, VERSION_1 or VERSION_2
+     * @return the value of the property
+     */
+    public String[] encode(final int version) {
+        String[] value = null;
+        if (version == VERSION_1) {
+            value = new String[this.reservationIds.size()];
+            int index = 0;
+            for (final Map.Entry<Date, Integer> entry : this.reservationIds.entrySet()) {
+                value[index++] =
+                        ThreadSafeDateFormat.ISO_DATE.format(entry.getKey()) + DATE_SEPARATOR
+                                + entry.getValue();
+            }
+        } else {
+            final StringBuilder occurrences = new StringBuilder();
+            long previousDay = 0;
+            for (final Map.Entry<Date, Integer> entry : this.reservationIds.entrySet()) {
+                final long day = toEpochDay(entry.getKey());
+                if (occurrences.length() == 0) {
+                    previousDay = day;
+                } else {
+                    occurrences.append(OCCURRENCE_SEPARATOR);
+                }
+                occurrences.append(day - previousDay).append(OFFSET_SEPARATOR)
+                    .append(entry.getValue());
+                previousDay = day;
+            }
+            final String firstDate =
+                    this.reservationIds.isEmpty() ? "" : COMPACT_DATE.format(this.reservationIds
+                        .firstKey());
+            value = new String[] { VERSION_2_HEADER, firstDate, occurrences.toString() };
+        }
+        return value;
+    }
+
+    /**
+     * Get the reservation ID of an occurrence.
+     *
+     * @param originalDate the original date of the occurrence, without time
+     * @return the reservation ID, or null if not found
+     */
+    public Integer get(final Date originalDate) {
+        return this.reservationIds.get(originalDate);
+    }
+
+    /**
+     * Get all reservation IDs.
+     *
+     * @return unmodifiable map of the reservation IDs by original date
+     */
+    public Map<Date, Integer> asMap() {
+        return this.reservationIds;
+    }
+
+    /**
+     * Decode the occurrences in the compact encoding.
+     *
+     * @param firstDate the date of the first occurrence
+     * @param occurrences the occurrences
+     * @param reservationIds the map to add the reservation IDs to
+     */
+    private static void decodeCompact(final String firstDate, final String occurrences,
+            final Map<Date, Integer> reservationIds) {
+        if (occurrences.length() > 0) {
+            try {
+                long day = toEpochDay(COMPACT_DATE.parse(firstDate));
+                int start = 0;
+                while (start < occurrences.length()) {
+                    int end = occurrences.indexOf(OCCURRENCE_SEPARATOR, start);
+                    if (end < 0) {
+                        end = occurrences.length();
+                    }
+                    final int separator = occurrences.indexOf(OFFSET_SEPARATOR, start);
+                    day += Long.parseLong(occurrences.substring(start, separator));
+                    reservationIds.put(toDate(day),
+                        Integer.valueOf(occurrences.substring(separator + 1, end)));
+                    start = end + 1;
+                }
+            } catch (final ParseException exception) {
+                LOGGER.warn("Invalid date '" + firstDate + "' in recurring reservation ids.",
+                    exception);
+            } catch (final IndexOutOfBoundsException exception) {
+                // no offset separator, the remaining occurrences cannot be decoded
+                LOGGER.warn("Invalid recurring reservation ids '" + occurrences + "'.", exception);
+            } catch (final NumberFormatException exception) {
+                LOGGER.warn("Invalid recurring reservation ids '" + occurrences + "'.", exception);
+            }
+        }
+    }
+
+    /**
+     * Decode an occurrence in the original encoding.
+     *
+     * @param pair the date and reservation ID of the occurrence
+     * @param reservationIds the map to add the reservation ID to
+     */
+    private static void decodeOccurrence(final String pair,
+            final Map<Date, Integer> reservationIds) {
+        final int separator = pair.indexOf(DATE_SEPARATOR);
+        if (separator < 0 || pair.indexOf(DATE_SEPARATOR, separator + 1) >= 0) {
+            LOGGER.warn("No date separator '" + DATE_SEPARATOR + "' in '" + pair + "'.");
+        } else {
+            final String date = pair.substring(0, separator);
+            try {
+                reservationIds.put(ThreadSafeDateFormat.ISO_DATE.parse(date),
+                    Integer.valueOf(pair.substring(separator + 1)));
+            } catch (final ParseException exception) {
+                // ignore this pair
+                LOGGER.warn("Invalid date '" + date + "' in recurring reservation ids.",
+                    exception);
+            } catch (final NumberFormatException exception) {
+                LOGGER.warn("Invalid reservation id in '" + pair + "'.", exception);
+            }
+        }
+    }
+
+    /**
+     * Get the number of days since 1970-01-01 of a date in the default time zone.
+     *
+     * @param date the date
+     * @return the day number
+     */
+    private static long toEpochDay(final Date date) {
+        final Calendar local = Calendar.getInstance();
+        local.setTime(date);
+        final Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.clear();
+        utc.set(local.get(Calendar.YEAR), local.get(Calendar.MONTH),
+            local.get(Calendar.DAY_OF_MONTH));
+        return utc.getTimeInMillis() / DAY_MILLISECONDS;
+    }
+
+    /**
+     * Get the date at midnight in the default time zone of a day number.
+     *
+     * @param epochDay the number of days since 1970-01-01
+     * @return the date
+     */
+    private static Date toDate(final long epochDay) {
+        final Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.setTimeInMillis(epochDay * DAY_MILLISECONDS);
+        final Calendar local = Calendar.getInstance();
+        local.clear();
+        local.set(utc.get(Calendar.YEAR), utc.get(Calendar.MONTH),
+            utc.get(Calendar.DAY_OF_MONTH));
+        return local.getTime();
+    }
+
+}
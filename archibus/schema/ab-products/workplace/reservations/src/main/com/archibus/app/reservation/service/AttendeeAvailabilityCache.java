@@ -0,0 +1,193 @@
+package com.archibus.app.reservation.service;
+
+import java.util.*;
+
+import com.archibus.app.reservation.domain.*;
+import com.archibus.utility.StringUtil;
+
+/**
+ * Bounded cache of attendee free/busy information, keyed by mailbox, date range and time zone.
+ * <p>
+ * The attendee timeline is reloaded each time the date or time of the reservation is changed,
+ * which would retrieve the same availability from the calendar service again. Entries expire
+ * after a short time to live, so changes that are not reported to the cache are visible after
+ * that time. Changes reported by the calendar services and the Exchange listener remove all
+ * entries of the mailbox immediately. When the cache is full, the least recently used entry is
+ * removed.
+ * <p>
+ * The cached events are shared, so they must not be modified. Defined as a singleton Spring bean.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public class AttendeeAvailabilityCache {
+
+    /** Default maximum number of cached entries. */
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /** Default time to live of an entry, in seconds. */
+    private static final int DEFAULT_TIME_TO_LIVE_SECONDS = 60;
+
+    /** Milliseconds in a second. */
+    private static final long SECOND_MILLISECONDS = 1000L;
+
+    /** Separator between the parts of a key. */
+    private static final char SEPARATOR = '|';
+
+    /** Separator between the attendees of a reservation. */
+    private static final String ATTENDEE_SEPARATOR = ";";
+
+    /** Maximum number of cached entries. */
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    /** Time to live of an entry, in milliseconds. */
+    private long timeToLive = DEFAULT_TIME_TO_LIVE_SECONDS * SECOND_MILLISECONDS;
+
+    /** The cached entries, in access order so the eldest entry is the least recent. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+        DEFAULT_MAX_ENTRIES, 0.75f, true) {
+
+        /** Generated serial version ID. */
+        private static final long serialVersionUID = -2319485206538416537L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+            return size() > AttendeeAvailabilityCache.this.maxEntries;
+        }
+    };
+
+    /**
+     * Get the cached availability of an attendee.
+     *
+     * @param email the email address of the attendee
+     * @param startDate the start date
+     * @param endDate the end date
+     * @param timeZone the requested time zone
+     * @return the calendar events, or null if not cached or expired
+     */
+    public synchronized List<ICalendarEvent> get(final String email, final Date startDate,
+            final Date endDate, final TimeZone timeZone) {
+        final String key = createKey(email, startDate, endDate, timeZone);
+        final Entry entry = this.entries.get(key);
+        List<ICalendarEvent> events = null;
+        if (entry != null) {
+            if (entry.expires > System.currentTimeMillis()) {
+                events = entry.events;
+            } else {
+                this.entries.remove(key);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Store the availability of an attendee.
+     *
+     * @param email the email address of the attendee
+     * @param startDate the start date
+     * @param endDate the end date
+     * @param timeZone the requested time zone
+     * @param events the calendar events
+     */
+    public synchronized void put(final String email, final Date startDate, final Date endDate,
+            final TimeZone timeZone, final List<ICalendarEvent> events) {
+        this.entries.put(createKey(email, startDate, endDate, timeZone), new Entry(events,
+            System.currentTimeMillis() + this.timeToLive));
+    }
+
+    /**
+     * Remove all cached availability of an attendee, for example when a meeting was changed.
+     *
+     * @param email the email address of the attendee
+     */
+    public synchronized void invalidate(final String email) {
+        if (StringUtil.notNullOrEmpty(email)) {
+            // the cache is small, so checking all keys is cheaper than maintaining an index
+            final String prefix = email.trim().toLowerCase() + SEPARATOR;
+            final Iterator<String> keys = this.entries.keySet().iterator();
+            while (keys.hasNext()) {
+                if (keys.next().startsWith(prefix)) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all cached availability of the organizer and attendees of a reservation.
+     *
+     * @param reservation the reservation that is being changed
+     */
+    public void invalidate(final IReservation reservation) {
+        if (reservation != null) {
+            invalidate(reservation.getEmail());
+            if (StringUtil.notNullOrEmpty(reservation.getAttendees())) {
+                for (final String attendee : reservation.getAttendees().split(ATTENDEE_SEPARATOR)) {
+                    invalidate(attendee);
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the maximum number of cached entries.
+     *
+     * @param maxEntries the maximum number of entries
+     */
+    public synchronized void setMaxEntries(final int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Set the time to live of an entry.
+     *
+     * @param timeToLiveSeconds the time to live in seconds
+     */
+    public synchronized void setTimeToLiveSeconds(final int timeToLiveSeconds) {
+        this.timeToLive = timeToLiveSeconds * SECOND_MILLISECONDS;
+    }
+
+    /**
+     * Create the key for an entry. The email address must be the first element so the entries of
+     * an attendee can be found when invalidating.
+     *
+     * @param email the email address of the attendee
+     * @param startDate the start date
+     * @param endDate the end date
+     * @param timeZone the requested time zone
+     * @return the key
+     */
+    private static String createKey(final String email, final Date startDate, final Date endDate,
+            final TimeZone timeZone) {
+        final StringBuilder key = new StringBuilder();
+        key.append(email == null ? null : email.trim().toLowerCase()).append(SEPARATOR)
+            .append(startDate == null ? null : startDate.getTime()).append(SEPARATOR)
+            .append(endDate == null ? null : endDate.getTime()).append(SEPARATOR)
+            .append(timeZone == null ? null : timeZone.getID());
+        return key.toString();
+    }
+
+    /**
+     * A cached list of calendar events.
+     */
+    private static final class Entry {
+
+        /** The calendar events. */
+        private final List<ICalendarEvent> events;
+
+        /** Time when the entry expires, in milliseconds. */
+        private final long expires;
+
+        /**
+         * Create an entry.
+         *
+         * @param events the calendar events
+         * @param expires time when the entry expires
+         */
+        Entry(final List<ICalendarEvent> events, final long expires) {
+            this.events = Collections.unmodifiableList(new ArrayList<ICalendarEvent>(events));
+            this.expires = expires;
+        }
+    }
+
+}
@@ -86,6 +86,22 @@ public interface ICalendarService {
     void updateAppointmentOccurrence(final IReservation reservation, final IReservation originalReservation) 
             throws ExceptionBase;
     
+    /**
+     * Prepare for updating several appointments of the same recurrence series, so they can be
+     * retrieved at once instead of one by one. Call updateAppointmentOccurrence for each of them
+     * afterwards and releaseAppointmentOccurrences when done, also if an update fails.
+     * 
+     * @param originalReservations the original reservations of the occurrences to update
+     * @throws ExceptionBase translated exception
+     */
+    void prepareAppointmentOccurrences(final List<? extends IReservation> originalReservations)
+            throws ExceptionBase;
+    
+    /**
+     * Release the occurrences retrieved by prepareAppointmentOccurrences that were not updated.
+     */
+    void releaseAppointmentOccurrences();
+    
     /**
      * Cancel the appointment.
      * 
@@ -80,6 +80,28 @@ public interface IReservationService {
     List<RoomReservation> saveRecurringReservation(final IReservation reservation,
             final Recurrence recurrence) throws ReservationException;
 
+    /**
+     * Save a new recurring reservation in the background. The first occurrence is saved
+     * immediately, a background job creates the other occurrences. When the job fails or is
+     * stopped, all occurrences of the series are cancelled.
+     * 
+     * @param reservation the reservation for the first occurrence
+     * @param recurrence the recurrence
+     * @return the job id, or null if the reservations were saved immediately because the
+     *         reservation is part of an existing series
+     * @throws ReservationException when the first occurrence cannot be saved
+     */
+    String startSaveRecurringReservation(final IReservation reservation,
+            final Recurrence recurrence) throws ReservationException;
+
+    /**
+     * Get the progress of a recurring reservation being saved in the background.
+     * 
+     * @param jobId the job id returned when starting to save the recurring reservation
+     * @return the progress
+     */
+    RecurringReservationProgress getRecurringReservationProgress(final String jobId);
+
     /**
      * Save a reservation.
      * 
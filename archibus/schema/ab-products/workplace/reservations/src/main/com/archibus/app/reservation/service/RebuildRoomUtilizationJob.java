@@ -0,0 +1,89 @@
+package com.archibus.app.reservation.service;
+
+import java.util.*;
+
+import org.apache.log4j.Logger;
+
+import com.archibus.app.reservation.dao.datasource.RoomUtilizationSummary;
+import com.archibus.app.reservation.domain.TimePeriod;
+import com.archibus.datasource.SqlUtils;
+import com.archibus.jobmanager.*;
+import com.archibus.utility.ExceptionBase;
+
+/**
+ * Background job that rebuilds the daily room utilization summary for a range of days, e.g. to
+ * fill it for existing reservations.
+ * <p>
+ * Each day is rebuilt and committed separately, so the job status reports the number of days
+ * done and a stopped or failed job leaves the days before complete.
+ * <p>
+ * Used by ReservationUpgradeService.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public class RebuildRoomUtilizationJob extends JobBase {
+
+    /** The logger. */
+    private final Logger logger = Logger.getLogger(this.getClass());
+
+    /** The summary to rebuild. */
+    private final RoomUtilizationSummary summary;
+
+    /** The first day to rebuild. */
+    private final Date startDate;
+
+    /** The last day to rebuild. */
+    private final Date endDate;
+
+    /**
+     * Constructor.
+     *
+     * @param summary the summary to rebuild
+     * @param startDate the first day to rebuild
+     * @param endDate the last day to rebuild
+     */
+    public RebuildRoomUtilizationJob(final RoomUtilizationSummary summary, final Date startDate,
+            final Date endDate) {
+        super();
+        this.summary = summary;
+        this.startDate = TimePeriod.clearTime(startDate);
+        this.endDate = TimePeriod.clearTime(endDate);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        final Calendar day = Calendar.getInstance();
+        day.setTime(this.startDate);
+        int total = 0;
+        while (!day.getTime().after(this.endDate)) {
+            ++total;
+            day.add(Calendar.DATE, 1);
+        }
+        this.status.setTotalNumber(total);
+        this.status.setCurrentNumber(0);
+
+        day.setTime(this.startDate);
+        int done = 0;
+        try {
+            while (!this.stopRequested && done < total) {
+                this.summary.rebuild(day.getTime());
+                SqlUtils.commit();
+                ++done;
+                this.status.setCurrentNumber(done);
+                day.add(Calendar.DATE, 1);
+            }
+            this.status.setCode(this.stopRequested ? JobStatus.JOB_STOPPED
+                    : JobStatus.JOB_COMPLETE);
+        } catch (final ExceptionBase exception) {
+            SqlUtils.rollback();
+            this.logger.warn("Room utilization summary could not be rebuilt", exception);
+            this.status.setMessage(exception.getMessage());
+            this.status.setCode(JobStatus.JOB_FAILED);
+        }
+    }
+
+}
@@ -5,7 +5,7 @@ import java.util.*;
 import com.archibus.app.common.recurring.RecurringScheduleService;
 import com.archibus.app.reservation.dao.datasource.*;
 import com.archibus.app.reservation.domain.*;
-import com.archibus.datasource.DataSource;
+import com.archibus.app.reservation.domain.recurrence.*;
 import com.archibus.datasource.data.DataRecord;
 
 
@@ -53,33 +53,35 @@ public class RecurrenceService {
 
         final RecurringScheduleService recurringScheduleService = newRecurringScheduleService();
         if (parentId == null || parentId == 0) {
-            final List<Date> dateList =
-                    cropDateList(recurringScheduleService.getDatesList(startDate, endDate,
-                        recurringRule));
-
-            if (dateList.isEmpty()) { 
+            // calculate the first and last date directly, without listing all occurrences
+            final OccurrenceIterator occurrences =
+                    RecurrenceRule.parse(recurringRule).iterator(startDate, endDate,
+                        getMaxOccurrences());
+            recurringScheduleService.setRecurringSchedulePattern(startDate, endDate,
+                recurringRule);
+
+            totalOccurrences = occurrences.getCount();
+            if (totalOccurrences == 0) {
                 // @translatable
                 throw new ReservationException(
                     "The recurrence pattern does not yield any occurrences for your current selection. Please review the pattern.",
                     RecurrenceService.class);
             }
-            firstDate = dateList.get(0);
-            totalOccurrences = dateList.size();
-            lastDate = dateList.get(totalOccurrences - 1);
+            firstDate = occurrences.getDate(0);
+            lastDate = occurrences.getDate(totalOccurrences - 1);
         } else {
             firstDate = startDate;
-            this.roomReservationDataSource.addSort(
-                    this.roomReservationDataSource.getMainTableName(), Constants.DATE_START_FIELD_NAME,
-                    DataSource.SORT_DESC);
-            final List<RoomReservation> existingReservations =
-                    this.roomReservationDataSource.getByParentId(parentId, null, startDate);
-            if (existingReservations.isEmpty()) {
+            final Map<Integer, Date> existingDates =
+                    this.roomReservationDataSource.getOccurrenceDates(parentId, startDate);
+            if (existingDates.isEmpty()) {
                 // @translatable
                 throw new ReservationException("No reservations found with parent id {0}.",
                     RecurrenceService.class, parentId);
             }
-            totalOccurrences = existingReservations.size();
-            lastDate = existingReservations.get(0).getStartDate();
+            totalOccurrences = existingDates.size();
+            for (final Date date : existingDates.values()) {
+                lastDate = date;
+            }
             
             recurringScheduleService
                 .setRecurringSchedulePattern(firstDate, lastDate, recurringRule);
@@ -120,20 +122,22 @@ public class RecurrenceService {
         Date minDate = null;
         Date maxDate = null;
         
-        final List<RoomReservation> reservations =
-                this.roomReservationDataSource.getByParentId(parentId, null, null);
-        int index = 0;
+        // only the dates are retrieved, not the complete reservations
+        final Iterator<Map.Entry<Integer, Date>> occurrences =
+                this.roomReservationDataSource.getOccurrenceDates(parentId, null).entrySet()
+                    .iterator();
+        boolean found = false;
         // find the previous reservation
-        while (index < reservations.size()
-                && !reservations.get(index).getReserveId().equals(reservationId)) {
-            minDate = reservations.get(index).getStartDate();
-            ++index;
+        while (!found && occurrences.hasNext()) {
+            final Map.Entry<Integer, Date> occurrence = occurrences.next();
+            found = occurrence.getKey().equals(reservationId);
+            if (!found) {
+                minDate = occurrence.getValue();
+            }
         }
-        // move past the current reservation
-        ++index;
         // the next reservation determines the max date
-        if (index < reservations.size()) {
-            maxDate = reservations.get(index).getStartDate();
+        if (occurrences.hasNext()) {
+            maxDate = occurrences.next().getValue();
             final Calendar calendar = Calendar.getInstance();
             calendar.setTime(maxDate);
             calendar.add(Calendar.DATE, -1);
@@ -167,7 +171,7 @@ public class RecurrenceService {
     }
     
     /**
-     * Gets the date list.
+     * Gets the date list, limited to the maximum number of occurrences in reservations.
      * 
      * @param startDate the start date
      * @param endDate the end date
@@ -176,28 +180,8 @@ public class RecurrenceService {
      */
     public static List<Date> getDateList(final Date startDate, final Date endDate,
             final String recurrenceRule) {
-        final RecurringScheduleService recurringScheduleService = newRecurringScheduleService();
-
-        final List<Date> dateList =
-                recurringScheduleService.getDatesList(startDate, endDate, recurrenceRule);
-        return cropDateList(dateList);
-    }
-    
-    /**
-     * Crop the date list for the maximum number of occurrences in reservations.
-     * 
-     * @param dateList the list of dates
-     * @return the cropped list of dates
-     */
-    private static List<Date> cropDateList(final List<Date> dateList) {
-        final int maxOccurrences = getMaxOccurrences();
-        List<Date> result;
-        if (dateList.size() > maxOccurrences) {
-            result = dateList.subList(0, maxOccurrences);
-        } else {
-            result = dateList;
-        }
-        return result;
+        return RecurrenceRule.parse(recurrenceRule).getDates(startDate, endDate,
+            getMaxOccurrences());
     }
     
     /**
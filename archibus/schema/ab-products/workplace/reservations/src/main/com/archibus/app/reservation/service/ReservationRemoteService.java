@@ -92,6 +92,19 @@ public interface ReservationRemoteService {
     List<RoomArrangement> findAvailableRoomsRecurrence(RoomReservation reservation,
             Integer capacity, boolean allDayEvent, Recurrence recurrence) throws ExceptionBase;
     
+    /**
+     * Get the progress of a recurring room reservation being saved in the background. When the
+     * status is Completed, the reservations can be retrieved by unique id.
+     * 
+     * @param jobId the job id returned by startSaveRecurringRoomReservation
+     * @return the progress
+     * 
+     * @throws ExceptionBase ExceptionBase
+     */
+    @WebMethod(action = "getRecurringReservationProgress")
+    RecurringReservationProgress getRecurringReservationProgress(String jobId)
+            throws ExceptionBase;
+    
     /**
      * Get room reservation by primary key.
      * 
@@ -293,6 +306,20 @@ public interface ReservationRemoteService {
     @WebMethod(action = "saveRoomReservation")
     RoomReservation saveRoomReservation(RoomReservation reservation) throws ExceptionBase;
     
+    /**
+     * Start saving a new recurring room reservation. The first occurrence is saved immediately,
+     * the other occurrences are created in the background.
+     * 
+     * @param reservation the reservation
+     * @param recurrence the recurrence
+     * @return the job id for retrieving the progress, or null if all reservations were saved
+     *         immediately
+     * @throws ExceptionBase ExceptionBase
+     */
+    @WebMethod(action = "startSaveRecurringRoomReservation")
+    String startSaveRecurringRoomReservation(RoomReservation reservation, Recurrence recurrence)
+            throws ExceptionBase;
+    
     /**
      * Verify whether all reservations linked to an ID match a given recurrence pattern.
      * 
@@ -179,6 +179,15 @@ public class ReservationRemoteServiceImpl implements ReservationRemoteService {
         return this.spaceService.getFloors(filter);
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    public final RecurringReservationProgress getRecurringReservationProgress(
+            final String jobId) throws ExceptionBase {
+        ReservationsContextHelper.checkProjectContext();
+        return this.reservationService.getRecurringReservationProgress(jobId);
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -213,6 +222,16 @@ public class ReservationRemoteServiceImpl implements ReservationRemoteService {
         return this.getRoomReservationById(reservation.getReserveId());
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    public final String startSaveRecurringRoomReservation(final RoomReservation reservation,
+            final Recurrence recurrence) throws ExceptionBase {
+        this.employeeService.setRequestor(reservation);
+        ReservationsContextHelper.checkProjectContext();
+        return this.reservationService.startSaveRecurringReservation(reservation, recurrence);
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -10,6 +10,9 @@ import com.archibus.app.reservation.domain.recurrence.*;
 import com.archibus.app.reservation.service.actions.*;
 import com.archibus.app.reservation.service.helpers.ReservationServiceHelper;
 import com.archibus.app.reservation.util.TimeZoneConverter;
+import com.archibus.context.ContextStore;
+import com.archibus.datasource.SqlUtils;
+import com.archibus.jobmanager.JobStatus;
 import com.archibus.utility.StringUtil;
 
 /**
@@ -56,7 +59,7 @@ public class ReservationService implements IReservationService {
             final List<String> fixedResourceStandards, final boolean allDayEvent,
             final String timeZone) throws ReservationException {
 
-        return this.roomArrangementDataSource.findAvailableRooms(reservation, numberAttendees,
+        return this.roomArrangementDataSource.searchAvailableRooms(reservation, numberAttendees,
                 externalAllowed, fixedResourceStandards, allDayEvent, timeZone);
     }
 
@@ -147,28 +150,7 @@ public class ReservationService implements IReservationService {
 
         if (reservation instanceof RoomReservation) {            
             RoomReservation roomReservation = (RoomReservation) reservation;
-
-            if (roomReservation.getRoomAllocations().isEmpty()) {
-                // @translatable
-                throw new ReservationException("Room reservation has no room allocated.",
-                        ReservationService.class);
-            }
-
-            // if creating new reservation, make sure there are no leftover reservations with the
-            // same unique id
-            boolean leftOverReservations = false;
-            if (StringUtil.notNullOrEmpty(reservation.getUniqueId())
-                    && (reservation.getReserveId() == null || reservation.getReserveId() == 0)) {
-                final List<RoomReservation> reservations =
-                        this.roomReservationDataSource.getByUniqueId(reservation.getUniqueId(), null);
-                leftOverReservations = reservations != null && !reservations.isEmpty();
-            }
-            if (leftOverReservations) {
-                // @translatable
-                throw new ReservationException(
-                    "Reservation creation has timed out. \n\nTo resolve this please contact your ARCHIBUS Administrator to reduce the maximum number of occurrences that can be created. Afterwards, delete the appointment to cancel all orphaned reservations.\n",
-                        ReservationService.class);
-            } 
+            checkRecurringReservation(roomReservation);
 
             // when editing, fetch the existing reservation on this date
             // no need for timezone conversion, timezone is copied from new reservation object
@@ -192,8 +174,78 @@ public class ReservationService implements IReservationService {
         return savedReservations;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public final String startSaveRecurringReservation(final IReservation reservation,
+            final Recurrence recurrence) throws ReservationException {
+        String jobId = null;
+        if (reservation instanceof RoomReservation && reservation.getParentId() == null
+                && recurrence instanceof AbstractIntervalPattern) {
+            final RoomReservation roomReservation = (RoomReservation) reservation;
+            checkRecurringReservation(roomReservation);
 
+            // check the number of occurrences before saving anything
+            final AbstractIntervalPattern pattern = (AbstractIntervalPattern) recurrence;
+            final OccurrenceIterator occurrences = pattern.getOccurrences(true);
+            final RoomReservation activeReservation =
+                    saveFirstOccurrence(pattern, roomReservation);
+
+            final List<RoomReservation> savedReservations = new ArrayList<RoomReservation>();
+            final SaveRecurringReservationJob job =
+                    new SaveRecurringReservationJob(occurrences,
+                        new SaveRecurringReservationOccurrenceAction(savedReservations,
+                            this.roomReservationDataSource, this.roomArrangementDataSource,
+                            activeReservation), savedReservations,
+                        SaveRecurringReservationJob.DEFAULT_CHUNK_SIZE) {
+                        @Override
+                        protected void onSeriesSaved() {
+                            ReservationService.this.workRequestService.createWorkRequest(
+                                roomReservation, true);
+                        }
+
+                        @Override
+                        protected void onSeriesIncomplete() {
+                            ReservationService.this.cancelSeries(activeReservation
+                                .getParentId());
+                        }
+                    };
+
+            // the job saves the other occurrences in its own transactions
+            SqlUtils.commit();
+            jobId = ContextStore.get().getJobManager().startJob(job);
+        } else {
+            // changes to an existing series are saved immediately
+            this.saveRecurringReservation(reservation, recurrence);
+        }
+        return jobId;
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    public final RecurringReservationProgress getRecurringReservationProgress(
+            final String jobId) {
+        final JobStatus jobStatus = ContextStore.get().getJobManager().getJobStatus(jobId);
+        final RecurringReservationProgress progress =
+                new RecurringReservationProgress(jobId, RecurringReservationProgress.Status.Running,
+                    (int) jobStatus.getTotalNumber(), (int) jobStatus.getCurrentNumber());
+        switch (jobStatus.getCode()) {
+            case JobStatus.JOB_COMPLETE:
+                progress.setStatus(RecurringReservationProgress.Status.Completed);
+                break;
+            case JobStatus.JOB_STOPPED:
+                progress.setStatus(RecurringReservationProgress.Status.Stopped);
+                break;
+            case JobStatus.JOB_FAILED:
+                progress.setStatus(RecurringReservationProgress.Status.Failed);
+                progress.setMessage(jobStatus.getMessage());
+                break;
+            default:
+                break;
+        }
+        return progress;
+    }
  
     /**
      * {@inheritDoc}
@@ -336,20 +388,9 @@ public class ReservationService implements IReservationService {
         // for a new recurrent reservation, the dates are calculated
         if (recurrence instanceof AbstractIntervalPattern) {
             final AbstractIntervalPattern pattern = (AbstractIntervalPattern) recurrence;
-            final String requestorTimeZone = roomReservation.getTimeZone();
-            // save the first base reservation
-            saveReservation(roomReservation);
-            // Set its parent reservation ID.                
-            final int parentId = roomReservation.getParentId() == null 
-                    ? roomReservation.getReserveId() : roomReservation.getParentId();  
-            this.roomReservationDataSource.markRecurring(roomReservation,
-                    parentId, pattern.toString());
-            savedReservations.add(roomReservation);
-
-            // get the saved copy with the proper time zone
             final RoomReservation activeReservation =
-                    this.roomReservationDataSource.getActiveReservation(
-                            roomReservation.getReserveId(), requestorTimeZone);
+                    saveFirstOccurrence(pattern, roomReservation);
+            savedReservations.add(roomReservation);
 
             // loop through the pattern using the saved copy
             pattern.loopThroughRepeats(new SaveRecurringReservationOccurrenceAction(
@@ -358,7 +399,78 @@ public class ReservationService implements IReservationService {
         }
         return roomReservation;
     }
-    
+
+    /**
+     * Cancel all active occurrences of a recurring reservation that could not be created
+     * completely.
+     * 
+     * @param parentId the parent reservation id of the series
+     */
+    private void cancelSeries(final Integer parentId) {
+        final List<RoomReservation> occurrences =
+                this.roomReservationDataSource.getByParentId(parentId, null, null);
+        if (occurrences != null) {
+            for (final RoomReservation occurrence : occurrences) {
+                this.roomReservationDataSource.cancel(occurrence);
+            }
+        }
+    }
+
+    /**
+     * Save the first occurrence of a new recurring reservation and mark it as recurring.
+     * 
+     * @param pattern the recurrence pattern
+     * @param roomReservation the reservation for the first occurrence
+     * @return the saved copy of the first occurrence in the requestor time zone
+     */
+    private RoomReservation saveFirstOccurrence(final AbstractIntervalPattern pattern,
+            final RoomReservation roomReservation) {
+        final String requestorTimeZone = roomReservation.getTimeZone();
+        // save the first base reservation
+        saveReservation(roomReservation);
+        // Set its parent reservation ID.                
+        final int parentId = roomReservation.getParentId() == null 
+                ? roomReservation.getReserveId() : roomReservation.getParentId();  
+        this.roomReservationDataSource.markRecurring(roomReservation,
+                parentId, pattern.toString());
+
+        // get the saved copy with the proper time zone
+        return this.roomReservationDataSource.getActiveReservation(
+            roomReservation.getReserveId(), requestorTimeZone);
+    }
+
+    /**
+     * Check a recurring reservation before saving it.
+     * 
+     * @param roomReservation the room reservation
+     * @throws ReservationException when no room is allocated or leftover reservations exist
+     */
+    private void checkRecurringReservation(final RoomReservation roomReservation)
+            throws ReservationException {
+        if (roomReservation.getRoomAllocations().isEmpty()) {
+            // @translatable
+            throw new ReservationException("Room reservation has no room allocated.",
+                    ReservationService.class);
+        }
+
+        // if creating new reservation, make sure there are no leftover reservations with the
+        // same unique id
+        boolean leftOverReservations = false;
+        if (StringUtil.notNullOrEmpty(roomReservation.getUniqueId())
+                && (roomReservation.getReserveId() == null
+                        || roomReservation.getReserveId() == 0)) {
+            final List<RoomReservation> reservations =
+                    this.roomReservationDataSource.getByUniqueId(roomReservation.getUniqueId(),
+                        null);
+            leftOverReservations = reservations != null && !reservations.isEmpty();
+        }
+        if (leftOverReservations) {
+            // @translatable
+            throw new ReservationException(
+                "Reservation creation has timed out. \n\nTo resolve this please contact your ARCHIBUS Administrator to reduce the maximum number of occurrences that can be created. Afterwards, delete the appointment to cancel all orphaned reservations.\n",
+                    ReservationService.class);
+        }
+    }
     
     /**
      * Check recurring date modified.
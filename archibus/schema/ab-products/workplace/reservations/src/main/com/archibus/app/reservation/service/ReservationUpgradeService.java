@@ -9,7 +9,15 @@ import org.dom4j.io.SAXReader;
 
 import com.archibus.app.common.recurring.*;
 import com.archibus.app.reservation.dao.datasource.Constants;
+import com.archibus.app.reservation.dao.datasource.ReservationAttendeeDataSource;
+import com.archibus.app.reservation.dao.datasource.RoomUtilizationSummary;
 import com.archibus.app.reservation.domain.ReservationException;
+import com.archibus.app.reservation.util.ReservationIndexes;
+import com.archibus.app.reservation.util.ReservationIndexes.IndexDefinition;
+import com.archibus.app.reservation.util.ReservationTables;
+import com.archibus.app.reservation.util.ReservationTables.ColumnDefinition;
+import com.archibus.app.reservation.util.ReservationTables.TableDefinition;
+import com.archibus.context.ContextStore;
 import com.archibus.datasource.*;
 import com.archibus.datasource.data.DataRecord;
 import com.archibus.datasource.restriction.Restrictions;
@@ -35,6 +43,9 @@ public class ReservationUpgradeService {
     /** Recurring rule field name. */
     private static final String RECURRING_RULE = "recurring_rule";
     
+    /** Attendees field name. */
+    private static final String ATTENDEES = "attendees";
+    
     /** Parent reservation id field name. */
     private static final String RES_PARENT = "res_parent";
     
@@ -50,6 +61,50 @@ public class ReservationUpgradeService {
     /** A single whitespace. */
     private static final String WHITESPACE = " ";
     
+    /** Table used to return the names of existing indexes, in its table_name field. */
+    private static final String TABLES_TABLE = "afm_tbls";
+    
+    /** Field of the tables table used to return the names of existing indexes. */
+    private static final String TABLE_NAME = "table_name";
+    
+    /** Data dictionary table of the fields. */
+    private static final String FIELDS_TABLE = "afm_flds";
+    
+    /** Field of the data dictionary tables containing the field name. */
+    private static final String FIELD_NAME = "field_name";
+    
+    /** Data dictionary type of a regular data field. */
+    private static final int AFM_TYPE_DATA = 2050;
+    
+    /** Oracle query for an existing table by name. */
+    private static final String ORACLE_TABLE_QUERY =
+            "SELECT table_name FROM user_tables"
+                    + " WHERE table_name = UPPER(${parameters['tableName']})";
+    
+    /** SQL Server query for an existing table by name. */
+    private static final String SQL_SERVER_TABLE_QUERY =
+            "SELECT name AS table_name FROM sys.tables WHERE name = ${parameters['tableName']}";
+    
+    /** Sybase query for an existing table by name. */
+    private static final String SYBASE_TABLE_QUERY =
+            "SELECT name AS table_name FROM sysobjects WHERE name = ${parameters['tableName']}"
+                    + " AND type = 'U'";
+    
+    /** Oracle query for an existing index by name. */
+    private static final String ORACLE_INDEX_QUERY =
+            "SELECT index_name AS table_name FROM user_indexes"
+                    + " WHERE index_name = UPPER(${parameters['indexName']})";
+    
+    /** SQL Server query for an existing index by table and name. */
+    private static final String SQL_SERVER_INDEX_QUERY =
+            "SELECT name AS table_name FROM sys.indexes WHERE name = ${parameters['indexName']}"
+                    + " AND object_id = OBJECT_ID(${parameters['tableName']})";
+    
+    /** Sybase query for an existing index by table and name. */
+    private static final String SYBASE_INDEX_QUERY =
+            "SELECT name AS table_name FROM sysindexes WHERE name = ${parameters['indexName']}"
+                    + " AND id = OBJECT_ID(${parameters['tableName']})";
+    
     /** The logger. */
     private final Logger logger = Logger.getLogger(this.getClass());
     
@@ -104,12 +159,212 @@ public class ReservationUpgradeService {
         }
     }
     
+    /**
+     * Create the tables the reservations module adds to the standard schema and add them to the
+     * data dictionary. Tables that already exist in the database catalog are not created again,
+     * data dictionary entries that exist are not changed. Reload the data dictionary afterwards.
+     * 
+     * @return the number of tables created
+     *         <p>
+     *         Suppress warning PMD.AvoidUsingSQL in this method.
+     *         <p>
+     *         Justification: DDL statements cannot be executed via data sources.
+     */
+    @SuppressWarnings("PMD.AvoidUsingSql")
+    public int createTables() {
+        int created = 0;
+        final DataSource tablesDataSource =
+                DataSourceFactory.createDataSourceForFields(TABLES_TABLE, new String[] {
+                        TABLE_NAME, "title", "is_sql_view" });
+        for (final TableDefinition table : ReservationTables.getDefinitions()) {
+            if (tableExists(table.getName())) {
+                this.logger.info("Table " + table.getName() + " exists already.");
+            } else {
+                SqlUtils.executeUpdate(table.getName(),
+                    table.getCreateStatement(tablesDataSource.isOracle()));
+                ++created;
+            }
+            addToDataDictionary(tablesDataSource, table);
+        }
+        return created;
+    }
+    
+    /**
+     * Fill the attendee table for the active reservations, from the attendees stored in each
+     * reservation. The attendee table is updated automatically when saving reservations, so this
+     * is only required once after creating the table.
+     * 
+     * @return the number of attendees stored
+     */
+    public int fillAttendeeTable() {
+        final ReservationAttendeeDataSource attendeeDataSource =
+                (ReservationAttendeeDataSource) ContextStore.get().getBean(
+                    "reservationAttendeeDataSource");
+        final DataSource reservationDataSource =
+                DataSourceFactory.createDataSourceForFields(RESERVE_TABLE, new String[] {
+                        Constants.RES_ID, ATTENDEES });
+        reservationDataSource.addRestriction(Restrictions.isNotNull(RESERVE_TABLE, ATTENDEES));
+        reservationDataSource.addRestriction(Restrictions.in(RESERVE_TABLE, Constants.STATUS,
+            Constants.STATUS_AWAITING_APP + COMMA + Constants.STATUS_CONFIRMED));
+        reservationDataSource.setMaxRecords(0);
+        int stored = 0;
+        for (final DataRecord record : reservationDataSource.getRecords()) {
+            stored +=
+                    attendeeDataSource.update(
+                        record.getInt(RESERVE_TABLE + Constants.DOT + Constants.RES_ID),
+                        record.getString(RESERVE_TABLE + Constants.DOT + ATTENDEES));
+        }
+        return stored;
+    }
+    
+    /**
+     * Create the indexes supporting the reservation availability and lookup queries. Indexes that
+     * already exist in the database catalog are skipped. Errors creating the other indexes are not
+     * caught.
+     * 
+     * @return the number of indexes created
+     *         <p>
+     *         Suppress warning PMD.AvoidUsingSQL in this method.
+     *         <p>
+     *         Justification: DDL statements cannot be executed via data sources.
+     */
+    @SuppressWarnings("PMD.AvoidUsingSql")
+    public int createIndexes() {
+        int created = 0;
+        for (final IndexDefinition index : ReservationIndexes.getDefinitions()) {
+            if (indexExists(index)) {
+                this.logger.info("Index " + index.getName() + " on " + index.getTableName()
+                        + " exists already.");
+            } else {
+                SqlUtils.executeUpdate(index.getTableName(), index.getCreateStatement());
+                ++created;
+            }
+        }
+        return created;
+    }
+    
+    /**
+     * Check in the catalog of the database whether a table exists.
+     * 
+     * @param tableName the table name
+     * @return true if a table with the same name exists
+     */
+    private boolean tableExists(final String tableName) {
+        final DataSource dataSource =
+                DataSourceFactory.createDataSourceForFields(TABLES_TABLE,
+                    new String[] { TABLE_NAME });
+        if (dataSource.isOracle()) {
+            dataSource.addQuery(ORACLE_TABLE_QUERY);
+        } else if (dataSource.isSqlServer()) {
+            dataSource.addQuery(SQL_SERVER_TABLE_QUERY);
+        } else {
+            dataSource.addQuery(SYBASE_TABLE_QUERY);
+        }
+        dataSource.addParameter("tableName", tableName, DataSource.DATA_TYPE_TEXT);
+        return dataSource.getRecord() != null;
+    }
+    
+    /**
+     * Add the table and its fields to the data dictionary, if they are not defined yet.
+     * 
+     * @param tablesDataSource data source for the data dictionary table of the tables
+     * @param table the table definition
+     */
+    private void addToDataDictionary(final DataSource tablesDataSource,
+            final TableDefinition table) {
+        tablesDataSource.clearRestrictions();
+        tablesDataSource.addRestriction(Restrictions.eq(TABLES_TABLE, TABLE_NAME,
+            table.getName()));
+        if (tablesDataSource.getRecord() == null) {
+            final DataRecord record = tablesDataSource.createNewRecord();
+            record.setValue(TABLES_TABLE + Constants.DOT + TABLE_NAME, table.getName());
+            record.setValue(TABLES_TABLE + ".title", table.getTitle());
+            record.setValue(TABLES_TABLE + ".is_sql_view", 0);
+            tablesDataSource.saveRecord(record);
+        }
+        
+        final String prefix = FIELDS_TABLE + Constants.DOT;
+        final DataSource fieldsDataSource =
+                DataSourceFactory.createDataSourceForFields(FIELDS_TABLE, new String[] {
+                        TABLE_NAME, FIELD_NAME, "ml_heading", "data_type", "afm_size",
+                        "decimals", "primary_key", "allow_null", "ref_table", "afm_type" });
+        for (final ColumnDefinition column : table.getColumns()) {
+            fieldsDataSource.clearRestrictions();
+            fieldsDataSource.addRestriction(Restrictions.eq(FIELDS_TABLE, TABLE_NAME,
+                table.getName()));
+            fieldsDataSource.addRestriction(Restrictions.eq(FIELDS_TABLE, FIELD_NAME,
+                column.getName()));
+            if (fieldsDataSource.getRecord() == null) {
+                final DataRecord record = fieldsDataSource.createNewRecord();
+                record.setValue(prefix + TABLE_NAME, table.getName());
+                record.setValue(prefix + FIELD_NAME, column.getName());
+                record.setValue(prefix + "ml_heading", column.getHeading());
+                record.setValue(prefix + "data_type", column.getDataType());
+                record.setValue(prefix + "afm_size", column.getSize());
+                record.setValue(prefix + "decimals", column.getDecimals());
+                record.setValue(prefix + "primary_key", column.getPrimaryKey());
+                record.setValue(prefix + "allow_null", column.isPrimaryKey() ? 0 : 1);
+                record.setValue(prefix + "ref_table", column.getRefTable());
+                record.setValue(prefix + "afm_type", AFM_TYPE_DATA);
+                fieldsDataSource.saveRecord(record);
+            }
+        }
+    }
+    
+    /**
+     * Check in the catalog of the database whether an index exists.
+     * 
+     * @param index the index definition
+     * @return true if an index with the same name exists
+     */
+    private boolean indexExists(final IndexDefinition index) {
+        final DataSource dataSource =
+                DataSourceFactory.createDataSourceForFields(TABLES_TABLE,
+                    new String[] { TABLE_NAME });
+        if (dataSource.isOracle()) {
+            dataSource.addQuery(ORACLE_INDEX_QUERY);
+        } else if (dataSource.isSqlServer()) {
+            dataSource.addQuery(SQL_SERVER_INDEX_QUERY);
+        } else {
+            dataSource.addQuery(SYBASE_INDEX_QUERY);
+        }
+        dataSource.addParameter("indexName", index.getName(), DataSource.DATA_TYPE_TEXT);
+        dataSource.addParameter("tableName", index.getTableName(), DataSource.DATA_TYPE_TEXT);
+        return dataSource.getRecord() != null;
+    }
+    
+    /**
+     * Start rebuilding the daily room utilization summary for a range of days, e.g. to fill it
+     * for the existing reservations after installing it.
+     * 
+     * @param startDate the first day to rebuild
+     * @param endDate the last day to rebuild
+     * @return the id of the job that rebuilds the summary
+     * @throws ReservationException when the summary is disabled
+     */
+    public String rebuildRoomUtilization(final Date startDate, final Date endDate)
+            throws ReservationException {
+        final RoomUtilizationSummary summary =
+                (RoomUtilizationSummary) ContextStore.get().getBean("roomUtilizationSummary");
+        if (!summary.isEnabled()) {
+            // @translatable
+            throw new ReservationException(
+                "The room utilization summary is disabled in the roomUtilizationSummary bean.",
+                ReservationUpgradeService.class);
+        }
+        return ContextStore.get().getJobManager()
+            .startJob(new RebuildRoomUtilizationJob(summary, startDate, endDate));
+    }
+    
     /**
      * This method calls all upgrade methods defined in this class.
      */
     public void run() {
         convertResources();
         convertRecurringRule();
+        createTables();
+        createIndexes();
+        fillAttendeeTable();
     }
     
     /**
@@ -0,0 +1,350 @@
+package com.archibus.app.reservation.service;
+
+import java.sql.Time;
+import java.util.*;
+
+import org.json.*;
+
+import com.archibus.app.reservation.dao.datasource.*;
+import com.archibus.app.reservation.domain.*;
+import com.archibus.utility.StringUtil;
+
+/**
+ * Computes the number of free rooms in a building for each time slot of a day, grouped by
+ * capacity band.
+ * <p>
+ * The room arrangements the user may reserve and the room allocations of the building are read
+ * with one query each. For each room the busy periods are sorted and merged, so a room is counted
+ * once per slot even when several of its configurations are allocated. The merged periods are
+ * added to a difference array per capacity band and a single sweep over the slots yields the
+ * number of busy rooms, instead of checking each room for each slot.
+ * <p>
+ * A room is busy when any of its configurations is allocated, including the pre- and post-block
+ * time of the allocated arrangement, and outside the reservable hours of its arrangements.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public class RoomHeatmapService {
+
+    /** Length of a time slot in minutes. */
+    public static final int SLOT_MINUTES = 30;
+
+    /** JSON property name for the slot length. */
+    private static final String JSON_SLOT_MINUTES = "slotMinutes";
+
+    /** JSON property name for the capacity bands. */
+    private static final String JSON_BANDS = "bands";
+
+    /** JSON property name for the free room counts. */
+    private static final String JSON_FREE = "free";
+
+    /** JSON property name for the minimum capacity of a band. */
+    private static final String JSON_MIN_CAPACITY = "minCapacity";
+
+    /** JSON property name for the maximum capacity of a band. */
+    private static final String JSON_MAX_CAPACITY = "maxCapacity";
+
+    /** JSON property name for the number of rooms in a band. */
+    private static final String JSON_ROOMS = "rooms";
+
+    /** Default upper limits of the capacity bands, the last band has no upper limit. */
+    private static final List<Integer> DEFAULT_CAPACITY_LIMITS = Collections
+        .unmodifiableList(Arrays.asList(4, 8, 12, 20, 50));
+
+    /** Number of time slots in a day. */
+    private static final int SLOT_COUNT = CompactTimePeriod.MINUTES_IN_DAY / SLOT_MINUTES;
+
+    /** Separator between the values in a key. */
+    private static final char KEY_SEPARATOR = '|';
+
+    /** The room arrangement data source. */
+    private RoomArrangementDataSource roomArrangementDataSource;
+
+    /** The room allocation data source. */
+    private RoomAllocationDataSource roomAllocationDataSource;
+
+    /**
+     * Load the number of free rooms in a building for each slot of a day.
+     * <p>
+     * The result contains the slot length, the capacity bands with their number of rooms and a
+     * matrix with one array per band containing the number of free rooms for each slot of the
+     * day, starting at midnight.
+     *
+     * @param blId the building id
+     * @param date the date in building time
+     * @param capacityLimits the upper capacity limit of each band in ascending order, or null for
+     *            the default bands; a last band without upper limit is added
+     * @return the heatmap
+     * @throws ReservationException when no building is specified
+     */
+    public JSONObject loadBuildingHeatmap(final String blId, final Date date,
+            final List<Integer> capacityLimits) throws ReservationException {
+        if (StringUtil.isNullOrEmpty(blId) || date == null) {
+            // @translatable
+            throw new ReservationException("Building and date are required for the heatmap.",
+                RoomHeatmapService.class);
+        }
+        return computeHeatmap(this.roomArrangementDataSource.getReservableRoomArrangements(blId),
+            this.roomAllocationDataSource.getActiveRoomAllocations(blId,
+                TimePeriod.clearTime(date)), capacityLimits);
+    }
+
+    /**
+     * Set the room arrangement data source.
+     *
+     * @param roomArrangementDataSource the room arrangement data source
+     */
+    public void setRoomArrangementDataSource(
+            final RoomArrangementDataSource roomArrangementDataSource) {
+        this.roomArrangementDataSource = roomArrangementDataSource;
+    }
+
+    /**
+     * Set the room allocation data source.
+     *
+     * @param roomAllocationDataSource the room allocation data source
+     */
+    public void setRoomAllocationDataSource(
+            final RoomAllocationDataSource roomAllocationDataSource) {
+        this.roomAllocationDataSource = roomAllocationDataSource;
+    }
+
+    /**
+     * Compute the heatmap of the rooms of a building on a day.
+     *
+     * @param roomArrangements the reservable room arrangements of the building
+     * @param allocations the active room allocations in the building on the day
+     * @param capacityLimits the upper capacity limit of each band, or null for the default bands
+     * @return the heatmap
+     */
+    static JSONObject computeHeatmap(final List<RoomArrangement> roomArrangements,
+            final List<RoomAllocation> allocations, final List<Integer> capacityLimits) {
+        final List<Integer> limits = new ArrayList<Integer>(
+            capacityLimits == null ? DEFAULT_CAPACITY_LIMITS : capacityLimits);
+        Collections.sort(limits);
+
+        final Map<String, Room> rooms = new LinkedHashMap<String, Room>();
+        final Map<String, RoomArrangement> arrangements = new HashMap<String, RoomArrangement>();
+        for (final RoomArrangement arrangement : roomArrangements) {
+            arrangements.put(
+                createKey(arrangement.getFlId(), arrangement.getRmId())
+                        + KEY_SEPARATOR
+                        + createKey(arrangement.getConfigId(), arrangement.getArrangeTypeId()),
+                arrangement);
+            final String roomKey = createKey(arrangement.getFlId(), arrangement.getRmId());
+            Room room = rooms.get(roomKey);
+            if (room == null) {
+                room = new Room();
+                rooms.put(roomKey, room);
+            }
+            room.addArrangement(arrangement);
+        }
+
+        for (final RoomAllocation allocation : allocations) {
+            final String roomKey = createKey(allocation.getFlId(), allocation.getRmId());
+            final Room room = rooms.get(roomKey);
+            // allocations of rooms that are no longer reservable are not relevant
+            if (room != null) {
+                room.addAllocation(allocation, arrangements.get(roomKey + KEY_SEPARATOR
+                        + createKey(allocation.getConfigId(), allocation.getArrangeTypeId())));
+            }
+        }
+
+        final int bandCount = limits.size() + 1;
+        final int[] roomsInBand = new int[bandCount];
+        final int[][] busyChanges = new int[bandCount][SLOT_COUNT + 1];
+        for (final Room room : rooms.values()) {
+            final int band = getBand(room.capacity, limits);
+            ++roomsInBand[band];
+            room.addBusySlots(busyChanges[band]);
+        }
+
+        return createHeatmap(limits, roomsInBand, busyChanges);
+    }
+
+    /**
+     * Create the heatmap by sweeping over the slots of each band.
+     *
+     * @param limits the upper capacity limits of the bands
+     * @param roomsInBand the number of rooms in each band
+     * @param busyChanges the change in the number of busy rooms at each slot, for each band
+     * @return the heatmap
+     */
+    private static JSONObject createHeatmap(final List<Integer> limits, final int[] roomsInBand,
+            final int[][] busyChanges) {
+        final JSONArray bands = new JSONArray();
+        final JSONArray free = new JSONArray();
+        for (int band = 0; band < roomsInBand.length; ++band) {
+            final JSONObject bandObject = new JSONObject();
+            bandObject.put(JSON_MIN_CAPACITY, band == 0 ? 0 : limits.get(band - 1) + 1);
+            if (band < limits.size()) {
+                bandObject.put(JSON_MAX_CAPACITY, limits.get(band));
+            }
+            bandObject.put(JSON_ROOMS, roomsInBand[band]);
+            bands.put(bandObject);
+
+            final JSONArray freeInBand = new JSONArray();
+            int busy = 0;
+            for (int slot = 0; slot < SLOT_COUNT; ++slot) {
+                busy += busyChanges[band][slot];
+                freeInBand.put(roomsInBand[band] - busy);
+            }
+            free.put(freeInBand);
+        }
+
+        final JSONObject heatmap = new JSONObject();
+        heatmap.put(JSON_SLOT_MINUTES, SLOT_MINUTES);
+        heatmap.put(JSON_BANDS, bands);
+        heatmap.put(JSON_FREE, free);
+        return heatmap;
+    }
+
+    /**
+     * Get the capacity band of a room.
+     *
+     * @param capacity the capacity of the room
+     * @param limits the upper capacity limits of the bands, in ascending order
+     * @return the index of the band
+     */
+    private static int getBand(final int capacity, final List<Integer> limits) {
+        int band = 0;
+        while (band < limits.size() && capacity > limits.get(band)) {
+            ++band;
+        }
+        return band;
+    }
+
+    /**
+     * Create a key from two values.
+     *
+     * @param first the first value
+     * @param second the second value
+     * @return the key
+     */
+    private static String createKey(final String first, final String second) {
+        return first + KEY_SEPARATOR + second;
+    }
+
+    /**
+     * Get the minute of the day of a time, where midnight as an end time is the end of the day.
+     *
+     * @param time the time
+     * @param start the start of the period the time ends, or -1 if the time is a start time
+     * @return the minute of the day
+     */
+    private static int toMinute(final Time time, final int start) {
+        int minute = CompactTimePeriod.toMinuteOfDay(time);
+        if (start >= 0 && minute <= start) {
+            minute = CompactTimePeriod.MINUTES_IN_DAY;
+        }
+        return minute;
+    }
+
+    /**
+     * The availability of a room during the day.
+     */
+    private static final class Room {
+
+        /** The largest capacity of the arrangements of the room. */
+        private int capacity;
+
+        /** Start of the reservable hours, in minutes. */
+        private int dayStart = CompactTimePeriod.MINUTES_IN_DAY;
+
+        /** End of the reservable hours, in minutes. */
+        private int dayEnd;
+
+        /** The busy periods as start and end minute. */
+        private final List<int[]> busyPeriods = new ArrayList<int[]>();
+
+        /**
+         * Add an arrangement of the room.
+         *
+         * @param arrangement the room arrangement
+         */
+        void addArrangement(final RoomArrangement arrangement) {
+            if (arrangement.getMaxCapacity() != null) {
+                this.capacity = Math.max(this.capacity, arrangement.getMaxCapacity());
+            }
+            int start = 0;
+            if (arrangement.getDayStart() != null) {
+                start = toMinute(arrangement.getDayStart(), -1);
+            }
+            int end = CompactTimePeriod.MINUTES_IN_DAY;
+            if (arrangement.getDayEnd() != null) {
+                end = toMinute(arrangement.getDayEnd(), start);
+            }
+            this.dayStart = Math.min(this.dayStart, start);
+            this.dayEnd = Math.max(this.dayEnd, end);
+        }
+
+        /**
+         * Add an allocation of the room.
+         *
+         * @param allocation the room allocation
+         * @param arrangement the allocated arrangement, or null if not found
+         */
+        void addAllocation(final RoomAllocation allocation, final RoomArrangement arrangement) {
+            int start = toMinute(allocation.getStartTime(), -1);
+            int end = toMinute(allocation.getEndTime(), start);
+            if (arrangement != null) {
+                if (arrangement.getPreBlock() != null) {
+                    start -= arrangement.getPreBlock();
+                }
+                if (arrangement.getPostBlock() != null) {
+                    end += arrangement.getPostBlock();
+                }
+            }
+            this.busyPeriods.add(new int[] { start, end });
+        }
+
+        /**
+         * Add the slots in which the room is busy to the difference array of its band. Busy
+         * periods that overlap or touch are merged first, so each slot is counted once.
+         *
+         * @param busyChanges the change in the number of busy rooms at each slot
+         */
+        void addBusySlots(final int[] busyChanges) {
+            this.busyPeriods.add(new int[] { 0, this.dayStart });
+            this.busyPeriods.add(new int[] { this.dayEnd, CompactTimePeriod.MINUTES_IN_DAY });
+            Collections.sort(this.busyPeriods, new Comparator<int[]>() {
+                public int compare(final int[] first, final int[] second) {
+                    return first[0] < second[0] ? -1 : (first[0] == second[0] ? 0 : 1);
+                }
+            });
+
+            int firstSlot = -1;
+            int endSlot = -1;
+            for (final int[] period : this.busyPeriods) {
+                final int periodFirstSlot = Math.max(0, period[0] / SLOT_MINUTES);
+                final int periodEndSlot =
+                        Math.min(SLOT_COUNT, (period[1] + SLOT_MINUTES - 1) / SLOT_MINUTES);
+                if (periodEndSlot > periodFirstSlot) {
+                    if (periodFirstSlot > endSlot) {
+                        addSlots(busyChanges, firstSlot, endSlot);
+                        firstSlot = periodFirstSlot;
+                    }
+                    endSlot = Math.max(endSlot, periodEndSlot);
+                }
+            }
+            addSlots(busyChanges, firstSlot, endSlot);
+        }
+
+        /**
+         * Add a range of busy slots to the difference array.
+         *
+         * @param busyChanges the change in the number of busy rooms at each slot
+         * @param firstSlot the first busy slot, or -1 if there is no range
+         * @param endSlot the slot after the last busy slot
+         */
+        private static void addSlots(final int[] busyChanges, final int firstSlot,
+                final int endSlot) {
+            if (firstSlot >= 0) {
+                ++busyChanges[firstSlot];
+                --busyChanges[endSlot];
+            }
+        }
+    }
+
+}
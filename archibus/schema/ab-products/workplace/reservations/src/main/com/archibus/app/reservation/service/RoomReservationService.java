@@ -12,7 +12,7 @@ import com.archibus.app.reservation.domain.recurrence.Recurrence;
 import com.archibus.app.reservation.service.helpers.ReservationServiceHelper;
 import com.archibus.app.reservation.util.*;
 import com.archibus.datasource.data.*;
-import com.archibus.utility.LocalDateTimeUtil;
+import com.archibus.utility.*;
 
 /**
  * Room Reservation Service for workflow rules in the new reservation module.
@@ -102,27 +102,8 @@ public class RoomReservationService extends RoomReservationServiceBase {
             final DataRecord roomAllocation, final DataSetList resourceList,
             final DataSetList cateringList) {
 
-        if (reservation.getDate(RESERVE_DATE_END) == null) {
-            reservation.setValue(RESERVE_DATE_END, reservation.getDate(RESERVE_DATE_START));
-        } 
-
         final RoomReservation roomReservation =
-                (RoomReservation) this.roomReservationDataSource.convertRecordToObject(reservation);   
-
-        // make sure the date of time values are set to 1899 
-        roomReservation.setStartTime(new Time(TimePeriod.clearDate(roomReservation.getStartTime()).getTime()));
-        roomReservation.setEndTime(new Time(TimePeriod.clearDate(roomReservation.getEndTime()).getTime()));       
-
-        // add the room allocation to the reservation
-        roomReservation.addRoomAllocation(this.roomAllocationDataSource
-                .convertRecordToObject(roomAllocation));
-
-        this.roomReservationDataSource.addResourceList(roomReservation, cateringList);
-        this.roomReservationDataSource.addResourceList(roomReservation, resourceList);
-        ReservationServiceHelper.validateEmails(roomReservation);
-
-        // check the start and end time window
-        ReservationServiceHelper.checkResourceAllocations(roomReservation);
+                convertReservation(reservation, roomAllocation, resourceList, cateringList);
 
         Recurrence recurrence = null;
         List<RoomReservation> createdReservations = null;
@@ -158,13 +139,7 @@ public class RoomReservationService extends RoomReservationServiceBase {
             storedReservation.setUniqueId(roomReservation.getUniqueId());
             this.roomReservationDataSource.update(storedReservation);
         } else {
-            // set the unique id for all reservation occurrences
-            for (final RoomReservation createdReservation : createdReservations) {
-                final RoomReservation storedReservation =
-                        this.roomReservationDataSource.get(createdReservation.getReserveId());
-                storedReservation.setUniqueId(roomReservation.getUniqueId());
-                this.roomReservationDataSource.update(storedReservation);
-            }
+            storeUniqueId(roomReservation.getUniqueId(), createdReservations);
         }
 
         // update the reservation record to return
@@ -181,6 +156,83 @@ public class RoomReservationService extends RoomReservationServiceBase {
     } 
     
  
+    /**
+     * Start saving a new recurring room reservation in the background. The first occurrence is
+     * saved immediately. Poll getRecurringReservationProgress with the returned job id and call
+     * completeRecurringRoomReservation when the job is completed.
+     * 
+     * @param reservation the reservation
+     * @param roomAllocation the room allocation
+     * @param resourceList the resource list
+     * @param cateringList the catering list
+     * @return JSON object with the job id and the reservation id of the first occurrence
+     */
+    public JSONObject startSaveRecurringRoomReservation(final DataRecord reservation,
+            final DataRecord roomAllocation, final DataSetList resourceList,
+            final DataSetList cateringList) {
+        final RoomReservation roomReservation =
+                convertReservation(reservation, roomAllocation, resourceList, cateringList);
+        if (!ReservationServiceHelper.isNewRecurrence(roomReservation)
+                || roomReservation.getReserveId() != null) {
+            // @translatable
+            throw new ReservationException(
+                "Only a new recurring reservation can be saved in the background.",
+                RoomReservationService.class);
+        }
+        final Recurrence recurrence =
+                ReservationServiceHelper.prepareNewRecurrence(roomReservation);
+        final String jobId =
+                this.reservationService.startSaveRecurringReservation(roomReservation, recurrence);
+
+        final JSONObject result = new JSONObject();
+        result.put("jobId", jobId);
+        result.put(Constants.RES_ID, roomReservation.getReserveId());
+        return result;
+    }
+
+    /**
+     * Create the calendar event of a recurring room reservation saved in the background, after
+     * the job is completed. Nothing is created if the series already has a calendar event.
+     * 
+     * @param jobId the job id returned by startSaveRecurringRoomReservation
+     * @param reservationId the reservation id of the first occurrence
+     */
+    public void completeRecurringRoomReservation(final String jobId, final int reservationId) {
+        final RecurringReservationProgress progress =
+                this.reservationService.getRecurringReservationProgress(jobId);
+        if (!RecurringReservationProgress.Status.Completed.equals(progress.getStatus())) {
+            // @translatable
+            throw new ReservationException(
+                "Recurring reservation [{0}] is not completely saved, status {1}.",
+                RoomReservationService.class, reservationId, progress.getStatus());
+        }
+        final RoomReservation roomReservation =
+                this.roomReservationDataSource.getActiveReservation(reservationId, null);
+        if (roomReservation == null || roomReservation.getParentId() == null) {
+            // @translatable
+            throw new ReservationException("Recurring reservation [{0}] not found.",
+                RoomReservationService.class, reservationId);
+        }
+        // the calendar event can already be created by a previous call
+        if (StringUtil.isNullOrEmpty(roomReservation.getUniqueId())) {
+            final List<RoomReservation> createdReservations =
+                    this.roomReservationDataSource.getByParentId(roomReservation.getParentId(),
+                        null, null);
+            final Date endDate =
+                    createdReservations.get(createdReservations.size() - 1).getStartDate();
+            roomReservation.setRecurrence(Recurrence.parseRecurrence(
+                roomReservation.getStartDate(), endDate, roomReservation.getRecurringRule()));
+            roomReservation.setCreatedReservations(createdReservations);
+            roomReservation.setTimeZone(TimeZoneConverter
+                .getTimeZoneIdForBuilding(roomReservation.getRoomAllocations().get(0).getBlId()));
+
+            createCalendarEvent(roomReservation);
+            storeUniqueId(roomReservation.getUniqueId(), createdReservations);
+        }
+
+        ReservationsContextHelper.ensureResultMessageIsSet();
+    }
+
     /**
      * Cancel single room reservation.
      *
@@ -447,6 +499,25 @@ public class RoomReservationService extends RoomReservationServiceBase {
         return localDateTimes;
     }
 
+    /**
+     * Get the progress of a recurring reservation being saved in the background.
+     * 
+     * @param jobId the job id
+     * @return JSON object with the status, the number of occurrences created and the total
+     */
+    public JSONObject getRecurringReservationProgress(final String jobId) {
+        final RecurringReservationProgress progress =
+                this.reservationService.getRecurringReservationProgress(jobId);
+        final JSONObject result = new JSONObject();
+        result.put("status", progress.getStatus().toString());
+        result.put("created", progress.getCreated());
+        result.put("total", progress.getTotal());
+        if (progress.getMessage() != null) {
+            result.put("message", progress.getMessage());
+        }
+        return result;
+    }
+
     /**
      * Setter for the reservationService property.
      * 
@@ -469,6 +540,58 @@ public class RoomReservationService extends RoomReservationServiceBase {
         this.cancelReservationService = cancelReservationService;
     }
 
+    /**
+     * Convert the reservation records from the view to a room reservation and validate it.
+     * 
+     * @param reservation the reservation
+     * @param roomAllocation the room allocation
+     * @param resourceList the resource list
+     * @param cateringList the catering list
+     * @return the room reservation
+     */
+    private RoomReservation convertReservation(final DataRecord reservation,
+            final DataRecord roomAllocation, final DataSetList resourceList,
+            final DataSetList cateringList) {
+        if (reservation.getDate(RESERVE_DATE_END) == null) {
+            reservation.setValue(RESERVE_DATE_END, reservation.getDate(RESERVE_DATE_START));
+        } 
+
+        final RoomReservation roomReservation =
+                (RoomReservation) this.roomReservationDataSource.convertRecordToObject(reservation);   
+
+        // make sure the date of time values are set to 1899 
+        roomReservation.setStartTime(new Time(TimePeriod.clearDate(roomReservation.getStartTime()).getTime()));
+        roomReservation.setEndTime(new Time(TimePeriod.clearDate(roomReservation.getEndTime()).getTime()));       
+
+        // add the room allocation to the reservation
+        roomReservation.addRoomAllocation(this.roomAllocationDataSource
+                .convertRecordToObject(roomAllocation));
+
+        this.roomReservationDataSource.addResourceList(roomReservation, cateringList);
+        this.roomReservationDataSource.addResourceList(roomReservation, resourceList);
+        ReservationServiceHelper.validateEmails(roomReservation);
+
+        // check the start and end time window
+        ReservationServiceHelper.checkResourceAllocations(roomReservation);
+        return roomReservation;
+    }
+
+    /**
+     * Store the unique id of the calendar event in all occurrences of a recurring reservation.
+     * 
+     * @param uniqueId the unique id of the calendar event
+     * @param createdReservations the occurrences
+     */
+    private void storeUniqueId(final String uniqueId,
+            final List<RoomReservation> createdReservations) {
+        for (final RoomReservation createdReservation : createdReservations) {
+            final RoomReservation storedReservation =
+                    this.roomReservationDataSource.get(createdReservation.getReserveId());
+            storedReservation.setUniqueId(uniqueId);
+            this.roomReservationDataSource.update(storedReservation);
+        }
+    }
+
     /**
      * Gets the original reservations.
      *
@@ -507,17 +630,7 @@ public class RoomReservationService extends RoomReservationServiceBase {
         if (reservation.isNew() || reservation.getInt(RESERVE_RES_ID) == 0) {
             roomReservation.setUniqueId(null);
             // for a new reservation create the appointment
-            try {
-                this.calendarService.createAppointment(roomReservation);
-            } catch (CalendarException exception) {
-                // Do not block the workflow, only report the error.
-                final String localizedMessage =
-                        ReservationsContextHelper.localizeString(CALENDAR_CREATE_ERROR,
-                            RoomReservationService.class);
-                logger.warn(localizedMessage, exception);
-                ReservationsContextHelper.appendResultError(localizedMessage + SPACE
-                        + exception.getPattern());
-            }
+            createCalendarEvent(roomReservation);
         } else if (roomReservation.getParentId() == null) {
             // Update a regular reservation.
             try {
@@ -535,26 +648,57 @@ public class RoomReservationService extends RoomReservationServiceBase {
             // Update a recurring reservation.
             final List<RoomReservation> createdReservations =
                     roomReservation.getCreatedReservations();
-            for (int index = 0; index < originalReservations.size(); ++index) {
-                final RoomReservation createdReservation = createdReservations.get(index);
-                createdReservation.setTimeZone(roomReservation.getTimeZone());
-                try {
-                    this.calendarService.updateAppointmentOccurrence(createdReservation,
-                        originalReservations.get(index));
-                } catch (CalendarException exception) {
-                    // Do not block the workflow, only report the error.
-                    final String localizedMessage =
-                            ReservationsContextHelper.localizeString(CALENDAR_UPDATE_ERROR,
-                                RoomReservationService.class, createdReservation.getReserveId());
-                    logger.warn(localizedMessage, exception);
-                    ReservationsContextHelper.appendResultError(localizedMessage + SPACE
-                            + exception.getPattern());
+            try {
+                this.calendarService.prepareAppointmentOccurrences(originalReservations);
+            } catch (CalendarException exception) {
+                // The occurrences are still retrieved one by one when updating them.
+                logger.warn("Error retrieving the appointment occurrences.", exception);
+            }
+            try {
+                for (int index = 0; index < originalReservations.size(); ++index) {
+                    final RoomReservation createdReservation = createdReservations.get(index);
+                    createdReservation.setTimeZone(roomReservation.getTimeZone());
+                    try {
+                        this.calendarService.updateAppointmentOccurrence(createdReservation,
+                            originalReservations.get(index));
+                    } catch (CalendarException exception) {
+                        // Do not block the workflow, only report the error.
+                        final String localizedMessage =
+                                ReservationsContextHelper.localizeString(CALENDAR_UPDATE_ERROR,
+                                    RoomReservationService.class,
+                                    createdReservation.getReserveId());
+                        logger.warn(localizedMessage, exception);
+                        ReservationsContextHelper.appendResultError(localizedMessage + SPACE
+                                + exception.getPattern());
+                    }
                 }
+            } finally {
+                // The calendar service is reused, don't keep the remaining occurrences.
+                this.calendarService.releaseAppointmentOccurrences();
             }
         }
     }
     
     
+    /**
+     * Create the calendar event of a new reservation. Errors are reported, not thrown.
+     * 
+     * @param roomReservation the new reservation
+     */
+    private void createCalendarEvent(final RoomReservation roomReservation) {
+        try {
+            this.calendarService.createAppointment(roomReservation);
+        } catch (CalendarException exception) {
+            // Do not block the workflow, only report the error.
+            final String localizedMessage =
+                    ReservationsContextHelper.localizeString(CALENDAR_CREATE_ERROR,
+                        RoomReservationService.class);
+            logger.warn(localizedMessage, exception);
+            ReservationsContextHelper.appendResultError(localizedMessage + SPACE
+                    + exception.getPattern());
+        }
+    }
+
     /**
      * Cancel a single calendar event.
      * 
@@ -0,0 +1,152 @@
+package com.archibus.app.reservation.service;
+
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.archibus.app.reservation.domain.ReservationException;
+import com.archibus.app.reservation.domain.recurrence.*;
+import com.archibus.datasource.SqlUtils;
+import com.archibus.jobmanager.*;
+import com.archibus.utility.ExceptionBase;
+
+/**
+ * Background job that creates the remaining occurrences of a new recurring reservation.
+ * <p>
+ * The occurrences are saved in chunks and each chunk is committed separately, so the job status
+ * always reports the number of occurrences stored in the database. When an occurrence cannot be
+ * saved or the job is stopped, the current chunk is rolled back and the occurrences committed
+ * before are cancelled, so no partial series remains.
+ * <p>
+ * Used by ReservationService.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public class SaveRecurringReservationJob extends JobBase {
+
+    /** Default number of occurrences saved in one transaction. */
+    public static final int DEFAULT_CHUNK_SIZE = 25;
+
+    /** The logger. */
+    private final Logger logger = Logger.getLogger(this.getClass());
+
+    /** The occurrences of the series, including the first one which is already saved. */
+    private final OccurrenceIterator occurrences;
+
+    /** The action that saves one occurrence. */
+    private final AbstractIntervalPattern.OccurrenceAction action;
+
+    /** The list the action adds the saved reservations to, cleared after each chunk. */
+    private final List<?> savedReservations;
+
+    /** The number of occurrences saved in one transaction. */
+    private final int chunkSize;
+
+    /**
+     * Constructor.
+     *
+     * @param occurrences the occurrences of the series, the first one is skipped
+     * @param action the action that saves one occurrence
+     * @param savedReservations the list the action adds the saved reservations to
+     * @param chunkSize the number of occurrences saved in one transaction
+     */
+    public SaveRecurringReservationJob(final OccurrenceIterator occurrences,
+            final AbstractIntervalPattern.OccurrenceAction action,
+            final List<?> savedReservations, final int chunkSize) {
+        super();
+        this.occurrences = occurrences;
+        this.action = action;
+        this.savedReservations = savedReservations;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        // the first occurrence is saved before starting the job
+        this.status.setTotalNumber(Math.max(0, this.occurrences.getCount() - 1));
+        this.status.setCurrentNumber(0);
+        if (this.occurrences.hasNext()) {
+            this.occurrences.nextTimeInMillis();
+        }
+
+        int saved = 0;
+        try {
+            boolean continueSaving = true;
+            while (continueSaving && !this.stopRequested && this.occurrences.hasNext()) {
+                continueSaving = this.action.handleOccurrence(this.occurrences.next());
+                ++saved;
+                if (saved % this.chunkSize == 0) {
+                    commitChunk(saved);
+                }
+            }
+            if (this.stopRequested) {
+                cancelIncompleteSeries(JobStatus.JOB_STOPPED, null);
+            } else {
+                onSeriesSaved();
+                commitChunk(saved);
+                this.status.setCode(JobStatus.JOB_COMPLETE);
+            }
+        } catch (final ExceptionBase exception) {
+            this.logger.warn("Recurring reservation series could not be created", exception);
+            cancelIncompleteSeries(JobStatus.JOB_FAILED, exception.getMessage());
+        }
+    }
+
+    /**
+     * Called after all occurrences are saved, in the same transaction as the last chunk. Override
+     * to update related records for the complete series.
+     *
+     * @throws ReservationException when the related records cannot be updated
+     */
+    protected void onSeriesSaved() throws ReservationException {
+        // nothing to do by default
+    }
+
+    /**
+     * Called when the job fails or is stopped, after rolling back the current chunk. Override to
+     * cancel the occurrences committed before, including the first one.
+     *
+     * @throws ReservationException when the occurrences cannot be cancelled
+     */
+    protected void onSeriesIncomplete() throws ReservationException {
+        // nothing to do by default
+    }
+
+    /**
+     * Discard the current chunk, cancel the committed occurrences and set the final status.
+     *
+     * @param code the status code of the job
+     * @param message the error message to report, or null
+     */
+    private void cancelIncompleteSeries(final int code, final String message) {
+        SqlUtils.rollback();
+        this.savedReservations.clear();
+        try {
+            onSeriesIncomplete();
+            SqlUtils.commit();
+            this.status.setCurrentNumber(0);
+        } catch (final ExceptionBase exception) {
+            SqlUtils.rollback();
+            this.logger.error("Incomplete recurring reservation series could not be cancelled",
+                exception);
+        }
+        this.status.setMessage(message);
+        this.status.setCode(code);
+    }
+
+    /**
+     * Commit the saved occurrences and report the progress.
+     *
+     * @param saved the number of occurrences saved so far
+     */
+    private void commitChunk(final int saved) {
+        SqlUtils.commit();
+        this.savedReservations.clear();
+        this.status.setCurrentNumber(saved);
+    }
+
+}
@@ -22,17 +22,49 @@ public class TimelineService {
     // @translatable
     private static final String RESERVATION_NOT_FOUND = "Room reservation not found";
 
-    /** The Constant RESOURCES. */
-    private static final String RESOURCES = "resources";
-
-    /** The Constant EVENTS. */
-    private static final String EVENTS = "events";
-    
     /** The Constant MESSAGE. */
-    private static final String MESSAGE = "message";
-    
-    /** The default max. number of occurrences to check attendee availability for. */
-    private static final int DEFAULT_MAX_OCCURRENCES = 10;
+    private static final String MESSAGE = TimelineRowWindow.MESSAGE;
+
+    /** JSON property name for the version token. */
+    private static final String JSON_VERSION = "version";
+
+    /** JSON property name indicating whether the complete timeline is returned. */
+    private static final String JSON_FULL = "full";
+
+    /** JSON property name for the ids of the events to remove. */
+    private static final String JSON_REMOVED = "removed";
+
+    /** Separator between the parameters and rows part of the timeline scope. */
+    private static final String SCOPE_SEPARATOR = ".";
+
+    /** Separator between the values in a key. */
+    private static final char KEY_SEPARATOR = '|';
+
+    /** JSON property name for the available time slots. */
+    private static final String JSON_SLOTS = "slots";
+
+    /** JSON property name for the date of a time slot. */
+    private static final String JSON_DATE = "date";
+
+    /** JSON property name for the start time of a time slot. */
+    private static final String JSON_START_TIME = "startTime";
+
+    /** JSON property name for the end time of a time slot. */
+    private static final String JSON_END_TIME = "endTime";
+
+    /** Format of the start and end time of a time slot. */
+    private static final String SLOT_TIME_FORMAT = "%02d:%02d";
+
+    /** Minutes in an hour. */
+    private static final int MINUTES_IN_HOUR = 60;
+
+    /** The building id field name. */
+    private static final String BL_ID =
+            com.archibus.app.reservation.dao.datasource.Constants.BL_ID_FIELD_NAME;
+
+    /** The room allocation table name. */
+    private static final String RESERVE_RM_TABLE =
+            com.archibus.app.reservation.dao.datasource.Constants.RESERVE_RM_TABLE_NAME;
 
     /** The logger. */
     private final Logger logger = Logger.getLogger(this.getClass());
@@ -46,6 +78,9 @@ public class TimelineService {
     /** The reservations service. */
     private IReservationService reservationService;
 
+    /** The log of allocation changes, for refreshing a timeline with only the changes. */
+    private AllocationChangeLog allocationChangeLog;
+
     /**
      * Load the room arrangement timeline.
      * <p>
@@ -70,9 +105,193 @@ public class TimelineService {
     public JSONObject loadRoomArrangementTimeLine(final Date startDate, final Date endDate,
             final Time startTime, final Time endTime, final Map<String, String> searchFilter,
             final List<String> fixedResourceStandards, final Integer reservationId) { 
+        return createRoomArrangementTimeLine(startDate, endDate, startTime, endTime, searchFilter,
+            fixedResourceStandards, reservationId, null, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Load a range of rows of the room arrangement timeline. The result contains the total number
+     * of rows and the index of the first row in the range, with the rooms and events of that
+     * range only. Rows and events keep their index in the complete timeline, which has a fixed
+     * order, so a client can request the rows that are visible as the user scrolls.
+     * 
+     * @param startDate the start date
+     * @param endDate the end date
+     * @param startTime the start time
+     * @param endTime the end time
+     * @param searchFilter the search filter
+     * @param fixedResourceStandards list of fixed resource standard ids
+     * @param reservationId the reserve id (when editing a reservation)
+     * @param firstRow the index of the first row to load
+     * @param maxRows the maximum number of rows to load
+     * @return timeline object
+     */
+    public JSONObject loadRoomArrangementTimeLineRows(final Date startDate, final Date endDate,
+            final Time startTime, final Time endTime, final Map<String, String> searchFilter,
+            final List<String> fixedResourceStandards, final Integer reservationId,
+            final int firstRow, final int maxRows) {
+        return createRoomArrangementTimeLine(startDate, endDate, startTime, endTime, searchFilter,
+            fixedResourceStandards, reservationId, null, firstRow, maxRows);
+    }
+
+    /**
+     * Load the changes in the room arrangement timeline since it was loaded with the given version
+     * token. The other parameters must be the same as when loading the timeline.
+     * <p>
+     * When only events have changed, the result contains the new version token, full = false, the
+     * events for the rooms and dates with changes and the ids of the events to remove. To apply
+     * the changes, remove all events with an id in the removed list or in the events list, then
+     * add the events. When the changes cannot be determined or the rooms on the timeline have
+     * changed, the result is the complete timeline with full = true.
+     * 
+     * @param startDate the start date
+     * @param endDate the end date
+     * @param startTime the start time
+     * @param endTime the end time
+     * @param searchFilter the search filter
+     * @param fixedResourceStandards list of fixed resource standard ids
+     * @param reservationId the reserve id (when editing a reservation)
+     * @param versionToken the version token of the timeline that is shown
+     * @return the changes or the complete timeline
+     */
+    public JSONObject loadRoomArrangementTimeLineChanges(final Date startDate,
+            final Date endDate, final Time startTime, final Time endTime,
+            final Map<String, String> searchFilter, final List<String> fixedResourceStandards,
+            final Integer reservationId, final String versionToken) {
+        return createRoomArrangementTimeLine(startDate, endDate, startTime, endTime, searchFilter,
+            fixedResourceStandards, reservationId, versionToken, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Find the earliest time slots at which a room and all attendees are available, so the user
+     * doesn't have to search again with shifted times.
+     * <p>
+     * The reservable rooms, their allocations in the horizon and the availability of each
+     * attendee are loaded once. The busy periods are then merged in memory for each room and day.
+     * Each slot has a distinct start time and contains the first matching room in the order of
+     * the room search. Start times are aligned to the minor segments of the timeline. Date
+     * dependent rules such as announce days are not applied, they are checked when saving.
+     *
+     * @param startDate the requested date
+     * @param startTime the requested start time, no earlier slots are returned on that date
+     * @param endTime the requested end time, determines the duration of the slots
+     * @param searchFilter the search filter, must contain the building
+     * @param fixedResourceStandards list of fixed resource standard ids
+     * @param emails the email addresses of the attendees
+     * @param uniqueId the unique reference to the active reservation, ignored for attendees
+     * @param reservationId the reservation id when editing, ignored for the rooms
+     * @param maxSlots the maximum number of slots to return
+     * @param horizonDays the number of days to search, starting with the requested date
+     * @return the slots and the attendees for which no availability could be retrieved
+     * @throws ReservationException when no building is specified
+     */
+    public JSONObject findNextAvailableSlots(final Date startDate, final Time startTime,
+            final Time endTime, final Map<String, String> searchFilter,
+            final List<String> fixedResourceStandards, final List<String> emails,
+            final String uniqueId, final Integer reservationId, final int maxSlots,
+            final int horizonDays) throws ReservationException {
+        final String blId = searchFilter.get(BL_ID);
+        if (StringUtil.isNullOrEmpty(blId)) {
+            // @translatable
+            throw new ReservationException("Select a building to find available time slots.",
+                TimelineService.class);
+        }
+        final int requestedStart = CompactTimePeriod.toMinuteOfDay(startTime);
+        int requestedEnd = CompactTimePeriod.toMinuteOfDay(endTime);
+        if (requestedEnd <= requestedStart) {
+            requestedEnd = CompactTimePeriod.MINUTES_IN_DAY;
+        }
+        final String numberAttendees = searchFilter.get("number_attendees");
+        Integer numberOfAttendees = null;
+        if (StringUtil.notNullOrEmpty(numberAttendees)) {
+            numberOfAttendees = Integer.valueOf(numberAttendees);
+        }
+
+        final List<Date> days = new ArrayList<Date>();
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTime(TimePeriod.clearTime(startDate));
+        for (int day = 0; day < Math.max(1, horizonDays); ++day) {
+            days.add(calendar.getTime());
+            calendar.add(Calendar.DATE, 1);
+        }
+
+        // load all data once: rooms, their allocations and the availability of the attendees
+        final List<RoomArrangement> roomArrangements =
+                this.timelineServiceHelper.findReservableRooms(searchFilter, numberOfAttendees,
+                    isExternalAllowedRequired(searchFilter), fixedResourceStandards, emails);
+        final Map<Date, Map<String, List<int[]>>> roomBusyPeriods =
+                getRoomBusyPeriods(this.timelineServiceHelper.getActiveRoomAllocations(blId,
+                    days.get(0), days.get(days.size() - 1)), roomArrangements, reservationId);
+
+        final JSONObject result = new JSONObject();
+        final JSONArray failures = new JSONArray();
+        final TimeZone timeZone =
+                TimeZone.getTimeZone(TimeZoneConverter.getTimeZoneIdForBuilding(blId));
+        final List<ICalendarEvent> attendeeEvents = new ArrayList<ICalendarEvent>();
+        for (final String email : emails) {
+            if (StringUtil.notNullOrEmpty(email)) {
+                try {
+                    attendeeEvents.addAll(this.timelineServiceHelper.findAttendeeAvailability(
+                        days.get(0), days.get(days.size() - 1), timeZone, email));
+                } catch (final ExceptionBase exception) {
+                    handleAttendeeFailure(email, exception, failures);
+                }
+            }
+        }
+
+        final int duration = requestedEnd - requestedStart;
+        final int step = MINUTES_IN_HOUR / TimelineHelper.getMinorSegmentsPerHour();
+        final JSONArray slots = new JSONArray();
+        int earliestStart = requestedStart;
+        for (final Date day : days) {
+            if (slots.length() >= maxSlots) {
+                break;
+            }
+            final AvailableSlotFinder finder = new AvailableSlotFinder(duration, step);
+            addAttendeeBusyPeriods(finder, attendeeEvents, day, uniqueId);
+            Map<String, List<int[]>> busyPeriods = roomBusyPeriods.get(day);
+            if (busyPeriods == null) {
+                busyPeriods = new HashMap<String, List<int[]>>();
+            }
+            final int remaining = maxSlots - slots.length();
+            final TreeMap<Integer, RoomArrangement> startTimes =
+                    findStartTimes(finder, roomArrangements, busyPeriods, earliestStart,
+                        remaining);
+            for (final Map.Entry<Integer, RoomArrangement> entry : startTimes.entrySet()) {
+                if (slots.length() >= maxSlots) {
+                    break;
+                }
+                slots.put(createSlot(day, entry.getKey(), duration, entry.getValue()));
+            }
+            // on the following days the complete day is searched
+            earliestStart = 0;
+        }
+
+        result.put(JSON_SLOTS, slots);
+        result.put(MESSAGE, failures);
+        return result;
+    }
+
+    /**
+     * Create the room arrangement timeline, or only the changes since the given version token.
+     * 
+     * @param startDate the start date
+     * @param endDate the end date
+     * @param startTime the start time
+     * @param endTime the end time
+     * @param searchFilter the search filter
+     * @param fixedResourceStandards list of fixed resource standard ids
+     * @param reservationId the reserve id (when editing a reservation)
+     * @param versionToken the version token of the timeline that is shown, null to load it
+     * @param firstRow the index of the first row to include
+     * @param maxRows the maximum number of rows to include
+     * @return timeline object
+     */
+    private JSONObject createRoomArrangementTimeLine(final Date startDate, final Date endDate,
+            final Time startTime, final Time endTime, final Map<String, String> searchFilter,
+            final List<String> fixedResourceStandards, final Integer reservationId,
+            final String versionToken, final int firstRow, final int maxRows) {
 
-        JSONObject timeline = null;
-      
         // create the room reservation object for the start date, using the search parameters
         final RoomReservation roomReservation =
                 timelineServiceHelper.createRoomReservation(reservationId, startDate, startTime, endTime, searchFilter);
@@ -83,22 +302,101 @@ public class TimelineService {
             numberOfAttendees = Integer.valueOf(numberAttendees);
         }
 
-        final String externalAllowed = searchFilter.get("external_allowed");
-        boolean externalsMustBeAllowed = true;
-        if (StringUtil.notNullOrEmpty(externalAllowed)) {
-            externalsMustBeAllowed = Integer.parseInt(externalAllowed) > 0;
-        }
+        final boolean externalsMustBeAllowed = isExternalAllowedRequired(searchFilter);
 
         final String recurrenceRule = searchFilter.get("recurrence_rule");
 
+        // the dates on the timeline, with the reservation id to ignore on each date
+        final Map<Date, Integer> occurrences = new LinkedHashMap<Date, Integer>();
+        List<RoomReservation> existingOccurrences = null;
+        Recurrence recurrence = null;
+
         // when editing a recurrent reservation remain the dates of all occurrences
         // when editing a single occurrence the recurrence rule should be empty
-        if (StringUtil.notNullOrEmpty(recurrenceRule) && reservationId != null && reservationId > 0) {
-            timeline = loadRoomArrangementTimeLineEditRecurrence(roomReservation, numberOfAttendees, 
-                    externalsMustBeAllowed, fixedResourceStandards);
-        }  else {
-            timeline = loadRoomArrangementTimeline(roomReservation, startDate, endDate, recurrenceRule, 
-                    fixedResourceStandards, numberOfAttendees, externalsMustBeAllowed);
+        if (StringUtil.notNullOrEmpty(recurrenceRule) && reservationId != null
+                && reservationId > 0) {
+            if (roomReservation == null) {
+                throw new ReservationException(RESERVATION_NOT_FOUND, TimelineService.class);
+            }
+            existingOccurrences =
+                    this.roomReservationDataSource.getByParentId(roomReservation.getParentId(),
+                        null, roomReservation.getStartDate());
+            for (final RoomReservation existingReservation : existingOccurrences) {
+                // for existing reservations, add the reservation id to ignore
+                occurrences.put(existingReservation.getStartDate(),
+                    existingReservation.getReserveId());
+            }
+        } else {
+            final Integer ignoredReservationId = roomReservation.getReserveId();
+            occurrences.put(startDate, ignoredReservationId);
+            if (StringUtil.notNullOrEmpty(recurrenceRule)) {
+                // this can be a new recurrence reservation
+                recurrence = Recurrence.parseRecurrence(startDate, endDate, recurrenceRule);
+                if (recurrence instanceof AbstractIntervalPattern) {
+                    ((AbstractIntervalPattern) recurrence)
+                        .loopThroughRepeats(new AbstractIntervalPattern.OccurrenceAction() {
+                            // handle all occurrence events
+                            public boolean handleOccurrence(final Date date)
+                                    throws ReservationException {
+                                occurrences.put(date, ignoredReservationId);
+                                return true;
+                            }
+                        });
+                }
+            }
+        }
+
+        // only use the changes if the token is for the same search parameters
+        final String parametersScope =
+                Integer.toHexString(RoomSearchCache.createKey(searchFilter.get(BL_ID), startDate,
+                    endDate, startTime, endTime, new TreeMap<String, String>(searchFilter),
+                    fixedResourceStandards, reservationId).hashCode());
+        final AllocationChangeLog changeLog = this.allocationChangeLog;
+        List<AllocationChangeLog.Change> changes = null;
+        if (changeLog != null && versionToken != null
+                && String.valueOf(changeLog.getScope(versionToken)).startsWith(
+                    parametersScope + SCOPE_SEPARATOR)) {
+            changes = changeLog.getChangesSince(versionToken);
+        }
+        final Set<Integer> removedIds = new TreeSet<Integer>();
+        final Map<String, Set<Date>> changedRooms =
+                changes == null ? null : getChangedRooms(changes, occurrences.keySet(),
+                    searchFilter.get(BL_ID), removedIds);
+
+        JSONObject timeline = null;
+        if (changedRooms != null && changedRooms.isEmpty()) {
+            // nothing changed on this timeline, no need to search the rooms
+            timeline =
+                    createTimelineChanges(changeLog.renewToken(versionToken, changes), removedIds);
+        } else {
+            // get the version before reading, so writes while reading and writes that might not
+            // be committed yet are included next time
+            final long version = changeLog == null ? 0 : changeLog.getStableVersion();
+            final List<RoomArrangement> roomArrangements =
+                    findRoomArrangements(roomReservation, numberOfAttendees,
+                        externalsMustBeAllowed, fixedResourceStandards, recurrence,
+                        existingOccurrences);
+            final String scope =
+                    parametersScope + SCOPE_SEPARATOR
+                            + Integer.toHexString(createRowsKey(roomArrangements).hashCode());
+
+            if (changedRooms != null && scope.equals(changeLog.getScope(versionToken))) {
+                timeline =
+                        createTimelineChanges(changeLog.renewToken(versionToken, changes),
+                            removedIds);
+                addChangedEvents(timeline, roomArrangements, occurrences, changedRooms);
+            } else {
+                timeline = TimelineHelper.createTimeline();
+                if (changeLog != null) {
+                    timeline.put(JSON_VERSION, changeLog.createToken(version, scope));
+                }
+                if (versionToken != null) {
+                    timeline.put(JSON_FULL, true);
+                }
+                final TimelineRowWindow rows = new TimelineRowWindow(timeline);
+                rows.setRowWindow(firstRow, maxRows);
+                timeline = addRoomArrangementRows(rows, roomArrangements, occurrences);
+            }
         }
 
         return timeline;
@@ -129,27 +427,22 @@ public class TimelineService {
         final TimeZone timeZone = TimeZone.getTimeZone(TimeZoneConverter.getTimeZoneIdForBuilding(buildingId));
 
         final JSONObject timeline = TimelineHelper.createTimeline(); 
+        final TimelineRowWindow rows = new TimelineRowWindow(timeline);
 
         if (!emails.isEmpty()) {
-            final JSONArray events = new JSONArray();
-            final JSONArray resources = new JSONArray();
-            final JSONArray failures = new JSONArray();
-
-            timeline.put(EVENTS, events);
-            timeline.put(RESOURCES, resources);
-            timeline.put(MESSAGE, failures);
+            timeline.put(MESSAGE, new JSONArray());
             
             // when editing use the existing dates
             if (StringUtil.notNullOrEmpty(recurrenceRule) && reservationId != null
                     && reservationId > 0) {
-                loadAttendeeTimelineEditRecurrence(timeline, emails, reservationId, timeZone);
+                loadAttendeeTimelineEditRecurrence(rows, emails, reservationId, timeZone);
             } else {
-                loadAttendeeTimeline(timeline, startDate, endDate, recurrenceRule, emails,
+                loadAttendeeTimeline(rows, startDate, endDate, recurrenceRule, emails,
                     uniqueId, timeZone);
             }
         }
         
-        return timeline;
+        return rows.getTimeline();
     }
 
     /**
@@ -172,6 +465,15 @@ public class TimelineService {
         this.reservationService = reservationService;
     }
 
+    /**
+     * Sets the allocation change log.
+     *
+     * @param allocationChangeLog the new allocation change log
+     */
+    public void setAllocationChangeLog(final AllocationChangeLog allocationChangeLog) {
+        this.allocationChangeLog = allocationChangeLog;
+    }
+
 
     /**
      * Sets the timeline service helper.
@@ -186,7 +488,7 @@ public class TimelineService {
     /**
      * Load attendee timeline.
      *
-     * @param timeline the time line JSON object
+     * @param rows the rows of the time line
      * @param startDate the start date
      * @param endDate the end date
      * @param recurrenceRule the recurrence rule
@@ -194,20 +496,38 @@ public class TimelineService {
      * @param uniqueId the unique id
      * @param timeZone the time zone
      */
-    private void loadAttendeeTimeline(final JSONObject timeline, final Date startDate,
+    private void loadAttendeeTimeline(final TimelineRowWindow rows, final Date startDate,
             final Date endDate, final String recurrenceRule, final List<String> emails,
             final String uniqueId, final TimeZone timeZone) {
 
-        final JSONArray resources = timeline.getJSONArray(RESOURCES);
+        final JSONObject timeline = rows.getTimeline();
         final JSONArray failures = timeline.getJSONArray(MESSAGE);
         
-        Recurrence recurrence = null;
+        // the dates of all occurrences, starting with the start date
+        final List<Date> dates = new ArrayList<Date>();
+        dates.add(startDate);
         if (StringUtil.notNullOrEmpty(recurrenceRule)) {
-            recurrence = Recurrence.parseRecurrence(startDate, endDate, recurrenceRule);
+            final Recurrence recurrence =
+                    Recurrence.parseRecurrence(startDate, endDate, recurrenceRule);
+            if (recurrence instanceof AbstractIntervalPattern) {
+                final OccurrenceIterator occurrences =
+                        ((AbstractIntervalPattern) recurrence).getOccurrences(false);
+                // skip the first occurrence, it is on the start date
+                if (occurrences.hasNext()) {
+                    occurrences.nextTimeInMillis();
+                }
+                while (occurrences.hasNext()) {
+                    dates.add(occurrences.next());
+                }
+            }
+        }
+        final Set<String> ownEventIds = new HashSet<String>();
+        if (StringUtil.notNullOrEmpty(uniqueId)) {
+            ownEventIds.add(uniqueId);
         }
         
+        rows.startRows();
         int rowIndex = 0;
-        final int maxRecurrencesToCheckFreeBusy = getMaxRecurrencesToCheckFreeBusy();
         
         // loop through all attendees
         for (final String email : emails) {
@@ -217,192 +537,450 @@ public class TimelineService {
 
             final JSONObject resource =
                     TimelineHelper.createAttendeeResource(timeline, email, rowIndex);
-            resources.put(resource);
 
             try {              
-                // create events for the start date
-                timelineServiceHelper.createAttendeeEvents(startDate, startDate, uniqueId, timeline, timeZone,
-                        email, rowIndex);
-
-                // make a final variable
-                final int currentIndex = rowIndex;
-                final TimeZone localTimeZone = timeZone;
-                // final container for counting occurrences
-                final int[] counter = new int[] { 1 };
-
-                if (recurrence instanceof AbstractIntervalPattern
-                        && counter[0] < maxRecurrencesToCheckFreeBusy) {
-                    final AbstractIntervalPattern pattern =
-                            (AbstractIntervalPattern) recurrence;
-                    pattern.loopThroughRepeats(new AbstractIntervalPattern.OccurrenceAction() {
-                        // handle all occurrence events
-                        public boolean handleOccurrence(final Date date)
-                                throws ReservationException {
-                            // create events for this date
-                            timelineServiceHelper.createAttendeeEvents(date, date, uniqueId, timeline,
-                                    localTimeZone, email, currentIndex);
-
-                            return ++counter[0] < maxRecurrencesToCheckFreeBusy;
-                        }
-
-                    });
-                }
+                // create events for all occurrences with one availability request
+                timelineServiceHelper.createAttendeeEvents(dates, ownEventIds, timeline, timeZone,
+                    email, rowIndex);
             } catch (final ExceptionBase exception) {
                 handleAttendeeFailure(email, exception, failures);
             }
+            rows.addRow(resource);
             // next row
             rowIndex++;
         }
     }
 
     /**
-     * Load room arrangement timeline.
+     * Find the room arrangements to show on the timeline.
      *
      * @param roomReservation the room reservation
-     * @param startDate the start date
-     * @param endDate the end date
-     * @param recurrenceRule the recurrence rule
-     * @param fixedResourceStandards the fixed resource standards
      * @param numberOfAttendees the number of attendees
      * @param externalsMustBeAllowed the externals must be allowed
-     * @return the timeline object
+     * @param fixedResourceStandards the fixed resource standards
+     * @param recurrence the recurrence of a new recurring reservation, or null
+     * @param existingOccurrences the occurrences when editing a recurring reservation, or null
+     * @return the available room arrangements
      */
-    private JSONObject loadRoomArrangementTimeline(final RoomReservation roomReservation, final Date startDate,
-            final Date endDate, final String recurrenceRule, final List<String> fixedResourceStandards, 
-            final Integer numberOfAttendees, final boolean externalsMustBeAllowed) {
-
-        final JSONObject timeline = TimelineHelper.createTimeline(); 
-
-        List<RoomArrangement> roomArrangements = null;   
-
-        // this can be a new recurrence reservation
-        Recurrence recurrence = null;
-
-        if (StringUtil.notNullOrEmpty(recurrenceRule)) {
-            recurrence = Recurrence.parseRecurrence(startDate, endDate, recurrenceRule);
+    private List<RoomArrangement> findRoomArrangements(final RoomReservation roomReservation,
+            final Integer numberOfAttendees, final boolean externalsMustBeAllowed,
+            final List<String> fixedResourceStandards, final Recurrence recurrence,
+            final List<RoomReservation> existingOccurrences) {
+        List<RoomArrangement> roomArrangements = null;
+        if (existingOccurrences != null) {
+            roomArrangements =
+                    this.reservationService.findAvailableRooms(roomReservation,
+                        existingOccurrences, numberOfAttendees, externalsMustBeAllowed,
+                        fixedResourceStandards, false, null);
+        } else if (recurrence != null) {
             // search for available room arrangements for recurrence
             roomArrangements =
                     this.reservationService.findAvailableRoomsRecurrence(roomReservation,
-                            numberOfAttendees, externalsMustBeAllowed, fixedResourceStandards, false,
-                            recurrence, null);
-
+                        numberOfAttendees, externalsMustBeAllowed, fixedResourceStandards, false,
+                        recurrence, null);
         } else {
             // search for available room arrangements
             roomArrangements =
-                    this.reservationService.findAvailableRooms(roomReservation, numberOfAttendees,
-                            externalsMustBeAllowed, fixedResourceStandards, false, null);
+                    this.reservationService.findAvailableRooms(roomReservation,
+                        numberOfAttendees, externalsMustBeAllowed, fixedResourceStandards, false,
+                        null);
         }
+        return roomArrangements;
+    }
 
-        final JSONArray resources = new JSONArray();
-        final JSONArray events = new JSONArray();
-        timeline.put(EVENTS, events);
-        timeline.put(RESOURCES, resources);
-
-        int rowIndex = 0; 
-
-        final Integer reservationId = roomReservation.getReserveId();
+    /**
+     * Add the room arrangements and their allocations on all dates to the timeline. Only the rows
+     * in the row window are created.
+     *
+     * @param rows the rows of the timeline, with the row window
+     * @param roomArrangements the room arrangements
+     * @param occurrences the dates, with the reservation id to ignore on each date
+     * @return the timeline object
+     */
+    private JSONObject addRoomArrangementRows(final TimelineRowWindow rows,
+            final List<RoomArrangement> roomArrangements, final Map<Date, Integer> occurrences) {
+        final JSONObject timeline = rows.getTimeline();
+        rows.startRows(roomArrangements.size());
 
-        // loop through available rooms to find allocations for this day
+        int rowIndex = 0;
         for (final RoomArrangement roomArrangement : roomArrangements) {
-            final JSONObject resource =
-                    TimelineHelper.createRoomArrangementResource(timeline, roomArrangement,
+            JSONObject resource = null;
+            if (rows.isRowInWindow(rowIndex)) {
+                resource =
+                        TimelineHelper.createRoomArrangementResource(timeline, roomArrangement,
                             rowIndex);
-            resources.put(resource);
-
-            // create for the first occurrence
-            timelineServiceHelper.createRoomAllocationEvents(startDate, reservationId, timeline, events, rowIndex,
-                    roomArrangement);
-
-            // make a final variable
-            final int currentIndex = rowIndex;
-
-            if (recurrence instanceof AbstractIntervalPattern) {
-                final AbstractIntervalPattern pattern = (AbstractIntervalPattern) recurrence;
-                pattern.loopThroughRepeats(new AbstractIntervalPattern.OccurrenceAction() {
-                    // handle all occurrence events
-                    public boolean handleOccurrence(final Date date) throws ReservationException {    
-                        // this is a new recurrent reservation
-                        timelineServiceHelper.createRoomAllocationEvents(date, reservationId, timeline, events,
-                                currentIndex, roomArrangement);
-
-                        return true;
-                    }
-                });
+                for (final Map.Entry<Date, Integer> occurrence : occurrences.entrySet()) {
+                    this.timelineServiceHelper.createRoomAllocationEvents(occurrence.getKey(),
+                        occurrence.getValue(), timeline, rows.getEvents(), rowIndex,
+                        roomArrangement);
+                }
             }
+            rows.addRow(resource);
             // next row
             rowIndex++;
         }
 
-        return  timeline;
-    } 
+        return timeline;
+    }
 
+    /**
+     * Get the rooms and dates with room allocation changes that can affect the timeline. Both the
+     * location and date after the change and those before the change are included, so the events
+     * of allocations that were moved to another room or date are also updated.
+     *
+     * @param changes the allocation changes
+     * @param dates the dates on the timeline
+     * @param blId the building of the timeline, null or empty for all buildings
+     * @param removedIds the set to add the ids of the changed allocations on the timeline to
+     * @return the dates with changes for each room, by room key
+     */
+    private static Map<String, Set<Date>> getChangedRooms(
+            final List<AllocationChangeLog.Change> changes, final Set<Date> dates,
+            final String blId, final Set<Integer> removedIds) {
+        final Set<Date> days = new HashSet<Date>();
+        for (final Date date : dates) {
+            days.add(TimePeriod.clearTime(date));
+        }
+        final Map<String, Set<Date>> changedRooms = new HashMap<String, Set<Date>>();
+        for (final AllocationChangeLog.Change change : changes) {
+            if (RESERVE_RM_TABLE.equals(change.getTableName())) {
+                final boolean current =
+                        addChangedRoom(changedRooms, days, blId, change.getBlId(),
+                            change.getFlId(), change.getRmId(), change.getDate());
+                final boolean previous =
+                        addChangedRoom(changedRooms, days, blId, change.getPreviousBlId(),
+                            change.getPreviousFlId(), change.getPreviousRmId(),
+                            change.getPreviousDate());
+                if ((current || previous) && change.getAllocationId() != null) {
+                    removedIds.add(change.getAllocationId());
+                }
+            }
+        }
+        return changedRooms;
+    }
 
     /**
-     * Load the room arrangement timeline when editing a recurrent reservation.
+     * Register a room and date with changes if it is on the timeline.
      *
-     * @param roomReservation the room reservation
-     * @param numberOfAttendees the number of attendees
-     * @param externalsMustBeAllowed the externals must be allowed
-     * @param fixedResourceStandards the fixed resource standards
-     * @return the timeline object.
+     * @param changedRooms the dates with changes for each room, by room key
+     * @param days the dates on the timeline, without time
+     * @param timelineBlId the building of the timeline, null or empty for all buildings
+     * @param blId the building of the allocation
+     * @param flId the floor of the allocation
+     * @param rmId the room of the allocation
+     * @param date the date of the allocation, null if unknown
+     * @return true if the room and date are on the timeline
      */
-    private JSONObject loadRoomArrangementTimeLineEditRecurrence(
-            final RoomReservation roomReservation, final Integer numberOfAttendees, 
-            final boolean externalsMustBeAllowed, final List<String> fixedResourceStandards) {
+    private static boolean addChangedRoom(final Map<String, Set<Date>> changedRooms,
+            final Set<Date> days, final String timelineBlId, final String blId,
+            final String flId, final String rmId, final Date date) {
+        final Date day = date == null ? null : TimePeriod.clearTime(date);
+        final boolean onTimeline =
+                day != null && days.contains(day)
+                        && (StringUtil.isNullOrEmpty(timelineBlId) || timelineBlId.equals(blId));
+        if (onTimeline) {
+            final String roomKey = createRoomKey(blId, flId, rmId);
+            Set<Date> roomDays = changedRooms.get(roomKey);
+            if (roomDays == null) {
+                roomDays = new HashSet<Date>();
+                changedRooms.put(roomKey, roomDays);
+            }
+            roomDays.add(day);
+        }
+        return onTimeline;
+    }
 
-        final JSONObject timeline = TimelineHelper.createTimeline(); 
+    /**
+     * Create the object containing the changes in a timeline.
+     *
+     * @param versionToken the version token for the timeline with the changes
+     * @param removedIds the ids of the events to remove from the timeline
+     * @return the object to add the changes to
+     */
+    private static JSONObject createTimelineChanges(final String versionToken,
+            final Set<Integer> removedIds) {
+        final JSONObject timelineChanges = new JSONObject();
+        timelineChanges.put(JSON_VERSION, versionToken);
+        timelineChanges.put(JSON_FULL, false);
+        timelineChanges.put(TimelineRowWindow.EVENTS, new JSONArray());
+        timelineChanges.put(JSON_REMOVED, new JSONArray(removedIds));
+        return timelineChanges;
+    }
 
-        if (roomReservation == null) {
-            throw new ReservationException(RESERVATION_NOT_FOUND,
-                TimelineService.class);
+    /**
+     * Add the current events for the rooms and dates with changes. All events of the changed
+     * allocations are marked as removed, those that still exist are also in the events.
+     *
+     * @param timelineChanges the object containing the changes
+     * @param roomArrangements the room arrangements on the timeline
+     * @param occurrences the dates, with the reservation id to ignore on each date
+     * @param changedRooms the dates with changes for each room
+     */
+    private void addChangedEvents(final JSONObject timelineChanges,
+            final List<RoomArrangement> roomArrangements, final Map<Date, Integer> occurrences,
+            final Map<String, Set<Date>> changedRooms) {
+        // the timeline is only used to calculate the columns of the events
+        final JSONObject timeline = TimelineHelper.createTimeline();
+        final JSONArray events = timelineChanges.getJSONArray(TimelineRowWindow.EVENTS);
+
+        int rowIndex = 0;
+        for (final RoomArrangement roomArrangement : roomArrangements) {
+            final Set<Date> changedDays =
+                    changedRooms.get(createRoomKey(roomArrangement.getBlId(),
+                        roomArrangement.getFlId(), roomArrangement.getRmId()));
+            if (changedDays != null) {
+                for (final Map.Entry<Date, Integer> occurrence : occurrences.entrySet()) {
+                    if (changedDays.contains(TimePeriod.clearTime(occurrence.getKey()))) {
+                        this.timelineServiceHelper.createRoomAllocationEvents(
+                            occurrence.getKey(), occurrence.getValue(), timeline, events,
+                            rowIndex, roomArrangement);
+                    }
+                }
+            }
+            rowIndex++;
         }
+    }
 
-        final Integer parentId = roomReservation.getParentId();                  
-        final List<RoomReservation> existingOccurrences = this.roomReservationDataSource.getByParentId(
-                parentId, null, roomReservation.getStartDate());            
+    /**
+     * Check whether the rooms must allow external visitors according to the search filter.
+     *
+     * @param searchFilter the search filter
+     * @return true unless the external_allowed filter is specified and 0
+     */
+    private static boolean isExternalAllowedRequired(final Map<String, String> searchFilter) {
+        final String externalAllowed = searchFilter.get("external_allowed");
+        boolean externalsMustBeAllowed = true;
+        if (StringUtil.notNullOrEmpty(externalAllowed)) {
+            externalsMustBeAllowed = Integer.parseInt(externalAllowed) > 0;
+        }
+        return externalsMustBeAllowed;
+    }
 
-        final List<RoomArrangement> roomArrangements = this.reservationService.findAvailableRooms(roomReservation,
-                existingOccurrences, numberOfAttendees, externalsMustBeAllowed, fixedResourceStandards, false, null);
+    /**
+     * Create a key that identifies the rows of a room arrangement timeline.
+     *
+     * @param roomArrangements the room arrangements on the timeline
+     * @return the key
+     */
+    private static String createRowsKey(final List<RoomArrangement> roomArrangements) {
+        final StringBuilder key = new StringBuilder();
+        for (final RoomArrangement roomArrangement : roomArrangements) {
+            key.append(createRoomKey(roomArrangement.getBlId(), roomArrangement.getFlId(),
+                roomArrangement.getRmId())).append(KEY_SEPARATOR)
+                .append(roomArrangement.getConfigId()).append(KEY_SEPARATOR)
+                .append(roomArrangement.getArrangeTypeId()).append(';');
+        }
+        return key.toString();
+    }
 
-        final JSONArray resources = new JSONArray();
-        final JSONArray events = new JSONArray();
-        timeline.put(EVENTS, events);
-        timeline.put(RESOURCES, resources);
+    /**
+     * Group the busy periods of the rooms by date and room. The pre- and post-blocks of an
+     * allocation are included if its arrangement was loaded.
+     *
+     * @param allocations the active room allocations
+     * @param roomArrangements the room arrangements that were loaded
+     * @param reservationId the reservation that is being edited, its allocations are ignored
+     * @return the busy periods in minutes for each date and room key
+     */
+    private static Map<Date, Map<String, List<int[]>>> getRoomBusyPeriods(
+            final List<RoomAllocation> allocations, final List<RoomArrangement> roomArrangements,
+            final Integer reservationId) {
+        final Map<String, RoomArrangement> arrangements = new HashMap<String, RoomArrangement>();
+        for (final RoomArrangement arrangement : roomArrangements) {
+            arrangements.put(createRoomKey(arrangement.getBlId(), arrangement.getFlId(),
+                arrangement.getRmId())
+                    + KEY_SEPARATOR
+                    + arrangement.getConfigId()
+                    + KEY_SEPARATOR
+                    + arrangement.getArrangeTypeId(), arrangement);
+        }
 
-        int rowIndex = 0; 
+        final Map<Date, Map<String, List<int[]>>> busyPeriods =
+                new HashMap<Date, Map<String, List<int[]>>>();
+        for (final RoomAllocation allocation : allocations) {
+            if (reservationId != null && reservationId.equals(allocation.getReserveId())) {
+                continue;
+            }
+            final Date date = TimePeriod.clearTime(allocation.getStartDate());
+            Map<String, List<int[]>> busyPeriodsOnDate = busyPeriods.get(date);
+            if (busyPeriodsOnDate == null) {
+                busyPeriodsOnDate = new HashMap<String, List<int[]>>();
+                busyPeriods.put(date, busyPeriodsOnDate);
+            }
+            final String roomKey =
+                    createRoomKey(allocation.getBlId(), allocation.getFlId(),
+                        allocation.getRmId());
+            List<int[]> busyPeriodsOfRoom = busyPeriodsOnDate.get(roomKey);
+            if (busyPeriodsOfRoom == null) {
+                busyPeriodsOfRoom = new ArrayList<int[]>();
+                busyPeriodsOnDate.put(roomKey, busyPeriodsOfRoom);
+            }
 
-        for (final RoomArrangement roomArrangement : roomArrangements) {
-            final JSONObject resource =
-                    TimelineHelper.createRoomArrangementResource(timeline, roomArrangement,
-                            rowIndex);
-            resources.put(resource);
+            int start = CompactTimePeriod.toMinuteOfDay(allocation.getStartTime());
+            int end = CompactTimePeriod.toMinuteOfDay(allocation.getEndTime());
+            if (end <= start) {
+                end = CompactTimePeriod.MINUTES_IN_DAY;
+            }
+            final RoomArrangement arrangement =
+                    arrangements.get(roomKey + KEY_SEPARATOR + allocation.getConfigId()
+                            + KEY_SEPARATOR + allocation.getArrangeTypeId());
+            if (arrangement != null) {
+                start -= getMinutes(arrangement.getPreBlock());
+                end += getMinutes(arrangement.getPostBlock());
+            }
+            busyPeriodsOfRoom.add(new int[] { start, end });
+        }
+        return busyPeriods;
+    }
 
-            for (RoomReservation existingReservation : existingOccurrences) {
-                // for existing reservations, add the reservation id to ignore
-                timelineServiceHelper.createRoomAllocationEvents(existingReservation.getStartDate(), 
-                        existingReservation.getReserveId(), timeline, events, rowIndex, roomArrangement);
-            } 
+    /**
+     * Add the calendar events of the attendees on a day as busy periods.
+     *
+     * @param finder the slot finder for the day
+     * @param attendeeEvents the calendar events of all attendees
+     * @param day the day
+     * @param uniqueId the unique reference to the active reservation, its events are ignored
+     */
+    private static void addAttendeeBusyPeriods(final AvailableSlotFinder finder,
+            final List<ICalendarEvent> attendeeEvents, final Date day, final String uniqueId) {
+        for (final ICalendarEvent event : attendeeEvents) {
+            if (StringUtil.notNullOrEmpty(uniqueId) && uniqueId.equals(event.getEventId())) {
+                continue;
+            }
+            final Date eventStartDate = TimePeriod.clearTime(event.getStartDate());
+            Date eventEndDate = TimePeriod.clearTime(event.getEndDate());
+            if (eventEndDate == null) {
+                eventEndDate = eventStartDate;
+            }
+            if (!eventStartDate.after(day) && !eventEndDate.before(day)) {
+                int start = 0;
+                if (eventStartDate.equals(day) && event.getStartTime() != null) {
+                    start = CompactTimePeriod.toMinuteOfDay(event.getStartTime());
+                }
+                int end = CompactTimePeriod.MINUTES_IN_DAY;
+                if (eventEndDate.equals(day) && event.getEndTime() != null) {
+                    end = CompactTimePeriod.toMinuteOfDay(event.getEndTime());
+                }
+                finder.addAttendeeBusyPeriod(start, end);
+            }
+        }
+    }
 
-            // next row
-            rowIndex++;
+    /**
+     * Find the earliest distinct start times on a day, each with the first room arrangement in
+     * which it is available.
+     *
+     * @param finder the slot finder for the day, containing the attendee busy periods
+     * @param roomArrangements the room arrangements in order of preference
+     * @param busyPeriods the busy periods of the rooms on the day
+     * @param earliestStart the earliest start time in minutes
+     * @param maxStartTimes the maximum number of start times needed
+     * @return the start times with the room arrangement for each
+     */
+    private static TreeMap<Integer, RoomArrangement> findStartTimes(
+            final AvailableSlotFinder finder, final List<RoomArrangement> roomArrangements,
+            final Map<String, List<int[]>> busyPeriods, final int earliestStart,
+            final int maxStartTimes) {
+        final List<int[]> noBusyPeriods = new ArrayList<int[]>(0);
+        final TreeMap<Integer, RoomArrangement> startTimes =
+                new TreeMap<Integer, RoomArrangement>();
+        for (final RoomArrangement arrangement : roomArrangements) {
+            List<int[]> busyPeriodsOfRoom =
+                    busyPeriods.get(createRoomKey(arrangement.getBlId(), arrangement.getFlId(),
+                        arrangement.getRmId()));
+            if (busyPeriodsOfRoom == null) {
+                busyPeriodsOfRoom = noBusyPeriods;
+            }
+            int dayStart = 0;
+            if (arrangement.getDayStart() != null) {
+                dayStart = CompactTimePeriod.toMinuteOfDay(arrangement.getDayStart());
+            }
+            int dayEnd = CompactTimePeriod.MINUTES_IN_DAY;
+            if (arrangement.getDayEnd() != null) {
+                dayEnd = CompactTimePeriod.toMinuteOfDay(arrangement.getDayEnd());
+                if (dayEnd <= dayStart) {
+                    dayEnd = CompactTimePeriod.MINUTES_IN_DAY;
+                }
+            }
+            // the first start times of each room are enough to find the earliest overall
+            for (final Integer startTime : finder.findStartTimes(earliestStart, dayStart, dayEnd,
+                getMinutes(arrangement.getPreBlock()), getMinutes(arrangement.getPostBlock()),
+                busyPeriodsOfRoom, maxStartTimes)) {
+                if (!startTimes.containsKey(startTime)) {
+                    startTimes.put(startTime, arrangement);
+                }
+            }
         }
+        return startTimes;
+    }
 
-        return timeline;
+    /**
+     * Create the JSON object for an available time slot.
+     *
+     * @param day the date of the slot
+     * @param start the start time in minutes
+     * @param duration the duration in minutes
+     * @param arrangement the available room arrangement
+     * @return the time slot
+     */
+    private static JSONObject createSlot(final Date day, final int start, final int duration,
+            final RoomArrangement arrangement) {
+        final int end = (start + duration) % CompactTimePeriod.MINUTES_IN_DAY;
+        final JSONObject slot = new JSONObject();
+        slot.put(JSON_DATE, new java.sql.Date(day.getTime()).toString());
+        slot.put(JSON_START_TIME, String.format(SLOT_TIME_FORMAT, start / MINUTES_IN_HOUR,
+            start % MINUTES_IN_HOUR));
+        slot.put(JSON_END_TIME,
+            String.format(SLOT_TIME_FORMAT, end / MINUTES_IN_HOUR, end % MINUTES_IN_HOUR));
+        slot.put(BL_ID, arrangement.getBlId());
+        slot.put(com.archibus.app.reservation.dao.datasource.Constants.FL_ID_FIELD_NAME,
+            arrangement.getFlId());
+        slot.put(com.archibus.app.reservation.dao.datasource.Constants.RM_ID_FIELD_NAME,
+            arrangement.getRmId());
+        slot.put(com.archibus.app.reservation.dao.datasource.Constants.CONFIG_ID_FIELD_NAME,
+            arrangement.getConfigId());
+        slot.put(
+            com.archibus.app.reservation.dao.datasource.Constants.RM_ARRANGE_TYPE_ID_FIELD_NAME,
+            arrangement.getArrangeTypeId());
+        return slot;
+    }
+
+    /**
+     * Get the number of minutes of a block.
+     *
+     * @param block the block in minutes, or null
+     * @return the number of minutes
+     */
+    private static int getMinutes(final Integer block) {
+        return block == null ? 0 : block;
+    }
+
+    /**
+     * Create a key that identifies a room.
+     *
+     * @param blId the building id
+     * @param flId the floor id
+     * @param rmId the room id
+     * @return the key
+     */
+    private static String createRoomKey(final String blId, final String flId,
+            final String rmId) {
+        return blId + KEY_SEPARATOR + flId + KEY_SEPARATOR + rmId;
     }
 
 
     /**
      * Load the attendee time line when editing recurrent reservation.
      * 
-     * @param timeline the time line JSON object
+     * @param rows the rows of the time line
      * @param emails the emails of attendees
      * @param reservationId the reservation id
      * @param timeZone the time zone
      */
-    private void loadAttendeeTimelineEditRecurrence(final JSONObject timeline,
+    private void loadAttendeeTimelineEditRecurrence(final TimelineRowWindow rows,
             final List<String> emails, final Integer reservationId, final TimeZone timeZone) {
 
-        final JSONArray resources = timeline.getJSONArray(RESOURCES);
+        final JSONObject timeline = rows.getTimeline();
         final JSONArray failures = timeline.getJSONArray(MESSAGE);
 
         final RoomReservation roomReservation = this.roomReservationDataSource.get(reservationId);
@@ -417,8 +995,17 @@ public class TimelineService {
                 this.roomReservationDataSource.getByParentId(parentId, null,
                     roomReservation.getStartDate());
         
+        final List<Date> dates = new ArrayList<Date>();
+        final Set<String> ownEventIds = new HashSet<String>();
+        for (final RoomReservation existingReservation : existingOccurrences) {
+            dates.add(existingReservation.getStartDate());
+            ownEventIds.add(existingReservation.getUniqueId() == null
+                    ? existingReservation.getReserveId().toString()
+                    : existingReservation.getUniqueId());
+        }
+        
+        rows.startRows();
         int rowIndex = 0;
-        final int maxRecurrencesToCheckFreeBusy = getMaxRecurrencesToCheckFreeBusy();
         
         // loop through all attendees
         for (final String email : emails) {
@@ -430,26 +1017,15 @@ public class TimelineService {
             // create the resource
             final JSONObject resource =
                     TimelineHelper.createAttendeeResource(timeline, email, rowIndex);
-            resources.put(resource);
 
             try {      
-                // loop through all occurrences
-                int occurrenceIndex = 0;
-                for (RoomReservation existingReservation : existingOccurrences) { 
-                    final String uniqueId = existingReservation.getUniqueId() == null
-                            ? existingReservation.getReserveId().toString() : existingReservation.getUniqueId();
-
-                    timelineServiceHelper.createAttendeeEvents(
-                        existingReservation.getStartDate(), existingReservation.getStartDate(),
-                        uniqueId, timeline, timeZone, email, rowIndex);
-                    
-                    if (++occurrenceIndex >= maxRecurrencesToCheckFreeBusy) {
-                        break;
-                    }
-                }
+                // create events for all occurrences with one availability request
+                timelineServiceHelper.createAttendeeEvents(dates, ownEventIds, timeline, timeZone,
+                    email, rowIndex);
             } catch (final ExceptionBase exception) {
                 handleAttendeeFailure(email, exception, failures);
             }
+            rows.addRow(resource);
             // next row
             rowIndex++;
         }
@@ -468,14 +1044,4 @@ public class TimelineService {
         failures.put(email);
     }
 
-    /**
-     * Get the maximum number of occurrences to check when loading attendee availability.
-     * 
-     * @return maximum number of occurrences to check
-     */
-    private static int getMaxRecurrencesToCheckFreeBusy() {
-        return com.archibus.service.Configuration.getActivityParameterInt(
-            "AbWorkplaceReservations", "MaxRecurrencesToCheckFreeBusy", DEFAULT_MAX_OCCURRENCES);
-    }
-
 }
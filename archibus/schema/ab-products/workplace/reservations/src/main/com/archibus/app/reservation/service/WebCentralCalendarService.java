@@ -1,9 +1,11 @@
 package com.archibus.app.reservation.service;
 
+import java.sql.Time;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.TimeZone;
 
 import org.json.JSONObject;
@@ -11,16 +13,18 @@ import org.json.JSONObject;
 import com.archibus.app.common.organization.domain.Employee;
 import com.archibus.app.reservation.dao.IVisitorDataSource;
 import com.archibus.app.reservation.dao.datasource.Constants;
+import com.archibus.app.reservation.dao.datasource.ReservationAttendeeDataSource;
 import com.archibus.app.reservation.domain.*;
 import com.archibus.app.reservation.domain.AttendeeResponseStatus.ResponseStatus;
 import com.archibus.app.reservation.service.helpers.WebCentralCalendarServiceHelper;
 import com.archibus.app.reservation.util.*;
 import com.archibus.context.ContextStore;
+import com.archibus.datasource.DataSource;
+import com.archibus.datasource.DataSourceFactory;
+import com.archibus.datasource.data.DataRecord;
 import com.archibus.datasource.restriction.Restrictions;
 import com.archibus.eventhandler.reservations.ReservationsCommonHandler;
 import com.archibus.jobmanager.EventHandlerContext;
-import com.archibus.model.view.datasource.ClauseDef.Operation;
-import com.archibus.model.view.datasource.ParsedRestrictionDef;
 import com.archibus.utility.ExceptionBase;
 import com.archibus.utility.StringUtil;
 
@@ -41,17 +45,31 @@ public class WebCentralCalendarService extends RoomReservationServiceBase implem
     /** Invitation type for invitation updates. */
     private static final String TYPE_UPDATE = "update";
 
-    /** Percent symbol for LIKE restrictions. */
-    private static final String PERCENT = "%";
-
     /** Name of the table containing reservations. */
     private static final String RESERVE_TABLE = "reserve";
 
+    /** Name of the table containing room allocations. */
+    private static final String RESERVE_RM_TABLE = Constants.RESERVE_RM_TABLE_NAME;
+
+    /** Reservation fields used to create the calendar events. */
+    private static final String[] RESERVATION_FIELDS = { "reservation_name",
+            Constants.DATE_START_FIELD_NAME, Constants.DATE_END_FIELD_NAME, "time_start",
+            "time_end", "res_type", Constants.EMAIL_FIELD_NAME, Constants.STATUS };
+
+    /** Parameter containing the email address of the requestor. */
+    private static final String EMAIL_PARAMETER = "email";
+
+    /** Parameter containing the email address of the attendee, in lower case. */
+    private static final String ATTENDEE_PARAMETER = "attendeeEmail";
+
     /** The employee service. */
     private IEmployeeService employeeService;
 
     /** The visitors data source. */
     private IVisitorDataSource visitorDataSource; 
+
+    /** The cache of attendee availability, null if not used. */
+    private AttendeeAvailabilityCache attendeeAvailabilityCache;
     
     /** {@inheritDoc} */
     public void checkServiceAvailable() throws ExceptionBase {        
@@ -64,60 +82,24 @@ public class WebCentralCalendarService extends RoomReservationServiceBase implem
 
         final List<ICalendarEvent> events = new ArrayList<ICalendarEvent>();
         if (!StringUtil.isNullOrEmpty(email)) {
-            this.roomReservationDataSource.clearRestrictions();
-            this.roomReservationDataSource.addRestriction(Restrictions.or(
-                Restrictions.like(RESERVE_TABLE, "attendees", PERCENT + email + PERCENT),
-                Restrictions.eq(RESERVE_TABLE, "email", email)));
-
-            final ParsedRestrictionDef restriction = new ParsedRestrictionDef();
+            final DataSource dataSource = createAttendeeAvailabilityDataSource(email);
             if (endDate == null) {
-                restriction.addClause(RESERVE_TABLE, Constants.DATE_START_FIELD_NAME, startDate,
-                        Operation.EQUALS);
+                dataSource.addRestriction(Restrictions.eq(RESERVE_TABLE,
+                    Constants.DATE_START_FIELD_NAME, startDate));
             } else {
-                restriction.addClause(RESERVE_TABLE, Constants.DATE_START_FIELD_NAME, startDate,
-                        Operation.GTE);
-                restriction.addClause(RESERVE_TABLE, Constants.DATE_END_FIELD_NAME, endDate,
-                        Operation.LTE);
+                dataSource.addRestriction(Restrictions.gte(RESERVE_TABLE,
+                    Constants.DATE_START_FIELD_NAME, startDate));
+                dataSource.addRestriction(Restrictions.lte(RESERVE_TABLE,
+                    Constants.DATE_END_FIELD_NAME, endDate));
             }
 
-            restriction.addClause(
-                    RESERVE_TABLE,
-                    Constants.STATUS,
-                    Arrays.asList(new String[] { Constants.STATUS_AWAITING_APP,
-                            Constants.STATUS_CONFIRMED }), Operation.IN);
-
-            final List<RoomReservation> reservations =
-                    this.roomReservationDataSource.find(restriction);
-
-            for (final RoomReservation reservation : reservations) {
-
-                final ICalendarEvent calendarEvent = new CalendarEvent();
-                // take the reservation id as reference id
-                calendarEvent.setEventId(Integer.toString(reservation.getReserveId()));
-                // confidential
-                calendarEvent.setSubject(reservation.getReservationName());
-                calendarEvent.setStartDate(reservation.getStartDate());
-                calendarEvent.setEndDate(reservation.getEndDate());
-                calendarEvent.setStartTime(reservation.getStartTime());
-                calendarEvent.setEndTime(reservation.getEndTime());
-
-                final List<RoomAllocation> roomAllocations =
-                        this.roomAllocationDataSource.find(reservation);
-                if (roomAllocations.isEmpty()) {
-                    calendarEvent.setLocation("");
-                } else {
-                    calendarEvent.setLocation(roomAllocations.get(0).getLocation());
+            // the location of an event is the first room of the reservation
+            final Set<Integer> reserveIds = new HashSet<Integer>();
+            for (final DataRecord record : dataSource.getRecords()) {
+                if (reserveIds.add(record.getInt(RESERVE_RM_TABLE + Constants.DOT
+                        + Constants.RES_ID))) {
+                    events.add(createCalendarEvent(record));
                 }
-
-                calendarEvent.setSubject(reservation.getReservationName());
-
-                if (Constants.TYPE_RECURRING.equalsIgnoreCase(reservation.getReservationType())) {
-                    calendarEvent.setRecurrent(true);
-                } else {
-                    calendarEvent.setRecurrent(false);
-                }
-
-                events.add(calendarEvent);
             }
         }
 
@@ -158,6 +140,17 @@ public class WebCentralCalendarService extends RoomReservationServiceBase implem
         // send emails to attendees
         sendEmailInvitations(reservation, originalReservation, TYPE_UPDATE, false, null);
     }
+
+    /** {@inheritDoc} */
+    public void prepareAppointmentOccurrences(
+            final List<? extends IReservation> originalReservations) throws ExceptionBase {
+        // nothing to retrieve, emails are sent for each occurrence
+    }
+
+    /** {@inheritDoc} */
+    public void releaseAppointmentOccurrences() {
+        // nothing was retrieved
+    }
  
     /**
      * Set the employee service.
@@ -177,6 +170,16 @@ public class WebCentralCalendarService extends RoomReservationServiceBase implem
         this.visitorDataSource = visitorDataSource;
     }
 
+    /**
+     * Set the cache of attendee availability.
+     * 
+     * @param attendeeAvailabilityCache the new attendee availability cache
+     */
+    public void setAttendeeAvailabilityCache(
+            final AttendeeAvailabilityCache attendeeAvailabilityCache) {
+        this.attendeeAvailabilityCache = attendeeAvailabilityCache;
+    }
+
     /**
      * Send the e-mail notifications.
      *
@@ -188,6 +191,11 @@ public class WebCentralCalendarService extends RoomReservationServiceBase implem
      */
     private void sendEmailInvitations(final IReservation reservation, final IReservation originalReservation, 
             final String invitationType, final boolean allRecurrences, final String message) {
+        // the reservation is saved, so the availability of its attendees has changed
+        if (this.attendeeAvailabilityCache != null) {
+            this.attendeeAvailabilityCache.invalidate(reservation);
+            this.attendeeAvailabilityCache.invalidate(originalReservation);
+        }
         final EventHandlerContext context = ContextStore.get().getEventHandlerContext();
 
         if (EmailNotificationHelper.notificationsEnabled()) {
@@ -273,6 +281,66 @@ public class WebCentralCalendarService extends RoomReservationServiceBase implem
         context.addResponseParameter("Reservation", json.toString());
     }
     
+    /**
+     * Create the data source for the reservations of an attendee. The room allocations are joined
+     * with their reservation in one query, the attendee is looked up in the attendee table.
+     * Reservations without room allocations are not returned.
+     * 
+     * @param email the email address of the attendee
+     * @return the data source, without date restrictions
+     */
+    private static DataSource createAttendeeAvailabilityDataSource(final String email) {
+        final DataSource dataSource =
+                DataSourceFactory.createDataSourceForFields(RESERVE_RM_TABLE, new String[] {
+                        Constants.RES_ID, Constants.RMRES_ID_FIELD_NAME,
+                        Constants.BL_ID_FIELD_NAME, Constants.FL_ID_FIELD_NAME,
+                        Constants.RM_ID_FIELD_NAME });
+        dataSource.addTable(RESERVE_TABLE, DataSource.ROLE_STANDARD);
+        for (final String field : RESERVATION_FIELDS) {
+            dataSource.addField(RESERVE_TABLE, field);
+        }
+        dataSource.addRestriction(Restrictions.in(RESERVE_TABLE, Constants.STATUS,
+            Constants.STATUS_AWAITING_APP + "," + Constants.STATUS_CONFIRMED));
+        dataSource.addRestriction(Restrictions.sql("(" + RESERVE_TABLE + ".email = ${parameters['"
+                + EMAIL_PARAMETER + "']} OR "
+                + ReservationAttendeeDataSource.getAttendeeRestriction(RESERVE_TABLE,
+                    ATTENDEE_PARAMETER) + ")"));
+        dataSource.addParameter(EMAIL_PARAMETER, email, DataSource.DATA_TYPE_TEXT);
+        dataSource.addParameter(ATTENDEE_PARAMETER,
+            ReservationAttendeeDataSource.normalizeEmail(email), DataSource.DATA_TYPE_TEXT);
+        dataSource.addSort(RESERVE_RM_TABLE, Constants.RES_ID, DataSource.SORT_ASC);
+        dataSource.addSort(RESERVE_RM_TABLE, Constants.RMRES_ID_FIELD_NAME, DataSource.SORT_ASC);
+        dataSource.setMaxRecords(0);
+        return dataSource;
+    }
+
+    /**
+     * Create a calendar event from a room allocation joined with its reservation.
+     * 
+     * @param record the room allocation record with the reservation fields
+     * @return the calendar event
+     */
+    private static ICalendarEvent createCalendarEvent(final DataRecord record) {
+        final String reserve = RESERVE_TABLE + Constants.DOT;
+        final String allocation = RESERVE_RM_TABLE + Constants.DOT;
+        final ICalendarEvent calendarEvent = new CalendarEvent();
+        // take the reservation id as reference id
+        calendarEvent.setEventId(Integer.toString(record.getInt(allocation + Constants.RES_ID)));
+        // confidential
+        calendarEvent.setSubject(record.getString(reserve + "reservation_name"));
+        calendarEvent.setStartDate(record.getDate(reserve + Constants.DATE_START_FIELD_NAME));
+        calendarEvent.setEndDate(record.getDate(reserve + Constants.DATE_END_FIELD_NAME));
+        calendarEvent.setStartTime((Time) record.getValue(reserve + "time_start"));
+        calendarEvent.setEndTime((Time) record.getValue(reserve + "time_end"));
+        calendarEvent.setLocation(new RoomAllocation(record.getString(allocation
+                + Constants.BL_ID_FIELD_NAME), record.getString(allocation
+                + Constants.FL_ID_FIELD_NAME), record.getString(allocation
+                + Constants.RM_ID_FIELD_NAME), null, null).getLocation());
+        calendarEvent.setRecurrent(Constants.TYPE_RECURRING.equalsIgnoreCase(record
+            .getString(reserve + "res_type")));
+        return calendarEvent;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -49,11 +49,36 @@ public final class ReservationServiceHelper {
                 .getRecurrence().toString());
 
         // Update the parent id in the other reservations.
-        for (RoomReservation existingReservation : existingReservations) {
-            roomReservationDataSource.markRecurring(existingReservation, parentId,
+        markRecurringSeries(roomReservationDataSource, parentId, existingReservations);
+    } 
+    
+    /**
+     * Move the other reservations in a recurrence series to the given parent id. All reservations
+     * that share a parent id are updated in one statement, keeping their recurring rule.
+     * 
+     * @param reservationDataSource the reservation data source
+     * @param parentId the parent id to set
+     * @param existingReservations the other reservations in the recurrence series
+     * @param <T> the reservation type
+     */
+    public static <T extends AbstractReservation> void markRecurringSeries(
+            final IReservationDataSource<T> reservationDataSource, final Integer parentId,
+            final List<T> existingReservations) {
+        final Set<Integer> updatedParentIds = new HashSet<Integer>();
+        updatedParentIds.add(parentId);
+        for (final T existingReservation : existingReservations) {
+            final Integer oldParentId = existingReservation.getParentId();
+            if (oldParentId == null) {
+                reservationDataSource.markRecurring(existingReservation, parentId,
                     existingReservation.getRecurringRule());
+            } else {
+                if (updatedParentIds.add(oldParentId)) {
+                    reservationDataSource.markRecurringSeries(oldParentId, parentId, null);
+                }
+                existingReservation.setParentId(parentId);
+            }
         }
-    } 
+    }
 
 
     /**
@@ -44,10 +44,8 @@ public class ResourceReservationServiceHelper {
                 .getRecurrence().toString());
 
         // Update the parent id in the other reservations.
-        for (ResourceReservation existingReservation : existingReservations) {
-            resourceReservationDataSource.markRecurring(existingReservation, parentId,
-                    existingReservation.getRecurringRule());
-        }
+        ReservationServiceHelper.markRecurringSeries(this.resourceReservationDataSource, parentId,
+            existingReservations);
     } 
     
     /**
@@ -1,10 +1,14 @@
 package com.archibus.app.reservation.service.helpers;
 
 import java.sql.Time;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.TreeSet;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -16,6 +20,7 @@ import com.archibus.app.reservation.domain.RoomAllocation;
 import com.archibus.app.reservation.domain.RoomArrangement;
 import com.archibus.app.reservation.domain.RoomReservation;
 import com.archibus.app.reservation.domain.TimePeriod;
+import com.archibus.app.reservation.service.AttendeeAvailabilityCache;
 import com.archibus.app.reservation.service.RoomReservationServiceBase;
 import com.archibus.app.reservation.util.TimelineHelper;
 import com.archibus.utility.ExceptionBase;
@@ -31,6 +36,9 @@ public class TimelineServiceHelper extends RoomReservationServiceBase {
 
     /** The room arrangement data source. */
     private RoomArrangementDataSource roomArrangementDataSource; 
+
+    /** The cache of attendee availability, null if not used. */
+    private AttendeeAvailabilityCache attendeeAvailabilityCache;
     
     /**
      * Create Room Allocation events.
@@ -86,7 +94,7 @@ public class TimelineServiceHelper extends RoomReservationServiceBase {
             final String email, final int currentIndex) {
         // get the calendar events for this attendee
         final List<ICalendarEvent> calendarEvents =
-                this.calendarService.findAttendeeAvailability(startDate, endDate, timeZone, email);
+                findAttendeeAvailability(startDate, endDate, timeZone, email);
 
         for (final ICalendarEvent calendarEvent : calendarEvents) {
             if (!(StringUtil.notNullOrEmpty(uniqueId) && uniqueId.equals(calendarEvent.getEventId()))) {               
@@ -97,7 +105,57 @@ public class TimelineServiceHelper extends RoomReservationServiceBase {
         }
     }
 
+    /**
+     * Create attendee events for all occurrences of a recurring reservation. The attendee
+     * availability is retrieved with a single request for the range of the series. Only the
+     * events on the day of an occurrence are added to the timeline.
+     *
+     * @param dates the dates of the occurrences
+     * @param ownEventIds the ids of the calendar events of the reservation itself, to ignore
+     * @param timeline the timeline
+     * @param timeZone the time zone
+     * @param email the email
+     * @param currentIndex the current index
+     */
+    public void createAttendeeEvents(final Collection<Date> dates,
+            final Set<String> ownEventIds, final JSONObject timeline, final TimeZone timeZone,
+            final String email, final int currentIndex) {
+        final NavigableSet<Date> days = new TreeSet<Date>();
+        for (final Date date : dates) {
+            days.add(TimePeriod.clearTime(date));
+        }
+        if (!days.isEmpty()) {
+            // get the calendar events for this attendee in the complete range
+            final List<ICalendarEvent> calendarEvents =
+                    findAttendeeAvailability(days.first(), days.last(), timeZone, email);
+
+            final JSONArray events = timeline.getJSONArray(EVENTS);
+            for (final ICalendarEvent calendarEvent : calendarEvents) {
+                if (!ownEventIds.contains(calendarEvent.getEventId())
+                        && isOnOccurrenceDay(days, calendarEvent)) {
+                    events.put(TimelineHelper.createAttendeeCalendarEvent(timeline,
+                        calendarEvent, currentIndex));
+                }
+            }
+        }
+    }
 
+    /**
+     * Check whether a calendar event takes place on at least one of the given days.
+     *
+     * @param days the days of the occurrences, without time
+     * @param calendarEvent the calendar event
+     * @return true if the event starts, ends or continues on one of the days
+     */
+    public static boolean isOnOccurrenceDay(final NavigableSet<Date> days,
+            final ICalendarEvent calendarEvent) {
+        final Date eventStartDate = TimePeriod.clearTime(calendarEvent.getStartDate());
+        Date eventEndDate = TimePeriod.clearTime(calendarEvent.getEndDate());
+        if (eventEndDate == null || eventEndDate.before(eventStartDate)) {
+            eventEndDate = eventStartDate;
+        }
+        return !days.subSet(eventStartDate, true, eventEndDate, true).isEmpty();
+    }
 
     /**
      * Creates the room reservation object for the given parameters.
@@ -137,6 +195,57 @@ public class TimelineServiceHelper extends RoomReservationServiceBase {
         return roomReservation;
     }
 
+    /**
+     * Find the reservable room arrangements that match the location filter, number of attendees,
+     * external visitors and fixed resources, regardless of their reservations.
+     *
+     * @param locationFilter the location filter
+     * @param numberAttendees the number of attendees, or null
+     * @param externalAllowed whether only rooms that allow external visitors are returned
+     * @param fixedResourceStandards the fixed resource standards the rooms must have, or null
+     * @param emails the email addresses of the attendees or null, rooms must allow external
+     *            visitors if one of them is not an employee
+     * @return the room arrangements in the order of the room search
+     */
+    public List<RoomArrangement> findReservableRooms(final Map<String, String> locationFilter,
+            final Integer numberAttendees, final boolean externalAllowed,
+            final List<String> fixedResourceStandards, final List<String> emails) {
+        final StringBuilder attendees = new StringBuilder();
+        if (emails != null) {
+            for (final String email : emails) {
+                if (StringUtil.notNullOrEmpty(email)) {
+                    if (attendees.length() > 0) {
+                        attendees.append(';');
+                    }
+                    attendees.append(email);
+                }
+            }
+        }
+        final RoomReservation reservation = new RoomReservation();
+        reservation.setAttendees(attendees.toString());
+        final RoomAllocation location =
+                new RoomAllocation(StringUtil.notNull(locationFilter
+                    .get(Constants.BL_ID_FIELD_NAME)), StringUtil.notNull(locationFilter
+                    .get(Constants.FL_ID_FIELD_NAME)), StringUtil.notNull(locationFilter
+                    .get(Constants.RM_ID_FIELD_NAME)), null, StringUtil.notNull(locationFilter
+                    .get(Constants.RM_ARRANGE_TYPE_ID_FIELD_NAME)));
+        return this.roomArrangementDataSource.findReservableRooms(reservation, location,
+            numberAttendees, externalAllowed, fixedResourceStandards);
+    }
+
+    /**
+     * Get the active room allocations in a building in a range of dates.
+     *
+     * @param blId the building id
+     * @param startDate the first date
+     * @param endDate the last date
+     * @return the room allocations that are awaiting approval or confirmed
+     */
+    public List<RoomAllocation> getActiveRoomAllocations(final String blId,
+            final Date startDate, final Date endDate) {
+        return this.roomAllocationDataSource.getActiveRoomAllocations(blId, startDate, endDate);
+    }
+
     /**
      * Sets the room arrangement data source for getting detailed arrangement info to use on the
      * timeline.
@@ -149,4 +258,43 @@ public class TimelineServiceHelper extends RoomReservationServiceBase {
         this.roomArrangementDataSource = roomArrangementDataSource;
     } 
 
+    /**
+     * Sets the cache of attendee availability.
+     * 
+     * @param attendeeAvailabilityCache the new attendee availability cache
+     */
+    public void setAttendeeAvailabilityCache(
+            final AttendeeAvailabilityCache attendeeAvailabilityCache) {
+        this.attendeeAvailabilityCache = attendeeAvailabilityCache;
+    }
+
+    /**
+     * Get the availability of an attendee from the cache, or from the calendar service if not
+     * cached.
+     * 
+     * @param startDate the start date
+     * @param endDate the end date
+     * @param timeZone the time zone
+     * @param email the email address of the attendee
+     * @return the calendar events of the attendee
+     */
+    public List<ICalendarEvent> findAttendeeAvailability(final Date startDate,
+            final Date endDate, final TimeZone timeZone, final String email) {
+        List<ICalendarEvent> calendarEvents = null;
+        if (this.attendeeAvailabilityCache != null) {
+            calendarEvents =
+                    this.attendeeAvailabilityCache.get(email, startDate, endDate, timeZone);
+        }
+        if (calendarEvents == null) {
+            calendarEvents =
+                    this.calendarService.findAttendeeAvailability(startDate, endDate, timeZone,
+                        email);
+            if (this.attendeeAvailabilityCache != null) {
+                this.attendeeAvailabilityCache.put(email, startDate, endDate, timeZone,
+                    calendarEvents);
+            }
+        }
+        return calendarEvents;
+    }
+
 }
\ No newline at end of file
@@ -62,7 +62,7 @@ public class ReservationsHandler {
                 (RoomArrangementDataSource) ContextStore.get().getBean("roomArrangementDataSource");
         List<RoomArrangement> rooms = null;
         rooms =
-                roomArrangementDataSource.findAvailableRooms(blId, flId, rmId, rmArrangeTypeId,
+                roomArrangementDataSource.searchAvailableRooms(blId, flId, rmId, rmArrangeTypeId,
                     timePeriod, capacity, null);
         
         return rooms;
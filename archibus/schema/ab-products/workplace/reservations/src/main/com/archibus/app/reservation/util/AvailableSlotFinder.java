@@ -0,0 +1,127 @@
+package com.archibus.app.reservation.util;
+
+import java.util.*;
+
+import com.archibus.app.reservation.domain.CompactTimePeriod;
+
+/**
+ * Finds the earliest start times on one day at which a room and all attendees are available.
+ * <p>
+ * Busy periods are given in minutes since midnight. Each busy period is converted to the open
+ * interval of start times it excludes, taking the duration of the meeting and the pre- and
+ * post-block of the room into account. The excluded intervals of the attendees are shared by
+ * all rooms. For each room they are merged with the excluded intervals of that room, after which
+ * one sweep over the sorted intervals yields the feasible start times.
+ * <p>
+ * Start times are aligned to a fixed step, e.g. the minor segment of the timeline. A start time
+ * equal to the end of a busy period (including the blocks) is feasible.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public final class AvailableSlotFinder {
+
+    /** Orders intervals on their start. */
+    private static final Comparator<int[]> START_ORDER = new Comparator<int[]>() {
+        public int compare(final int[] first, final int[] second) {
+            return first[0] < second[0] ? -1 : (first[0] == second[0] ? 0 : 1);
+        }
+    };
+
+    /** Duration of the meeting in minutes. */
+    private final int duration;
+
+    /** Step between start times in minutes. */
+    private final int step;
+
+    /** The start times excluded by the attendees, as open intervals. */
+    private final List<int[]> attendeeExclusions = new ArrayList<int[]>();
+
+    /**
+     * Create a finder for meetings of the given duration.
+     *
+     * @param duration the duration of the meeting in minutes
+     * @param step the step between start times in minutes
+     */
+    public AvailableSlotFinder(final int duration, final int step) {
+        this.duration = duration;
+        this.step = Math.max(1, step);
+    }
+
+    /**
+     * Add a period in which an attendee is busy. Attendees don't need pre- and post-blocks.
+     *
+     * @param start the start of the busy period in minutes since midnight
+     * @param end the end of the busy period in minutes since midnight
+     */
+    public void addAttendeeBusyPeriod(final int start, final int end) {
+        if (end > start) {
+            this.attendeeExclusions.add(new int[] { start - this.duration, end });
+        }
+    }
+
+    /**
+     * Find the earliest feasible start times in a room.
+     *
+     * @param earliestStart the earliest start time requested, in minutes since midnight
+     * @param dayStart the start of the reservable hours of the room
+     * @param dayEnd the end of the reservable hours of the room
+     * @param preBlock the pre-block of the room in minutes
+     * @param postBlock the post-block of the room in minutes
+     * @param roomBusyPeriods the periods in which the room is busy, as start and end minute,
+     *            including the blocks of the existing reservations
+     * @param maxStartTimes the maximum number of start times to return
+     * @return the feasible start times in ascending order
+     */
+    public List<Integer> findStartTimes(final int earliestStart, final int dayStart,
+            final int dayEnd, final int preBlock, final int postBlock,
+            final List<int[]> roomBusyPeriods, final int maxStartTimes) {
+        final List<int[]> exclusions = new ArrayList<int[]>(this.attendeeExclusions);
+        for (final int[] busy : roomBusyPeriods) {
+            if (busy[1] > busy[0]) {
+                exclusions.add(new int[] { busy[0] - this.duration - postBlock,
+                        busy[1] + preBlock });
+            }
+        }
+        Collections.sort(exclusions, START_ORDER);
+
+        final int latestStart =
+                Math.min(dayEnd, CompactTimePeriod.MINUTES_IN_DAY) - this.duration - postBlock;
+        final List<Integer> startTimes = new ArrayList<Integer>();
+        int start = alignToStep(Math.max(earliestStart, dayStart + preBlock));
+        final Iterator<int[]> iterator = exclusions.iterator();
+        while (startTimes.size() < maxStartTimes && start <= latestStart) {
+            // the start times up to and including the start of the next exclusion are feasible
+            final int[] exclusion = iterator.hasNext() ? iterator.next() : null;
+            final int lastFeasible = exclusion == null ? latestStart : Math.min(latestStart,
+                exclusion[0]);
+            while (startTimes.size() < maxStartTimes && start <= lastFeasible) {
+                startTimes.add(start);
+                start += this.step;
+            }
+            if (exclusion == null) {
+                break;
+            }
+            start = Math.max(start, alignToStep(exclusion[1]));
+        }
+        return startTimes;
+    }
+
+    /**
+     * Round a time up to the next multiple of the step.
+     *
+     * @param minute the time in minutes since midnight
+     * @return the aligned time
+     */
+    private int alignToStep(final int minute) {
+        int aligned = minute;
+        final int remainder = minute % this.step;
+        if (remainder > 0) {
+            aligned += this.step - remainder;
+        } else if (remainder < 0) {
+            aligned -= remainder;
+        }
+        return aligned;
+    }
+
+}
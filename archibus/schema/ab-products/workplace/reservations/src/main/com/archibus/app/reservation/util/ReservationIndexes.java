@@ -0,0 +1,135 @@
+package com.archibus.app.reservation.util;
+
+import java.util.*;
+
+/**
+ * Utility class. Defines the indexes supporting the most frequent reservation queries.
+ * <p>
+ * Each index starts with the equality columns of the query and ends with the columns that are
+ * only read, so the database can answer the query from the index without accessing the table.
+ * <p>
+ * Used by ReservationUpgradeService.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public final class ReservationIndexes {
+
+    /** Maximum length of an index name supported by all databases. */
+    public static final int MAX_NAME_LENGTH = 30;
+
+    /** The index definitions. */
+    private static final List<IndexDefinition> DEFINITIONS;
+
+    static {
+        final List<IndexDefinition> definitions = new ArrayList<IndexDefinition>();
+        // room availability: NOT EXISTS on reserve_rm per room and date
+        definitions.add(new IndexDefinition("reserve_rm_room_date", "reserve_rm", "bl_id",
+            "fl_id", "rm_id", "date_start", "status", "config_id", "time_start", "time_end",
+            "res_id"));
+        // unique and limited resource availability: NOT EXISTS on reserve_rs per resource and date
+        definitions.add(new IndexDefinition("reserve_rs_resource_date", "reserve_rs",
+            "resource_id", "date_start", "status", "time_start", "time_end", "quantity", "res_id"));
+        // occurrences of a recurring reservation
+        definitions.add(new IndexDefinition("reserve_parent_status", "reserve", "res_parent",
+            "status", "res_id"));
+        // reservations of a requestor by email address
+        definitions.add(new IndexDefinition("reserve_email_date", "reserve", "email",
+            "date_start", "res_id"));
+        // reservations of an attendee, the primary key covers the lookup by reservation
+        definitions.add(new IndexDefinition("reserve_attendee_email", "reserve_attendee",
+            "email", "res_id"));
+        // work requests linked to a reservation, used when confirming or cancelling
+        definitions.add(new IndexDefinition("wr_reservation_status", "wr", "res_id", "status",
+            "rmres_id", "rsres_id"));
+        DEFINITIONS = Collections.unmodifiableList(definitions);
+    }
+
+    /**
+     * Private default constructor: utility class is non-instantiable.
+     */
+    private ReservationIndexes() {
+    }
+
+    /**
+     * Get the definitions of all reservation indexes.
+     *
+     * @return unmodifiable list of index definitions
+     */
+    public static List<IndexDefinition> getDefinitions() {
+        return DEFINITIONS;
+    }
+
+    /**
+     * Definition of a single index.
+     */
+    public static final class IndexDefinition {
+
+        /** The index name. */
+        private final String name;
+
+        /** The indexed table. */
+        private final String tableName;
+
+        /** The indexed columns, in order. */
+        private final List<String> columnNames;
+
+        /**
+         * Create an index definition.
+         *
+         * @param name the index name
+         * @param tableName the indexed table
+         * @param columnNames the indexed columns, in order
+         */
+        IndexDefinition(final String name, final String tableName, final String... columnNames) {
+            this.name = name;
+            this.tableName = tableName;
+            this.columnNames = Collections.unmodifiableList(Arrays.asList(columnNames));
+        }
+
+        /**
+         * Get the index name.
+         *
+         * @return the index name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Get the indexed table.
+         *
+         * @return the table name
+         */
+        public String getTableName() {
+            return this.tableName;
+        }
+
+        /**
+         * Get the indexed columns.
+         *
+         * @return the column names, in order
+         */
+        public List<String> getColumnNames() {
+            return this.columnNames;
+        }
+
+        /**
+         * Get the CREATE INDEX statement. The syntax is the same on all supported databases.
+         *
+         * @return the SQL statement
+         */
+        public String getCreateStatement() {
+            final StringBuilder sql = new StringBuilder("CREATE INDEX ");
+            sql.append(this.name).append(" ON ").append(this.tableName).append(" (");
+            for (int i = 0; i < this.columnNames.size(); ++i) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append(this.columnNames.get(i));
+            }
+            return sql.append(')').toString();
+        }
+    }
+
+}
@@ -0,0 +1,332 @@
+package com.archibus.app.reservation.util;
+
+import java.util.*;
+
+/**
+ * Utility class. Defines the tables the reservations module adds to the standard schema, with the
+ * data dictionary entries describing them.
+ * <p>
+ * Used by ReservationUpgradeService.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public final class ReservationTables {
+
+    /** Data dictionary type for numeric fields with decimals. */
+    public static final int TYPE_NUMERIC = 2;
+
+    /** Data dictionary type for integer fields. */
+    public static final int TYPE_INTEGER = 4;
+
+    /** Data dictionary type for date fields. */
+    public static final int TYPE_DATE = 9;
+
+    /** Data dictionary type for variable length text fields. */
+    public static final int TYPE_VARCHAR = 12;
+
+    /** Table linking each reservation to the email addresses of its attendees. */
+    public static final String RESERVE_ATTENDEE = "reserve_attendee";
+
+    /** Daily room utilization summary. */
+    public static final String RESERVE_RM_SUM = "reserve_rm_sum";
+
+    /** Size of the attendee email field. */
+    public static final int EMAIL_SIZE = 128;
+
+    /** Size of an integer field in the data dictionary. */
+    private static final int INTEGER_SIZE = 9;
+
+    /** Size of the building and room code fields. */
+    private static final int ROOM_CODE_SIZE = 8;
+
+    /** Size of the floor code field. */
+    private static final int FLOOR_CODE_SIZE = 4;
+
+    /** Size of the cost field. */
+    private static final int COST_SIZE = 12;
+
+    /** Size of a date field in the data dictionary. */
+    private static final int DATE_SIZE = 10;
+
+    /** The table definitions. */
+    private static final List<TableDefinition> DEFINITIONS;
+
+    static {
+        final List<TableDefinition> definitions = new ArrayList<TableDefinition>();
+        // attendees by email address, for looking up the reservations of an attendee
+        definitions.add(new TableDefinition(RESERVE_ATTENDEE, "Reservation Attendees",
+            new ColumnDefinition("res_id", "Reservation Code", TYPE_INTEGER, INTEGER_SIZE, 0, 1,
+                "reserve"), new ColumnDefinition("email", "Attendee Email", TYPE_VARCHAR,
+                EMAIL_SIZE, 0, 2, null)));
+        // booked minutes, reservations, attendees and cost per room and day, see
+        // RoomUtilizationSummary
+        definitions.add(new TableDefinition(RESERVE_RM_SUM, "Room Utilization by Day",
+            new ColumnDefinition("bl_id", "Building Code", TYPE_VARCHAR, ROOM_CODE_SIZE, 0, 1,
+                "bl"), new ColumnDefinition("fl_id", "Floor Code", TYPE_VARCHAR,
+                FLOOR_CODE_SIZE, 0, 2, "fl"), new ColumnDefinition("rm_id", "Room Code",
+                TYPE_VARCHAR, ROOM_CODE_SIZE, 0, 3, "rm"), new ColumnDefinition("date_start",
+                "Date", TYPE_DATE, DATE_SIZE, 0, 4, null), new ColumnDefinition(
+                "minutes_booked", "Minutes Booked", TYPE_INTEGER, INTEGER_SIZE, 0, 0, null),
+            new ColumnDefinition("res_count", "Number of Reservations", TYPE_INTEGER,
+                INTEGER_SIZE, 0, 0, null), new ColumnDefinition("attendee_count",
+                "Number of Attendees", TYPE_INTEGER, INTEGER_SIZE, 0, 0, null),
+            new ColumnDefinition("cost_rmres", "Cost", TYPE_NUMERIC, COST_SIZE, 2, 0, null)));
+        DEFINITIONS = Collections.unmodifiableList(definitions);
+    }
+
+    /**
+     * Private default constructor: utility class is non-instantiable.
+     */
+    private ReservationTables() {
+    }
+
+    /**
+     * Get the definitions of all reservation tables.
+     *
+     * @return unmodifiable list of table definitions
+     */
+    public static List<TableDefinition> getDefinitions() {
+        return DEFINITIONS;
+    }
+
+    /**
+     * Definition of a table.
+     */
+    public static final class TableDefinition {
+
+        /** The table name. */
+        private final String name;
+
+        /** The title of the table in the data dictionary. */
+        private final String title;
+
+        /** The columns, in order. */
+        private final List<ColumnDefinition> columns;
+
+        /**
+         * Create a table definition.
+         *
+         * @param name the table name
+         * @param title the title of the table in the data dictionary
+         * @param columns the columns, in order
+         */
+        TableDefinition(final String name, final String title, final ColumnDefinition... columns) {
+            this.name = name;
+            this.title = title;
+            this.columns = Collections.unmodifiableList(Arrays.asList(columns));
+        }
+
+        /**
+         * Get the table name.
+         *
+         * @return the table name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Get the title of the table in the data dictionary.
+         *
+         * @return the title
+         */
+        public String getTitle() {
+            return this.title;
+        }
+
+        /**
+         * Get the columns.
+         *
+         * @return the columns, in order
+         */
+        public List<ColumnDefinition> getColumns() {
+            return this.columns;
+        }
+
+        /**
+         * Get the CREATE TABLE statement.
+         *
+         * @param oracle true to use the Oracle data types, false for SQL Server and Sybase
+         * @return the SQL statement
+         */
+        public String getCreateStatement(final boolean oracle) {
+            final StringBuilder sql = new StringBuilder("CREATE TABLE ");
+            sql.append(this.name).append(" (");
+            final List<String> primaryKey = new ArrayList<String>();
+            for (final ColumnDefinition column : this.columns) {
+                sql.append(column.getName()).append(' ').append(column.getSqlType(oracle));
+                if (column.isPrimaryKey()) {
+                    sql.append(" NOT NULL");
+                    primaryKey.add(column.getName());
+                } else {
+                    sql.append(" NULL");
+                }
+                sql.append(", ");
+            }
+            sql.append("PRIMARY KEY (");
+            for (int i = 0; i < primaryKey.size(); ++i) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append(primaryKey.get(i));
+            }
+            return sql.append("))").toString();
+        }
+    }
+
+    /**
+     * Definition of a column and its data dictionary entry.
+     */
+    public static final class ColumnDefinition {
+
+        /** The column name. */
+        private final String name;
+
+        /** The heading in the data dictionary. */
+        private final String heading;
+
+        /** The data dictionary type. */
+        private final int dataType;
+
+        /** The size. */
+        private final int size;
+
+        /** The number of decimals. */
+        private final int decimals;
+
+        /** The position in the primary key, 0 if not part of it. */
+        private final int primaryKey;
+
+        /** The referenced table, null if none. */
+        private final String refTable;
+
+        /**
+         * Create a column definition.
+         *
+         * @param name the column name
+         * @param heading the heading in the data dictionary
+         * @param dataType the data dictionary type
+         * @param size the size
+         * @param decimals the number of decimals
+         * @param primaryKey the position in the primary key, 0 if not part of it
+         * @param refTable the referenced table, null if none
+         */
+        ColumnDefinition(final String name, final String heading, final int dataType,
+                final int size, final int decimals, final int primaryKey, final String refTable) {
+            this.name = name;
+            this.heading = heading;
+            this.dataType = dataType;
+            this.size = size;
+            this.decimals = decimals;
+            this.primaryKey = primaryKey;
+            this.refTable = refTable;
+        }
+
+        /**
+         * Get the column name.
+         *
+         * @return the column name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Get the heading in the data dictionary.
+         *
+         * @return the heading
+         */
+        public String getHeading() {
+            return this.heading;
+        }
+
+        /**
+         * Get the data dictionary type.
+         *
+         * @return the data type
+         */
+        public int getDataType() {
+            return this.dataType;
+        }
+
+        /**
+         * Get the size.
+         *
+         * @return the size
+         */
+        public int getSize() {
+            return this.size;
+        }
+
+        /**
+         * Get the number of decimals.
+         *
+         * @return the number of decimals
+         */
+        public int getDecimals() {
+            return this.decimals;
+        }
+
+        /**
+         * Get the position in the primary key.
+         *
+         * @return the position, 0 if the column is not part of the primary key
+         */
+        public int getPrimaryKey() {
+            return this.primaryKey;
+        }
+
+        /**
+         * Check whether the column is part of the primary key.
+         *
+         * @return true if the column is part of the primary key
+         */
+        public boolean isPrimaryKey() {
+            return this.primaryKey > 0;
+        }
+
+        /**
+         * Get the referenced table.
+         *
+         * @return the table name, null if the column doesn't reference a table
+         */
+        public String getRefTable() {
+            return this.refTable;
+        }
+
+        /**
+         * Get the SQL type of the column.
+         *
+         * @param oracle true to use the Oracle data types, false for SQL Server and Sybase
+         * @return the SQL type
+         */
+        public String getSqlType(final boolean oracle) {
+            String sqlType = null;
+            switch (this.dataType) {
+                case TYPE_NUMERIC:
+                    sqlType = "NUMERIC(" + this.size + ", " + this.decimals + ")";
+                    break;
+                case TYPE_INTEGER:
+                    sqlType = "INTEGER";
+                    break;
+                case TYPE_DATE:
+                    if (oracle) {
+                        sqlType = "DATE";
+                    } else {
+                        sqlType = "DATETIME";
+                    }
+                    break;
+                default:
+                    if (oracle) {
+                        sqlType = "VARCHAR2(" + this.size + ")";
+                    } else {
+                        sqlType = "VARCHAR(" + this.size + ")";
+                    }
+                    break;
+            }
+            return sqlType;
+        }
+    }
+
+}
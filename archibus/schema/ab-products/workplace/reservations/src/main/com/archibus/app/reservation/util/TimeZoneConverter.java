@@ -2,6 +2,7 @@ package com.archibus.app.reservation.util;
 
 import java.sql.Time;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.apache.log4j.Logger;
 
@@ -12,6 +13,10 @@ import com.archibus.utility.*;
 /**
  * Utility class. Provides methods to convert reservations to a given time zone.
  * <p>
+ * Time zones are looked up once per id and shared by all conversions. The shared instances are
+ * only used for reading the offset, which uses the precomputed transition table of the time zone,
+ * so conversions are thread-safe and only allocate the resulting Date.
+ * <p>
  * 
  * Used by ReservationService.
  * 
@@ -21,6 +26,10 @@ import com.archibus.utility.*;
  */
 public final class TimeZoneConverter {
     
+    /** Time zones by id. The time zones in this map are never modified. */
+    private static final ConcurrentMap<String, TimeZone> TIME_ZONES =
+            new ConcurrentHashMap<String, TimeZone>();
+    
     /**
      * Private default constructor: utility class is non-instantiable.
      */
@@ -173,26 +182,13 @@ public final class TimeZoneConverter {
     public static Date calculateRequestorDateTime(final Date startDate, final Time startTime,
             final String requestorTimeZoneId, final boolean isComingFrom) {
 
-        final Date startDateTime = Utility.toDatetime(startDate, startTime);
-        TimeZone requestorTimeZone = TimeZone.getDefault();
-
-        if (StringUtil.notNullOrEmpty(requestorTimeZoneId)) {
-            requestorTimeZone = TimeZone.getTimeZone(requestorTimeZoneId);
-        }
+        final long startDateTime = Utility.toDatetime(startDate, startTime).getTime();
 
         // offset in milliseconds
-        final int requestorOffset = requestorTimeZone.getOffset(startDateTime.getTime());
-
-        final Calendar cal = Calendar.getInstance();
-        cal.setTime(startDateTime);
+        final int requestorOffset = getTimeZone(requestorTimeZoneId).getOffset(startDateTime);
 
-        if (isComingFrom) {
-            cal.add(Calendar.MILLISECOND, requestorOffset);
-        } else {
-            cal.add(Calendar.MILLISECOND, -requestorOffset);
-        }
-
-        return cal.getTime();
+        return new Date(isComingFrom ? startDateTime + requestorOffset : startDateTime
+                - requestorOffset);
     }
 
     /**
@@ -214,42 +210,75 @@ public final class TimeZoneConverter {
     public static Date calculateDateTime(final Date startDateTime,
             final String requestorTimeZoneId, final String cityTimeZoneId,
             final boolean isComingFrom) {
-        TimeZone cityTimeZone = null;
-
-        if (StringUtil.notNullOrEmpty(cityTimeZoneId)) {
-            cityTimeZone = TimeZone.getTimeZone(cityTimeZoneId);
-        } else {
-            // if the time zone is not defined for the building, we assume the time zone of the
-            // server.
-            cityTimeZone = TimeZone.getDefault();
-        }
-
-        // offset in milliseconds
-        final int cityOffset = cityTimeZone.getOffset(startDateTime.getTime());
-
-        TimeZone requestorTimeZone = null;
+        // if the time zone is not defined for the building, we assume the time zone of the
+        // server.
+        return new Date(calculateTimeInMillis(startDateTime.getTime(),
+            getTimeZone(requestorTimeZoneId), getTimeZone(cityTimeZoneId), isComingFrom));
+    }
 
-        if (StringUtil.notNullOrEmpty(requestorTimeZoneId)) {
-            requestorTimeZone = TimeZone.getTimeZone(requestorTimeZoneId);
-        } else {
-            requestorTimeZone = TimeZone.getDefault();
+    /**
+     * Calculate date times between two time zones. Same as calculateDateTime for each element,
+     * but the time zones are only looked up once and no objects are created.
+     * 
+     * @param dateTimes the date times in milliseconds, replaced by the converted values
+     * @param requestorTimeZoneId the requestor time zone id
+     * @param cityTimeZoneId the city time zone id
+     * @param isComingFrom true for requestor to building, false for building to requestor
+     */
+    public static void calculateDateTimes(final long[] dateTimes,
+            final String requestorTimeZoneId, final String cityTimeZoneId,
+            final boolean isComingFrom) {
+        final TimeZone requestorTimeZone = getTimeZone(requestorTimeZoneId);
+        final TimeZone cityTimeZone = getTimeZone(cityTimeZoneId);
+        for (int i = 0; i < dateTimes.length; ++i) {
+            dateTimes[i] =
+                    calculateTimeInMillis(dateTimes[i], requestorTimeZone, cityTimeZone,
+                        isComingFrom);
         }
+    }
 
-        // offset in milliseconds
-        final int requestorOffset = requestorTimeZone.getOffset(startDateTime.getTime());
-
-        final Calendar cal = Calendar.getInstance();
-        cal.setTime(startDateTime);
+    /**
+     * Calculate a date time between two time zones. Both offsets are determined for the given
+     * time, as if it were UTC.
+     * 
+     * @param dateTime the date time in milliseconds
+     * @param requestorTimeZone the requestor time zone
+     * @param cityTimeZone the city time zone
+     * @param isComingFrom true for requestor to building, false for building to requestor
+     * @return the converted date time in milliseconds
+     */
+    private static long calculateTimeInMillis(final long dateTime,
+            final TimeZone requestorTimeZone, final TimeZone cityTimeZone,
+            final boolean isComingFrom) {
+        // offsets in milliseconds
+        final int difference =
+                cityTimeZone.getOffset(dateTime) - requestorTimeZone.getOffset(dateTime);
+        return isComingFrom ? dateTime + difference : dateTime - difference;
+    }
 
-        if (isComingFrom) {
-            cal.add(Calendar.MILLISECOND, cityOffset);
-            cal.add(Calendar.MILLISECOND, -requestorOffset);
+    /**
+     * Get the time zone with the given id. If no id is specified, returns the default time zone
+     * of the server.
+     * 
+     * @param timeZoneId the time zone id
+     * @return the time zone, which must not be modified
+     */
+    private static TimeZone getTimeZone(final String timeZoneId) {
+        TimeZone timeZone = null;
+        if (StringUtil.notNullOrEmpty(timeZoneId)) {
+            timeZone = TIME_ZONES.get(timeZoneId);
+            if (timeZone == null) {
+                timeZone = TimeZone.getTimeZone(timeZoneId);
+                final TimeZone existing = TIME_ZONES.putIfAbsent(timeZoneId, timeZone);
+                if (existing != null) {
+                    timeZone = existing;
+                }
+            }
         } else {
-            cal.add(Calendar.MILLISECOND, -cityOffset);
-            cal.add(Calendar.MILLISECOND, requestorOffset);
+            // the default time zone can be changed at run time, so it is not cached
+            timeZone = TimeZone.getDefault();
         }
-
-        return cal.getTime();
+        return timeZone;
     }
 
     /**
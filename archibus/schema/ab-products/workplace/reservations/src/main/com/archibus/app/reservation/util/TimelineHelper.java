@@ -15,9 +15,33 @@ import com.archibus.utility.StringUtil;
 
 /**
  * The Class TimelineHelper.
+ * <p>
+ * The timemarks only depend on the timeline activity parameters, the locale of the user and the
+ * time zone of the server, so they are cached. The parameters are part of the cache key: after the
+ * activity parameters are reloaded, the next timeline is created with the new values.
  */
 public final class TimelineHelper {
     
+    /** Maximum number of cached timeline skeletons. */
+    private static final int MAX_CACHED_SKELETONS = 32;
+    
+    /** Separator used when building cache keys. */
+    private static final char KEY_SEPARATOR = '|';
+    
+    /** The cached timeline skeletons, in access order so the eldest entry is the least recent. */
+    private static final Map<String, TimelineSkeleton> SKELETONS =
+            new LinkedHashMap<String, TimelineSkeleton>(MAX_CACHED_SKELETONS, 0.75f, true) {
+                
+                /** Generated serial version ID. */
+                private static final long serialVersionUID = -6250184795032716451L;
+                
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<String, TimelineSkeleton> eldest) {
+                    return size() > MAX_CACHED_SKELETONS;
+                }
+            };
+    
     /** Qualified field name of the post_block field in the resources table. */
     private static final String RESOURCES_POST_BLOCK = "resources.post_block";
     
@@ -111,12 +135,6 @@ public final class TimelineHelper {
     /** The Constant ACTIVITY_ID. */
     private static final String ACTIVITY_ID = "AbWorkplaceReservations";
     
-    /** The Constant DATE_FORMAT. */
-    private static final String DATE_FORMAT = "yyyy-MM-dd";
-    
-    /** The Constant TIME_FORMAT. */
-    private static final String TIME_FORMAT = "1899-12-30 HH:mm";
-    
     /** The Constant ATTENDEE_START_BLOCK. */
     private static final int ATTENDEE_START_BLOCK = 0;
     
@@ -132,6 +150,39 @@ public final class TimelineHelper {
     private TimelineHelper() {
     }
     
+    /**
+     * Get the number of minor segments in an hour of the timeline, without creating the timeline.
+     * 
+     * @return the number of minor segments per hour
+     */
+    public static int getMinorSegmentsPerHour() {
+        return getMinorSegmentsPerHour(ContextStore.get().getEventHandlerContext());
+    }
+    
+    /**
+     * Get the number of minor segments in an hour of the timeline from the MinutesTimeUnit
+     * activity parameter.
+     * 
+     * @param context the event handler context
+     * @return the number of minor segments per hour
+     */
+    private static int getMinorSegmentsPerHour(final EventHandlerContext context) {
+        int minorSegments = DEFAULT_SEGMENTS_PER_HOUR;
+        final Integer minutesTimeUnit =
+                EventHandlerBase.getActivityParameterInt(context, ACTIVITY_ID, "MinutesTimeUnit");
+        if (minutesTimeUnit != null) {
+            // find out how many minor timemarks to generate per hour
+            final int interval = minutesTimeUnit.intValue();
+            // Valid intervals are between 1 and 30 - don't generate minor
+            // marks outside that range
+            if (interval > 0 && interval <= MAX_MINOR_SEGMENT_MINUTES) {
+                // Number of minor marks is closest integer
+                minorSegments = MINUTES_IN_HOUR / interval;
+            }
+        }
+        return minorSegments;
+    }
+    
     /**
      * Creates the timeline.
      * 
@@ -145,7 +196,6 @@ public final class TimelineHelper {
         // BEGIN: init timeline, created timeline mark
         int timelineStartHour = DEFAULT_START_HOUR;
         int timelineEndHour = DEFAULT_END_HOUR;
-        int minorSegments = DEFAULT_SEGMENTS_PER_HOUR;
         
         // Get time start and end values
         // Supported values are 0-24 integer as hour, or a formatted time
@@ -167,23 +217,16 @@ public final class TimelineHelper {
         
         // Number of segments each hour is broken into - these will be
         // separated by minor timemarks
-        final Integer minutesTimeUnit =
-                EventHandlerBase.getActivityParameterInt(context, ACTIVITY_ID, "MinutesTimeUnit");
-        if (minutesTimeUnit != null) {
-            // find out how many minor timemarks to generate per hour
-            final int interval = minutesTimeUnit.intValue();
-            // Valid intervals are between 1 and 30 - don't generate minor
-            // marks outside that range
-            if (interval > 0 && interval <= MAX_MINOR_SEGMENT_MINUTES) {
-                // Number of minor marks is closest integer
-                minorSegments = MINUTES_IN_HOUR / interval;
-            }
-        }
+        final int minorSegments = getMinorSegmentsPerHour(context);
         timeline.put(JSON_MINOR_TO_MAJOR_RATIO, minorSegments);
         timeline.put(JSON_TIMELINE_START_HOUR, timelineStartHour);
         timeline.put("timelineEndHour", timelineEndHour);
         
-        retrieveTimemarks(context, timeline, timelineStartHour, timelineEndHour, minorSegments);
+        final TimelineSkeleton skeleton =
+                getSkeleton(context, timelineStartHour, timelineEndHour, minorSegments);
+        // the timemarks are shared by all timelines with the same skeleton
+        timeline.put(JSON_TIMEMARKS, skeleton.timemarks);
+        timeline.put("dateTimeEnd", skeleton.dateTimeEnd);
         
         return timeline;
     }
@@ -237,13 +280,11 @@ public final class TimelineHelper {
     public static JSONObject createAttendeeCalendarEvent(final JSONObject timeline,
             final ICalendarEvent calendarEvent, final int rowIndex) {
         
-        final EventHandlerContext context = ContextStore.get().getEventHandlerContext();
-        
         final int maxTimemarksColumn = ((JSONArray) timeline.get(JSON_TIMEMARKS)).length();
         final int timelineStartHour = timeline.getInt(JSON_TIMELINE_START_HOUR);
         final int minorSegments = timeline.getInt(JSON_MINOR_TO_MAJOR_RATIO);
-        final SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT, Locale.ENGLISH);
-        final SimpleDateFormat timeFormat = new SimpleDateFormat(TIME_FORMAT, Locale.ENGLISH);
+        final ThreadSafeDateFormat dateFormat = ThreadSafeDateFormat.ISO_DATE;
+        final ThreadSafeDateFormat timeFormat = ThreadSafeDateFormat.TIMELINE_TIME;
         
         final JSONObject event = new JSONObject();
         
@@ -254,13 +295,10 @@ public final class TimelineHelper {
         
         event.put(JSON_EVENT_ID, calendarEvent.getEventId());
         event.put(JSON_RESOURCE_ROW, rowIndex);
-        event.put(JSON_COLUMN_START, TimelineHelper.getTimeColumn(timelineStartHour, minorSegments,
-            EventHandlerBase.getTimeValue(context, calendarEvent.getStartTime()),
-            maxTimemarksColumn));
-        event.put(JSON_COLUMN_END,
-            TimelineHelper.getTimeColumn(timelineStartHour, minorSegments,
-                EventHandlerBase.getTimeValue(context, calendarEvent.getEndTime()),
-                maxTimemarksColumn) - 1);
+        event.put(JSON_COLUMN_START, getTimeColumn(timelineStartHour, minorSegments,
+            CompactTimePeriod.toMinuteOfDay(calendarEvent.getStartTime()), maxTimemarksColumn));
+        event.put(JSON_COLUMN_END, getTimeColumn(timelineStartHour, minorSegments,
+            CompactTimePeriod.toMinuteOfDay(calendarEvent.getEndTime()), maxTimemarksColumn) - 1);
         // Attendees do not have pre- and postblocks.
         event.put(JSON_PRE_BLOCK_TIMESLOTS, 0);
         event.put(JSON_POST_BLOCK_TIMESLOTS, 0);
@@ -443,10 +481,23 @@ public final class TimelineHelper {
      */
     public static int getTimeColumn(final int timelineStartHour, final int minorSegments,
             final Time timeOfDay, final int maxTimemarksColumn) {
-        final Calendar calendar = Calendar.getInstance();
-        calendar.setTime(timeOfDay);
-        final int resStartHour = calendar.get(Calendar.HOUR_OF_DAY);
-        final int resStartMin = calendar.get(Calendar.MINUTE);
+        return getTimeColumn(timelineStartHour, minorSegments,
+            CompactTimePeriod.toMinuteOfDay(timeOfDay), maxTimemarksColumn);
+    }
+    
+    /**
+     * Gets the time column.
+     * 
+     * @param timelineStartHour the timeline start hour
+     * @param minorSegments the minor segments
+     * @param minuteOfDay the time of day in minutes since midnight
+     * @param maxTimemarksColumn the max timemarks column
+     * @return the time column
+     */
+    public static int getTimeColumn(final int timelineStartHour, final int minorSegments,
+            final int minuteOfDay, final int maxTimemarksColumn) {
+        final int resStartHour = minuteOfDay / MINUTES_IN_HOUR;
+        final int resStartMin = minuteOfDay % MINUTES_IN_HOUR;
         
         // Calculate column to nearest hour
         int columnAvailableFrom = (resStartHour - timelineStartHour) * minorSegments;
@@ -498,10 +549,6 @@ public final class TimelineHelper {
         Integer val = null;
         final String timelineHourParam =
                 EventHandlerBase.getActivityParameterString(context, activityId, paramId);
-        // activityparameter error message
-        final String errMessage =
-                EventHandlerBase.localizeMessage(context, ACTIVITY_ID, "LOADTIMELINE_WFR",
-                    "INVALIDPARAMETERERROR", null);
         if (StringUtil.notNullOrEmpty(timelineHourParam)) {
             // First see if it's an integer
             try {
@@ -509,15 +556,16 @@ public final class TimelineHelper {
             } catch (final NumberFormatException ne) {
                 // Not an int, see if it's a valid Time value
                 try {
-                    final SimpleDateFormat format =
-                            new SimpleDateFormat("HH:mm.ss.SSS", Locale.ENGLISH);
-                    final java.util.Date dateValue = format.parse(timelineHourParam);
+                    final java.util.Date dateValue =
+                            ThreadSafeDateFormat.PARAMETER_TIME.parse(timelineHourParam);
                     final Calendar calendar = Calendar.getInstance();
                     calendar.setTime(dateValue);
                     val = Integer.valueOf(calendar.get(Calendar.HOUR_OF_DAY));
                 } catch (final ParseException e) {
-                    // Invalid format - log error
-                    // Classlog.error(errMessage+paramId);
+                    // Invalid format - log error, only localize the message when it's needed
+                    final String errMessage =
+                            EventHandlerBase.localizeMessage(context, ACTIVITY_ID,
+                                "LOADTIMELINE_WFR", "INVALIDPARAMETERERROR", null);
                     context.addResponseParameter("message", errMessage + paramId);
                 }
             }
@@ -526,17 +574,48 @@ public final class TimelineHelper {
     }
     
     /**
-     * Retrieve timemarks.
+     * Get the timeline skeleton for the given parameters, from the cache if possible.
+     * 
+     * @param context the context
+     * @param timelineStartHour the timeline start hour
+     * @param timelineEndHour the timeline end hour
+     * @param minorSegments the minor segments
+     * @return the timeline skeleton
+     */
+    private static TimelineSkeleton getSkeleton(final EventHandlerContext context,
+            final int timelineStartHour, final int timelineEndHour, final int minorSegments) {
+        // the labels are formatted for the user's locale, the start values use the server time
+        final String key =
+                new StringBuilder().append(timelineStartHour).append(KEY_SEPARATOR)
+                    .append(timelineEndHour).append(KEY_SEPARATOR).append(minorSegments)
+                    .append(KEY_SEPARATOR).append(ContextStore.get().getUser().getLocale())
+                    .append(KEY_SEPARATOR).append(TimeZone.getDefault().getID()).toString();
+        
+        TimelineSkeleton skeleton = null;
+        synchronized (SKELETONS) {
+            skeleton = SKELETONS.get(key);
+        }
+        if (skeleton == null) {
+            skeleton =
+                    createSkeleton(context, timelineStartHour, timelineEndHour, minorSegments);
+            synchronized (SKELETONS) {
+                SKELETONS.put(key, skeleton);
+            }
+        }
+        return skeleton;
+    }
+    
+    /**
+     * Create the timemarks.
      * 
      * @param context the context
-     * @param timeline the timeline
      * @param timelineStartHour the timeline start hour
      * @param timelineEndHour the timeline end hour
      * @param minorSegments the minor segments
+     * @return the timeline skeleton containing the timemarks
      */
-    private static void retrieveTimemarks(final EventHandlerContext context,
-            final JSONObject timeline, final int timelineStartHour, final int timelineEndHour,
-            final int minorSegments) {
+    private static TimelineSkeleton createSkeleton(final EventHandlerContext context,
+            final int timelineStartHour, final int timelineEndHour, final int minorSegments) {
         
         // generate major and minor timemarks and timeslots
         final JSONArray timemarks = new JSONArray();
@@ -578,9 +657,32 @@ public final class TimelineHelper {
                 }
             }
         }
-        timeline.put(JSON_TIMEMARKS, timemarks);
         calendar.clear();
         calendar.set(Calendar.HOUR_OF_DAY, timelineEndHour);
-        timeline.put("dateTimeEnd", new Time(calendar.getTimeInMillis()).toString());
+        return new TimelineSkeleton(timemarks, new Time(calendar.getTimeInMillis()).toString());
+    }
+    
+    /**
+     * The part of a timeline that doesn't depend on the resources and events shown. Shared by all
+     * timelines with the same parameters, so it must not be modified.
+     */
+    private static final class TimelineSkeleton {
+        
+        /** The major and minor timemarks. */
+        private final JSONArray timemarks;
+        
+        /** The end time of the timeline. */
+        private final String dateTimeEnd;
+        
+        /**
+         * Create a timeline skeleton.
+         * 
+         * @param timemarks the major and minor timemarks
+         * @param dateTimeEnd the end time of the timeline
+         */
+        TimelineSkeleton(final JSONArray timemarks, final String dateTimeEnd) {
+            this.timemarks = timemarks;
+            this.dateTimeEnd = dateTimeEnd;
+        }
     }
 }
@@ -0,0 +1,131 @@
+package com.archibus.app.reservation.util;
+
+import org.json.*;
+
+/**
+ * Collects the resources and events of a timeline row by row, within a window of rows.
+ * <p>
+ * Usage: call startRows, add the events of a row to the array returned by getEvents() or to the
+ * events property of the timeline, then call addRow with the resource of that row. The rows are
+ * added to the timeline object, which getTimeline returns.
+ * <p>
+ * A row window limits the rows that are added to the timeline, so large timelines can be
+ * retrieved a range of rows at a time. Rows keep their index in the complete timeline. Check
+ * isRowInWindow before creating the events of a row, so rows outside the window cost nothing.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public final class TimelineRowWindow {
+
+    /** JSON property name for the events. */
+    public static final String EVENTS = "events";
+
+    /** JSON property name for the resources. */
+    public static final String RESOURCES = "resources";
+
+    /** JSON property name for the attendees for which no events could be retrieved. */
+    public static final String MESSAGE = "message";
+
+    /** JSON property name for the number of rows in the complete timeline. */
+    public static final String TOTAL_ROWS = "totalRows";
+
+    /** JSON property name for the index of the first row in the window. */
+    public static final String FIRST_ROW = "firstRow";
+
+    /** The timeline. */
+    private final JSONObject timeline;
+
+    /** Index of the first row in the window. */
+    private int firstRow;
+
+    /** Maximum number of rows in the window. */
+    private int maxRows = Integer.MAX_VALUE;
+
+    /** Index of the next row. */
+    private int rowIndex;
+
+    /**
+     * Create a row window for a timeline. Without a call to setRowWindow, all rows are added.
+     *
+     * @param timeline the timeline created by TimelineHelper.createTimeline
+     */
+    public TimelineRowWindow(final JSONObject timeline) {
+        this.timeline = timeline;
+    }
+
+    /**
+     * Add empty events and resources arrays to the timeline.
+     */
+    public void startRows() {
+        this.rowIndex = 0;
+        this.timeline.put(EVENTS, new JSONArray());
+        this.timeline.put(RESOURCES, new JSONArray());
+    }
+
+    /**
+     * Only add the given range of rows to the timeline. Call this before startRows, which adds
+     * the window and the total number of rows to the timeline.
+     *
+     * @param windowFirstRow index of the first row in the window
+     * @param windowMaxRows maximum number of rows in the window
+     */
+    public void setRowWindow(final int windowFirstRow, final int windowMaxRows) {
+        this.firstRow = Math.max(0, windowFirstRow);
+        this.maxRows = Math.max(0, windowMaxRows);
+    }
+
+    /**
+     * Check whether a row is in the window.
+     *
+     * @param index the index of the row in the complete timeline
+     * @return true if the row is added to the timeline
+     */
+    public boolean isRowInWindow(final int index) {
+        return index >= this.firstRow && index - this.firstRow < this.maxRows;
+    }
+
+    /**
+     * Get the timeline.
+     *
+     * @return the timeline
+     */
+    public JSONObject getTimeline() {
+        return this.timeline;
+    }
+
+    /**
+     * Get the array to add the events of the current row to.
+     *
+     * @return the events array of the timeline
+     */
+    public JSONArray getEvents() {
+        return this.timeline.getJSONArray(EVENTS);
+    }
+
+    /**
+     * Start the rows of a timeline with a row window. The total number of rows and the index of
+     * the first row in the window are added to the timeline.
+     *
+     * @param totalRows the number of rows in the complete timeline
+     */
+    public void startRows(final int totalRows) {
+        this.timeline.put(TOTAL_ROWS, totalRows);
+        this.timeline.put(FIRST_ROW, this.firstRow);
+        startRows();
+    }
+
+    /**
+     * Complete the current row: add its resource. Rows outside the window are skipped, so don't
+     * add events for them.
+     *
+     * @param resource the resource of the row
+     */
+    public void addRow(final JSONObject resource) {
+        if (isRowInWindow(this.rowIndex)) {
+            this.timeline.getJSONArray(RESOURCES).put(resource);
+        }
+        ++this.rowIndex;
+    }
+
+}
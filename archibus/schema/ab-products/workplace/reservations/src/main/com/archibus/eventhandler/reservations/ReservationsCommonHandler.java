@@ -9,6 +9,7 @@ import org.dom4j.*;
 import org.dom4j.io.SAXReader;
 import org.json.*;
 
+import com.archibus.app.reservation.dao.datasource.RoomUtilizationSummary;
 import com.archibus.context.ContextStore;
 import com.archibus.jobmanager.EventHandlerContext;
 import com.archibus.utility.*;
@@ -19,6 +20,10 @@ import com.archibus.utility.*;
  */
 public class ReservationsCommonHandler extends ReservationsEventHandlerBase {
     
+    /** Fields returned when looking up the requestor of a reservation. */
+    private static final String[] REQUESTED_FIELDS = { "user_requested_by",
+            "user_requested_for" };
+    
     // ----------------------- workflow rule implementation methods --------------------------------
     
     // ---------------------------------------------------------------------------------------------
@@ -113,13 +118,20 @@ public class ReservationsCommonHandler extends ReservationsEventHandlerBase {
                 if ("for".equals(Std)) {
                     sql = "SELECT user_requested_by, user_requested_for FROM reserve ";
                     
+                    final ReservationsSqlStatement statement;
                     if (!resId.equals("0")) {
-                        sql += " WHERE reserve.res_id= " + resId;
+                        sql += " WHERE reserve.res_id = ${parameters['resId']} ";
+                        statement =
+                                ReservationsSqlStatement.prepareQuery("reserve", REQUESTED_FIELDS,
+                                    sql).setInteger("resId", resId);
                     } else {
-                        sql += " WHERE reserve.res_parent = " + parentId;
+                        sql += " WHERE reserve.res_parent = ${parameters['parentId']} ";
+                        statement =
+                                ReservationsSqlStatement.prepareQuery("reserve", REQUESTED_FIELDS,
+                                    sql).setInteger("parentId", parentId);
                     }
                     
-                    final List records = retrieveDbRecords(context, sql);
+                    final List records = statement.executeQuery();
                     
                     if (!records.isEmpty()) {
                         final Map record = (Map) records.get(0);
@@ -728,6 +740,7 @@ public class ReservationsCommonHandler extends ReservationsEventHandlerBase {
                         errMessage, e);
                 }
             }
+            clearRoomSearchCache();
         }
     }
     
@@ -840,6 +853,7 @@ public class ReservationsCommonHandler extends ReservationsEventHandlerBase {
         } catch (final Throwable e) {
             handleError(context, ACTIVITY_ID + "-" + RULE_ID + ": Global Exception", errMessage, e);
         }
+        clearRoomSearchCache();
         
         if (!allOk) {
             context.addResponseParameter("message", errMessage);
@@ -892,6 +906,16 @@ public class ReservationsCommonHandler extends ReservationsEventHandlerBase {
                 final int daysBeforeArchiving =
                         getIntegerValue(context, recordOfSql1.get("param_value")).intValue();
                 
+                // the rooms and days to archive, their utilization summary is refreshed after
+                final RoomUtilizationSummary utilizationSummary =
+                        (RoomUtilizationSummary) ContextStore.get().getBean(
+                            "roomUtilizationSummary");
+                final Calendar lastArchivedDate = Calendar.getInstance();
+                lastArchivedDate.setTime(Utility.currentDate());
+                lastArchivedDate.add(Calendar.DATE, -daysBeforeArchiving);
+                final List<RoomUtilizationSummary.RoomDay> archivedRoomDays =
+                        utilizationSummary.findRoomDaysUntil(lastArchivedDate.getTime());
+                
                 // BEGIN: Move to HRESERVE_RM historical table
                 // Insert the room reservations that meet the criteria into the historical table
                 sql =
@@ -939,6 +963,9 @@ public class ReservationsCommonHandler extends ReservationsEventHandlerBase {
                     handleError(context, ACTIVITY_ID + "-" + RULE_ID + ": Failed sql: " + sql,
                         errMessage, e);
                 }
+                for (final RoomUtilizationSummary.RoomDay roomDay : archivedRoomDays) {
+                    utilizationSummary.refresh(roomDay);
+                }
                 // END: Move to HRESERVE_RM historical table
                 
                 // BEGIN: Move to HRESERVE_RS historical table
@@ -1020,6 +1047,16 @@ public class ReservationsCommonHandler extends ReservationsEventHandlerBase {
                     executeDbSql(context, sql, false);
                     setArchiveStatus(context, errMessage, RULE_ID, "hreserve");
                     
+                    // Remove the attendees of the archived reservations, they are not archived
+                    sql =
+                            " DELETE FROM reserve_attendee WHERE res_id IN (SELECT res_id"
+                                    + " FROM reserve WHERE "
+                                    + currentDate
+                                    + " >= "
+                                    + formatSqlAddDaysToExpression(context, "date_start",
+                                        Integer.toString(daysBeforeArchiving)) + ")";
+                    executeDbSql(context, sql, false);
+                    
                     // Remove the inserted reservations into the historical table from the original
                     // table
                     sql =
@@ -1050,6 +1087,7 @@ public class ReservationsCommonHandler extends ReservationsEventHandlerBase {
         } catch (final Throwable e) {
             handleError(context, ACTIVITY_ID + "-" + RULE_ID + ": Global Exception ", errMessage, e);
         }
+        clearRoomSearchCache();
         
         if (!allOk) {
             context.addResponseParameter("message", errMessage);
@@ -2947,10 +2985,13 @@ public class ReservationsCommonHandler extends ReservationsEventHandlerBase {
                 
                 // Search the email and locale of the user to notify
                 sql =
-                        " SELECT email, locale FROM afm_users WHERE user_name = "
-                                + literal(context, userToNotify);
+                        " SELECT email, locale FROM afm_users "
+                                + " WHERE user_name = ${parameters['userName']} ";
                 
-                final List recordsSql1 = retrieveDbRecords(context, sql);
+                final List recordsSql1 =
+                        ReservationsSqlStatement
+                            .prepareQuery("afm_users", new String[] { "email", "locale" }, sql)
+                            .setText("userName", userToNotify).executeQuery();
                 
                 // If the email and locale is found
                 if (!recordsSql1.isEmpty()) {
@@ -2970,12 +3011,15 @@ public class ReservationsCommonHandler extends ReservationsEventHandlerBase {
                     if (((String) valuesToMail.get("locale")).equals("")) {
                         
                         // BEGIN: Get reservation info and the creator to search for its locale
-                        sql = " SELECT locale FROM reserve, em, afm_users ";
-                        sql += " WHERE reserve.res_id= " + resId;
+                        sql = " SELECT afm_users.locale FROM reserve, em, afm_users ";
+                        sql += " WHERE reserve.res_id = ${parameters['resId']} ";
                         sql += " AND reserve.user_created_by = em.em_id ";
                         sql += " AND afm_users.email = em.email ";
                         
-                        final List recordsSql = retrieveDbRecords(context, sql);
+                        final List recordsSql =
+                                ReservationsSqlStatement
+                                    .prepareQuery("afm_users", new String[] { "locale" }, sql)
+                                    .setInteger("resId", resId).executeQuery();
                         
                         // If locale is found
                         if (!recordsSql.isEmpty()) {
@@ -3,7 +3,6 @@ package com.archibus.eventhandler.reservations;
 import java.io.*;
 import java.sql.Time;
 import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -19,6 +18,10 @@ import org.dom4j.DocumentHelper;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import com.archibus.app.reservation.dao.datasource.AllocationChangeLog;
+import com.archibus.app.reservation.dao.datasource.RoomSearchCache;
+import com.archibus.app.reservation.util.ThreadSafeDateFormat;
+import com.archibus.context.ContextStore;
 import com.archibus.eventhandler.EventHandlerBase;
 import com.archibus.jobmanager.EventHandlerContext;
 import com.archibus.utility.ExceptionBase;
@@ -30,6 +33,69 @@ public class ReservationsEventHandlerBase extends EventHandlerBase {
 
     static final String ACTIVITY_ID = "AbWorkplaceReservations";
 
+    /** Parameterized query for the ids of all reservations with the given parent id. */
+    static final String SQL_SELECT_RECURRING_RES_IDS =
+            " SELECT res_id FROM reserve WHERE res_parent = ${parameters['parentId']} ";
+
+    /**
+     * Cancel or stop the work requests of a room or resource reservation. Work requests that are
+     * not started yet are cancelled, work requests in progress or on hold are stopped.
+     * 
+     * @param context Event handler context.
+     * @param resId the reservation id
+     * @param rsresId the resource reservation id, or null for the room reservation work requests
+     * @param assigneeField tr_id or vn_id to only change the work requests assigned to a trade or
+     *            vendor, null to change all work requests of the resource reservation
+     * @param keepAssignee trade or vendor whose work requests must not be changed, or null
+     * @param cancel true to cancel the work requests that are not started, false to stop the work
+     *            requests in progress
+     */
+    protected void updateWorkRequestStatus(final EventHandlerContext context, final String resId,
+            final String rsresId, final String assigneeField, final String keepAssignee,
+            final boolean cancel) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append(" UPDATE wr SET status = ").append(cancel ? "'Can'" : "'S'");
+        sql.append(", time_stat_chg = ").append(
+            formatSqlIsoToNativeTime(context, "CurrentDateTime"));
+        sql.append(", date_stat_chg = ").append(
+            formatSqlIsoToNativeDate(context, "CurrentDateTime"));
+        sql.append(" WHERE res_id = ${parameters['resId']} ");
+        if (rsresId == null) {
+            sql.append(" AND rmres_id IS NOT NULL ");
+        } else {
+            sql.append(" AND rsres_id = ${parameters['rsresId']} ");
+        }
+        if (assigneeField != null) {
+            sql.append(" AND ").append(assigneeField).append(" IS NOT NULL ");
+        }
+        if (keepAssignee != null) {
+            sql.append(" AND ").append(assigneeField).append(" <> ${parameters['assignee']} ");
+        }
+        sql.append(cancel ? " AND status IN ('R','Rev','A','AA') "
+                : " AND status IN ('I','HP','HA','HL') ");
+
+        final ReservationsSqlStatement statement =
+                ReservationsSqlStatement.prepareUpdate("wr", sql.toString()).setInteger("resId",
+                    resId);
+        if (rsresId != null) {
+            statement.setInteger("rsresId", rsresId);
+        }
+        if (keepAssignee != null) {
+            statement.setText("assignee", keepAssignee);
+        }
+        statement.executeUpdate();
+    }
+
+    /**
+     * Clear all cached room searches and invalidate the allocation change log. Called after rooms,
+     * room arrangements or room reservations were changed with SQL, which bypasses the
+     * invalidation done by the room allocation data source.
+     */
+    protected static void clearRoomSearchCache() {
+        ((RoomSearchCache) ContextStore.get().getBean("roomSearchCache")).clear();
+        ((AllocationChangeLog) ContextStore.get().getBean("allocationChangeLog")).invalidate();
+    }
+
     /**
      * Put all messages of mail in a treemap
      * 
@@ -78,8 +144,6 @@ public class ReservationsEventHandlerBase extends EventHandlerBase {
         try {
 
             Date curDateTime;
-            SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyyMMdd");
-            SimpleDateFormat timeFormatter = new SimpleDateFormat("HHmmss");
             String line = "";
             
             //kb#3034925: change encoding of ics file from default ansi to utf-8
@@ -191,8 +255,8 @@ public class ReservationsEventHandlerBase extends EventHandlerBase {
             TimeZone += (absOffset % 60) > 0 ? ":" + timeZoneFormatter.format(absOffset % 60) : "";
             time += minutesoffset * 60 * 1000;
             curDateTime.setTime(time);
-            line = "DTSTAMP:" + dateFormatter.format(curDateTime) + "T"
-                    + timeFormatter.format(curDateTime);
+            line = "DTSTAMP:" + ThreadSafeDateFormat.ICAL_DATE.format(curDateTime) + "T"
+                    + ThreadSafeDateFormat.ICAL_TIME.format(curDateTime);
             out.write(line);
             out.newLine();
 
@@ -371,8 +435,6 @@ public class ReservationsEventHandlerBase extends EventHandlerBase {
         try {
 
             Date curDateTime;
-            SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyyMMdd");
-            SimpleDateFormat timeFormatter = new SimpleDateFormat("HHmmss");
             String line = "";
             
             //kb#3034925: change encoding of ics file from default ansi to utf-8
@@ -471,8 +533,8 @@ public class ReservationsEventHandlerBase extends EventHandlerBase {
             TimeZone += (absOffset % 60) > 0 ? ":" + timeZoneFormatter.format(absOffset % 60) : "";
             time += minutesoffset * 60 * 1000;
             curDateTime.setTime(time);
-            line = "DTSTAMP:" + dateFormatter.format(curDateTime) + "T"
-                    + timeFormatter.format(curDateTime);
+            line = "DTSTAMP:" + ThreadSafeDateFormat.ICAL_DATE.format(curDateTime) + "T"
+                    + ThreadSafeDateFormat.ICAL_TIME.format(curDateTime);
             out.write(line);
             out.newLine();
 
@@ -42,8 +42,11 @@ public class ReservationsResourcesHandler extends ReservationsEventHandlerBase {
         boolean allOk = false;
         
         if (!"0".equals(parentId)) {
-            sql = "SELECT res_id FROM reserve WHERE res_parent = " + literal(context, parentId);
-            final List recurringResIdList = retrieveDbRecords(context, sql);
+            final List recurringResIdList =
+                    ReservationsSqlStatement
+                        .prepareQuery("reserve", new String[] { "res_id" },
+                            SQL_SELECT_RECURRING_RES_IDS).setInteger("parentId", parentId)
+                        .executeQuery();
             for (final Iterator recurringResIterator = recurringResIdList.iterator(); recurringResIterator
                 .hasNext();) {
                 final String resIdTemp = getString((Map) recurringResIterator.next(), "res_id");
@@ -54,10 +57,13 @@ public class ReservationsResourcesHandler extends ReservationsEventHandlerBase {
         }
         for (final Iterator it = listResId.iterator(); it.hasNext();) {
             final String res_id = (String) it.next();
-            sql =
-                    "SELECT status, rsres_id, resource_id FROM reserve_rs WHERE res_id = "
-                            + literal(context, res_id);
-            final List resourceReservations = retrieveDbRecords(context, sql);
+            final List resourceReservations =
+                    ReservationsSqlStatement
+                        .prepareQuery("reserve_rs",
+                            new String[] { "status", "rsres_id", "resource_id" },
+                            " SELECT status, rsres_id, resource_id FROM reserve_rs "
+                                    + " WHERE res_id = ${parameters['resId']} ")
+                        .setInteger("resId", res_id).executeQuery();
             for (int i = 0; i < resourceReservations.size(); i++) {
                 final JSONObject event = new JSONObject();
                 // event = resourceReservations.getJSONObject(i);
@@ -76,30 +82,10 @@ public class ReservationsResourcesHandler extends ReservationsEventHandlerBase {
                     // reservation by
                     // performing
                     try {
-                        sql =
-                                " UPDATE wr SET status='Can', date_stat_chg="
-                                        + formatSqlIsoToNativeDate(context, "CurrentDateTime")
-                                        + "," + " time_stat_chg="
-                                        + formatSqlIsoToNativeTime(context, "CurrentDateTime")
-                                        + " WHERE rsres_id="
-                                        + literal(context, event.getString("rsres_id"))
-                                        + " AND res_id=" + literal(context, res_id)
-                                        + " AND status IN ('R','Rev','A','AA')";
-                        
-                        executeDbSql(context, sql, false);
-                        
-                        sql =
-                                " UPDATE wr SET status='S', date_stat_chg="
-                                        + formatSqlIsoToNativeDate(context, "CurrentDateTime")
-                                        + "," + " time_stat_chg="
-                                        + formatSqlIsoToNativeTime(context, "CurrentDateTime")
-                                        + " WHERE rsres_id="
-                                        + literal(context, event.getString("rsres_id"))
-                                        + " AND res_id=" + literal(context, res_id)
-                                        + " AND status IN ('I','HP','HA','HL')";
-                        
-                        executeDbSql(context, sql, false);
-                        
+                        updateWorkRequestStatus(context, res_id, event.getString("rsres_id"),
+                            null, null, true);
+                        updateWorkRequestStatus(context, res_id, event.getString("rsres_id"),
+                            null, null, false);
                     } catch (final Throwable e) {
                         handleError(context, ACTIVITY_ID + "-" + RULE_ID
                                 + ": Could not retrieve existing work requests: ", errMessage, e);
@@ -150,34 +136,10 @@ public class ReservationsResourcesHandler extends ReservationsEventHandlerBase {
                         tradetoc = tradeToCreateObject[0].toString();
                         
                         try {
-                            sql =
-                                    " UPDATE wr SET status='Can', date_stat_chg="
-                                            + formatSqlIsoToNativeDate(context, "CurrentDateTime")
-                                            + "," + " time_stat_chg="
-                                            + formatSqlIsoToNativeTime(context, "CurrentDateTime")
-                                            + " WHERE rsres_id="
-                                            + literal(context, event.getString("rsres_id"))
-                                            + " AND res_id=" + literal(context, res_id)
-                                            + " AND tr_id IS NOT NULL" + " AND tr_id <> "
-                                            + literal(context, tradetoc)
-                                            + " AND status IN ('R','Rev','A','AA')";
-                            
-                            executeDbSql(context, sql, false);
-                            
-                            sql =
-                                    " UPDATE wr SET status='S', date_stat_chg="
-                                            + formatSqlIsoToNativeDate(context, "CurrentDateTime")
-                                            + "," + " time_stat_chg="
-                                            + formatSqlIsoToNativeTime(context, "CurrentDateTime")
-                                            + " WHERE rsres_id="
-                                            + literal(context, event.getString("rsres_id"))
-                                            + " AND res_id=" + literal(context, res_id)
-                                            + " AND tr_id IS NOT NULL" + " AND tr_id <> "
-                                            + literal(context, tradetoc)
-                                            + " AND status IN ('I','HP','HA','HL')";
-                            
-                            executeDbSql(context, sql, false);
-                            
+                            updateWorkRequestStatus(context, res_id,
+                                event.getString("rsres_id"), "tr_id", tradetoc, true);
+                            updateWorkRequestStatus(context, res_id,
+                                event.getString("rsres_id"), "tr_id", tradetoc, false);
                         } catch (final Throwable e) {
                             handleError(
                                 context,
@@ -571,36 +533,10 @@ public class ReservationsResourcesHandler extends ReservationsEventHandlerBase {
                             try {
                                 // Cancel all possible existing work requests for trades for this
                                 // reservation
-                                sql =
-                                        " UPDATE wr SET status='Can', date_stat_chg="
-                                                + formatSqlIsoToNativeDate(context,
-                                                    "CurrentDateTime")
-                                                + ","
-                                                + " time_stat_chg="
-                                                + formatSqlIsoToNativeTime(context,
-                                                    "CurrentDateTime") + " WHERE rsres_id = "
-                                                + literal(context, event.getString("rsres_id"))
-                                                + " AND res_id = " + literal(context, res_id)
-                                                + " AND tr_id IS NOT NULL"
-                                                + " AND status IN ('R','Rev','A','AA')";
-                                
-                                executeDbSql(context, sql, false);
-                                
-                                sql =
-                                        " UPDATE wr SET status='S', date_stat_chg="
-                                                + formatSqlIsoToNativeDate(context,
-                                                    "CurrentDateTime")
-                                                + ","
-                                                + " time_stat_chg="
-                                                + formatSqlIsoToNativeTime(context,
-                                                    "CurrentDateTime")
-                                                + " WHERE rsres_id = "
-                                                + literal(context, event.getString("rsres_id"))
-                                                + " AND res_id = "
-                                                + literal(context, res_id)
-                                                + " AND tr_id IS NOT NULL AND status IN ('I','HP','HA','HL')";
-                                
-                                executeDbSql(context, sql, false);
+                                updateWorkRequestStatus(context, res_id,
+                                    event.getString("rsres_id"), "tr_id", null, true);
+                                updateWorkRequestStatus(context, res_id,
+                                    event.getString("rsres_id"), "tr_id", null, false);
                             } catch (final Throwable e) {
                                 handleError(context, ACTIVITY_ID + "-" + RULE_ID
                                         + ": Could not cancel existing work request for trades: ",
@@ -616,33 +552,10 @@ public class ReservationsResourcesHandler extends ReservationsEventHandlerBase {
                         // Start with cancelling all existing work requests assigned to a different
                         // vendor
                         try {
-                            sql =
-                                    " UPDATE wr SET status='Can', date_stat_chg="
-                                            + formatSqlIsoToNativeDate(context, "CurrentDateTime")
-                                            + "," + " time_stat_chg="
-                                            + formatSqlIsoToNativeTime(context, "CurrentDateTime")
-                                            + " WHERE rsres_id="
-                                            + literal(context, event.getString("rsres_id"))
-                                            + " AND res_id=" + literal(context, res_id)
-                                            + " AND vn_id IS NOT NULL" + " AND vn_id <> "
-                                            + literal(context, vn)
-                                            + " AND status IN ('R','Rev','A','AA')";
-                            
-                            executeDbSql(context, sql, false);
-                            
-                            sql =
-                                    " UPDATE wr SET status='S', date_stat_chg="
-                                            + formatSqlIsoToNativeDate(context, "CurrentDateTime")
-                                            + "," + " time_stat_chg="
-                                            + formatSqlIsoToNativeTime(context, "CurrentDateTime")
-                                            + " WHERE rsres_id="
-                                            + literal(context, event.getString("rsres_id"))
-                                            + " AND res_id=" + literal(context, res_id)
-                                            + " AND vn_id IS NOT NULL" + " AND vn_id <> "
-                                            + literal(context, vn)
-                                            + " AND status IN ('I','HP','HA','HL')";
-                            
-                            executeDbSql(context, sql, false);
+                            updateWorkRequestStatus(context, res_id,
+                                event.getString("rsres_id"), "vn_id", vn, true);
+                            updateWorkRequestStatus(context, res_id,
+                                event.getString("rsres_id"), "vn_id", vn, false);
                         } catch (final Throwable e) {
                             handleError(
                                 context,
@@ -1056,36 +969,10 @@ public class ReservationsResourcesHandler extends ReservationsEventHandlerBase {
                             // Cancel all possible existing work requests for vendors for this
                             // reservation
                             try {
-                                sql =
-                                        " UPDATE wr SET status = 'Can', date_stat_chg = "
-                                                + formatSqlIsoToNativeDate(context,
-                                                    "CurrentDateTime")
-                                                + ","
-                                                + " time_stat_chg = "
-                                                + formatSqlIsoToNativeTime(context,
-                                                    "CurrentDateTime") + " WHERE rsres_id = "
-                                                + literal(context, event.getString("rsres_id"))
-                                                + " AND res_id = " + literal(context, res_id)
-                                                + " AND vn_id IS NOT NULL"
-                                                + " AND status IN ('R','Rev','A','AA')";
-                                
-                                executeDbSql(context, sql, false);
-                                
-                                sql =
-                                        " UPDATE wr SET status = 'S', date_stat_chg = "
-                                                + formatSqlIsoToNativeDate(context,
-                                                    "CurrentDateTime")
-                                                + ","
-                                                + " time_stat_chg = "
-                                                + formatSqlIsoToNativeTime(context,
-                                                    "CurrentDateTime") + " WHERE rsres_id = "
-                                                + literal(context, event.getString("rsres_id"))
-                                                + " AND res_id = " + literal(context, res_id)
-                                                + " AND vn_id IS NOT NULL"
-                                                + " AND status IN ('I','HP','HA','HL')";
-                                
-                                executeDbSql(context, sql, false);
-                                
+                                updateWorkRequestStatus(context, res_id,
+                                    event.getString("rsres_id"), "vn_id", null, true);
+                                updateWorkRequestStatus(context, res_id,
+                                    event.getString("rsres_id"), "vn_id", null, false);
                             } catch (final Throwable e) {
                                 handleError(context, ACTIVITY_ID + "-" + RULE_ID
                                         + ": Could not cancel existing work request for vendors: ",
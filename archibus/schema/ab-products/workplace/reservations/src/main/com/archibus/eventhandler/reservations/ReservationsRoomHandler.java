@@ -9,6 +9,9 @@ import com.archibus.jobmanager.EventHandlerContext;
  */
 public class ReservationsRoomHandler extends ReservationsEventHandlerBase {
     
+    /** Fields returned when looking up the work requests of a room reservation. */
+    private static final String[] WR_FIELDS = { "wr_id", "time_assigned" };
+    
     // ---------------------------------------------------------------------------------------------
     // BEGIN createWorkRequest wfr
     // ---------------------------------------------------------------------------------------------
@@ -53,10 +56,13 @@ public class ReservationsRoomHandler extends ReservationsEventHandlerBase {
             // BEGIN: it gets one o more room reserve
             final Vector vectorRes_Id = new Vector();
             if (!parentId.equals("0")) {
-                sql = " SELECT res_id " + " FROM reserve " + " WHERE res_parent= " + parentId;
+                sql = SQL_SELECT_RECURRING_RES_IDS;
                 // this.log.info("'"+ACTIVITY_ID+"-"+RULE_ID+"' [sql 0]: "+sql);
                 
-                final List recordsSql0 = retrieveDbRecords(context, sql);
+                final List recordsSql0 =
+                        ReservationsSqlStatement
+                            .prepareQuery("reserve", new String[] { "res_id" }, sql)
+                            .setInteger("parentId", parentId).executeQuery();
                 
                 if (!recordsSql0.isEmpty()) {
                     int i = 0;
@@ -80,8 +86,11 @@ public class ReservationsRoomHandler extends ReservationsEventHandlerBase {
                 if (!resId.equals("0") && !resId.equals("")) {
                     // Guo added 2008-08-20 to solve KB3019197
                     final String statusOfRoomReservation =
-                            (String) selectDbValue(context, "reserve_rm", "status", "res_id="
-                                    + resId);
+                            ReservationsSqlStatement
+                                .prepareQuery("reserve_rm", new String[] { "status" },
+                                    " SELECT status FROM reserve_rm "
+                                            + " WHERE res_id = ${parameters['resId']} ")
+                                .setInteger("resId", resId).executeQueryForValue("status");
                     // -----------------------------------------------------------------------------------
                     // BEGIN: WORK REQUEST FOR TRADE
                     // -----------------------------------------------------------------------------------
@@ -89,64 +98,47 @@ public class ReservationsRoomHandler extends ReservationsEventHandlerBase {
                     // BEGIN: the system must get the filed "tr_id" in "tr"
                     // table to generate the work
                     sql =
-                            " SELECT tr.tr_id as tradetocreate "
+                            " SELECT tr.tr_id "
                                     + " FROM reserve_rm, rm_arrange_type, tr "
                                     + " WHERE reserve_rm.rm_arrange_type_id=rm_arrange_type.rm_arrange_type_id "
-                                    + " AND reserve_rm.res_id= " + resId
+                                    + " AND reserve_rm.res_id = ${parameters['resId']} "
                                     + " AND rm_arrange_type.tr_id IS NOT NULL "
                                     + " AND rm_arrange_type.tr_id=tr.tr_id "
                                     + " AND tr.wr_from_reserve=1 ";
                     // this.log.info("'"+ACTIVITY_ID+"-"+RULE_ID+"' [sql 1]:
                     // "+sql);
                     
-                    final List recordsSql1 = retrieveDbRecords(context, sql);
+                    final List recordsSql1 =
+                            ReservationsSqlStatement
+                                .prepareQuery("tr", new String[] { "tr_id" }, sql)
+                                .setInteger("resId", resId).executeQuery();
                     
                     // BEGIN: If the system must create the wr for the asociated
                     // trade
                     if (!recordsSql1.isEmpty()) {
                         final Map recordOfSql1 = (Map) recordsSql1.get(0);
-                        tradeToCreate = getString(recordOfSql1, "tradetocreate");
+                        tradeToCreate = getString(recordOfSql1, "tr_id");
                         
-                        // BEGIN: cancel wr for this room reservation and
+                        // BEGIN: cancel and stop wr for this room reservation and
                         // diferent trade
-                        sql =
-                                " UPDATE wr " + " SET status = 'Can', " + " time_stat_chg = "
-                                        + formatSqlIsoToNativeTime(context, "CurrentDateTime")
-                                        + ", " + " date_stat_chg = "
-                                        + formatSqlIsoToNativeDate(context, "CurrentDateTime")
-                                        + " " + " WHERE res_id= " + resId
-                                        + " AND rmres_id IS NOT NULL " + " AND tr_id IS NOT NULL "
-                                        + " AND tr_id <> " + literal(context, tradeToCreate)
-                                        + " AND status IN ('R','Rev','A','AA') ";
-                        // this.log.info("'"+ACTIVITY_ID+"-"+RULE_ID+"' [sql 2]:
-                        // "+sql);
-                        executeDbSql(context, sql, false);
-                        
-                        // BEGIN: stop wr for this room reservation and diferent
-                        // trade
-                        sql =
-                                " UPDATE wr " + " SET status = 'S', " + " time_stat_chg = "
-                                        + formatSqlIsoToNativeTime(context, "CurrentDateTime")
-                                        + ", " + " date_stat_chg = "
-                                        + formatSqlIsoToNativeDate(context, "CurrentDateTime")
-                                        + " " + " WHERE res_id= " + resId
-                                        + " AND rmres_id IS NOT NULL " + " AND tr_id IS NOT NULL "
-                                        + " AND tr_id <> " + literal(context, tradeToCreate)
-                                        + " AND status IN ('I','HP','HA','HL') ";
-                        // this.log.info("'"+ACTIVITY_ID+"-"+RULE_ID+"' [sql 3]:
-                        // "+sql);
-                        executeDbSql(context, sql, false);
+                        updateWorkRequestStatus(context, resId, null, "tr_id", tradeToCreate, true);
+                        updateWorkRequestStatus(context, resId, null, "tr_id", tradeToCreate,
+                            false);
                         
                         // BEGIN: exist work request for this trade
                         sql =
-                                " SELECT wr_id " + " FROM wr " + " WHERE res_id= " + resId
-                                        + " AND rmres_id IS NOT NULL " + " AND status <> 'Can' "
-                                        + " AND tr_id = " + literal(context, tradeToCreate)
-                                        + " ORDER BY time_assigned ";
+                                " SELECT wr_id, time_assigned FROM wr "
+                                        + " WHERE res_id = ${parameters['resId']} "
+                                        + " AND rmres_id IS NOT NULL AND status <> 'Can' "
+                                        + " AND tr_id = ${parameters['assignee']} ";
                         // this.log.info("'"+ACTIVITY_ID+"-"+RULE_ID+"' [sql 4]:
                         // "+sql);
                         
-                        final List recordsSql2 = retrieveDbRecords(context, sql);
+                        final List recordsSql2 =
+                                ReservationsSqlStatement
+                                    .prepareQuery("wr", WR_FIELDS, sql, "time_assigned")
+                                    .setInteger("resId", resId)
+                                    .setText("assignee", tradeToCreate).executeQuery();
                         
                         if (!recordsSql2.isEmpty()) {
                             
@@ -530,31 +522,8 @@ public class ReservationsRoomHandler extends ReservationsEventHandlerBase {
                     else {
                         
                         // Cancel and Stop all wr
-                        sql =
-                                " UPDATE wr " + " SET status = 'Can', " + " time_stat_chg = "
-                                        + formatSqlIsoToNativeTime(context, "CurrentDateTime")
-                                        + ", " + " date_stat_chg = "
-                                        + formatSqlIsoToNativeDate(context, "CurrentDateTime")
-                                        + " " + " WHERE res_id = " + resId
-                                        + " AND rmres_id IS NOT NULL " + " AND tr_id IS NOT NULL "
-                                        + " AND status IN ('R','Rev','A','AA') ";
-                        // this.log.info("'"+ACTIVITY_ID+"-"+RULE_ID+"' [sql 9]:
-                        // "+sql);
-                        
-                        executeDbSql(context, sql, false);
-                        
-                        sql =
-                                " UPDATE wr  " + " SET status = 'S', " + " time_stat_chg = "
-                                        + formatSqlIsoToNativeTime(context, "CurrentDateTime")
-                                        + ", " + " date_stat_chg = "
-                                        + formatSqlIsoToNativeDate(context, "CurrentDateTime")
-                                        + " " + " WHERE res_id = " + resId
-                                        + " AND rmres_id IS NOT NULL " + " AND tr_id IS NOT NULL "
-                                        + " AND status IN ('I','HP','HA','HL') ";
-                        // this.log.info("'"+ACTIVITY_ID+"-"+RULE_ID+"' [sql
-                        // 10]: "+sql);
-                        
-                        executeDbSql(context, sql, false);
+                        updateWorkRequestStatus(context, resId, null, "tr_id", null, true);
+                        updateWorkRequestStatus(context, resId, null, "tr_id", null, false);
                     }
                     // END: If the system doesn't have to create the wr for the
                     // asociated trade
@@ -568,67 +537,49 @@ public class ReservationsRoomHandler extends ReservationsEventHandlerBase {
                     // BEGIN: the system must get the filed "vn_id" in "vn"
                     // table to generate the work
                     sql =
-                            " SELECT vn.vn_id as vendortocreate "
+                            " SELECT vn.vn_id "
                                     + " FROM reserve_rm, rm_arrange_type, vn "
                                     + " WHERE reserve_rm.rm_arrange_type_id=rm_arrange_type.rm_arrange_type_id "
-                                    + " AND reserve_rm.res_id= " + resId
+                                    + " AND reserve_rm.res_id = ${parameters['resId']} "
                                     + " AND rm_arrange_type.vn_id IS NOT NULL "
                                     + " AND rm_arrange_type.vn_id=vn.vn_id "
                                     + " AND vn.wr_from_reserve=1 ";
                     // this.log.info("'"+ACTIVITY_ID+"-"+RULE_ID+"' [sql 11]:
                     // "+sql);
                     
-                    final List recordsSql3 = retrieveDbRecords(context, sql);
+                    final List recordsSql3 =
+                            ReservationsSqlStatement
+                                .prepareQuery("vn", new String[] { "vn_id" }, sql)
+                                .setInteger("resId", resId).executeQuery();
                     
                     // BEGIN: If the system must create the wr for the asociated
                     // vendor
                     if (!recordsSql3.isEmpty()) {
                         
                         final Map recordOfSql3 = (Map) recordsSql3.get(0);
-                        vendorToCreate = getString(recordOfSql3, "vendortocreate");
+                        vendorToCreate = getString(recordOfSql3, "vn_id");
                         
-                        // BEGIN: cancel wr for this room reservation and
+                        // BEGIN: cancel and stop wr for this room reservation and
                         // diferent vendor
-                        sql =
-                                " UPDATE wr SET status = 'Can', " + " time_stat_chg = "
-                                        + formatSqlIsoToNativeTime(context, "CurrentDateTime")
-                                        + ", " + " date_stat_chg = "
-                                        + formatSqlIsoToNativeDate(context, "CurrentDateTime")
-                                        + " " + " WHERE res_id= " + resId
-                                        + " AND rmres_id IS NOT NULL " + " AND vn_id IS NOT NULL "
-                                        + " AND vn_id <> " + literal(context, vendorToCreate) + " "
-                                        + " AND status IN ('R','Rev','A','AA') ";
-                        // this.log.info("'"+ACTIVITY_ID+"-"+RULE_ID+"' [sql
-                        // 12]: "+sql);
-                        
-                        executeDbSql(context, sql, false);
-                        
-                        // BEGIN: stop wr for this room reservation and diferent
-                        // vendor
-                        sql =
-                                " UPDATE wr SET status = 'S', " + " time_stat_chg = "
-                                        + formatSqlIsoToNativeTime(context, "CurrentDateTime")
-                                        + ", " + " date_stat_chg = "
-                                        + formatSqlIsoToNativeDate(context, "CurrentDateTime")
-                                        + " " + " WHERE res_id= " + resId
-                                        + " AND rmres_id IS NOT NULL " + " AND vn_id IS NOT NULL "
-                                        + " AND vn_id <> " + literal(context, vendorToCreate) + " "
-                                        + " AND status IN ('I','HP','HA','HL') ";
-                        // this.log.info("'"+ACTIVITY_ID+"-"+RULE_ID+"' [sql
-                        // 13]: "+sql);
-                        
-                        executeDbSql(context, sql, false);
+                        updateWorkRequestStatus(context, resId, null, "vn_id", vendorToCreate,
+                            true);
+                        updateWorkRequestStatus(context, resId, null, "vn_id", vendorToCreate,
+                            false);
                         
                         // BEGIN: exist work request for this vendor
                         sql =
-                                " SELECT wr_id " + " FROM wr " + " WHERE res_id= " + resId
-                                        + " AND rmres_id IS NOT NULL " + " AND status <> 'Can' "
-                                        + " AND vn_id = " + literal(context, vendorToCreate) + " "
-                                        + " ORDER BY time_assigned ";
+                                " SELECT wr_id, time_assigned FROM wr "
+                                        + " WHERE res_id = ${parameters['resId']} "
+                                        + " AND rmres_id IS NOT NULL AND status <> 'Can' "
+                                        + " AND vn_id = ${parameters['assignee']} ";
                         // this.log.info("'"+ACTIVITY_ID+"-"+RULE_ID+"' [sql
                         // 14]: "+sql);
                         
-                        final List recordsSql4 = retrieveDbRecords(context, sql);
+                        final List recordsSql4 =
+                                ReservationsSqlStatement
+                                    .prepareQuery("wr", WR_FIELDS, sql, "time_assigned")
+                                    .setInteger("resId", resId)
+                                    .setText("assignee", vendorToCreate).executeQuery();
                         
                         if (!recordsSql4.isEmpty()) {
                             
@@ -1017,31 +968,8 @@ public class ReservationsRoomHandler extends ReservationsEventHandlerBase {
                     else {
                         
                         // BEGIN: Cancel and Stop all wr
-                        sql =
-                                " UPDATE wr SET status = 'Can', " + " time_stat_chg = "
-                                        + formatSqlIsoToNativeTime(context, "CurrentDateTime")
-                                        + ", " + " date_stat_chg = "
-                                        + formatSqlIsoToNativeDate(context, "CurrentDateTime")
-                                        + " " + " WHERE res_id= " + resId
-                                        + " AND rmres_id IS NOT NULL " + " AND vn_id IS NOT NULL "
-                                        + " AND status IN ('R','Rev','A','AA') ";
-                        // this.log.info("'"+ACTIVITY_ID+"-"+RULE_ID+"' [sql
-                        // 19]: "+sql);
-                        
-                        executeDbSql(context, sql, false);
-                        
-                        sql =
-                                " UPDATE wr SET status = 'S', " + " time_stat_chg = "
-                                        + formatSqlIsoToNativeTime(context, "CurrentDateTime")
-                                        + ", " + " date_stat_chg = "
-                                        + formatSqlIsoToNativeDate(context, "CurrentDateTime")
-                                        + " " + " WHERE res_id= " + resId
-                                        + " AND rmres_id IS NOT NULL " + " AND vn_id IS NOT NULL "
-                                        + " AND status IN ('I','HP','HA','HL') ";
-                        // this.log.info("'"+ACTIVITY_ID+"-"+RULE_ID+"' [sql
-                        // 20]: "+sql);
-                        
-                        executeDbSql(context, sql, false);
+                        updateWorkRequestStatus(context, resId, null, "vn_id", null, true);
+                        updateWorkRequestStatus(context, resId, null, "vn_id", null, false);
                     }
                     // END: If the system doesn't have to create the wr for the
                     // asociated vendor
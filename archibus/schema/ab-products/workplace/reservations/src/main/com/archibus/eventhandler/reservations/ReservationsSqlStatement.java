@@ -0,0 +1,216 @@
+package com.archibus.eventhandler.reservations;
+
+import java.util.*;
+
+import com.archibus.app.reservation.domain.ReservationException;
+import com.archibus.datasource.*;
+import com.archibus.datasource.data.DataRecord;
+
+/**
+ * Parameterized SQL statement for the reservation event handlers.
+ * <p>
+ * Values are passed as data source parameters, referenced as ${parameters['name']} in the SQL,
+ * instead of being concatenated into the statement as literals. The statement text is the same
+ * for every execution, so the database can reuse the parsed statement and its execution plan.
+ * <p>
+ * The data source for each distinct statement is created once and cached. Every execution works
+ * on a copy of the cached data source with its own parameter values, so statements can be
+ * prepared concurrently from different requests. The cache keeps the most recently used
+ * statements, so SQL that still contains literal values cannot make it grow without limit.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+final class ReservationsSqlStatement {
+
+    /** Separator used for building the statement cache key. */
+    private static final char SEPARATOR = '|';
+
+    /** Maximum number of prepared data sources kept in the cache. */
+    private static final int MAX_STATEMENTS = 200;
+
+    /** The prepared data sources, indexed by table name, field names and SQL text. */
+    private static final Map<String, DataSource> STATEMENTS = new LinkedHashMap<String, DataSource>(
+        MAX_STATEMENTS, 0.75f, true) {
+
+        /** Generated serial version ID. */
+        private static final long serialVersionUID = 4409851532166395843L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, DataSource> eldest) {
+            return size() > MAX_STATEMENTS;
+        }
+    };
+
+    /** The data source used for this execution. */
+    private final DataSource dataSource;
+
+    /** The main table of the statement. */
+    private final String tableName;
+
+    /** The fields returned by the statement. */
+    private final String[] fieldNames;
+
+    /**
+     * Create a statement for one execution.
+     *
+     * @param dataSource the data source to execute
+     * @param tableName the main table of the statement
+     * @param fieldNames the fields returned by the statement
+     */
+    private ReservationsSqlStatement(final DataSource dataSource, final String tableName,
+            final String[] fieldNames) {
+        this.dataSource = dataSource;
+        this.tableName = tableName;
+        this.fieldNames = fieldNames;
+    }
+
+    /**
+     * Prepare a query. The columns returned by the SQL must have the same names as the given
+     * fields of the main table.
+     *
+     * @param tableName the main table of the query
+     * @param fieldNames the fields returned by the query
+     * @param sql the query with parameter references for all values
+     * @return the statement, ready to set the parameter values
+     */
+    static ReservationsSqlStatement prepareQuery(final String tableName,
+            final String[] fieldNames, final String sql) {
+        return prepare(tableName, fieldNames, sql, null);
+    }
+
+    /**
+     * Prepare a sorted query. The columns returned by the SQL must have the same names as the
+     * given fields of the main table. The SQL itself must not contain an ORDER BY clause.
+     *
+     * @param tableName the main table of the query
+     * @param fieldNames the fields returned by the query
+     * @param sql the query with parameter references for all values
+     * @param sortFieldName the field to sort on, in ascending order
+     * @return the statement, ready to set the parameter values
+     */
+    static ReservationsSqlStatement prepareQuery(final String tableName,
+            final String[] fieldNames, final String sql, final String sortFieldName) {
+        return prepare(tableName, fieldNames, sql, sortFieldName);
+    }
+
+    /**
+     * Prepare an update, insert or delete statement.
+     *
+     * @param tableName the table modified by the statement
+     * @param sql the statement with parameter references for all values
+     * @return the statement, ready to set the parameter values
+     */
+    static ReservationsSqlStatement prepareUpdate(final String tableName, final String sql) {
+        return prepare(tableName, new String[0], sql, null);
+    }
+
+    /**
+     * Set a text parameter.
+     *
+     * @param name the parameter name
+     * @param value the parameter value
+     * @return this statement
+     */
+    ReservationsSqlStatement setText(final String name, final String value) {
+        this.dataSource.addParameter(name, value, DataSource.DATA_TYPE_TEXT);
+        return this;
+    }
+
+    /**
+     * Set an integer parameter, for example a reservation id received as a string.
+     *
+     * @param name the parameter name
+     * @param value the parameter value as a string
+     * @return this statement
+     * @throws ReservationException when the value is empty or not an integer
+     */
+    ReservationsSqlStatement setInteger(final String name, final String value)
+            throws ReservationException {
+        Integer integerValue = null;
+        try {
+            integerValue = value == null ? null : Integer.valueOf(value.trim());
+        } catch (final NumberFormatException exception) {
+            integerValue = null;
+        }
+        if (integerValue == null) {
+            // @translatable
+            throw new ReservationException("Invalid value {0} for {1}, an integer is required.",
+                ReservationsSqlStatement.class, value, name);
+        }
+        this.dataSource.addParameter(name, integerValue, DataSource.DATA_TYPE_INTEGER);
+        return this;
+    }
+
+    /**
+     * Execute the query. The values are returned as strings, indexed by field name without table
+     * prefix, like the records returned by retrieveDbRecords.
+     *
+     * @return the records
+     */
+    List<Map<String, Object>> executeQuery() {
+        final List<Map<String, Object>> records = new ArrayList<Map<String, Object>>();
+        for (final DataRecord record : this.dataSource.getRecords()) {
+            final Map<String, Object> values = new HashMap<String, Object>();
+            for (final String fieldName : this.fieldNames) {
+                final Object value = record.getValue(this.tableName + '.' + fieldName);
+                values.put(fieldName, value == null ? null : value.toString());
+            }
+            records.add(values);
+        }
+        return records;
+    }
+
+    /**
+     * Execute the query and get a single value from the first record.
+     *
+     * @param fieldName the field to return
+     * @return the value as a string, or null if the query returns no records
+     */
+    String executeQueryForValue(final String fieldName) {
+        final DataRecord record = this.dataSource.getRecord();
+        String result = null;
+        if (record != null) {
+            final Object value = record.getValue(this.tableName + '.' + fieldName);
+            result = value == null ? null : value.toString();
+        }
+        return result;
+    }
+
+    /**
+     * Execute the update, insert or delete statement.
+     */
+    void executeUpdate() {
+        this.dataSource.executeUpdate();
+    }
+
+    /**
+     * Get the data source for a statement from the cache, creating it if required.
+     *
+     * @param tableName the main table of the statement
+     * @param fieldNames the fields returned by the statement
+     * @param sql the statement
+     * @param sortFieldName the field to sort on, or null
+     * @return the statement, ready to set the parameter values
+     */
+    private static ReservationsSqlStatement prepare(final String tableName,
+            final String[] fieldNames, final String sql, final String sortFieldName) {
+        final String key =
+                tableName + SEPARATOR + Arrays.toString(fieldNames) + SEPARATOR + sortFieldName
+                        + SEPARATOR + sql;
+        DataSource copy = null;
+        synchronized (STATEMENTS) {
+            DataSource template = STATEMENTS.get(key);
+            if (template == null) {
+                template = DataSourceFactory.createDataSourceForFields(tableName, fieldNames);
+                template.addQuery(sql);
+                if (sortFieldName != null) {
+                    template.addSort(tableName, sortFieldName);
+                }
+                STATEMENTS.put(key, template);
+            }
+            copy = template.createCopy();
+        }
+        return new ReservationsSqlStatement(copy, tableName, fieldNames);
+    }
+}
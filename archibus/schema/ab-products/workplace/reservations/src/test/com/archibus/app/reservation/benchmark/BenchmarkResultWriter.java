@@ -0,0 +1,118 @@
+package com.archibus.app.reservation.benchmark;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.log4j.Logger;
+import org.json.*;
+
+/**
+ * Writes the results of all benchmarks run in this JVM to a JSON file in the JMH result format,
+ * so results of different versions can be compared with the JMH tooling.
+ * <p>
+ * The file is rewritten after each benchmark, so it is complete even when a later benchmark
+ * fails. The file name is set in the system property reservation.benchmark.resultFile and
+ * defaults to reservation-benchmark.json in the temporary directory.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public final class BenchmarkResultWriter {
+
+    /** System property with the name of the result file. */
+    private static final String RESULT_FILE_PROPERTY = "reservation.benchmark.resultFile";
+
+    /** Default name of the result file. */
+    private static final String DEFAULT_RESULT_FILE = "reservation-benchmark.json";
+
+    /** The unit of the benchmark scores. */
+    private static final String SCORE_UNIT = "scoreUnit";
+
+    /** The name JMH uses for the allocation rate per operation. */
+    private static final String ALLOCATION_METRIC = "\u00b7gc.alloc.rate.norm";
+
+    /** The results of all benchmarks run in this JVM, in the order they were run. */
+    private static final List<BenchmarkRunner.Result> RESULTS =
+            new ArrayList<BenchmarkRunner.Result>();
+
+    /**
+     * Prevent instantiation.
+     */
+    private BenchmarkResultWriter() {
+    }
+
+    /**
+     * Add the result of a benchmark and rewrite the result file.
+     *
+     * @param result the benchmark result
+     * @throws IOException when the result file cannot be written
+     */
+    public static synchronized void add(final BenchmarkRunner.Result result) throws IOException {
+        RESULTS.add(result);
+        final JSONArray json = new JSONArray();
+        for (final BenchmarkRunner.Result each : RESULTS) {
+            json.put(toJson(each));
+        }
+        final File file = getResultFile();
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(json.toString());
+        } finally {
+            writer.close();
+        }
+        Logger.getLogger(BenchmarkResultWriter.class).debug(
+            "Wrote " + RESULTS.size() + " benchmark results to " + file.getAbsolutePath());
+    }
+
+    /**
+     * Get the result file.
+     *
+     * @return the result file
+     */
+    static File getResultFile() {
+        final String fileName = System.getProperty(RESULT_FILE_PROPERTY);
+        return fileName == null ? new File(System.getProperty("java.io.tmpdir"),
+            DEFAULT_RESULT_FILE) : new File(fileName);
+    }
+
+    /**
+     * Convert a benchmark result to JSON in the JMH result format.
+     *
+     * @param result the benchmark result
+     * @return the JSON object
+     */
+    static JSONObject toJson(final BenchmarkRunner.Result result) {
+        final JSONArray roundScores = new JSONArray();
+        for (final double score : result.getRoundScores()) {
+            roundScores.put(score);
+        }
+        final JSONArray rawData = new JSONArray();
+        rawData.put(roundScores);
+
+        final JSONObject primaryMetric = new JSONObject();
+        primaryMetric.put("score", result.getOperationsPerMilli());
+        primaryMetric.put("scoreError", result.getError());
+        primaryMetric.put(SCORE_UNIT, "ops/ms");
+        primaryMetric.put("rawData", rawData);
+
+        final JSONObject secondaryMetrics = new JSONObject();
+        if (result.getBytesPerOperation() >= 0) {
+            final JSONObject allocation = new JSONObject();
+            allocation.put("score", result.getBytesPerOperation());
+            allocation.put(SCORE_UNIT, "B/op");
+            secondaryMetrics.put(ALLOCATION_METRIC, allocation);
+        }
+
+        final JSONObject json = new JSONObject();
+        json.put("benchmark", result.getName());
+        json.put("mode", "thrpt");
+        json.put("threads", 1);
+        json.put("forks", 0);
+        json.put("warmupIterations", result.getWarmupRounds());
+        json.put("measurementIterations", result.getRoundScores().length);
+        json.put("operationsPerIteration", result.getOperationsPerRound());
+        json.put("primaryMetric", primaryMetric);
+        json.put("secondaryMetrics", secondaryMetrics);
+        return json;
+    }
+}
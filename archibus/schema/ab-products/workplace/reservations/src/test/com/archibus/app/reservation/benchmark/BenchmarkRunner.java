@@ -0,0 +1,270 @@
+package com.archibus.app.reservation.benchmark;
+
+import java.lang.management.*;
+
+/**
+ * Runs a micro benchmark: a number of warm-up rounds followed by measured rounds of the same
+ * operation. Reports the throughput of each measured round and, if the JVM supports it, the
+ * number of bytes allocated per operation.
+ * <p>
+ * The runner follows the throughput mode of JMH, which is not on the class path of the
+ * reservation tests: each round is timed separately and the score is the mean of the rounds.
+ * BenchmarkResultWriter writes the results in the JMH result format, so the usual JMH tooling can
+ * compare them. The value returned by each operation is combined into a field, so the JIT compiler
+ * cannot remove the operation as dead code.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public final class BenchmarkRunner {
+
+    /** Default number of warm-up rounds. */
+    private static final int WARMUP_ROUNDS = 5;
+
+    /** Default number of measured rounds. */
+    private static final int MEASURED_ROUNDS = 10;
+
+    /** Factor for converting nanoseconds to milliseconds. */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /** The number of operations in each round. */
+    private final int operationsPerRound;
+
+    /** Combined return values of the operations. */
+    private int sink;
+
+    /**
+     * An operation to measure.
+     */
+    public interface Operation {
+
+        /**
+         * Execute the operation once.
+         *
+         * @param index the index of the execution within the round
+         * @return the result of the operation
+         * @throws Exception when the operation fails
+         *             <p>
+         *             Suppress Warning "PMD.SignatureDeclareThrowsException"
+         *             <p>
+         *             Justification: operations may call any method under test.
+         */
+        @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+        Object execute(int index) throws Exception;
+    }
+
+    /**
+     * Create a benchmark runner.
+     *
+     * @param operationsPerRound the number of operations in each round
+     */
+    public BenchmarkRunner(final int operationsPerRound) {
+        this.operationsPerRound = operationsPerRound;
+    }
+
+    /**
+     * Measure an operation.
+     *
+     * @param name the name of the benchmark, included in the result
+     * @param operation the operation to measure
+     * @return the result of the measured rounds
+     * @throws Exception when the operation fails
+     *             <p>
+     *             Suppress Warning "PMD.SignatureDeclareThrowsException"
+     *             <p>
+     *             Justification: operations may call any method under test.
+     */
+    @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+    public Result run(final String name, final Operation operation) throws Exception {
+        for (int round = 0; round < WARMUP_ROUNDS; ++round) {
+            runRound(operation);
+        }
+        final double[] roundScores = new double[MEASURED_ROUNDS];
+        final long allocatedBefore = getAllocatedBytes();
+        for (int round = 0; round < MEASURED_ROUNDS; ++round) {
+            final long start = System.nanoTime();
+            runRound(operation);
+            roundScores[round] =
+                    this.operationsPerRound * NANOS_PER_MILLI / (System.nanoTime() - start);
+        }
+        final long allocatedAfter = getAllocatedBytes();
+
+        final long operations = (long) MEASURED_ROUNDS * this.operationsPerRound;
+        long bytesPerOperation = -1;
+        if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+            bytesPerOperation = (allocatedAfter - allocatedBefore) / operations;
+        }
+        final Result result =
+                new Result(name, WARMUP_ROUNDS, this.operationsPerRound, roundScores,
+                    bytesPerOperation);
+        BenchmarkResultWriter.add(result);
+        return result;
+    }
+
+    /**
+     * Get the combined return values of all operations.
+     *
+     * @return the combined value
+     */
+    public int getSink() {
+        return this.sink;
+    }
+
+    /**
+     * Execute one round of operations.
+     *
+     * @param operation the operation to execute
+     * @throws Exception when the operation fails
+     *             <p>
+     *             Suppress Warning "PMD.SignatureDeclareThrowsException"
+     *             <p>
+     *             Justification: operations may call any method under test.
+     */
+    @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+    private void runRound(final Operation operation) throws Exception {
+        for (int i = 0; i < this.operationsPerRound; ++i) {
+            final Object result = operation.execute(i);
+            if (result != null) {
+                this.sink += result.hashCode();
+            }
+        }
+    }
+
+    /**
+     * Get the number of bytes allocated by the current thread, if the JVM supports it.
+     *
+     * @return the number of bytes allocated, or -1 if not supported
+     */
+    private static long getAllocatedBytes() {
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        long allocated = -1;
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            allocated =
+                    ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread
+                        .currentThread().getId());
+        }
+        return allocated;
+    }
+
+    /**
+     * Result of a benchmark.
+     */
+    public static final class Result {
+
+        /** The benchmark name. */
+        private final String name;
+
+        /** The number of warm-up rounds. */
+        private final int warmupRounds;
+
+        /** The number of operations in each round. */
+        private final int operationsPerRound;
+
+        /** Throughput of each measured round, in operations per millisecond. */
+        private final double[] roundScores;
+
+        /** Bytes allocated per operation, or -1 if unknown. */
+        private final long bytesPerOperation;
+
+        /**
+         * Create a benchmark result.
+         *
+         * @param name the benchmark name
+         * @param warmupRounds the number of warm-up rounds
+         * @param operationsPerRound the number of operations in each round
+         * @param roundScores throughput of each measured round in operations per millisecond
+         * @param bytesPerOperation bytes allocated per operation, or -1 if unknown
+         */
+        Result(final String name, final int warmupRounds, final int operationsPerRound,
+                final double[] roundScores, final long bytesPerOperation) {
+            this.name = name;
+            this.warmupRounds = warmupRounds;
+            this.operationsPerRound = operationsPerRound;
+            this.roundScores = roundScores.clone();
+            this.bytesPerOperation = bytesPerOperation;
+        }
+
+        /**
+         * Get the benchmark name.
+         *
+         * @return the benchmark name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Get the number of warm-up rounds.
+         *
+         * @return the number of warm-up rounds
+         */
+        public int getWarmupRounds() {
+            return this.warmupRounds;
+        }
+
+        /**
+         * Get the number of operations in each round.
+         *
+         * @return the number of operations in each round
+         */
+        public int getOperationsPerRound() {
+            return this.operationsPerRound;
+        }
+
+        /**
+         * Get the throughput of each measured round.
+         *
+         * @return the number of operations per millisecond of each measured round
+         */
+        public double[] getRoundScores() {
+            return this.roundScores.clone();
+        }
+
+        /**
+         * Get the throughput: the mean of the measured rounds.
+         *
+         * @return the number of operations per millisecond
+         */
+        public double getOperationsPerMilli() {
+            double sum = 0;
+            for (final double score : this.roundScores) {
+                sum += score;
+            }
+            return sum / this.roundScores.length;
+        }
+
+        /**
+         * Get the error of the throughput: the standard deviation of the measured rounds.
+         *
+         * @return the standard deviation in operations per millisecond
+         */
+        public double getError() {
+            final double mean = this.getOperationsPerMilli();
+            double sumOfSquares = 0;
+            for (final double score : this.roundScores) {
+                sumOfSquares += (score - mean) * (score - mean);
+            }
+            return this.roundScores.length > 1 ? Math.sqrt(sumOfSquares
+                    / (this.roundScores.length - 1)) : 0;
+        }
+
+        /**
+         * Get the allocation rate.
+         *
+         * @return the number of bytes allocated per operation, or -1 if unknown
+         */
+        public long getBytesPerOperation() {
+            return this.bytesPerOperation;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return this.name + ": " + Math.round(this.getOperationsPerMilli()) + " +/- "
+                    + Math.round(this.getError()) + " ops/ms, " + this.bytesPerOperation
+                    + " bytes/op";
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.archibus.app.reservation.benchmark;
+
+import java.sql.Time;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.Logger;
+
+import com.archibus.app.reservation.domain.ReservationException;
+import com.archibus.app.reservation.domain.recurrence.*;
+import com.archibus.app.reservation.exchange.util.RecurringReservationIds;
+import com.archibus.app.reservation.util.*;
+
+/**
+ * Micro benchmarks for CPU intensive reservation code that does not access the database.
+ * <p>
+ * Each test logs the throughput and allocation rate of one method, so results of different
+ * versions can be compared. The results are also written to the file of BenchmarkResultWriter.
+ * The tests only fail if the method under test fails. They are not part of AllTests because they
+ * take much longer than the other unit tests. Code that needs the Spring context is measured in
+ * ReservationContextBenchmark.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public class ReservationBenchmark extends TestCase {
+
+    /** Number of operations in each benchmark round. */
+    private static final int OPERATIONS_PER_ROUND = 10000;
+
+    /** Number of operations in each round for the slower recurrence benchmark. */
+    private static final int RECURRENCE_OPERATIONS_PER_ROUND = 100;
+
+    /** Number of different input values for each benchmark. */
+    private static final int INPUTS = 64;
+
+    /** Mask for selecting an input value. */
+    private static final int INPUT_MASK = INPUTS - 1;
+
+    /** Number of minutes in a day. */
+    private static final int MINUTES_IN_DAY = 1440;
+
+    /** Number of milliseconds in a minute. */
+    private static final long MILLIS_PER_MINUTE = 60000L;
+
+    /** Timeline start hour used for the time column benchmark. */
+    private static final int TIMELINE_START_HOUR = 8;
+
+    /** Number of segments per hour used for the time column benchmark. */
+    private static final int SEGMENTS_PER_HOUR = 4;
+
+    /** Number of minutes in each segment used for the time column benchmark. */
+    private static final int MINUTES_PER_SEGMENT = 15;
+
+    /** Number of time columns used for the time column benchmark. */
+    private static final int TIME_COLUMNS = 48;
+
+    /** Number of weeks in a year. */
+    private static final int WEEKS_IN_YEAR = 52;
+
+    /** Length of an iCalendar UID in hex digits. */
+    private static final int UID_HEX_LENGTH = 112;
+
+    /** Radix of hexadecimal numbers. */
+    private static final int HEX_RADIX = 16;
+
+    /** First reservation ID of the recurring reservation IDs benchmark. */
+    private static final int FIRST_RESERVATION_ID = 1000;
+
+    /** The benchmark runner. */
+    private BenchmarkRunner runner;
+
+    /** The start date used for the benchmarks. */
+    private Date startDate;
+
+    // Disable StrictDuplicate CHECKSTYLE warning. Justification: setup test
+    /**
+     * Set up for a test case.
+     *
+     * @throws Exception when setup fails
+     *             <p>
+     *             Suppress Warning "PMD.SignatureDeclareThrowsException"
+     *             <p>
+     *             Justification: the overridden method also throws it.
+     */
+    @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.runner = new BenchmarkRunner(OPERATIONS_PER_ROUND);
+        final Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2014, Calendar.MARCH, 12, 9, 0);
+        this.startDate = calendar.getTime();
+    }
+
+    /**
+     * Benchmark TimeZoneConverter.calculateDateTime across a daylight saving time change.
+     *
+     * @throws Exception when the benchmark fails
+     *             <p>
+     *             Suppress Warning "PMD.SignatureDeclareThrowsException"
+     *             <p>
+     *             Justification: the benchmark runner throws any exception of the operation.
+     */
+    @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+    public void testCalculateDateTime() throws Exception {
+        final Date[] dates = new Date[INPUTS];
+        for (int i = 0; i < INPUTS; ++i) {
+            dates[i] = new Date(this.startDate.getTime() + i * MINUTES_IN_DAY * MILLIS_PER_MINUTE);
+        }
+        log(this.runner.run("TimeZoneConverter.calculateDateTime",
+            new BenchmarkRunner.Operation() {
+                public Object execute(final int index) {
+                    return TimeZoneConverter.calculateDateTime(dates[index & INPUT_MASK],
+                        "Europe/Brussels", "America/New_York", index % 2 == 0);
+                }
+            }));
+    }
+
+    /**
+     * Benchmark TimelineHelper.getTimeColumn.
+     *
+     * @throws Exception when the benchmark fails
+     *             <p>
+     *             Suppress Warning "PMD.SignatureDeclareThrowsException"
+     *             <p>
+     *             Justification: the benchmark runner throws any exception of the operation.
+     */
+    @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+    public void testGetTimeColumn() throws Exception {
+        final Time[] times = new Time[INPUTS];
+        for (int i = 0; i < INPUTS; ++i) {
+            times[i] =
+                    new Time(this.startDate.getTime() + i * MINUTES_PER_SEGMENT
+                            * MILLIS_PER_MINUTE);
+        }
+        log(this.runner.run("TimelineHelper.getTimeColumn", new BenchmarkRunner.Operation() {
+            public Object execute(final int index) {
+                return TimelineHelper.getTimeColumn(TIMELINE_START_HOUR, SEGMENTS_PER_HOUR,
+                    times[index & INPUT_MASK], TIME_COLUMNS);
+            }
+        }));
+    }
+
+    /**
+     * Benchmark StringTranscoder.transcodeHexToBase64 on Exchange iCalendar UIDs.
+     *
+     * @throws Exception when the benchmark fails
+     *             <p>
+     *             Suppress Warning "PMD.SignatureDeclareThrowsException"
+     *             <p>
+     *             Justification: the benchmark runner throws any exception of the operation.
+     */
+    @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+    public void testTranscodeHexToBase64() throws Exception {
+        final Random random = new Random(INPUTS);
+        final String[] uids = new String[INPUTS];
+        for (int i = 0; i < INPUTS; ++i) {
+            final StringBuilder uid = new StringBuilder();
+            for (int j = 0; j < UID_HEX_LENGTH; ++j) {
+                uid.append(Character.forDigit(random.nextInt(HEX_RADIX), HEX_RADIX));
+            }
+            uids[i] = uid.toString().toUpperCase();
+        }
+        log(this.runner.run("StringTranscoder.transcodeHexToBase64",
+            new BenchmarkRunner.Operation() {
+                @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+                public Object execute(final int index) throws Exception {
+                    return StringTranscoder.transcodeHexToBase64(uids[index & INPUT_MASK]);
+                }
+            }));
+    }
+
+    /**
+     * Benchmark AbstractIntervalPattern.loopThroughRepeats for a weekly pattern of one year.
+     *
+     * @throws Exception when the benchmark fails
+     *             <p>
+     *             Suppress Warning "PMD.SignatureDeclareThrowsException"
+     *             <p>
+     *             Justification: the benchmark runner throws any exception of the operation.
+     */
+    @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+    public void testLoopThroughRepeats() throws Exception {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTime(this.startDate);
+        calendar.add(Calendar.WEEK_OF_YEAR, WEEKS_IN_YEAR);
+        final AbstractIntervalPattern pattern =
+                new WeeklyPattern(this.startDate, calendar.getTime(), 1, Arrays.asList(
+                    DayOfTheWeek.Monday, DayOfTheWeek.Wednesday));
+        final int[] count = new int[1];
+        final AbstractIntervalPattern.OccurrenceAction action =
+                new AbstractIntervalPattern.OccurrenceAction() {
+                    public boolean handleOccurrence(final Date date) throws ReservationException {
+                        ++count[0];
+                        return true;
+                    }
+                };
+        log(new BenchmarkRunner(RECURRENCE_OPERATIONS_PER_ROUND).run(
+            "AbstractIntervalPattern.loopThroughRepeats", new BenchmarkRunner.Operation() {
+                public Object execute(final int index) throws ReservationException {
+                    pattern.loopThroughRepeats(action);
+                    return count[0];
+                }
+            }));
+    }
+
+    /**
+     * Benchmark RecurringReservationIds.decode on a weekly series of one year in the original
+     * encoding.
+     *
+     * @throws Exception when the benchmark fails
+     *             <p>
+     *             Suppress Warning "PMD.SignatureDeclareThrowsException"
+     *             <p>
+     *             Justification: the benchmark runner throws any exception of the operation.
+     */
+    @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+    public void testDecodeRecurringReservationIds() throws Exception {
+        final String[] value =
+                this.createRecurringReservationIds().encode(RecurringReservationIds.VERSION_1);
+        log(this.runner.run("RecurringReservationIds.decode", new BenchmarkRunner.Operation() {
+            public Object execute(final int index) {
+                return RecurringReservationIds.decode(value);
+            }
+        }));
+    }
+
+    /**
+     * Benchmark RecurringReservationIds.decode on a weekly series of one year in the compact
+     * encoding.
+     *
+     * @throws Exception when the benchmark fails
+     *             <p>
+     *             Suppress Warning "PMD.SignatureDeclareThrowsException"
+     *             <p>
+     *             Justification: the benchmark runner throws any exception of the operation.
+     */
+    @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+    public void testDecodeCompactRecurringReservationIds() throws Exception {
+        final String[] value =
+                this.createRecurringReservationIds().encode(RecurringReservationIds.VERSION_2);
+        log(this.runner.run("RecurringReservationIds.decode compact",
+            new BenchmarkRunner.Operation() {
+                public Object execute(final int index) {
+                    return RecurringReservationIds.decode(value);
+                }
+            }));
+    }
+
+    /**
+     * Create the reservation IDs of a weekly series of one year.
+     *
+     * @return the reservation IDs
+     */
+    private RecurringReservationIds createRecurringReservationIds() {
+        final Map<Date, Integer> reservationIds = new HashMap<Date, Integer>();
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTime(this.startDate);
+        for (int week = 0; week < WEEKS_IN_YEAR; ++week) {
+            reservationIds.put(calendar.getTime(), FIRST_RESERVATION_ID + week);
+            calendar.add(Calendar.WEEK_OF_YEAR, 1);
+        }
+        return new RecurringReservationIds(reservationIds);
+    }
+
+    /**
+     * Log a benchmark result.
+     *
+     * @param result the result to log
+     */
+    private static void log(final BenchmarkRunner.Result result) {
+        assertTrue(result.getOperationsPerMilli() > 0);
+        Logger.getLogger(ReservationBenchmark.class).info(result.toString());
+    }
+
+}
@@ -0,0 +1,216 @@
+package com.archibus.app.reservation.benchmark;
+
+import java.util.*;
+
+import junit.framework.Assert;
+import microsoft.exchange.webservices.data.Appointment;
+
+import org.apache.log4j.Logger;
+
+import com.archibus.app.reservation.ConfiguredDataSourceTestBase;
+import com.archibus.app.reservation.dao.datasource.*;
+import com.archibus.app.reservation.domain.*;
+import com.archibus.app.reservation.exchange.service.ExchangeServiceHelper;
+import com.archibus.app.reservation.exchange.util.AppointmentPropertiesHelper;
+import com.archibus.app.reservation.util.TimelineHelper;
+import com.archibus.datasource.DataSource;
+import com.archibus.datasource.data.DataRecord;
+import com.archibus.datasource.restriction.Restrictions;
+
+/**
+ * Micro benchmarks for CPU intensive reservation code that needs the Spring context or the user
+ * context, but does not access the database in the measured operation. Any records are loaded
+ * before the measurement starts.
+ * <p>
+ * Like ReservationBenchmark, each test logs the throughput and allocation rate of one method and
+ * writes it to the file of BenchmarkResultWriter. Appointments are only created in memory, they
+ * are not saved on the Exchange server. These tests are not part of AllTests because they take
+ * much longer than the other tests.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public class ReservationContextBenchmark extends ConfiguredDataSourceTestBase {
+
+    /** Number of operations in each benchmark round. */
+    private static final int OPERATIONS_PER_ROUND = 1000;
+
+    /** Number of operations in each round for converting a list of records. */
+    private static final int CONVERT_OPERATIONS_PER_ROUND = 10;
+
+    /** Number of different appointments for the appointment properties benchmark. */
+    private static final int APPOINTMENTS = 64;
+
+    /** Mask for selecting an appointment. */
+    private static final int APPOINTMENT_MASK = APPOINTMENTS - 1;
+
+    /** Number of occurrences of the recurring reservations, a weekly series of one year. */
+    private static final int OCCURRENCES = 52;
+
+    /** Number of days between the occurrences. */
+    private static final int WEEK = 7;
+
+    /** First reservation ID of the recurring reservations. */
+    private static final int FIRST_RESERVATION_ID = 1000;
+
+    /** Duration of the reservations in milliseconds. */
+    private static final long DURATION = 60L * 60 * 1000;
+
+    /** The room arrangements table. */
+    private static final String RM_ARRANGE_TABLE = "rm_arrange";
+
+    /** The room arrangement data source. */
+    private RoomArrangementDataSource roomArrangementDataSource;
+
+    /** The service helper for creating appointments. */
+    private ExchangeServiceHelper serviceHelper;
+
+    /** The appointment properties helper as configured for the Exchange integration. */
+    private AppointmentPropertiesHelper appointmentPropertiesHelper;
+
+    /**
+     * Benchmark TimelineHelper.createTimeline with the timeline parameters of the activity.
+     *
+     * @throws Exception when the benchmark fails
+     *             <p>
+     *             Suppress Warning "PMD.SignatureDeclareThrowsException"
+     *             <p>
+     *             Justification: the benchmark runner throws any exception of the operation.
+     */
+    @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+    public void testCreateTimeline() throws Exception {
+        log(new BenchmarkRunner(OPERATIONS_PER_ROUND).run("TimelineHelper.createTimeline",
+            new BenchmarkRunner.Operation() {
+                public Object execute(final int index) {
+                    return TimelineHelper.createTimeline();
+                }
+            }));
+    }
+
+    /**
+     * Benchmark RoomArrangementDataSource.convertRecordsToObjects on all reservable room
+     * arrangements.
+     *
+     * @throws Exception when the benchmark fails
+     *             <p>
+     *             Suppress Warning "PMD.SignatureDeclareThrowsException"
+     *             <p>
+     *             Justification: the benchmark runner throws any exception of the operation.
+     */
+    @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+    public void testConvertRecordsToObjects() throws Exception {
+        final DataSource dataSource = this.roomArrangementDataSource.createCopy();
+        dataSource.addRestriction(Restrictions.eq(RM_ARRANGE_TABLE,
+            Constants.RESERVABLE_FIELD_NAME, 1));
+        final List<DataRecord> records = dataSource.getRecords();
+        Assert.assertFalse(records.isEmpty());
+        log(new BenchmarkRunner(CONVERT_OPERATIONS_PER_ROUND).run(
+            "RoomArrangementDataSource.convertRecordsToObjects " + records.size() + " records",
+            new BenchmarkRunner.Operation() {
+                public Object execute(final int index) {
+                    return ReservationContextBenchmark.this.roomArrangementDataSource
+                        .convertRecordsToObjects(records);
+                }
+            }));
+    }
+
+    /**
+     * Benchmark AppointmentPropertiesHelper.getRecurringReservationIds on appointments of a weekly
+     * series of one year. Each appointment keeps the decoded reservation IDs until its property
+     * changes, so this measures the check for changes; RecurringReservationIds.decode is measured
+     * in ReservationBenchmark.
+     *
+     * @throws Exception when the benchmark fails
+     *             <p>
+     *             Suppress Warning "PMD.SignatureDeclareThrowsException"
+     *             <p>
+     *             Justification: the benchmark runner throws any exception of the operation.
+     */
+    @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+    public void testGetRecurringReservationIds() throws Exception {
+        final RoomReservation reservation = createRecurringReservation();
+        final Appointment[] appointments = new Appointment[APPOINTMENTS];
+        for (int i = 0; i < APPOINTMENTS; ++i) {
+            appointments[i] =
+                    new Appointment(this.serviceHelper.initializeService(this.serviceHelper
+                        .getOrganizerAccount()));
+            this.appointmentPropertiesHelper.setRecurringReservationIds(appointments[i],
+                reservation);
+        }
+        log(new BenchmarkRunner(OPERATIONS_PER_ROUND).run(
+            "AppointmentPropertiesHelper.getRecurringReservationIds",
+            new BenchmarkRunner.Operation() {
+                @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+                public Object execute(final int index) throws Exception {
+                    return ReservationContextBenchmark.this.appointmentPropertiesHelper
+                        .getRecurringReservationIds(appointments[index & APPOINTMENT_MASK]);
+                }
+            }));
+    }
+
+    /**
+     * Set the room arrangement data source.
+     *
+     * @param roomArrangementDataSource the room arrangement data source
+     */
+    public void setRoomArrangementDataSource(
+            final RoomArrangementDataSource roomArrangementDataSource) {
+        this.roomArrangementDataSource = roomArrangementDataSource;
+    }
+
+    /**
+     * Set the Exchange service helper used for creating appointments.
+     *
+     * @param serviceHelper the new service helper
+     */
+    public void setServiceHelper(final ExchangeServiceHelper serviceHelper) {
+        this.serviceHelper = serviceHelper;
+    }
+
+    /**
+     * Set the appointment properties helper.
+     *
+     * @param appointmentPropertiesHelper the appointment properties helper
+     */
+    public void setAppointmentPropertiesHelper(
+            final AppointmentPropertiesHelper appointmentPropertiesHelper) {
+        this.appointmentPropertiesHelper = appointmentPropertiesHelper;
+    }
+
+    /**
+     * Create a weekly recurring reservation of one year with the IDs of the created occurrences.
+     *
+     * @return the recurring reservation
+     */
+    private static RoomReservation createRecurringReservation() {
+        final List<RoomReservation> createdReservations = new ArrayList<RoomReservation>();
+        final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(2014, Calendar.MARCH, 12, 9, 0);
+        for (int i = 0; i < OCCURRENCES; ++i) {
+            final Date start = calendar.getTime();
+            final RoomReservation occurrence =
+                    new RoomReservation(new TimePeriod(start, new Date(start.getTime()
+                            + DURATION), Constants.TIMEZONE_UTC));
+            occurrence.setReserveId(FIRST_RESERVATION_ID + i);
+            createdReservations.add(occurrence);
+            calendar.add(Calendar.DATE, WEEK);
+        }
+        final RoomReservation reservation =
+                new RoomReservation(createdReservations.get(0).getTimePeriod());
+        reservation.setReserveId(FIRST_RESERVATION_ID);
+        reservation.setCreatedReservations(createdReservations);
+        return reservation;
+    }
+
+    /**
+     * Log a benchmark result.
+     *
+     * @param result the result to log
+     */
+    private static void log(final BenchmarkRunner.Result result) {
+        Assert.assertTrue(result.getOperationsPerMilli() > 0);
+        Logger.getLogger(ReservationContextBenchmark.class).info(result.toString());
+    }
+
+}
@@ -28,12 +28,16 @@ public class AllTests extends TestCase {
      */
     public static Test suite() {
         final TestSuite suite = new TestSuite();
+        suite.addTestSuite(AllocationChangeLogTest.class);
         suite.addTestSuite(ArrangeTypeDataSourceTest.class);
+        suite.addTestSuite(ReservationAttendeeDataSourceTest.class);
         suite.addTestSuite(ResourceDataSourceTest.class);
         suite.addTestSuite(ResourceAllocationDataSourceTest.class);
         suite.addTestSuite(RoomArrangementDataSourceTest.class);
         suite.addTestSuite(RoomAllocationDataSourceTest.class);
         suite.addTestSuite(RoomReservationDataSourceTest.class);
+        suite.addTestSuite(RoomSearchCacheTest.class);
+        suite.addTestSuite(RoomUtilizationSummaryTest.class);
         suite.addTestSuite(VisitorDataSourceTest.class);
         return suite;
     }
@@ -0,0 +1,139 @@
+package com.archibus.app.reservation.dao.datasource;
+
+import java.util.List;
+
+import junit.framework.*;
+
+import com.archibus.app.reservation.domain.RoomAllocation;
+
+/**
+ * Test for AllocationChangeLog.
+ */
+public class AllocationChangeLogTest extends TestCase {
+
+    /** Scope used for testing. */
+    private static final String SCOPE = "1a2b.3c4d";
+
+    /** Room allocation table name. */
+    private static final String RESERVE_RM = "reserve_rm";
+
+    /** The log under test. */
+    private final AllocationChangeLog log = new AllocationChangeLog();
+
+    /**
+     * Test retrieving the changes since a token and renewing it.
+     */
+    public void testGetChangesSince() {
+        // all changes are committed immediately
+        this.log.setCommitDelaySeconds(0);
+        final String token = this.log.createToken(this.log.getVersion(), SCOPE);
+        Assert.assertEquals(SCOPE, this.log.getScope(token));
+        Assert.assertTrue(this.log.getChangesSince(token).isEmpty());
+
+        this.log.recordChange(RESERVE_RM, createAllocation(1), null);
+        this.log.recordChange(RESERVE_RM, createAllocation(2), null);
+        final List<AllocationChangeLog.Change> changes = this.log.getChangesSince(token);
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals(Integer.valueOf(1), changes.get(0).getAllocationId());
+        Assert.assertEquals("HQ", changes.get(1).getBlId());
+
+        final String renewed = this.log.renewToken(token, changes);
+        Assert.assertEquals(SCOPE, this.log.getScope(renewed));
+        Assert.assertTrue(this.log.getChangesSince(renewed).isEmpty());
+    }
+
+    /**
+     * Test the changes during the commit delay are reported again after renewing the token.
+     */
+    public void testCommitDelay() {
+        final String token = this.log.createToken(this.log.getStableVersion(), SCOPE);
+        this.log.recordChange(RESERVE_RM, createAllocation(1), null);
+        // a timeline loaded now might not include the change
+        Assert.assertEquals(0, this.log.getStableVersion());
+        Assert.assertEquals(1, this.log.getVersion());
+
+        final List<AllocationChangeLog.Change> changes = this.log.getChangesSince(token);
+        Assert.assertEquals(1, changes.size());
+        final String renewed = this.log.renewToken(token, changes);
+        Assert.assertEquals(1, this.log.getChangesSince(renewed).size());
+
+        // once the change is committed, the renewed token includes it
+        this.log.setCommitDelaySeconds(0);
+        Assert.assertEquals(1, this.log.getStableVersion());
+        Assert.assertTrue(this.log.getChangesSince(
+            this.log.renewToken(renewed, this.log.getChangesSince(renewed))).isEmpty());
+    }
+
+    /**
+     * Test invalidating the log rejects the tokens created before.
+     */
+    public void testInvalidate() {
+        final String token = this.log.createToken(this.log.getStableVersion(), SCOPE);
+        this.log.invalidate();
+        Assert.assertNull(this.log.getChangesSince(token));
+
+        // tokens created during the commit delay are rejected as well
+        final String delayedToken = this.log.createToken(this.log.getStableVersion(), SCOPE);
+        Assert.assertNull(this.log.getChangesSince(delayedToken));
+
+        this.log.setCommitDelaySeconds(0);
+        final String newToken = this.log.createToken(this.log.getStableVersion(), SCOPE);
+        Assert.assertTrue(this.log.getChangesSince(newToken).isEmpty());
+    }
+
+    /**
+     * Test the location before the write is registered for updated allocations.
+     */
+    public void testPreviousLocation() {
+        final String token = this.log.createToken(this.log.getVersion(), SCOPE);
+        final RoomAllocation previous = createAllocation(1);
+        final RoomAllocation moved = createAllocation(1);
+        moved.setRmId("102");
+        this.log.recordChange(RESERVE_RM, moved, previous);
+
+        final AllocationChangeLog.Change change = this.log.getChangesSince(token).get(0);
+        Assert.assertEquals("102", change.getRmId());
+        Assert.assertEquals("101", change.getPreviousRmId());
+        Assert.assertEquals("HQ", change.getPreviousBlId());
+
+        this.log.recordChange(RESERVE_RM, createAllocation(2), null);
+        Assert.assertNull(this.log.getChangesSince(token).get(1).getPreviousRmId());
+    }
+
+    /**
+     * Test the changes cannot be determined for invalid or expired tokens.
+     */
+    public void testInvalidTokens() {
+        Assert.assertNull(this.log.getChangesSince(null));
+        Assert.assertNull(this.log.getChangesSince("invalid"));
+        Assert.assertNull(this.log.getScope("invalid"));
+
+        final String token = this.log.createToken(this.log.getVersion(), SCOPE);
+        // a token from another instance of the log
+        Assert.assertNull(new AllocationChangeLog().getChangesSince(token));
+
+        // some of the changes since the token are no longer in the log
+        this.log.setMaxEntries(1);
+        this.log.recordChange(RESERVE_RM, createAllocation(1), null);
+        this.log.recordChange(RESERVE_RM, createAllocation(2), null);
+        Assert.assertNull(this.log.getChangesSince(token));
+
+        // the token is too old
+        final String newToken = this.log.createToken(this.log.getVersion(), SCOPE);
+        this.log.setMaxTokenAgeSeconds(-1);
+        Assert.assertNull(this.log.getChangesSince(newToken));
+    }
+
+    /**
+     * Create a room allocation.
+     *
+     * @param allocationId the allocation id
+     * @return the room allocation
+     */
+    private RoomAllocation createAllocation(final int allocationId) {
+        final RoomAllocation allocation = new RoomAllocation("HQ", "17", "101", "A", "THEATER");
+        allocation.setId(allocationId);
+        return allocation;
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.archibus.app.reservation.dao.datasource;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import com.archibus.app.reservation.util.ReservationTables;
+
+/**
+ * Test for the parsing of attendees in ReservationAttendeeDataSource.
+ */
+public class ReservationAttendeeDataSourceTest extends TestCase {
+
+    /**
+     * Test that the attendees are split, trimmed, converted to lower case and deduplicated.
+     */
+    public void testParseAttendees() {
+        final Set<String> emails =
+                ReservationAttendeeDataSource
+                    .parseAttendees(" Jason@Mailinator.com;martin@mailinator.com;;"
+                            + "jason@mailinator.com ; ");
+        assertEquals(Arrays.asList("jason@mailinator.com", "martin@mailinator.com"),
+            new ArrayList<String>(emails));
+        assertTrue(ReservationAttendeeDataSource.parseAttendees(null).isEmpty());
+        assertTrue(ReservationAttendeeDataSource.parseAttendees("").isEmpty());
+    }
+
+    /**
+     * Test that addresses longer than the email field are skipped.
+     */
+    public void testParseLongAttendee() {
+        final StringBuilder longEmail = new StringBuilder();
+        while (longEmail.length() <= ReservationTables.EMAIL_SIZE) {
+            longEmail.append("a");
+        }
+        longEmail.append("@mailinator.com");
+        assertEquals(Collections.singleton("linda@mailinator.com"),
+            ReservationAttendeeDataSource.parseAttendees(longEmail + ";linda@mailinator.com"));
+    }
+
+    /**
+     * Test the restriction on the attendee table.
+     */
+    public void testGetAttendeeRestriction() {
+        assertEquals(" EXISTS (SELECT 1 FROM reserve_attendee WHERE reserve_attendee.email ="
+                + " ${parameters['email']} AND reserve_attendee.res_id = reserve.res_id)",
+            ReservationAttendeeDataSource.getAttendeeRestriction("reserve", "email"));
+    }
+}
@@ -2,6 +2,7 @@ package com.archibus.app.reservation.dao.datasource;
 
 import java.sql.Time;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
@@ -96,6 +97,36 @@ public class RoomAllocationDataSourceTest extends ReservationDataSourceTestBase
             this.roomAllocationDataSource.find(this.existingReservation).isEmpty());
     }
     
+    /**
+     * Test moving a room allocation to another day: the cached searches of both days must be
+     * invalidated.
+     */
+    public void testMoveInvalidatesRoomSearchCache() {
+        final RoomSearchCache cache = new RoomSearchCache();
+        this.roomAllocationDataSource.setRoomSearchCache(cache);
+        
+        final RoomAllocation roomAllocation =
+                this.roomAllocationDataSource.find(this.existingReservation).get(0);
+        final Date previousDate = roomAllocation.getStartDate();
+        final Calendar cal = Calendar.getInstance();
+        cal.setTime(previousDate);
+        cal.add(Calendar.DATE, 1);
+        final Date newDate = cal.getTime();
+        
+        final String previousKey = RoomSearchCache.createKey(BL_ID, previousDate);
+        final String newKey = RoomSearchCache.createKey(BL_ID, newDate);
+        cache.put(previousKey, BL_ID, previousDate, new ArrayList<DataRecord>());
+        cache.put(newKey, BL_ID, newDate, new ArrayList<DataRecord>());
+        
+        roomAllocation.setStartDate(newDate);
+        roomAllocation.setEndDate(newDate);
+        this.roomAllocationDataSource.checkAndUpdate(roomAllocation);
+        
+        Assert.assertNull(cache.get(previousKey));
+        Assert.assertNull(cache.get(newKey));
+        Assert.assertEquals(0, cache.size());
+    }
+    
     /**
      * Test total cost calculation for standard.
      */
@@ -76,6 +76,38 @@ public class RoomReservationDataSourceTest extends ReservationDataSourceTestBase
         Assert.assertEquals(RESOURCE_ID, updatedReservation.getComments());
     }
 
+    /**
+     * Test moving all reservations in a series to another parent id in one update.
+     */
+    public void testMarkRecurringSeries() {
+        final String recurringRule = "<recurring type=\"day\" value1=\"1\" total=\"2\" />";
+        final RoomReservation first = this.existingReservation;
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTime(first.getStartDate());
+        calendar.add(Calendar.DATE, 1);
+        final RoomReservation second =
+                createReservation(new TimePeriod(calendar.getTime(), calendar.getTime(),
+                    first.getStartTime(), first.getEndTime()), first.getRoomAllocations().get(0)
+                    .getRoomArrangement());
+        
+        this.roomReservationDataSource.markRecurring(first, first.getReserveId(), recurringRule);
+        this.roomReservationDataSource.markRecurring(second, first.getReserveId(), recurringRule);
+        
+        // move the series to the second reservation, keeping the rule
+        this.roomReservationDataSource.markRecurringSeries(first.getReserveId(),
+            second.getReserveId(), null);
+        for (final RoomReservation reservation : this.roomReservationDataSource.getByParentId(
+            second.getReserveId(), null, null)) {
+            Assert.assertEquals(second.getReserveId(), reservation.getParentId());
+            Assert.assertEquals(recurringRule, reservation.getRecurringRule());
+        }
+        Assert.assertEquals(2,
+            this.roomReservationDataSource.getByParentId(second.getReserveId(), null, null)
+                .size());
+        Assert.assertTrue(this.roomReservationDataSource.getByParentId(first.getReserveId(),
+            null, null).isEmpty());
+    }
+
     /**
      * Insert a room reservation into the database.
      * 
@@ -0,0 +1,144 @@
+package com.archibus.app.reservation.dao.datasource;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import com.archibus.datasource.data.DataRecord;
+
+/**
+ * Test for RoomSearchCache.
+ */
+public class RoomSearchCacheTest extends TestCase {
+
+    /** Building used for testing. */
+    private static final String BL_ID = "HQ";
+
+    /** Other building used for testing. */
+    private static final String OTHER_BL_ID = "SRL";
+
+    /** The cache under test. */
+    private RoomSearchCache cache;
+
+    /** The date used for testing. */
+    private Date date;
+
+    /** Another date used for testing. */
+    private Date otherDate;
+
+    /** An empty search result. */
+    private List<DataRecord> records;
+
+    // Disable StrictDuplicate CHECKSTYLE warning. Justification: setup test
+    /**
+     * Set up for a test case.
+     *
+     * @throws Exception when setup fails
+     *             <p>
+     *             Suppress Warning "PMD.SignatureDeclareThrowsException"
+     *             <p>
+     *             Justification: the overridden method also throws it.
+     */
+    @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.cache = new RoomSearchCache();
+        final Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2014, Calendar.MARCH, 12);
+        this.date = calendar.getTime();
+        calendar.add(Calendar.DATE, 1);
+        this.otherDate = calendar.getTime();
+        this.records = new ArrayList<DataRecord>();
+    }
+
+    /**
+     * Test creating keys: the order of collection elements must not matter.
+     */
+    public void testCreateKey() {
+        final String key1 =
+                RoomSearchCache.createKey(BL_ID, this.date, "17", Arrays.asList("A", "B"));
+        final String key2 =
+                RoomSearchCache.createKey(BL_ID, this.date, "17", Arrays.asList("B", "A"));
+        final String key3 = RoomSearchCache.createKey(BL_ID, this.date, "17", new String[] { "B",
+                "A" });
+        assertEquals(key1, key2);
+        assertEquals(key1, key3);
+        assertFalse(key1.equals(RoomSearchCache.createKey(BL_ID, this.otherDate, "17",
+            Arrays.asList("A", "B"))));
+        assertFalse(key1.equals(RoomSearchCache.createKey(BL_ID, this.date, "18",
+            Arrays.asList("A", "B"))));
+    }
+
+    /**
+     * Test storing and retrieving a search result.
+     */
+    public void testPutAndGet() {
+        final String key = RoomSearchCache.createKey(BL_ID, this.date);
+        assertNull(this.cache.get(key));
+        this.cache.put(key, BL_ID, this.date, this.records);
+        assertNotNull(this.cache.get(key));
+        assertEquals(1, this.cache.size());
+
+        this.cache.clear();
+        assertNull(this.cache.get(key));
+    }
+
+    /**
+     * Test that a write only invalidates entries for the same building and date.
+     */
+    public void testInvalidate() {
+        final String key = RoomSearchCache.createKey(BL_ID, this.date);
+        final String otherBuildingKey = RoomSearchCache.createKey(OTHER_BL_ID, this.date);
+        final String otherDateKey = RoomSearchCache.createKey(BL_ID, this.otherDate);
+        final String anyBuildingKey = RoomSearchCache.createKey(null, this.date);
+        this.cache.put(key, BL_ID, this.date, this.records);
+        this.cache.put(otherBuildingKey, OTHER_BL_ID, this.date, this.records);
+        this.cache.put(otherDateKey, BL_ID, this.otherDate, this.records);
+        this.cache.put(anyBuildingKey, null, this.date, this.records);
+
+        this.cache.invalidate(BL_ID, this.date);
+        assertNull(this.cache.get(key));
+        assertNull(this.cache.get(anyBuildingKey));
+        assertNotNull(this.cache.get(otherBuildingKey));
+        assertNotNull(this.cache.get(otherDateKey));
+    }
+
+    /**
+     * Test that results are not stored for a building and date that were just written to.
+     */
+    public void testPutAfterRecentWrite() {
+        this.cache.invalidate(BL_ID, this.date);
+        final String key = RoomSearchCache.createKey(BL_ID, this.date);
+        this.cache.put(key, BL_ID, this.date, this.records);
+        assertNull(this.cache.get(key));
+
+        final String anyBuildingKey = RoomSearchCache.createKey(null, this.date);
+        this.cache.put(anyBuildingKey, null, this.date, this.records);
+        assertNull(this.cache.get(anyBuildingKey));
+
+        final String otherDateKey = RoomSearchCache.createKey(BL_ID, this.otherDate);
+        this.cache.put(otherDateKey, BL_ID, this.otherDate, this.records);
+        assertNotNull(this.cache.get(otherDateKey));
+    }
+
+    /**
+     * Test expiration and the maximum number of entries.
+     */
+    public void testExpirationAndMaxEntries() {
+        this.cache.setTimeToLiveSeconds(0);
+        final String key = RoomSearchCache.createKey(BL_ID, this.date);
+        this.cache.put(key, BL_ID, this.date, this.records);
+        assertNull(this.cache.get(key));
+
+        this.cache.setTimeToLiveSeconds(30);
+        this.cache.setMaxEntries(2);
+        for (int i = 0; i < 3; ++i) {
+            this.cache.put(RoomSearchCache.createKey(BL_ID, this.date, i), BL_ID, this.date,
+                this.records);
+        }
+        assertEquals(2, this.cache.size());
+        assertNull(this.cache.get(RoomSearchCache.createKey(BL_ID, this.date, 0)));
+    }
+}
@@ -0,0 +1,178 @@
+package com.archibus.app.reservation.dao.datasource;
+
+import java.sql.Time;
+import java.util.Date;
+
+import junit.framework.Assert;
+
+import com.archibus.app.reservation.domain.*;
+import com.archibus.datasource.*;
+import com.archibus.datasource.data.DataRecord;
+import com.archibus.datasource.restriction.Restrictions;
+
+/**
+ * Test for RoomUtilizationSummary.
+ */
+public class RoomUtilizationSummaryTest extends ReservationDataSourceTestBase {
+
+    /** Minutes from 22:00 until midnight. */
+    private static final int TWO_HOURS = 120;
+
+    /** Minutes from 09:00 until 10:30. */
+    private static final int ONE_HOUR_AND_HALF = 90;
+
+    /** Minutes from 10:00 until 14:00, the time of the existing reservation. */
+    private static final int FOUR_HOURS = 240;
+
+    /** Attendees used for testing. */
+    private static final int ATTENDEES = 4;
+
+    /** Cost used for testing. */
+    private static final double COST = 12.5;
+
+    /** Tolerance for comparing costs. */
+    private static final double DELTA = 0.001;
+
+    /** Field name for the booked minutes. */
+    private static final String MINUTES_BOOKED = "minutes_booked";
+
+    /** Field name for the number of reservations. */
+    private static final String RES_COUNT = "res_count";
+
+    /** Field name for the number of attendees. */
+    private static final String ATTENDEE_COUNT = "attendee_count";
+
+    /** The dot between a table and field name. */
+    private static final String DOT = ".";
+
+    /**
+     * Test adding allocations to the totals.
+     */
+    public void testTotals() {
+        final RoomUtilizationSummary.Totals totals = new RoomUtilizationSummary.Totals();
+        totals.add(Time.valueOf("09:00:00"), Time.valueOf("10:30:00"), ATTENDEES, COST);
+        // an allocation until midnight ends at the end of the day
+        totals.add(Time.valueOf("22:00:00"), Time.valueOf("00:00:00"), 1, COST);
+
+        Assert.assertEquals(ONE_HOUR_AND_HALF + TWO_HOURS, totals.getMinutes());
+        Assert.assertEquals(2, totals.getReservations());
+        Assert.assertEquals(ATTENDEES + 1, totals.getAttendees());
+        Assert.assertEquals(COST * 2, totals.getCost(), DELTA);
+    }
+
+    /**
+     * Test that the time of day is ignored when comparing rooms and days.
+     */
+    public void testRoomDay() {
+        final Date now = new Date();
+        final RoomUtilizationSummary.RoomDay roomDay =
+                new RoomUtilizationSummary.RoomDay(BL_ID, FL_ID, RM_ID, now);
+        final RoomUtilizationSummary.RoomDay sameDay =
+                new RoomUtilizationSummary.RoomDay(BL_ID, FL_ID, RM_ID, TimePeriod.clearTime(now));
+        Assert.assertEquals(roomDay, sameDay);
+        Assert.assertEquals(roomDay.hashCode(), sameDay.hashCode());
+        Assert.assertFalse(roomDay.equals(new RoomUtilizationSummary.RoomDay(BL_ID, FL_ID,
+            "128", now)));
+    }
+
+    /**
+     * Test refreshing the summary of a room and day before and after cancelling a reservation.
+     */
+    public void testRefresh() {
+        final RoomUtilizationSummary summary = new RoomUtilizationSummary();
+        final RoomUtilizationSummary.RoomDay roomDay = createRoomDay();
+        final Date date = this.existingReservation.getStartDate();
+
+        summary.refresh(roomDay);
+        final DataRecord before = getSummaryRecord(date);
+        Assert.assertNotNull(before);
+        Assert.assertTrue(getValue(before, MINUTES_BOOKED) >= FOUR_HOURS);
+
+        this.roomReservationDataSource.cancel(this.existingReservation);
+        summary.refresh(roomDay);
+        final DataRecord after = getSummaryRecord(date);
+        Assert.assertEquals(getValue(before, RES_COUNT) - 1, getValue(after, RES_COUNT));
+        Assert.assertEquals(getValue(before, MINUTES_BOOKED) - FOUR_HOURS,
+            getValue(after, MINUTES_BOOKED));
+    }
+
+    /**
+     * Test the rebuild of a day gives the same totals as the refresh of each room.
+     */
+    public void testRebuild() {
+        final RoomUtilizationSummary summary = new RoomUtilizationSummary();
+        final RoomUtilizationSummary.RoomDay roomDay = createRoomDay();
+        final Date date = this.existingReservation.getStartDate();
+        Assert.assertTrue(summary.findRoomDaysUntil(date).contains(roomDay));
+
+        summary.refresh(roomDay);
+        final DataRecord refreshed = getSummaryRecord(date);
+        Assert.assertTrue(summary.rebuild(date) > 0);
+        final DataRecord rebuilt = getSummaryRecord(date);
+        Assert.assertNotNull(rebuilt);
+        for (final String field : new String[] { MINUTES_BOOKED, RES_COUNT, ATTENDEE_COUNT }) {
+            Assert.assertEquals(getValue(refreshed, field), getValue(rebuilt, field));
+        }
+    }
+
+    /**
+     * Test a disabled summary is not refreshed or rebuilt.
+     */
+    public void testDisabled() {
+        final RoomUtilizationSummary summary = new RoomUtilizationSummary();
+        Assert.assertTrue(summary.isEnabled());
+        summary.setEnabled(false);
+        final Date date = this.existingReservation.getStartDate();
+        Assert.assertTrue(summary.findRoomDaysUntil(date).isEmpty());
+        try {
+            summary.rebuild(date);
+            Assert.fail("Rebuilding a disabled summary must fail.");
+        } catch (final ReservationException exception) {
+            // expected
+            Assert.assertNotNull(exception.getMessage());
+        }
+    }
+
+    /**
+     * Create the room and day of the existing reservation.
+     *
+     * @return the room and day
+     */
+    private RoomUtilizationSummary.RoomDay createRoomDay() {
+        return new RoomUtilizationSummary.RoomDay(BL_ID, FL_ID, RM_ID,
+            this.existingReservation.getStartDate());
+    }
+
+    /**
+     * Get the summary record of the room of the existing reservation on a day.
+     *
+     * @param date the day
+     * @return the summary record, or null if there is none
+     */
+    private static DataRecord getSummaryRecord(final Date date) {
+        final String table = RoomUtilizationSummary.SUMMARY_TABLE;
+        final DataSource dataSource =
+                DataSourceFactory.createDataSourceForFields(table, new String[] {
+                        Constants.BL_ID_FIELD_NAME, Constants.FL_ID_FIELD_NAME,
+                        Constants.RM_ID_FIELD_NAME, Constants.DATE_START_FIELD_NAME,
+                        MINUTES_BOOKED, RES_COUNT, ATTENDEE_COUNT });
+        dataSource.addRestriction(Restrictions.eq(table, Constants.BL_ID_FIELD_NAME, BL_ID));
+        dataSource.addRestriction(Restrictions.eq(table, Constants.FL_ID_FIELD_NAME, FL_ID));
+        dataSource.addRestriction(Restrictions.eq(table, Constants.RM_ID_FIELD_NAME, RM_ID));
+        dataSource.addRestriction(Restrictions.eq(table, Constants.DATE_START_FIELD_NAME, date));
+        return dataSource.getRecord();
+    }
+
+    /**
+     * Get a value of a summary record.
+     *
+     * @param summary the summary record, null if there is none
+     * @param field the field name
+     * @return the value, 0 if there is no summary record
+     */
+    private static int getValue(final DataRecord summary, final String field) {
+        return summary == null ? 0 : summary.getInt(RoomUtilizationSummary.SUMMARY_TABLE + DOT
+                + field);
+    }
+
+}
@@ -28,6 +28,7 @@ public class AllTests extends TestCase {
      */
     public static Test suite() {
         final TestSuite suite = new TestSuite();
+        suite.addTestSuite(CompactTimePeriodTest.class);
         suite.addTestSuite(ReservationExceptionTest.class);
         suite.addTestSuite(TimePeriodTest.class);
         return suite;
@@ -0,0 +1,119 @@
+package com.archibus.app.reservation.domain;
+
+import java.sql.Time;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Test for CompactTimePeriod.
+ */
+public class CompactTimePeriodTest extends TestCase {
+
+    /**
+     * Time zone ID used for testing.
+     */
+    private static final String TIMEZONE_ID = "Europe/Brussels";
+
+    /** Minute of the day for 10:00. */
+    private static final int TEN_HOURS = 600;
+
+    /** Minute of the day for 14:00. */
+    private static final int FOURTEEN_HOURS = 840;
+
+    /** The time period used for testing. */
+    private TimePeriod timePeriod;
+
+    // Disable StrictDuplicate CHECKSTYLE warning. Justification: setup test
+    /**
+     * Set up for a test case.
+     *
+     * @throws Exception when setup fails
+     *             <p>
+     *             Suppress Warning "PMD.SignatureDeclareThrowsException"
+     *             <p>
+     *             Justification: the overridden method also throws it.
+     */
+    @SuppressWarnings({ "PMD.SignatureDeclareThrowsException" })
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        final SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
+        final SimpleDateFormat timeFormatter =
+                new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ENGLISH);
+
+        this.timePeriod =
+                new TimePeriod(dateFormatter.parse("2011-11-09"),
+                    dateFormatter.parse("2011-11-19"), new Time(timeFormatter.parse(
+                        "1899-12-30 10:00:00").getTime()), new Time(timeFormatter.parse(
+                        "1899-12-30 14:00:00").getTime()), TIMEZONE_ID);
+    }
+
+    /**
+     * Test converting from and to a regular time period.
+     */
+    public void testConversion() {
+        final CompactTimePeriod compact = CompactTimePeriod.fromTimePeriod(this.timePeriod);
+        Assert.assertEquals(TEN_HOURS, compact.getStartMinuteOfDay());
+        Assert.assertEquals(FOURTEEN_HOURS, compact.getEndMinuteOfDay());
+        Assert.assertEquals(TIMEZONE_ID, compact.getTimeZone());
+
+        Assert.assertEquals(this.timePeriod.getStartDate(), compact.getStartDate());
+        Assert.assertEquals(this.timePeriod.getEndDate(), compact.getEndDate());
+        Assert.assertEquals(this.timePeriod.getStartTime(), compact.getStartTime());
+        Assert.assertEquals(this.timePeriod.getEndTime(), compact.getEndTime());
+        Assert.assertEquals(this.timePeriod.getStartDateTime(), compact.getStartDateTime());
+        Assert.assertEquals(this.timePeriod.getEndDateTime(), compact.getEndDateTime());
+
+        final TimePeriod copy = compact.toTimePeriod();
+        Assert.assertEquals(this.timePeriod.getStartDateTime(), copy.getStartDateTime());
+        Assert.assertEquals(this.timePeriod.getEndDateTime(), copy.getEndDateTime());
+        Assert.assertEquals(TIMEZONE_ID, copy.getTimeZone());
+
+        Assert.assertEquals(TEN_HOURS,
+            CompactTimePeriod.toMinuteOfDay(this.timePeriod.getStartTime()));
+    }
+
+    /**
+     * Test overlap, containment and intersection, including periods that only touch.
+     */
+    public void testOverlap() {
+        final CompactTimePeriod period = new CompactTimePeriod(TEN_HOURS, FOURTEEN_HOURS, null);
+        final CompactTimePeriod before = new CompactTimePeriod(0, TEN_HOURS, null);
+        final CompactTimePeriod inside = new CompactTimePeriod(TEN_HOURS + 1, TEN_HOURS + 2, null);
+        final CompactTimePeriod across =
+                new CompactTimePeriod(TEN_HOURS - 1, FOURTEEN_HOURS - 1, null);
+
+        Assert.assertFalse(period.overlaps(before));
+        Assert.assertFalse(before.overlaps(period));
+        Assert.assertTrue(period.overlaps(inside));
+        Assert.assertTrue(period.overlaps(across));
+
+        Assert.assertTrue(period.contains(inside));
+        Assert.assertFalse(period.contains(across));
+        Assert.assertTrue(period.contains(period));
+        Assert.assertTrue(period.contains(TEN_HOURS));
+        Assert.assertFalse(period.contains(FOURTEEN_HOURS));
+
+        Assert.assertNull(period.intersect(before));
+        final CompactTimePeriod intersection = period.intersect(across);
+        Assert.assertEquals(TEN_HOURS, intersection.getStartMinute());
+        Assert.assertEquals(FOURTEEN_HOURS - 1, intersection.getEndMinute());
+        Assert.assertEquals(FOURTEEN_HOURS - 1 - TEN_HOURS, intersection.getDurationMinutes());
+    }
+
+    /**
+     * Test that a start after the end is not accepted.
+     */
+    public void testInvalidPeriod() {
+        try {
+            new CompactTimePeriod(FOURTEEN_HOURS, TEN_HOURS, null);
+            fail("Start after end should not be accepted.");
+        } catch (final ReservationException exception) {
+            Assert.assertNotNull(exception.getMessage());
+        }
+    }
+
+}
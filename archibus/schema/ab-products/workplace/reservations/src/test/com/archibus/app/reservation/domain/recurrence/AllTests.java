@@ -34,6 +34,7 @@ public class AllTests extends TestCase {
         suite.addTestSuite(WeeklyPatternTest.class);
         suite.addTestSuite(YearlyPatternTest.class);
         suite.addTestSuite(RecurrenceTest.class);
+        suite.addTestSuite(RecurrenceRuleTest.class);
         return suite;
     }
 }
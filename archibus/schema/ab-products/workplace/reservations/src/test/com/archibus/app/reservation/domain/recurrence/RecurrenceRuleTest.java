@@ -0,0 +1,281 @@
+package com.archibus.app.reservation.domain.recurrence;
+
+import java.text.*;
+import java.util.*;
+
+import junit.framework.Assert;
+
+import com.archibus.app.reservation.domain.ReservationException;
+import com.archibus.app.reservation.service.RecurrenceService;
+
+/**
+ * Test for RecurrenceRule and OccurrenceIterator.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public class RecurrenceRuleTest extends RecurrencePatternTestBase {
+
+    /** Weekly pattern on Tuesday and Friday, every 2 weeks. */
+    private static final String WEEKLY_PATTERN =
+            "<recurring type=\"week\" value1=\"0,1,0,0,1,0,0\" value2=\"2\" value3=\"\" value4=\"\" total=\"\" />";
+
+    /** Monthly pattern on the last weekday of the month, 4 occurrences. */
+    private static final String MONTHLY_PATTERN =
+            "<recurring type=\"month\" value1=\"last\" value2=\"weekday\" value3=\"1\" value4=\"\" total=\"4\" />";
+
+    /** Monthly pattern on the 31st of each month. */
+    private static final String MONTHLY_PATTERN_31 =
+            "<recurring type=\"month\" value1=\"31\" value2=\"\" value3=\"1\" value4=\"\" total=\"\" />";
+
+    /** Weekly pattern on Sunday, every 2 weeks: Sunday is the last day of the week. */
+    private static final String WEEKLY_PATTERN_SUNDAY =
+            "<recurring type=\"week\" value1=\"0,0,0,0,0,0,1\" value2=\"2\" value3=\"\" value4=\"\" total=\"\" />";
+
+    /** Number of occurrences in a long daily series. */
+    private static final int LONG_SERIES = 100000;
+
+    /** Patterns used for comparing with the common recurring schedule service. */
+    private static final String[] PATTERNS = {
+            "<recurring type=\"day\" value1=\"1\" value2=\"\" value3=\"\" value4=\"\" total=\"\" />",
+            "<recurring type=\"day\" value1=\"3\" value2=\"\" value3=\"\" value4=\"\" total=\"7\" />",
+            WEEKLY_PATTERN,
+            "<recurring type=\"week\" value1=\"1,1,1,1,1,0,0\" value2=\"1\" value3=\"\" value4=\"\" total=\"\" />",
+            WEEKLY_PATTERN_SUNDAY,
+            "<recurring type=\"week\" value1=\"1,0,0,0,0,1,1\" value2=\"3\" value3=\"\" value4=\"\" total=\"\" />",
+            "<recurring type=\"month\" value1=\"17\" value2=\"\" value3=\"2\" value4=\"\" total=\"\" />",
+            MONTHLY_PATTERN_31,
+            "<recurring type=\"month\" value1=\"31\" value2=\"\" value3=\"2\" value4=\"\" total=\"\" />",
+            "<recurring type=\"month\" value1=\"3rd\" value2=\"thu\" value3=\"1\" value4=\"\" total=\"\" />",
+            "<recurring type=\"month\" value1=\"1st\" value2=\"weekendday\" value3=\"1\" value4=\"\" total=\"\" />",
+            MONTHLY_PATTERN,
+            "<recurring type=\"year\" value1=\"17\" value2=\"may\" value3=\"1\" value4=\"\" total=\"\" />",
+            "<recurring type=\"year\" value1=\"3rd\" value2=\"thu\" value3=\"may\" value4=\"1\" total=\"\" />" };
+
+    /**
+     * Test parsing the different recurrence types.
+     */
+    public void testParse() {
+        RecurrenceRule rule = RecurrenceRule.parse(WEEKLY_PATTERN);
+        Assert.assertEquals("week", rule.getType());
+        Assert.assertEquals(2, rule.getInterval());
+        Assert.assertEquals(0, rule.getTotal());
+        Assert.assertEquals(1 << 1 | 1 << 4, rule.getWeekDays());
+
+        rule = RecurrenceRule.parse(MONTHLY_PATTERN);
+        Assert.assertEquals(RecurrenceRule.LAST_WEEK_OF_MONTH, rule.getWeekOfMonth());
+        Assert.assertEquals(DayOfTheWeek.Weekday, rule.getDayOfTheWeek());
+        Assert.assertEquals(4, rule.getTotal());
+
+        rule = RecurrenceRule.parse(new YearlyPattern(this.startDate, Month.May, 3,
+            DayOfTheWeek.Thursday).toString());
+        Assert.assertEquals(Calendar.MAY, rule.getMonth());
+        Assert.assertEquals(3, rule.getWeekOfMonth());
+        Assert.assertEquals(DayOfTheWeek.Thursday, rule.getDayOfTheWeek());
+
+        // any valid XML is accepted: single quotes, line breaks and other attribute orders
+        rule =
+                RecurrenceRule.parse("<recurring total='' value2='2'\nvalue1='0,1,0,0,1,0,0'"
+                        + "\ttype='week'/>");
+        Assert.assertEquals("week", rule.getType());
+        Assert.assertEquals(2, rule.getInterval());
+        Assert.assertEquals(1 << 1 | 1 << 4, rule.getWeekDays());
+
+        try {
+            RecurrenceRule.parse("<recurring type=\"hour\" />");
+            fail("Unknown recurrence type should not be accepted.");
+        } catch (final ReservationException exception) {
+            Assert.assertNotNull(exception.getMessage());
+        }
+        try {
+            RecurrenceRule.parse("<recurring type=\"week\" value1=\"0,1\"");
+            fail("Invalid XML should not be accepted.");
+        } catch (final ReservationException exception) {
+            Assert.assertNotNull(exception.getMessage());
+        }
+    }
+
+    /**
+     * Test expanding weekly and monthly rules, including the end of month.
+     *
+     * @throws ParseException when a test date is invalid
+     */
+    public void testGetDates() throws ParseException {
+        final int maxOccurrences = RecurrenceService.getMaxOccurrences();
+        List<Date> dates =
+                RecurrenceRule.parse(WEEKLY_PATTERN).getDates(
+                    this.dateFormatter.parse("2012-05-17"),
+                    this.dateFormatter.parse("2012-06-15"), maxOccurrences);
+        assertDates(dates, "2012-05-18", "2012-05-29", "2012-06-01", "2012-06-12", "2012-06-15");
+
+        dates =
+                RecurrenceRule.parse(MONTHLY_PATTERN).getDates(
+                    this.dateFormatter.parse("2012-01-01"), null, maxOccurrences);
+        assertDates(dates, "2012-01-31", "2012-02-29", "2012-03-30", "2012-04-30");
+
+        dates =
+                RecurrenceRule.parse(MONTHLY_PATTERN_31).getDates(
+                    this.dateFormatter.parse("2012-01-31"),
+                    this.dateFormatter.parse("2012-04-30"), maxOccurrences);
+        assertDates(dates, "2012-01-31", "2012-02-29", "2012-03-31", "2012-04-30");
+
+        // weeks start on Monday, so a Sunday start date is the last day of the first week
+        dates =
+                RecurrenceRule.parse(WEEKLY_PATTERN_SUNDAY).getDates(
+                    this.dateFormatter.parse("2012-05-20"),
+                    this.dateFormatter.parse("2012-06-30"), maxOccurrences);
+        assertDates(dates, "2012-05-20", "2012-06-03", "2012-06-17");
+        dates =
+                RecurrenceRule.parse(WEEKLY_PATTERN_SUNDAY).getDates(
+                    this.dateFormatter.parse("2012-05-21"),
+                    this.dateFormatter.parse("2012-06-30"), maxOccurrences);
+        assertDates(dates, "2012-05-27", "2012-06-10", "2012-06-24");
+    }
+
+    /**
+     * Test the limits: the maximum number of occurrences and the iterator contract.
+     */
+    public void testIterator() {
+        final RecurrenceRule rule = RecurrenceRule.parse(WEEKLY_PATTERN);
+        Assert.assertEquals(3, rule.getDates(this.startDate, null, 3).size());
+        Assert.assertTrue(rule.getDates(this.startDate, null, 0).isEmpty());
+
+        final OccurrenceIterator iterator = rule.iterator(this.startDate, this.startDate, 1);
+        Assert.assertFalse(iterator.hasNext());
+        try {
+            iterator.next();
+            fail("No more occurrences should be available.");
+        } catch (final NoSuchElementException exception) {
+            Assert.assertFalse(iterator.hasNext());
+        }
+    }
+
+    /**
+     * Test that the number of occurrences and the date of each occurrence calculated directly
+     * match the enumerated occurrences, with and without end date and limit.
+     */
+    public void testCountAndDate() {
+        final Calendar calendar = Calendar.getInstance();
+        final Date[] endDates = { null, this.startDate, this.endDate };
+        final int[] limits = { 0, 1, 3, RecurrenceService.getMaxOccurrences() };
+        for (final String pattern : PATTERNS) {
+            final RecurrenceRule rule = RecurrenceRule.parse(pattern);
+            calendar.setTime(this.startDate);
+            for (int day = 0; day < RecurrenceRule.DAYS_IN_WEEK * 2; ++day) {
+                final Date start = calendar.getTime();
+                for (final Date end : endDates) {
+                    for (final int limit : limits) {
+                        final List<Date> expected = rule.getDates(start, end, limit);
+                        final OccurrenceIterator iterator = rule.iterator(start, end, limit);
+                        Assert.assertEquals(pattern, expected.size(), iterator.getCount());
+                        for (int index = 0; index < expected.size(); ++index) {
+                            Assert.assertEquals(pattern, expected.get(index),
+                                iterator.getDate(index));
+                        }
+                        Assert.assertNull(iterator.getDate(expected.size()));
+                    }
+                }
+                calendar.add(Calendar.DATE, 1);
+            }
+        }
+
+        // the last date of a long series is available without iterating
+        final OccurrenceIterator iterator =
+                RecurrenceRule.parse(PATTERNS[0]).iterator(this.startDate, null, LONG_SERIES);
+        Assert.assertEquals(this.startDate, iterator.next());
+        Assert.assertEquals(LONG_SERIES, iterator.getCount());
+        calendar.setTime(this.startDate);
+        calendar.add(Calendar.DATE, LONG_SERIES - 1);
+        Assert.assertEquals(calendar.getTime(), iterator.getDate(LONG_SERIES - 1));
+    }
+
+    /**
+     * Test that parsed rules are shared, while parsed Recurrence objects are not.
+     */
+    public void testCache() {
+        Assert.assertSame(RecurrenceRule.parse(WEEKLY_PATTERN),
+            RecurrenceRule.parse(WEEKLY_PATTERN));
+
+        final Recurrence first =
+                Recurrence.parseRecurrence(this.startDate, this.endDate, MONTHLY_PATTERN);
+        final Recurrence second =
+                Recurrence.parseRecurrence(this.startDate, null, MONTHLY_PATTERN);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(this.endDate, first.getEndDate());
+        Assert.assertNull(second.getEndDate());
+        Assert.assertEquals(first.toString(), second.toString());
+
+        // the compiled rule is shared by all start dates, the start date is applied per call
+        final RecurrenceRule rule = RecurrenceRule.parse(WEEKLY_PATTERN);
+        final int maxOccurrences = RecurrenceService.getMaxOccurrences();
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTime(this.startDate);
+        for (int day = 0; day < RecurrenceRule.DAYS_IN_WEEK; ++day) {
+            final Date start = calendar.getTime();
+            Assert.assertSame(rule, RecurrenceRule.parse(WEEKLY_PATTERN));
+            final List<Date> expected =
+                    RecurrenceService.newRecurringScheduleService().getDatesList(start,
+                        this.endDate, WEEKLY_PATTERN);
+            Assert.assertEquals(expected.subList(0, Math.min(expected.size(), maxOccurrences)),
+                rule.getDates(start, this.endDate, maxOccurrences));
+            Assert.assertEquals(start,
+                Recurrence.parseRecurrence(start, this.endDate, WEEKLY_PATTERN).getStartDate());
+            for (final String pattern : PATTERNS) {
+                final Recurrence recurrence =
+                        Recurrence.parseRecurrence(start, this.endDate, pattern);
+                Assert.assertEquals(
+                    RecurrenceRule.parse(pattern).getDates(start, this.endDate, maxOccurrences),
+                    RecurrenceRule.parse(recurrence.toString()).getDates(start, this.endDate,
+                        maxOccurrences));
+            }
+            calendar.add(Calendar.DATE, 1);
+        }
+
+        // the least recently used rule is removed when the cache is full
+        final PatternCache<String> cache = new PatternCache<String>(2);
+        cache.put(PATTERNS[0], PATTERNS[0]);
+        cache.put(PATTERNS[1], PATTERNS[1]);
+        Assert.assertNotNull(cache.get(PATTERNS[0]));
+        cache.put(PATTERNS[2], PATTERNS[2]);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNotNull(cache.get(PATTERNS[0]));
+        Assert.assertNull(cache.get(PATTERNS[1]));
+    }
+
+    /**
+     * Test that the results match the common recurring schedule service, also for start dates
+     * that don't match the pattern.
+     */
+    public void testMatchesRecurringScheduleService() {
+        final Calendar calendar = Calendar.getInstance();
+        for (final String pattern : PATTERNS) {
+            calendar.setTime(this.startDate);
+            for (int day = 0; day < RecurrenceRule.DAYS_IN_WEEK * 2; ++day) {
+                final Date start = calendar.getTime();
+                final List<Date> expected =
+                        RecurrenceService.newRecurringScheduleService().getDatesList(start,
+                            this.endDate, pattern);
+                final int maxOccurrences = RecurrenceService.getMaxOccurrences();
+                Assert.assertEquals(pattern + " from " + this.dateFormatter.format(start),
+                    expected.subList(0, Math.min(expected.size(), maxOccurrences)),
+                    RecurrenceRule.parse(pattern).getDates(start, this.endDate, maxOccurrences));
+                calendar.add(Calendar.DATE, 1);
+            }
+        }
+    }
+
+    /**
+     * Check the dates returned by the rule.
+     *
+     * @param dates the dates returned
+     * @param expected the expected dates formatted as yyyy-MM-dd
+     */
+    private void assertDates(final List<Date> dates, final String... expected) {
+        final List<String> actual = new ArrayList<String>();
+        for (final Date date : dates) {
+            actual.add(this.dateFormatter.format(date));
+        }
+        Assert.assertEquals(Arrays.asList(expected), actual);
+    }
+
+}
@@ -40,6 +40,9 @@ public class ExchangeCalendarServiceTest extends ReservationServiceTestBase {
     /** A large number of reservations, too large for Exchange. */
     private static final int THOUSAND = 1000;
     
+    /** One minute in milliseconds. */
+    private static final long ONE_MINUTE = 60 * 1000L;
+    
     /** The calendar service under test. */
     private ExchangeCalendarService calendarService;
     
@@ -359,6 +362,104 @@ public class ExchangeCalendarServiceTest extends ReservationServiceTestBase {
         }
     }
     
+    /**
+     * Test binding to several occurrences of a recurring appointment at once.
+     */
+    public void testBindToOccurrences() {
+        final RoomReservation reservation = createRoomReservation();
+        populateReservation(reservation);
+        addRecurrence(reservation);
+        createAppointment(reservation);
+        final ExchangeService exchangeService =
+                this.serviceHelper.initializeService(reservation.getEmail());
+        
+        try {
+            final List<Date> startDateTimes =
+                    getStartDateTimes(reservation.getCreatedReservations());
+            Map<Date, Appointment> occurrences =
+                    this.appointmentHelper.bindToOccurrences(exchangeService,
+                        reservation.getUniqueId(), startDateTimes);
+            Assert.assertEquals(startDateTimes.size(), occurrences.size());
+            for (final Date startDateTime : startDateTimes) {
+                final Appointment occurrence = occurrences.get(startDateTime);
+                Assert.assertEquals(startDateTime, occurrence.getStart());
+                Assert.assertEquals(reservation.getUniqueId(), occurrence.getICalUid());
+                // the appointment type is only available after loading the occurrence
+                Assert.assertEquals(AppointmentType.Occurrence, occurrence.getAppointmentType());
+            }
+            
+            // An occurrence that is ongoing at the given time is also found.
+            final Date firstStartDateTime = startDateTimes.get(0);
+            final Date ongoing = new Date(firstStartDateTime.getTime() + ONE_MINUTE);
+            final Calendar calendar = Calendar.getInstance();
+            calendar.setTime(startDateTimes.get(startDateTimes.size() - 1));
+            calendar.add(Calendar.DATE, 1);
+            final Date noOccurrence = calendar.getTime();
+            occurrences =
+                    this.appointmentHelper.bindToOccurrences(exchangeService,
+                        reservation.getUniqueId(), Arrays.asList(ongoing, noOccurrence));
+            Assert.assertEquals(1, occurrences.size());
+            Assert.assertEquals(firstStartDateTime, occurrences.get(ongoing).getStart());
+            
+            Assert.assertTrue(this.appointmentHelper.bindToOccurrences(exchangeService,
+                reservation.getUniqueId(), new ArrayList<Date>()).isEmpty());
+        } catch (final ServiceLocalException exception) {
+            Assert.fail(exception.toString());
+        }
+    }
+    
+    /**
+     * Test updating an occurrence after preparing the occurrences of the series.
+     */
+    public void testUpdatePreparedOccurrence() {
+        try {
+            final RoomReservation reservation = createRoomReservation();
+            populateReservation(reservation);
+            addRecurrence(reservation);
+            final String originalSubject = reservation.getReservationName();
+            createAppointment(reservation);
+            
+            final RoomReservation originalReservation = new RoomReservation();
+            reservation.copyTo(originalReservation, true);
+            originalReservation.setRoomAllocations(reservation.getRoomAllocations());
+            this.calendarService.prepareAppointmentOccurrences(reservation
+                .getCreatedReservations());
+            
+            // Move the first occurrence to the next day and change the subject.
+            final Calendar calendar = Calendar.getInstance();
+            calendar.setTime(reservation.getStartDate());
+            calendar.add(Calendar.DATE, 1);
+            reservation.setStartDate(calendar.getTime());
+            reservation.setEndDate(reservation.getStartDate());
+            reservation.setReservationName("test update prepared occurrence");
+            try {
+                this.calendarService.updateAppointmentOccurrence(reservation,
+                    originalReservation);
+            } finally {
+                this.calendarService.releaseAppointmentOccurrences();
+            }
+            ExchangeCalendarVerifier.verifyModifiedOccurrence(this.appointmentHelper, reservation,
+                1, 1, originalSubject);
+        } catch (final ExceptionBase exception) {
+            Assert.fail(exception.toStringForLogging());
+        }
+    }
+    
+    /**
+     * Get the start date and time in UTC of each reservation.
+     * 
+     * @param reservations the reservations
+     * @return the start date and time of each reservation
+     */
+    private static List<Date> getStartDateTimes(final List<RoomReservation> reservations) {
+        final List<Date> startDateTimes = new ArrayList<Date>();
+        for (final RoomReservation reservation : reservations) {
+            startDateTimes.add(reservation.getTimePeriodInTimeZone(Constants.TIMEZONE_UTC)
+                .getStartDateTime());
+        }
+        return startDateTimes;
+    }
+    
 
     
     /**
@@ -30,6 +30,8 @@ public class AllTests extends TestCase {
         final TestSuite suite = new TestSuite();
         suite.addTestSuite(TimeZoneMapperTest.class);
         suite.addTestSuite(AttendeesHelperTest.class);
+        suite.addTestSuite(RecurringReservationIdsTest.class);
+        suite.addTestSuite(AppointmentPropertiesHelperTest.class);
         return suite;
     }
 }
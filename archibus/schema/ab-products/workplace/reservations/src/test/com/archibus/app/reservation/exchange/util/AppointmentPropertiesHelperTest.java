@@ -0,0 +1,182 @@
+package com.archibus.app.reservation.exchange.util;
+
+import java.util.*;
+
+import junit.framework.Assert;
+import microsoft.exchange.webservices.data.*;
+
+import com.archibus.app.reservation.ConfiguredDataSourceTestBase;
+import com.archibus.app.reservation.dao.datasource.Constants;
+import com.archibus.app.reservation.domain.*;
+import com.archibus.app.reservation.exchange.service.ExchangeServiceHelper;
+
+/**
+ * Test class for AppointmentPropertiesHelper.
+ * <p>
+ * The appointments are only created in memory, they are not saved on the Exchange server.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public class AppointmentPropertiesHelperTest extends ConfiguredDataSourceTestBase {
+
+    /** Reservation ID used for testing. */
+    private static final int RESERVATION_ID = 250;
+
+    /** Number of occurrences in the recurring reservation. */
+    private static final int OCCURRENCES = 4;
+
+    /** Number of days between the occurrences. */
+    private static final int WEEK = 7;
+
+    /** Duration of the reservations in milliseconds. */
+    private static final long DURATION = 60L * 60 * 1000;
+
+    /** The service helper used in this test. */
+    private ExchangeServiceHelper serviceHelper;
+
+    /** The appointment properties helper as configured for the Exchange integration. */
+    private AppointmentPropertiesHelper appointmentPropertiesHelper;
+
+    /**
+     * Test that the reservation ID is read again after each change of the property.
+     *
+     * @throws Exception when the test fails
+     */
+    public void testReservationIdCache() throws Exception {
+        final Appointment appointment = createAppointment();
+        Assert.assertNull(this.appointmentPropertiesHelper
+            .getReservationIdFromUserProperty(appointment));
+
+        this.appointmentPropertiesHelper.setReservationId(appointment, RESERVATION_ID);
+        Assert.assertEquals(Integer.valueOf(RESERVATION_ID),
+            this.appointmentPropertiesHelper.getReservationIdFromUserProperty(appointment));
+
+        this.appointmentPropertiesHelper.setReservationId(appointment, RESERVATION_ID + 1);
+        Assert.assertEquals(Integer.valueOf(RESERVATION_ID + 1),
+            this.appointmentPropertiesHelper.getReservationIdFromUserProperty(appointment));
+
+        // a change that doesn't go through the helper must also invalidate the cached value
+        appointment.setExtendedProperty(new ExtendedPropertyDefinition(
+            DefaultExtendedPropertySet.PublicStrings, "ReservationID-Archibus",
+            MapiPropertyType.Integer), RESERVATION_ID + 2);
+        Assert.assertEquals(Integer.valueOf(RESERVATION_ID + 2),
+            this.appointmentPropertiesHelper.getReservationIdFromUserProperty(appointment));
+
+        this.appointmentPropertiesHelper.removeReservationId(appointment);
+        Assert.assertNull(this.appointmentPropertiesHelper
+            .getReservationIdFromUserProperty(appointment));
+    }
+
+    /**
+     * Test that the recurring reservation IDs are decoded once and decoded again after a change.
+     *
+     * @throws Exception when the test fails
+     */
+    public void testRecurringReservationIdsCache() throws Exception {
+        final Appointment appointment = createAppointment();
+        Assert.assertNull(this.appointmentPropertiesHelper.getRecurringReservationIds(appointment));
+
+        final RoomReservation reservation = createRecurringReservation();
+        this.appointmentPropertiesHelper.setRecurringReservationIds(appointment, reservation);
+        final Map<Date, Integer> reservationIds =
+                this.appointmentPropertiesHelper.getRecurringReservationIds(appointment);
+        Assert.assertEquals(OCCURRENCES, reservationIds.size());
+        Assert.assertTrue(reservationIds.containsValue(RESERVATION_ID + OCCURRENCES - 1));
+        // the property is not decoded again while it doesn't change
+        Assert.assertSame(reservationIds,
+            this.appointmentPropertiesHelper.getRecurringReservationIds(appointment));
+        // the bean configuration writes the original encoding
+        Assert.assertEquals(OCCURRENCES, getRecurringReservationIdsValue(appointment).length);
+
+        final AppointmentPropertiesHelper compactHelper = new AppointmentPropertiesHelper();
+        compactHelper.setRecurringReservationIdsVersion(RecurringReservationIds.VERSION_2);
+        compactHelper.setRecurringReservationIds(appointment, reservation);
+        Assert.assertEquals("#2", getRecurringReservationIdsValue(appointment)[0]);
+        final Map<Date, Integer> compactIds =
+                this.appointmentPropertiesHelper.getRecurringReservationIds(appointment);
+        Assert.assertNotSame(reservationIds, compactIds);
+        Assert.assertEquals(reservationIds, compactIds);
+
+        this.appointmentPropertiesHelper.removeRecurringReservationIds(appointment);
+        Assert.assertNull(this.appointmentPropertiesHelper.getRecurringReservationIds(appointment));
+    }
+
+    /**
+     * Set the Exchange service helper used in this test.
+     *
+     * @param serviceHelper the new service helper
+     */
+    public void setServiceHelper(final ExchangeServiceHelper serviceHelper) {
+        this.serviceHelper = serviceHelper;
+    }
+
+    /**
+     * Set the appointment properties helper used in this test.
+     *
+     * @param appointmentPropertiesHelper the appointment properties helper
+     */
+    public void setAppointmentPropertiesHelper(
+            final AppointmentPropertiesHelper appointmentPropertiesHelper) {
+        this.appointmentPropertiesHelper = appointmentPropertiesHelper;
+    }
+
+    /**
+     * Create an appointment in memory.
+     *
+     * @return the appointment
+     * @throws Exception when the appointment cannot be created
+     */
+    private Appointment createAppointment() throws Exception {
+        return new Appointment(this.serviceHelper.initializeService(this.serviceHelper
+            .getOrganizerAccount()));
+    }
+
+    /**
+     * Create a weekly recurring reservation with the IDs of the created occurrences.
+     *
+     * @return the recurring reservation
+     */
+    private static RoomReservation createRecurringReservation() {
+        final List<RoomReservation> createdReservations = new ArrayList<RoomReservation>();
+        final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(2014, Calendar.OCTOBER, 27, 9, 0);
+        for (int i = 0; i < OCCURRENCES; ++i) {
+            final Date start = calendar.getTime();
+            final RoomReservation occurrence =
+                    new RoomReservation(new TimePeriod(start, new Date(start.getTime()
+                            + DURATION), Constants.TIMEZONE_UTC));
+            occurrence.setReserveId(RESERVATION_ID + i);
+            createdReservations.add(occurrence);
+            calendar.add(Calendar.DATE, WEEK);
+        }
+        final RoomReservation reservation =
+                new RoomReservation(createdReservations.get(0).getTimePeriod());
+        reservation.setReserveId(RESERVATION_ID);
+        reservation.setCreatedReservations(createdReservations);
+        return reservation;
+    }
+
+    /**
+     * Get the raw value of the recurring reservation IDs property.
+     *
+     * @param appointment the appointment
+     * @return the value of the property
+     * @throws Exception when the property cannot be read
+     */
+    private static Object[] getRecurringReservationIdsValue(final Appointment appointment)
+            throws Exception {
+        final ExtendedPropertyDefinition definition =
+                new ExtendedPropertyDefinition(DefaultExtendedPropertySet.PublicStrings,
+                    "RecurringReservationIDs-Archibus", MapiPropertyType.StringArray);
+        Object[] value = null;
+        for (final ExtendedProperty property : appointment.getExtendedProperties()) {
+            if (definition.equals(property.getPropertyDefinition())) {
+                value = (Object[]) property.getValue();
+            }
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.archibus.app.reservation.exchange.util;
+
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Test for RecurringReservationIds.
+ */
+public class RecurringReservationIdsTest extends TestCase {
+
+    /** Reservation ID of the first occurrence. */
+    private static final int FIRST_ID = 120;
+
+    /** Number of occurrences used for testing. */
+    private static final int OCCURRENCES = 5;
+
+    /** Number of days between the occurrences. */
+    private static final int WEEK = 7;
+
+    /**
+     * Test encoding and decoding the compact format.
+     */
+    public void testCompactEncoding() {
+        final RecurringReservationIds reservationIds = createReservationIds();
+        final String[] value = reservationIds.encode(RecurringReservationIds.VERSION_2);
+        Assert.assertEquals(3, value.length);
+        Assert.assertEquals("#2", value[0]);
+        Assert.assertEquals("20141027", value[1]);
+        Assert.assertEquals("0.120,7.121,7.122,7.123,7.124", value[2]);
+
+        final RecurringReservationIds decoded = RecurringReservationIds.decode(value);
+        Assert.assertEquals(reservationIds.asMap(), decoded.asMap());
+        Assert.assertEquals(Integer.valueOf(FIRST_ID + 2), decoded.get(getDate(WEEK * 2)));
+        Assert.assertNull(decoded.get(getDate(1)));
+    }
+
+    /**
+     * Test encoding and decoding the original format.
+     */
+    public void testOriginalEncoding() {
+        final RecurringReservationIds reservationIds = createReservationIds();
+        final String[] value = reservationIds.encode(RecurringReservationIds.VERSION_1);
+        Assert.assertEquals(OCCURRENCES, value.length);
+        Assert.assertEquals("2014-10-27|120", value[0]);
+
+        final RecurringReservationIds decoded =
+                RecurringReservationIds.decode(new Object[] { value[1], "invalid", value[0],
+                        "2014-11-03|x" });
+        Assert.assertEquals(2, decoded.asMap().size());
+        Assert.assertEquals(Integer.valueOf(FIRST_ID), decoded.get(getDate(0)));
+        Assert.assertEquals(Integer.valueOf(FIRST_ID + 1), decoded.get(getDate(WEEK)));
+    }
+
+    /**
+     * Test encoding and decoding without occurrences.
+     */
+    public void testEmpty() {
+        final RecurringReservationIds reservationIds =
+                new RecurringReservationIds(new HashMap<Date, Integer>());
+        final String[] value = reservationIds.encode(RecurringReservationIds.VERSION_2);
+        Assert.assertTrue(RecurringReservationIds.decode(value).asMap().isEmpty());
+        Assert.assertTrue(RecurringReservationIds.decode(new Object[0]).asMap().isEmpty());
+    }
+
+    /**
+     * Create weekly reservation IDs, with a time on each date that must be ignored.
+     *
+     * @return the reservation IDs
+     */
+    private static RecurringReservationIds createReservationIds() {
+        final Map<Date, Integer> reservationIds = new HashMap<Date, Integer>();
+        for (int i = 0; i < OCCURRENCES; ++i) {
+            final Calendar calendar = Calendar.getInstance();
+            calendar.setTime(getDate(i * WEEK));
+            calendar.set(Calendar.HOUR_OF_DAY, 9);
+            reservationIds.put(calendar.getTime(), FIRST_ID + i);
+        }
+        return new RecurringReservationIds(reservationIds);
+    }
+
+    /**
+     * Get a date after the first occurrence, crossing the end of daylight saving time in Europe.
+     *
+     * @param days number of days after the first occurrence
+     * @return the date without time
+     */
+    private static Date getDate(final int days) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2014, Calendar.OCTOBER, 27);
+        calendar.add(Calendar.DATE, days);
+        return calendar.getTime();
+    }
+
+}
@@ -34,10 +34,13 @@ public class AllTests extends TestCase {
         suite.addTestSuite(ReservationServiceTest.class);
         suite.addTestSuite(ReservationRemoteTest.class);
         suite.addTestSuite(TimelineServiceTest.class);
+        suite.addTestSuite(AttendeeAvailabilityCacheTest.class);
+        suite.addTestSuite(RoomHeatmapServiceTest.class);
         suite.addTestSuite(ResourceTimelineServiceTest.class);
         suite.addTestSuite(ResourceReservationServiceTest.class);
         suite.addTestSuite(ResourceFinderServiceTest.class);
         suite.addTestSuite(ReservationUpgradeServiceTest.class);
+        suite.addTestSuite(SaveRecurringReservationJobTest.class);
         return suite;
     }
 }
@@ -0,0 +1,73 @@
+package com.archibus.app.reservation.service;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import com.archibus.app.reservation.domain.*;
+
+/**
+ * Test for AttendeeAvailabilityCache.
+ */
+public class AttendeeAvailabilityCacheTest extends TestCase {
+
+    /** Email address used for testing. */
+    private static final String EMAIL = "afm@example.com";
+
+    /** Other email address used for testing. */
+    private static final String OTHER_EMAIL = "abbot@example.com";
+
+    /** The cache under test. */
+    private final AttendeeAvailabilityCache cache = new AttendeeAvailabilityCache();
+
+    /** The date used for testing. */
+    private final Date date = TimePeriod.clearTime(new Date());
+
+    /** The time zone used for testing. */
+    private final TimeZone timeZone = TimeZone.getTimeZone("UTC");
+
+    /** Calendar events used for testing. */
+    private final List<ICalendarEvent> events = Arrays
+        .asList(new ICalendarEvent[] { new CalendarEvent() });
+
+    /**
+     * Test retrieving cached availability.
+     */
+    public void testGet() {
+        Assert.assertNull(this.cache.get(EMAIL, this.date, this.date, this.timeZone));
+        this.cache.put(EMAIL, this.date, this.date, this.timeZone, this.events);
+
+        // the email address is not case sensitive
+        Assert.assertEquals(this.events,
+            this.cache.get(EMAIL.toUpperCase(), this.date, this.date, this.timeZone));
+        Assert.assertNull(this.cache.get(EMAIL, this.date, null, this.timeZone));
+        Assert.assertNull(this.cache.get(EMAIL, this.date, this.date,
+            TimeZone.getTimeZone("Europe/Brussels")));
+
+        // expired entries are not returned
+        this.cache.setTimeToLiveSeconds(-1);
+        this.cache.put(EMAIL, this.date, this.date, this.timeZone, this.events);
+        Assert.assertNull(this.cache.get(EMAIL, this.date, this.date, this.timeZone));
+    }
+
+    /**
+     * Test removing the cached availability of the attendees of a reservation.
+     */
+    public void testInvalidate() {
+        this.cache.put(EMAIL, this.date, this.date, this.timeZone, this.events);
+        this.cache.put(EMAIL, this.date, null, this.timeZone, this.events);
+        this.cache.put(OTHER_EMAIL, this.date, this.date, this.timeZone, this.events);
+
+        this.cache.invalidate(OTHER_EMAIL);
+        Assert.assertNull(this.cache.get(OTHER_EMAIL, this.date, this.date, this.timeZone));
+        Assert.assertNotNull(this.cache.get(EMAIL, this.date, this.date, this.timeZone));
+
+        final RoomReservation reservation = new RoomReservation();
+        reservation.setEmail(OTHER_EMAIL);
+        reservation.setAttendees(EMAIL + ";" + OTHER_EMAIL);
+        this.cache.invalidate(reservation);
+        Assert.assertNull(this.cache.get(EMAIL, this.date, this.date, this.timeZone));
+        Assert.assertNull(this.cache.get(EMAIL, this.date, null, this.timeZone));
+    }
+
+}
@@ -0,0 +1,483 @@
+package com.archibus.app.reservation.service;
+
+import java.sql.Time;
+import java.util.*;
+
+import junit.framework.Assert;
+
+import com.archibus.app.reservation.dao.datasource.*;
+import com.archibus.app.reservation.domain.RoomArrangement;
+import com.archibus.context.ContextStore;
+import com.archibus.datasource.*;
+import com.archibus.datasource.data.DataRecord;
+import com.archibus.datasource.restriction.Restrictions;
+
+/**
+ * Generates a deterministic portfolio and set of room reservations for load testing.
+ * <p>
+ * The portfolio consists of buildings, floors, rooms with a room arrangement and resources. Each
+ * generated record is a copy of a template record in the existing data, so all fields the
+ * reservation queries use have realistic values. The same seed always generates the same
+ * portfolio and reservations, so measurements of different builds can be compared. Reservations
+ * are created via the room reservation service, so the generated data includes everything a real
+ * booking creates.
+ * <p>
+ * All generated records are registered, so they can be deleted after committing them. Deleting
+ * also removes the attendees and refreshes the daily room utilization summary of the booked rooms.
+ * The random number generator of the generator is only used by the thread generating the data;
+ * simulated users book with their own random number generator.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public class ReservationDataGenerator {
+
+    /** The first hour of the generated time slots. */
+    private static final int FIRST_HOUR = 8;
+
+    /** Number of one-hour time slots per day. */
+    private static final int SLOTS_PER_DAY = 10;
+
+    /** Day of the month used for storing times. */
+    private static final int TIME_BASE_DAY = 30;
+
+    /** Year used for storing times. */
+    private static final int TIME_BASE_YEAR = 1899;
+
+    /** Prefix of the generated building codes. */
+    private static final String BUILDING_PREFIX = "LOAD";
+
+    /** Smallest capacity of a generated room arrangement. */
+    private static final int MIN_CAPACITY = 2;
+
+    /** Largest capacity of a generated room arrangement. */
+    private static final int MAX_CAPACITY = 20;
+
+    /** The buildings table. */
+    private static final String BL_TABLE = "bl";
+
+    /** The floors table. */
+    private static final String FL_TABLE = "fl";
+
+    /** The rooms table. */
+    private static final String RM_TABLE = "rm";
+
+    /** The room configurations table. */
+    private static final String RM_CONFIG_TABLE = "rm_config";
+
+    /** The room arrangements table. */
+    private static final String RM_ARRANGE_TABLE = "rm_arrange";
+
+    /** The resources table. */
+    private static final String RESOURCES_TABLE = "resources";
+
+    /** Resource id field name. */
+    private static final String RESOURCE_ID = "resource_id";
+
+    /** Fields copied from the template building. */
+    private static final String[] BL_FIELDS = { Constants.BL_ID_FIELD_NAME,
+            Constants.NAME_FIELD_NAME, "site_id", "ctry_id", "state_id", "city_id" };
+
+    /** Fields copied from the template floor. */
+    private static final String[] FL_FIELDS = { Constants.BL_ID_FIELD_NAME,
+            Constants.FL_ID_FIELD_NAME, Constants.NAME_FIELD_NAME };
+
+    /** Fields copied from the template room. */
+    private static final String[] RM_FIELDS = { Constants.BL_ID_FIELD_NAME,
+            Constants.FL_ID_FIELD_NAME, Constants.RM_ID_FIELD_NAME, Constants.NAME_FIELD_NAME,
+            "rm_cat", "rm_type", "dv_id", "dp_id" };
+
+    /** Fields copied from the template room configuration. */
+    private static final String[] RM_CONFIG_FIELDS = { Constants.BL_ID_FIELD_NAME,
+            Constants.FL_ID_FIELD_NAME, Constants.RM_ID_FIELD_NAME,
+            Constants.CONFIG_ID_FIELD_NAME, "config_name" };
+
+    /** Fields of both room arrangements and resources, copied from the template. */
+    private static final String[] RESERVABLE_FIELDS = { Constants.RESERVABLE_FIELD_NAME,
+            "approval", "approve_days", "cancel_days", "announce_time", "cancel_time",
+            "pre_block", "post_block", "announce_days", "max_days_ahead", "day_start",
+            "day_end", "ac_id", "group_name", "available_for_group", "cost_per_unit",
+            "cost_per_unit_ext", "cost_unit", "cost_late_cancel_pct" };
+
+    /** Fields copied from the template room arrangement, in addition to the reservable fields. */
+    private static final String[] RM_ARRANGE_FIELDS = { Constants.BL_ID_FIELD_NAME,
+            Constants.FL_ID_FIELD_NAME, Constants.RM_ID_FIELD_NAME,
+            Constants.CONFIG_ID_FIELD_NAME, Constants.RM_ARRANGE_TYPE_ID_FIELD_NAME,
+            "min_required", "max_capacity", "res_stds_not_allowed", "external_allowed" };
+
+    /** Fields copied from the template resource, in addition to the reservable fields. */
+    private static final String[] RESOURCE_FIELDS = { RESOURCE_ID, "resource_name",
+            "resource_std", "resource_type", "quantity", "site_id", Constants.BL_ID_FIELD_NAME };
+
+    /** Portfolio tables keyed on the building, in the order to delete them. */
+    private static final String[] PORTFOLIO_TABLES = { RM_ARRANGE_TABLE, RM_CONFIG_TABLE,
+            RM_TABLE, FL_TABLE, BL_TABLE };
+
+    /** User name used for the generated reservations. */
+    private static final String USER_NAME = "AFM";
+
+    /** Tables with records linked to a reservation, in the order to delete them. */
+    private static final String[] RESERVATION_TABLES = { "wr", "reserve_rs", "reserve_rm",
+            ReservationAttendeeDataSource.TABLE_NAME, "reserve" };
+
+    /** Maximum number of reservation ids in one delete statement. */
+    private static final int MAX_IDS_PER_DELETE = 500;
+
+    /** The random number generator for generating the portfolio and the reservations. */
+    private final Random random;
+
+    /** The room reservation service used to save the reservations. */
+    private final RoomReservationService roomReservationService;
+
+    /** The room reservation data source. */
+    private final RoomReservationDataSource roomReservationDataSource;
+
+    /** The room allocation data source. */
+    private final RoomAllocationDataSource roomAllocationDataSource;
+
+    /** The ids of the reservations saved via this generator. */
+    private final List<Integer> reservationIds = Collections
+        .synchronizedList(new ArrayList<Integer>());
+
+    /** The rooms and days booked via this generator, to refresh their utilization summary. */
+    private final Set<RoomUtilizationSummary.RoomDay> bookedRoomDays = Collections
+        .synchronizedSet(new HashSet<RoomUtilizationSummary.RoomDay>());
+
+    /** The codes of the generated buildings. */
+    private final List<String> buildingIds = new ArrayList<String>();
+
+    /** The ids of the generated resources. */
+    private final List<String> resourceIds = new ArrayList<String>();
+
+    /**
+     * Create a data generator.
+     *
+     * @param seed the seed for generating the reservations
+     * @param roomReservationService the room reservation service
+     * @param roomReservationDataSource the room reservation data source
+     * @param roomAllocationDataSource the room allocation data source
+     */
+    public ReservationDataGenerator(final long seed,
+            final RoomReservationService roomReservationService,
+            final RoomReservationDataSource roomReservationDataSource,
+            final RoomAllocationDataSource roomAllocationDataSource) {
+        this.random = new Random(seed);
+        this.roomReservationService = roomReservationService;
+        this.roomReservationDataSource = roomReservationDataSource;
+        this.roomAllocationDataSource = roomAllocationDataSource;
+    }
+
+    /**
+     * Generate a portfolio of buildings, floors, rooms and resources, copied from template
+     * records. The generated rooms have the configuration and arrangement type of the template
+     * room and a random capacity. The buildings are located like the template building, so they
+     * are in the same site and time zone.
+     *
+     * @param templateRoom the room arrangement to copy, with its room, floor and building
+     * @param templateResourceId the id of the resource to copy
+     * @param buildings the number of buildings to generate
+     * @param floorsPerBuilding the number of floors in each building
+     * @param roomsPerFloor the number of rooms on each floor
+     * @param resourcesPerBuilding the number of resources in each building
+     * @return the generated room arrangements, in a fixed order
+     */
+    public List<RoomArrangement> generatePortfolio(final RoomArrangement templateRoom,
+            final String templateResourceId, final int buildings, final int floorsPerBuilding,
+            final int roomsPerFloor, final int resourcesPerBuilding) {
+        final String blId = Constants.BL_ID_FIELD_NAME;
+        final String flId = Constants.FL_ID_FIELD_NAME;
+        final String rmId = Constants.RM_ID_FIELD_NAME;
+        final TemplateCopier building =
+                new TemplateCopier(BL_TABLE, BL_FIELDS, blId, templateRoom.getBlId());
+        final TemplateCopier floor =
+                new TemplateCopier(FL_TABLE, FL_FIELDS, blId, templateRoom.getBlId(), flId,
+                    templateRoom.getFlId());
+        final TemplateCopier room =
+                new TemplateCopier(RM_TABLE, RM_FIELDS, blId, templateRoom.getBlId(), flId,
+                    templateRoom.getFlId(), rmId, templateRoom.getRmId());
+        final TemplateCopier config =
+                new TemplateCopier(RM_CONFIG_TABLE, RM_CONFIG_FIELDS, blId,
+                    templateRoom.getBlId(), flId, templateRoom.getFlId(), rmId,
+                    templateRoom.getRmId(), Constants.CONFIG_ID_FIELD_NAME,
+                    templateRoom.getConfigId());
+        final TemplateCopier arrangement =
+                new TemplateCopier(RM_ARRANGE_TABLE, concat(RM_ARRANGE_FIELDS,
+                    RESERVABLE_FIELDS), blId, templateRoom.getBlId(), flId,
+                    templateRoom.getFlId(), rmId, templateRoom.getRmId(),
+                    Constants.CONFIG_ID_FIELD_NAME, templateRoom.getConfigId(),
+                    Constants.RM_ARRANGE_TYPE_ID_FIELD_NAME, templateRoom.getArrangeTypeId());
+        final TemplateCopier resource =
+                new TemplateCopier(RESOURCES_TABLE, concat(RESOURCE_FIELDS, RESERVABLE_FIELDS),
+                    RESOURCE_ID, templateResourceId);
+
+        final List<RoomArrangement> rooms = new ArrayList<RoomArrangement>();
+        for (int buildingIndex = 1; buildingIndex <= buildings; ++buildingIndex) {
+            final String buildingId = BUILDING_PREFIX + formatIndex(buildingIndex);
+            this.buildingIds.add(buildingId);
+            building.copy(blId, buildingId, Constants.NAME_FIELD_NAME, "Generated " + buildingId);
+            for (int floorIndex = 1; floorIndex <= floorsPerBuilding; ++floorIndex) {
+                final String floorId = formatIndex(floorIndex);
+                floor.copy(blId, buildingId, flId, floorId);
+                for (int roomIndex = 1; roomIndex <= roomsPerFloor; ++roomIndex) {
+                    final String roomId = floorIndex + formatIndex(roomIndex);
+                    room.copy(blId, buildingId, flId, floorId, rmId, roomId);
+                    config.copy(blId, buildingId, flId, floorId, rmId, roomId);
+                    arrangement.copy(blId, buildingId, flId, floorId, rmId, roomId,
+                        "max_capacity",
+                        MIN_CAPACITY + this.random.nextInt(MAX_CAPACITY - MIN_CAPACITY + 1));
+                    rooms.add(new RoomArrangement(buildingId, floorId, roomId, templateRoom
+                        .getConfigId(), templateRoom.getArrangeTypeId()));
+                }
+            }
+            for (int resourceIndex = 1; resourceIndex <= resourcesPerBuilding; ++resourceIndex) {
+                final String resourceId = buildingId + "-RS" + formatIndex(resourceIndex);
+                this.resourceIds.add(resourceId);
+                resource.copy(RESOURCE_ID, resourceId, blId, buildingId);
+            }
+        }
+        return rooms;
+    }
+
+    /**
+     * Generate room reservations. Each room gets the given number of reservations per day, in
+     * distinct one-hour slots chosen at random, so the generated reservations never conflict.
+     * Only one arrangement of each room is booked per day.
+     *
+     * @param rooms the room arrangements to book
+     * @param firstDate the first day to book
+     * @param days the number of days to book
+     * @param reservationsPerRoomPerDay the number of reservations per room and day
+     * @return the number of reservations created
+     */
+    public int generate(final List<RoomArrangement> rooms, final Date firstDate, final int days,
+            final int reservationsPerRoomPerDay) {
+        final int perDay = Math.min(reservationsPerRoomPerDay, SLOTS_PER_DAY);
+        final List<Integer> slots = new ArrayList<Integer>();
+        for (int slot = 0; slot < SLOTS_PER_DAY; ++slot) {
+            slots.add(slot);
+        }
+
+        int count = 0;
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTime(firstDate);
+        for (int day = 0; day < days; ++day) {
+            final java.sql.Date date = new java.sql.Date(calendar.getTimeInMillis());
+            final Set<String> bookedRooms = new HashSet<String>();
+            for (final RoomArrangement room : rooms) {
+                if (!bookedRooms.add(room.getBlId() + room.getFlId() + room.getRmId())) {
+                    continue;
+                }
+                Collections.shuffle(slots, this.random);
+                for (int i = 0; i < perDay; ++i) {
+                    final int hour = FIRST_HOUR + slots.get(i);
+                    this.saveReservation(room, date, createTime(hour), createTime(hour + 1),
+                        this.random);
+                    ++count;
+                }
+            }
+            calendar.add(Calendar.DATE, 1);
+        }
+        return count;
+    }
+
+    /**
+     * Delete all reservations saved via this generator, with their allocations, attendees and
+     * work requests, and refresh the utilization summary of the booked rooms. Then delete the
+     * generated portfolio.
+     * <p>
+     * Suppress warning PMD.AvoidUsingSQL in this method.
+     * <p>
+     * Justification: bulk delete of generated test data.
+     *
+     * @return the number of reservations deleted
+     */
+    @SuppressWarnings("PMD.AvoidUsingSql")
+    public int deleteGenerated() {
+        final List<Integer> ids = new ArrayList<Integer>(this.reservationIds);
+        for (int start = 0; start < ids.size(); start += MAX_IDS_PER_DELETE) {
+            final String idList =
+                    toSqlList(ids.subList(start, Math.min(start + MAX_IDS_PER_DELETE, ids.size())));
+            for (final String tableName : RESERVATION_TABLES) {
+                SqlUtils.executeUpdate(tableName, "DELETE FROM " + tableName + " WHERE res_id IN "
+                        + idList);
+            }
+        }
+        this.reservationIds.clear();
+
+        final RoomUtilizationSummary utilizationSummary =
+                (RoomUtilizationSummary) ContextStore.get().getBean("roomUtilizationSummary");
+        synchronized (this.bookedRoomDays) {
+            for (final RoomUtilizationSummary.RoomDay roomDay : this.bookedRoomDays) {
+                utilizationSummary.refresh(roomDay);
+            }
+            this.bookedRoomDays.clear();
+        }
+
+        if (!this.resourceIds.isEmpty()) {
+            SqlUtils.executeUpdate(RESOURCES_TABLE, "DELETE FROM " + RESOURCES_TABLE
+                    + " WHERE resource_id IN " + toSqlList(this.resourceIds));
+            this.resourceIds.clear();
+        }
+        if (!this.buildingIds.isEmpty()) {
+            for (final String tableName : PORTFOLIO_TABLES) {
+                SqlUtils.executeUpdate(tableName, "DELETE FROM " + tableName
+                        + " WHERE bl_id IN " + toSqlList(this.buildingIds));
+            }
+            this.buildingIds.clear();
+        }
+        return ids.size();
+    }
+
+    /**
+     * Save a single regular room reservation.
+     *
+     * @param room the room arrangement to book
+     * @param date the date
+     * @param startTime the start time
+     * @param endTime the end time
+     * @param userRandom the random number generator of the thread saving the reservation
+     * @return the saved reservation record
+     */
+    public DataRecord saveReservation(final RoomArrangement room, final java.sql.Date date,
+            final Time startTime, final Time endTime, final Random userRandom) {
+        final DataRecord reservation = this.roomReservationDataSource.createNewRecord();
+        reservation.setValue("reserve.res_type", "REGULAR");
+        reservation.setValue("reserve.date_start", date);
+        reservation.setValue("reserve.date_end", date);
+        reservation.setValue("reserve.time_start", startTime);
+        reservation.setValue("reserve.time_end", endTime);
+        reservation.setValue("reserve.email", "afm@tgd.com");
+        reservation.setValue("reserve.reservation_name", "Generated " + userRandom.nextInt());
+        reservation.setValue("reserve.user_created_by", USER_NAME);
+        reservation.setValue("reserve.user_requested_for", USER_NAME);
+        reservation.setValue("reserve.user_requested_by", USER_NAME);
+
+        final DataRecord roomAllocation = this.roomAllocationDataSource.createNewRecord();
+        roomAllocation.setValue("reserve_rm.date_start", date);
+        roomAllocation.setValue("reserve_rm.time_start", startTime);
+        roomAllocation.setValue("reserve_rm.time_end", endTime);
+        roomAllocation.setValue("reserve_rm.bl_id", room.getBlId());
+        roomAllocation.setValue("reserve_rm.fl_id", room.getFlId());
+        roomAllocation.setValue("reserve_rm.rm_id", room.getRmId());
+        roomAllocation.setValue("reserve_rm.config_id", room.getConfigId());
+        roomAllocation.setValue("reserve_rm.rm_arrange_type_id", room.getArrangeTypeId());
+
+        final DataRecord savedReservation =
+                this.roomReservationService.saveRoomReservation(reservation, roomAllocation, null,
+                    null);
+        this.reservationIds.add(savedReservation.getInt("reserve.res_id"));
+        this.bookedRoomDays.add(new RoomUtilizationSummary.RoomDay(room.getBlId(),
+            room.getFlId(), room.getRmId(), date));
+        return savedReservation;
+    }
+
+    /**
+     * Create a time value on the given hour.
+     *
+     * @param hour the hour of the day
+     * @return the time
+     */
+    public static Time createTime(final int hour) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(TIME_BASE_YEAR, Calendar.DECEMBER, TIME_BASE_DAY, hour, 0, 0);
+        return new Time(calendar.getTimeInMillis());
+    }
+
+    /**
+     * Format an index with at least two digits.
+     *
+     * @param index the index
+     * @return the formatted index
+     */
+    private static String formatIndex(final int index) {
+        return String.format("%02d", index);
+    }
+
+    /**
+     * Concatenate two arrays of field names.
+     *
+     * @param first the first field names
+     * @param second the field names to add
+     * @return the concatenated field names
+     */
+    private static String[] concat(final String[] first, final String[] second) {
+        final List<String> fields = new ArrayList<String>(Arrays.asList(first));
+        fields.addAll(Arrays.asList(second));
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    /**
+     * Format values as an SQL list for an IN restriction.
+     *
+     * @param values the values
+     * @return the SQL list, including the parentheses
+     */
+    private static String toSqlList(final List<?> values) {
+        final StringBuilder sql = new StringBuilder("(");
+        for (final Object value : values) {
+            if (sql.length() > 1) {
+                sql.append(", ");
+            }
+            sql.append(SqlUtils.formatValueForSql(value));
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * Copies a template record to new records that differ in the given values.
+     */
+    private static final class TemplateCopier {
+
+        /** The table name. */
+        private final String tableName;
+
+        /** The copied field names. */
+        private final String[] fieldNames;
+
+        /** The data source for saving the copies. */
+        private final DataSource dataSource;
+
+        /** The template record. */
+        private final DataRecord template;
+
+        /**
+         * Load the template record.
+         *
+         * @param tableName the table name
+         * @param fieldNames the field names to copy
+         * @param key the primary key of the template, as pairs of field name and value
+         */
+        TemplateCopier(final String tableName, final String[] fieldNames, final Object... key) {
+            this.tableName = tableName;
+            this.fieldNames = fieldNames.clone();
+            this.dataSource = DataSourceFactory.createDataSourceForFields(tableName, fieldNames);
+            for (int i = 0; i < key.length; i += 2) {
+                this.dataSource.addRestriction(Restrictions.eq(tableName, (String) key[i],
+                    key[i + 1]));
+            }
+            this.template = this.dataSource.getRecord();
+            Assert.assertNotNull("No template record in " + tableName, this.template);
+            this.dataSource.clearRestrictions();
+        }
+
+        /**
+         * Save a copy of the template record.
+         *
+         * @param values the values that differ from the template, as pairs of field name and
+         *            value
+         */
+        void copy(final Object... values) {
+            final DataRecord record = this.dataSource.createNewRecord();
+            for (final String fieldName : this.fieldNames) {
+                final String fullName = this.tableName + Constants.DOT + fieldName;
+                record.setValue(fullName, this.template.getValue(fullName));
+            }
+            for (int i = 0; i < values.length; i += 2) {
+                record.setValue(this.tableName + Constants.DOT + values[i], values[i + 1]);
+            }
+            this.dataSource.saveRecord(record);
+        }
+    }
+
+}
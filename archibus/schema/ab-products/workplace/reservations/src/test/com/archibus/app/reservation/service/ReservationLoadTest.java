@@ -0,0 +1,548 @@
+package com.archibus.app.reservation.service;
+
+import java.sql.Time;
+import java.util.*;
+
+import junit.framework.Assert;
+
+import org.apache.log4j.Logger;
+
+import com.archibus.app.reservation.dao.datasource.*;
+import com.archibus.app.reservation.domain.*;
+import com.archibus.context.ContextStore;
+import com.archibus.datasource.SqlUtils;
+import com.archibus.datasource.data.DataRecord;
+import com.archibus.jobmanager.*;
+
+/**
+ * Load test for the reservation services, on a portfolio and reservations created by
+ * ReservationDataGenerator.
+ * <p>
+ * A number of simulated users concurrently run a fixed mix of operations: searching rooms,
+ * loading the room timeline, searching resources and booking a room. Each user runs as a job in
+ * the thread pool of the job manager, which binds a user context and database connection to each
+ * of its threads like it does for web requests. The latency percentiles and the number of SQL
+ * statements of each operation are written to the log, so results of different builds can be
+ * compared. Each user chooses its operations and books with its own random number generator, so
+ * the users run the same operations in each run.
+ * <p>
+ * The generated data is committed so the users can see it, and deleted at the end of the test.
+ * The size of the portfolio can be changed via the system properties reservation.load.buildings,
+ * reservation.load.floors, reservation.load.roomsPerFloor and reservation.load.resources; the
+ * size of the test via reservation.load.days, reservation.load.users and
+ * reservation.load.iterations. The SQL statements are counted on the logger set in
+ * reservation.load.sqlLogger. The room search cache is disabled during the test, so each search
+ * queries the database, unless reservation.load.searchCache is true.
+ * <p>
+ * This test is not part of AllTests because it takes much longer than the other tests.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public class ReservationLoadTest extends RoomReservationServiceTestBase {
+
+    /** Seed for generating the data and choosing the operations. */
+    private static final long SEED = 20140312L;
+
+    /** Number of reservations per room and day. */
+    private static final int RESERVATIONS_PER_ROOM_PER_DAY = 4;
+
+    /** Default number of generated buildings. */
+    private static final int DEFAULT_BUILDINGS = 1;
+
+    /** Default number of floors per building. */
+    private static final int DEFAULT_FLOORS = 5;
+
+    /** Default number of rooms per floor, 50 rooms for a typical office building. */
+    private static final int DEFAULT_ROOMS_PER_FLOOR = 10;
+
+    /** Default number of resources per building. */
+    private static final int DEFAULT_RESOURCES = 10;
+
+    /** The resource copied to generate the resources. */
+    private static final String TEMPLATE_RESOURCE_ID = "LCD-PROJECTOR1";
+
+    /** Default number of days, the booking horizon of most sites. */
+    private static final int DEFAULT_DAYS = 20;
+
+    /** Default number of concurrent users. */
+    private static final int DEFAULT_USERS = 20;
+
+    /** Default number of iterations per user. */
+    private static final int DEFAULT_ITERATIONS = 10;
+
+    /** Default logger the data source layer writes the SQL statements to. */
+    private static final String DEFAULT_SQL_LOGGER = "com.archibus.datasource";
+
+    /** Interval for checking whether the users are done, in milliseconds. */
+    private static final long POLL_INTERVAL = 200L;
+
+    /** Maximum time to wait for the users, in milliseconds. */
+    private static final long MAX_WAIT = 30L * 60 * 1000;
+
+    /** Number of attendees used for the room search. */
+    private static final int CAPACITY = 5;
+
+    /** Hour of the first possible booking. */
+    private static final int FIRST_HOUR = 8;
+
+    /** Hour of the last possible booking. */
+    private static final int LAST_HOUR = 19;
+
+    /** Percentiles reported for each operation. */
+    private static final int[] PERCENTILES = { 50, 90, 95, 99 };
+
+    /** Factor for converting nanoseconds to milliseconds. */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /** Operation name for the room search. */
+    private static final String FIND_ROOMS = "findAvailableRooms";
+
+    /** Operation name for loading the timeline. */
+    private static final String LOAD_TIMELINE = "loadRoomArrangementTimeLine";
+
+    /** Operation name for the resource search. */
+    private static final String FIND_RESOURCES = "findAvailableReservableResourcesForRoom";
+
+    /** Operation name for booking a room. */
+    private static final String SAVE_RESERVATION = "saveRoomReservation";
+
+    /** The reservation service. */
+    private IReservationService reservationService;
+
+    /** The timeline service. */
+    private TimelineService timelineService;
+
+    /** The resource finder service. */
+    private ResourceFinderService resourceFinderService;
+
+    /** The room search cache. */
+    private RoomSearchCache roomSearchCache;
+
+    /** The measured latencies in nanoseconds, per operation. */
+    private final Map<String, List<Long>> latencies = new TreeMap<String, List<Long>>();
+
+    /** Number of records returned, per operation. */
+    private final Map<String, Integer> resultCounts = new HashMap<String, Integer>();
+
+    /** Number of SQL statements executed, per operation. */
+    private final Map<String, Long> statementCounts = new HashMap<String, Long>();
+
+    /**
+     * Generate the data and run the simulated users concurrently.
+     *
+     * @throws InterruptedException when the test is interrupted while waiting for the users
+     */
+    public void testLoad() throws InterruptedException {
+        final int buildings = Integer.getInteger("reservation.load.buildings", DEFAULT_BUILDINGS);
+        final int floors = Integer.getInteger("reservation.load.floors", DEFAULT_FLOORS);
+        final int roomsPerFloor =
+                Integer.getInteger("reservation.load.roomsPerFloor", DEFAULT_ROOMS_PER_FLOOR);
+        final int resources = Integer.getInteger("reservation.load.resources", DEFAULT_RESOURCES);
+        final int days = Integer.getInteger("reservation.load.days", DEFAULT_DAYS);
+        final int users = Integer.getInteger("reservation.load.users", DEFAULT_USERS);
+        final int iterations =
+                Integer.getInteger("reservation.load.iterations", DEFAULT_ITERATIONS);
+
+        final ReservationDataGenerator generator =
+                new ReservationDataGenerator(SEED, this.roomReservationService,
+                    this.roomReservationDataSource, this.roomAllocationDataSource);
+        final int cacheSize = this.roomSearchCache.getMaxEntries();
+        if (!Boolean.getBoolean("reservation.load.searchCache")) {
+            // measure the database queries, not the cache
+            this.roomSearchCache.clear();
+            this.roomSearchCache.setMaxEntries(0);
+        }
+
+        final SqlStatementCounter counter = new SqlStatementCounter();
+        counter.attach(System.getProperty("reservation.load.sqlLogger", DEFAULT_SQL_LOGGER));
+        try {
+            final long start = System.nanoTime();
+            final List<RoomArrangement> rooms =
+                    generator.generatePortfolio(new RoomArrangement(BL_ID, FL_ID, RM_ID,
+                        CONFIG_ID, ARRANGE_TYPE_ID), TEMPLATE_RESOURCE_ID, buildings, floors,
+                        roomsPerFloor, resources);
+            Assert.assertFalse(rooms.isEmpty());
+            final int generated =
+                    generator.generate(rooms, this.startDate, days,
+                        RESERVATIONS_PER_ROOM_PER_DAY);
+            // the users run in other transactions, they can only see committed data
+            SqlUtils.commit();
+            Logger.getLogger(ReservationLoadTest.class).info(
+                "Generated " + generated + " reservations for " + rooms.size() + " rooms in "
+                        + toMillis(System.nanoTime() - start) + " ms");
+
+            final List<SimulatedUserJob> jobs = new ArrayList<SimulatedUserJob>();
+            final List<String> jobIds = new ArrayList<String>();
+            for (int user = 0; user < users; ++user) {
+                final SimulatedUserJob job =
+                        new SimulatedUserJob(generator, counter, rooms, days, iterations, SEED
+                                + user);
+                jobs.add(job);
+                jobIds.add(ContextStore.get().getJobManager().startJob(job));
+            }
+            final List<String> failures = waitForJobs(jobIds);
+
+            for (final SimulatedUserJob job : jobs) {
+                job.addStatisticsTo(this);
+            }
+            for (final Map.Entry<String, List<Long>> entry : this.latencies.entrySet()) {
+                Logger.getLogger(ReservationLoadTest.class).info(
+                    formatStatistics(entry.getKey(), entry.getValue()));
+            }
+            Assert.assertTrue(failures.toString(), failures.isEmpty());
+            Assert.assertEquals(users * iterations, this.latencies.get(FIND_ROOMS).size());
+        } finally {
+            counter.detach();
+            Logger.getLogger(ReservationLoadTest.class).info(
+                "Deleted " + generator.deleteGenerated() + " generated reservations");
+            SqlUtils.commit();
+            this.roomSearchCache.clear();
+            this.roomSearchCache.setMaxEntries(cacheSize);
+        }
+    }
+
+    /**
+     * Wait until all jobs have finished.
+     *
+     * @param jobIds the ids of the jobs
+     * @return the messages of the jobs that failed
+     * @throws InterruptedException when interrupted while waiting
+     */
+    private List<String> waitForJobs(final List<String> jobIds) throws InterruptedException {
+        final List<String> failures = new ArrayList<String>();
+        final long deadline = System.currentTimeMillis() + MAX_WAIT;
+        for (final String jobId : jobIds) {
+            JobStatus status = ContextStore.get().getJobManager().getJobStatus(jobId);
+            while (status.getCode() != JobStatus.JOB_COMPLETE
+                    && status.getCode() != JobStatus.JOB_FAILED
+                    && status.getCode() != JobStatus.JOB_STOPPED) {
+                Assert.assertTrue("Simulated users did not finish in time.",
+                    System.currentTimeMillis() < deadline);
+                Thread.sleep(POLL_INTERVAL);
+                status = ContextStore.get().getJobManager().getJobStatus(jobId);
+            }
+            if (status.getCode() != JobStatus.JOB_COMPLETE) {
+                failures.add(status.getMessage());
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Record the measurements of an operation.
+     *
+     * @param operation the operation name
+     * @param latency the latency in nanoseconds
+     * @param results the number of records returned by the operation
+     * @param statements the number of SQL statements executed by the operation
+     */
+    private void record(final String operation, final long latency, final int results,
+            final long statements) {
+        List<Long> values = this.latencies.get(operation);
+        if (values == null) {
+            values = new ArrayList<Long>();
+            this.latencies.put(operation, values);
+            this.resultCounts.put(operation, 0);
+            this.statementCounts.put(operation, 0L);
+        }
+        values.add(latency);
+        this.resultCounts.put(operation, this.resultCounts.get(operation) + results);
+        this.statementCounts.put(operation, this.statementCounts.get(operation) + statements);
+    }
+
+    /**
+     * Format the statistics of one operation.
+     *
+     * @param operation the operation name
+     * @param values the measured latencies in nanoseconds
+     * @return the formatted statistics
+     */
+    private String formatStatistics(final String operation, final List<Long> values) {
+        final List<Long> sorted = new ArrayList<Long>(values);
+        Collections.sort(sorted);
+        final StringBuilder builder = new StringBuilder(operation);
+        builder.append(": calls=").append(sorted.size());
+        builder.append(" records=").append(this.resultCounts.get(operation));
+        builder.append(" statements/call=").append(
+            Math.round(this.statementCounts.get(operation) * 10.0 / sorted.size()) / 10.0);
+        for (final int percentile : PERCENTILES) {
+            builder.append(" p").append(percentile).append('=');
+            builder.append(toMillis(getPercentile(sorted, percentile))).append("ms");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Get a percentile from sorted values, using the nearest rank method.
+     *
+     * @param sorted the sorted values
+     * @param percentile the percentile to get
+     * @return the value at the percentile
+     */
+    static long getPercentile(final List<Long> sorted, final int percentile) {
+        final int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    /**
+     * Convert nanoseconds to milliseconds.
+     *
+     * @param nanos the duration in nanoseconds
+     * @return the duration in milliseconds
+     */
+    private static double toMillis(final long nanos) {
+        return Math.round(nanos / NANOS_PER_MILLI * 10) / 10.0;
+    }
+
+    /**
+     * Add a number of days to a date.
+     *
+     * @param date the date
+     * @param days the number of days to add
+     * @return the new date
+     */
+    private static Date addDays(final Date date, final int days) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        calendar.add(Calendar.DATE, days);
+        return calendar.getTime();
+    }
+
+    /**
+     * Sets the reservation service.
+     *
+     * @param reservationService the new reservation service
+     */
+    public void setReservationService(final IReservationService reservationService) {
+        this.reservationService = reservationService;
+    }
+
+    /**
+     * Sets the timeline service.
+     *
+     * @param timelineService the new timeline service
+     */
+    public void setTimelineService(final TimelineService timelineService) {
+        this.timelineService = timelineService;
+    }
+
+    /**
+     * Sets the resource finder service.
+     *
+     * @param resourceFinderService the new resource finder service
+     */
+    public void setResourceFinderService(final ResourceFinderService resourceFinderService) {
+        this.resourceFinderService = resourceFinderService;
+    }
+
+    /**
+     * Sets the room search cache.
+     *
+     * @param roomSearchCache the room search cache
+     */
+    public void setRoomSearchCache(final RoomSearchCache roomSearchCache) {
+        this.roomSearchCache = roomSearchCache;
+    }
+
+    /**
+     * A simulated user, running the mix of operations in a job thread. The measurements are kept
+     * in the job until the test collects them, so the threads don't share any state.
+     */
+    private final class SimulatedUserJob extends JobBase {
+
+        /** The data generator, used for booking. */
+        private final ReservationDataGenerator generator;
+
+        /** The SQL statement counter. */
+        private final SqlStatementCounter counter;
+
+        /** The rooms to search and book. */
+        private final List<RoomArrangement> rooms;
+
+        /** The number of days with generated data. */
+        private final int days;
+
+        /** The number of iterations to run. */
+        private final int iterations;
+
+        /** The random number generator of this user. */
+        private final Random random;
+
+        /** The measurements of the operations, in the order they were run. */
+        private final List<Measurement> measurements = new ArrayList<Measurement>();
+
+        /**
+         * Create a simulated user.
+         *
+         * @param generator the data generator
+         * @param counter the SQL statement counter
+         * @param rooms the rooms to search and book
+         * @param days the number of days with generated data
+         * @param iterations the number of iterations to run
+         * @param seed the seed for choosing the operations
+         */
+        SimulatedUserJob(final ReservationDataGenerator generator,
+                final SqlStatementCounter counter, final List<RoomArrangement> rooms,
+                final int days, final int iterations, final long seed) {
+            super();
+            this.generator = generator;
+            this.counter = counter;
+            this.rooms = rooms;
+            this.days = days;
+            this.iterations = iterations;
+            this.random = new Random(seed);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Suppress warning PMD.AvoidCatchingGenericException.
+         * <p>
+         * Justification: any failure of a simulated user must be reported to the test.
+         */
+        @Override
+        @SuppressWarnings("PMD.AvoidCatchingGenericException")
+        public void run() {
+            this.status.setTotalNumber(this.iterations);
+            try {
+                for (int iteration = 0; iteration < this.iterations; ++iteration) {
+                    final Date date = addDays(ReservationLoadTest.this.startDate,
+                        this.random.nextInt(this.days));
+                    runOperations(date, this.rooms.get(this.random.nextInt(this.rooms.size())));
+                    // each iteration is a separate request
+                    SqlUtils.commit();
+                    this.status.setCurrentNumber(iteration + 1);
+                }
+                this.status.setCode(JobStatus.JOB_COMPLETE);
+            } catch (final RuntimeException exception) {
+                SqlUtils.rollback();
+                this.status.setMessage(exception.toString());
+                this.status.setCode(JobStatus.JOB_FAILED);
+            }
+        }
+
+        /**
+         * Run the operations of one iteration.
+         *
+         * @param date the date to search on
+         * @param room the room to book if available
+         */
+        private void runOperations(final Date date, final RoomArrangement room) {
+            final int hour = FIRST_HOUR + this.random.nextInt(LAST_HOUR - FIRST_HOUR);
+            final Time startTime = ReservationDataGenerator.createTime(hour);
+            final Time endTime = ReservationDataGenerator.createTime(hour + 1);
+
+            long start = System.nanoTime();
+            long statements = this.counter.getCountForCurrentThread();
+            final TimePeriod timePeriod = new TimePeriod(date, date, startTime, endTime);
+            final RoomReservation roomReservation =
+                    new RoomReservation(timePeriod, room.getBlId(), null, null, null, null);
+            final List<RoomArrangement> availableRooms =
+                    ReservationLoadTest.this.reservationService.findAvailableRooms(
+                        roomReservation, CAPACITY, false, null, false, null);
+            measure(FIND_ROOMS, start, statements, availableRooms.size());
+
+            start = System.nanoTime();
+            statements = this.counter.getCountForCurrentThread();
+            final Map<String, String> filter = new HashMap<String, String>();
+            filter.put(Constants.BL_ID_FIELD_NAME, room.getBlId());
+            ReservationLoadTest.this.timelineService.loadRoomArrangementTimeLine(date, date,
+                startTime, endTime, filter, null, 0);
+            measure(LOAD_TIMELINE, start, statements, 1);
+
+            boolean roomAvailable = false;
+            for (final RoomArrangement availableRoom : availableRooms) {
+                roomAvailable |=
+                        room.getRmId().equals(availableRoom.getRmId())
+                                && room.getFlId().equals(availableRoom.getFlId());
+            }
+            if (roomAvailable) {
+                start = System.nanoTime();
+                statements = this.counter.getCountForCurrentThread();
+                final DataRecord reservation =
+                        this.generator.saveReservation(room, new java.sql.Date(date.getTime()),
+                            startTime, endTime, this.random);
+                measure(SAVE_RESERVATION, start, statements, 1);
+
+                start = System.nanoTime();
+                statements = this.counter.getCountForCurrentThread();
+                final DataRecord roomAllocation =
+                        ReservationLoadTest.this.roomAllocationDataSource.createNewRecord();
+                roomAllocation.setValue("reserve_rm.date_start", date);
+                roomAllocation.setValue("reserve_rm.time_start", startTime);
+                roomAllocation.setValue("reserve_rm.time_end", endTime);
+                roomAllocation.setValue("reserve_rm.bl_id", room.getBlId());
+                roomAllocation.setValue("reserve_rm.fl_id", room.getFlId());
+                roomAllocation.setValue("reserve_rm.rm_id", room.getRmId());
+                final int resources =
+                        ReservationLoadTest.this.resourceFinderService
+                            .findAvailableReservableResourcesForRoom(filter, reservation,
+                                roomAllocation).getRecords().size();
+                measure(FIND_RESOURCES, start, statements, resources);
+            }
+        }
+
+        /**
+         * Register the measurements of an operation.
+         *
+         * @param operation the operation name
+         * @param start the start time in nanoseconds
+         * @param statementsBefore the statement count of this thread before the operation
+         * @param results the number of records returned by the operation
+         */
+        private void measure(final String operation, final long start,
+                final long statementsBefore, final int results) {
+            this.measurements.add(new Measurement(operation, System.nanoTime() - start, results,
+                this.counter.getCountForCurrentThread() - statementsBefore));
+        }
+
+        /**
+         * Add the measurements of this user to the statistics of the test. Only call after the job
+         * has finished.
+         *
+         * @param test the test to add the measurements to
+         */
+        void addStatisticsTo(final ReservationLoadTest test) {
+            for (final Measurement measurement : this.measurements) {
+                test.record(measurement.operation, measurement.latency, measurement.results,
+                    measurement.statements);
+            }
+        }
+    }
+
+    /**
+     * The measurements of a single operation.
+     */
+    private static final class Measurement {
+
+        /** The operation name. */
+        private final String operation;
+
+        /** The latency in nanoseconds. */
+        private final long latency;
+
+        /** The number of records returned. */
+        private final int results;
+
+        /** The number of SQL statements executed. */
+        private final long statements;
+
+        /**
+         * Create a measurement.
+         *
+         * @param operation the operation name
+         * @param latency the latency in nanoseconds
+         * @param results the number of records returned
+         * @param statements the number of SQL statements executed
+         */
+        Measurement(final String operation, final long latency, final int results,
+                final long statements) {
+            this.operation = operation;
+            this.latency = latency;
+            this.results = results;
+            this.statements = statements;
+        }
+    }
+
+}
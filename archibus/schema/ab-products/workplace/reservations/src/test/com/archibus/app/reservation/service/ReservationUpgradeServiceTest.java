@@ -169,6 +169,37 @@ public class ReservationUpgradeServiceTest extends ReservationServiceTestBase {
                     null).getRecurringRule());
     }
     
+    /**
+     * Test creating the reservation indexes. Running the upgrade again must not fail and must not
+     * create any additional indexes.
+     */
+    public void testCreateIndexes() {
+        final ReservationUpgradeService upgradeService = new ReservationUpgradeService();
+        // some indexes are defined on the reservation tables
+        upgradeService.createTables();
+        upgradeService.createIndexes();
+        Assert.assertEquals(0, upgradeService.createIndexes());
+        
+        // the availability queries must still work with the indexes in place
+        final RoomReservation reservation = this.createRoomReservation();
+        Assert.assertNotNull(this.reservationService.findAvailableRooms(reservation, null, false,
+            null, false, null));
+    }
+    
+    /**
+     * Test creating the reservation tables and filling the attendee table.
+     */
+    public void testCreateTables() {
+        final ReservationUpgradeService upgradeService = new ReservationUpgradeService();
+        upgradeService.createTables();
+        Assert.assertEquals(0, upgradeService.createTables());
+        
+        final RoomReservation reservation = this.createRoomReservation();
+        this.reservationService.saveReservation(reservation);
+        Assert.assertTrue(upgradeService.fillAttendeeTable() >= reservation.getAttendees().split(
+            SEMICOLON).length);
+    }
+    
     /**
      * Set the resource data source used for verifying test results.
      * 
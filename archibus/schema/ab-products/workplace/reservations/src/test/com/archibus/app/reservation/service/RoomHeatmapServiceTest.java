@@ -0,0 +1,229 @@
+package com.archibus.app.reservation.service;
+
+import java.sql.Time;
+import java.util.*;
+
+import junit.framework.Assert;
+
+import org.json.*;
+
+import com.archibus.app.reservation.ConfiguredDataSourceTestBase;
+import com.archibus.app.reservation.domain.*;
+
+/**
+ * Test for RoomHeatmapService.
+ */
+public class RoomHeatmapServiceTest extends ConfiguredDataSourceTestBase {
+
+    /** Building used for testing. */
+    private static final String BL_ID = "HQ";
+
+    /** Floor used for testing. */
+    private static final String FL_ID = "17";
+
+    /** Capacity limits used for testing. */
+    private static final List<Integer> LIMITS = Arrays.asList(10, 5);
+
+    /** Capacity of the small rooms. */
+    private static final int SMALL = 6;
+
+    /** Capacity of the large room. */
+    private static final int LARGE = 20;
+
+    /** Pre-block of the first room, in minutes. */
+    private static final int PRE_BLOCK = 15;
+
+    /** Number of slots in a day. */
+    private static final int SLOTS = CompactTimePeriod.MINUTES_IN_DAY
+            / RoomHeatmapService.SLOT_MINUTES;
+
+    /** Slot of 07:00. */
+    private static final int SLOT_0700 = 14;
+
+    /** Slot of 08:30. */
+    private static final int SLOT_0830 = 17;
+
+    /** Slot of 09:00. */
+    private static final int SLOT_0900 = 18;
+
+    /** Slot of 10:00. */
+    private static final int SLOT_1000 = 20;
+
+    /** Slot of 11:00. */
+    private static final int SLOT_1100 = 22;
+
+    /** Slot of 18:00. */
+    private static final int SLOT_1800 = 36;
+
+    /** Slot of 23:00. */
+    private static final int SLOT_2300 = 46;
+
+    /** The heatmap service under test. */
+    private RoomHeatmapService roomHeatmapService;
+
+    /**
+     * Test loading the heatmap of a building.
+     */
+    public void testLoadBuildingHeatmap() {
+        final JSONObject heatmap =
+                this.roomHeatmapService.loadBuildingHeatmap(BL_ID, new Date(), LIMITS);
+        Assert.assertEquals(RoomHeatmapService.SLOT_MINUTES, heatmap.getInt("slotMinutes"));
+
+        final JSONArray bands = heatmap.getJSONArray("bands");
+        final JSONArray free = heatmap.getJSONArray("free");
+        // the limits are sorted and a band without upper limit is added
+        Assert.assertEquals(LIMITS.size() + 1, bands.length());
+        Assert.assertEquals(bands.length(), free.length());
+        Assert.assertEquals(0, bands.getJSONObject(0).getInt("minCapacity"));
+        Assert.assertEquals(LIMITS.get(1).intValue(),
+            bands.getJSONObject(0).getInt("maxCapacity"));
+        Assert.assertFalse(bands.getJSONObject(LIMITS.size()).has("maxCapacity"));
+
+        final int slots = CompactTimePeriod.MINUTES_IN_DAY / RoomHeatmapService.SLOT_MINUTES;
+        for (int band = 0; band < bands.length(); ++band) {
+            final int rooms = bands.getJSONObject(band).getInt("rooms");
+            final JSONArray freeInBand = free.getJSONArray(band);
+            Assert.assertEquals(slots, freeInBand.length());
+            for (int slot = 0; slot < slots; ++slot) {
+                Assert.assertTrue(freeInBand.getInt(slot) >= 0);
+                Assert.assertTrue(freeInBand.getInt(slot) <= rooms);
+            }
+        }
+    }
+
+    /**
+     * Test the exact number of free rooms in each slot, with overlapping allocations of the same
+     * room, pre-blocks, reservable hours and an allocation until midnight.
+     */
+    public void testComputeHeatmap() {
+        // room 1: two arrangements, reservable from 07:00 until 18:00
+        final RoomArrangement theater = createArrangement("101", "A", SMALL + 2, "08:00:00",
+            "18:00:00");
+        theater.setPreBlock(PRE_BLOCK);
+        final RoomArrangement conference = createArrangement("101", "B", SMALL, "07:00:00",
+            "17:00:00");
+        // room 2: reservable all day
+        final RoomArrangement small = createArrangement("102", "A", SMALL, null, null);
+        // room 3: large, reservable all day
+        final RoomArrangement large = createArrangement("103", "A", LARGE, null, null);
+
+        final List<RoomAllocation> allocations = new ArrayList<RoomAllocation>();
+        // 08:45 (pre-block) - 10:00 and 09:30 - 11:00 in two configurations of room 1
+        allocations.add(createAllocation(theater, "09:00:00", "10:00:00"));
+        allocations.add(createAllocation(conference, "09:30:00", "11:00:00"));
+        // 09:00 - 09:30 and 09:15 - 09:45 in room 2
+        allocations.add(createAllocation(small, "09:00:00", "09:30:00"));
+        allocations.add(createAllocation(small, "09:15:00", "09:45:00"));
+        // 23:00 until midnight in room 3
+        allocations.add(createAllocation(large, "23:00:00", "00:00:00"));
+        // a room that is not reservable is ignored
+        allocations.add(createAllocation(createArrangement("199", "A", SMALL, null, null),
+            "09:00:00", "17:00:00"));
+
+        final JSONObject heatmap =
+                RoomHeatmapService.computeHeatmap(
+                    Arrays.asList(theater, conference, small, large), allocations,
+                    Arrays.asList(10));
+        final JSONArray bands = heatmap.getJSONArray("bands");
+        Assert.assertEquals(2, bands.getJSONObject(0).getInt("rooms"));
+        Assert.assertEquals(1, bands.getJSONObject(1).getInt("rooms"));
+
+        final int[] smallRooms = new int[SLOTS];
+        // room 1 is not reservable before 07:00 and from 18:00
+        fill(smallRooms, 0, SLOT_0700, 1);
+        fill(smallRooms, SLOT_0700, SLOT_0830, 2);
+        fill(smallRooms, SLOT_0830, SLOT_1100, 1);
+        // room 2 is busy from 09:00 until 10:00
+        fill(smallRooms, SLOT_0900, SLOT_1000, 0);
+        fill(smallRooms, SLOT_1100, SLOT_1800, 2);
+        fill(smallRooms, SLOT_1800, SLOTS, 1);
+
+        final int[] largeRooms = new int[SLOTS];
+        fill(largeRooms, 0, SLOT_2300, 1);
+        fill(largeRooms, SLOT_2300, SLOTS, 0);
+
+        final JSONArray free = heatmap.getJSONArray("free");
+        for (int slot = 0; slot < SLOTS; ++slot) {
+            Assert.assertEquals("slot " + slot, smallRooms[slot],
+                free.getJSONArray(0).getInt(slot));
+            Assert.assertEquals("slot " + slot, largeRooms[slot],
+                free.getJSONArray(1).getInt(slot));
+        }
+    }
+
+    /**
+     * Test loading the heatmap without a building.
+     */
+    public void testLoadHeatmapWithoutBuilding() {
+        try {
+            this.roomHeatmapService.loadBuildingHeatmap(null, new Date(), null);
+            Assert.fail("Expected an exception without a building.");
+        } catch (final ReservationException exception) {
+            Assert.assertNotNull(exception.getMessage());
+        }
+    }
+
+    /**
+     * Create a room arrangement in the test building.
+     *
+     * @param rmId the room id
+     * @param configId the configuration id
+     * @param capacity the maximum capacity
+     * @param dayStart the start of the reservable hours, or null
+     * @param dayEnd the end of the reservable hours, or null
+     * @return the room arrangement
+     */
+    private static RoomArrangement createArrangement(final String rmId, final String configId,
+            final int capacity, final String dayStart, final String dayEnd) {
+        final RoomArrangement arrangement =
+                new RoomArrangement(BL_ID, FL_ID, rmId, configId, "CONFERENCE");
+        arrangement.setMaxCapacity(capacity);
+        if (dayStart != null) {
+            arrangement.setDayStart(Time.valueOf(dayStart));
+            arrangement.setDayEnd(Time.valueOf(dayEnd));
+        }
+        return arrangement;
+    }
+
+    /**
+     * Create an allocation of a room arrangement.
+     *
+     * @param arrangement the room arrangement
+     * @param startTime the start time
+     * @param endTime the end time
+     * @return the room allocation
+     */
+    private static RoomAllocation createAllocation(final RoomArrangement arrangement,
+            final String startTime, final String endTime) {
+        final RoomAllocation allocation =
+                new RoomAllocation(arrangement.getBlId(), arrangement.getFlId(),
+                    arrangement.getRmId(), arrangement.getConfigId(),
+                    arrangement.getArrangeTypeId());
+        allocation.setStartTime(Time.valueOf(startTime));
+        allocation.setEndTime(Time.valueOf(endTime));
+        return allocation;
+    }
+
+    /**
+     * Set the expected number of free rooms for a range of slots.
+     *
+     * @param expected the expected number of free rooms for each slot
+     * @param firstSlot the first slot
+     * @param endSlot the slot after the last slot
+     * @param value the number of free rooms
+     */
+    private static void fill(final int[] expected, final int firstSlot, final int endSlot,
+            final int value) {
+        Arrays.fill(expected, firstSlot, endSlot, value);
+    }
+
+    /**
+     * Set the heatmap service.
+     *
+     * @param roomHeatmapService the heatmap service
+     */
+    public void setRoomHeatmapService(final RoomHeatmapService roomHeatmapService) {
+        this.roomHeatmapService = roomHeatmapService;
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.archibus.app.reservation.service;
+
+import java.util.*;
+
+import junit.framework.Assert;
+
+import com.archibus.app.reservation.domain.*;
+import com.archibus.app.reservation.domain.recurrence.*;
+import com.archibus.datasource.DataSourceTestBase;
+import com.archibus.jobmanager.JobStatus;
+
+/**
+ * Test for SaveRecurringReservationJob.
+ * <p>
+ * The occurrence action only registers the dates, so the job doesn't write any records.
+ */
+public class SaveRecurringReservationJobTest extends DataSourceTestBase {
+
+    /** Number of occurrences in the series, including the first one. */
+    private static final int OCCURRENCES = 8;
+
+    /** Number of occurrences saved in one chunk. */
+    private static final int CHUNK_SIZE = 3;
+
+    /** Error message of the failing occurrence. */
+    private static final String ERROR = "Room not available";
+
+    /**
+     * Test saving all occurrences.
+     */
+    public void testCompleteSeries() {
+        final TestJob job = createJob(-1, false);
+        job.run();
+
+        Assert.assertEquals(JobStatus.JOB_COMPLETE, job.getCode());
+        Assert.assertEquals(OCCURRENCES - 1, job.getCurrentNumber());
+        Assert.assertEquals(OCCURRENCES - 1, job.dates.size());
+        Assert.assertTrue(job.seriesSaved);
+        Assert.assertFalse(job.seriesIncomplete);
+        Assert.assertTrue(job.savedReservations.isEmpty());
+    }
+
+    /**
+     * Test an occurrence that cannot be saved after the first chunk was committed.
+     */
+    public void testFailedSeriesIsCancelled() {
+        final TestJob job = createJob(CHUNK_SIZE + 1, false);
+        job.run();
+
+        Assert.assertEquals(JobStatus.JOB_FAILED, job.getCode());
+        Assert.assertEquals(ERROR, job.getMessage());
+        Assert.assertEquals(CHUNK_SIZE + 1, job.dates.size());
+        Assert.assertFalse(job.seriesSaved);
+        Assert.assertTrue(job.seriesIncomplete);
+        // the committed occurrences are cancelled
+        Assert.assertEquals(0, job.getCurrentNumber());
+        Assert.assertTrue(job.savedReservations.isEmpty());
+    }
+
+    /**
+     * Test stopping the job while saving the occurrences.
+     */
+    public void testStoppedSeriesIsCancelled() {
+        final TestJob job = createJob(CHUNK_SIZE + 1, true);
+        job.run();
+
+        Assert.assertEquals(JobStatus.JOB_STOPPED, job.getCode());
+        Assert.assertEquals(CHUNK_SIZE + 1, job.dates.size());
+        Assert.assertFalse(job.seriesSaved);
+        Assert.assertTrue(job.seriesIncomplete);
+        Assert.assertEquals(0, job.getCurrentNumber());
+    }
+
+    /**
+     * Create a job that fails or is stopped at the given occurrence.
+     *
+     * @param lastOccurrence number of the occurrence to fail or stop at, -1 for none
+     * @param stop true to stop the job, false to fail at the given occurrence
+     * @return the job
+     */
+    private static TestJob createJob(final int lastOccurrence, final boolean stop) {
+        final List<Date> dates = new ArrayList<Date>();
+        final List<Date> savedReservations = new ArrayList<Date>();
+        final TestJob[] job = new TestJob[1];
+        job[0] = new TestJob(new AbstractIntervalPattern.OccurrenceAction() {
+            public boolean handleOccurrence(final Date date) throws ReservationException {
+                dates.add(date);
+                savedReservations.add(date);
+                if (dates.size() == lastOccurrence) {
+                    if (stop) {
+                        job[0].requestStop();
+                    } else {
+                        throw new ReservationException(ERROR,
+                            SaveRecurringReservationJobTest.class);
+                    }
+                }
+                return true;
+            }
+        }, dates, savedReservations);
+        return job[0];
+    }
+
+    /**
+     * Job that registers the occurrences and the calls to its hooks.
+     */
+    private static final class TestJob extends SaveRecurringReservationJob {
+
+        /** The dates of the handled occurrences. */
+        private final List<Date> dates;
+
+        /** The list of saved reservations, cleared by the job after each chunk. */
+        private final List<Date> savedReservations;
+
+        /** Whether onSeriesSaved was called. */
+        private boolean seriesSaved;
+
+        /** Whether onSeriesIncomplete was called. */
+        private boolean seriesIncomplete;
+
+        /**
+         * Constructor.
+         *
+         * @param action the action that registers the occurrences
+         * @param dates the list the action registers the occurrences in
+         * @param savedReservations the list the action adds the saved occurrences to
+         */
+        TestJob(final AbstractIntervalPattern.OccurrenceAction action, final List<Date> dates,
+                final List<Date> savedReservations) {
+            super(createOccurrences(), action, savedReservations, CHUNK_SIZE);
+            this.dates = dates;
+            this.savedReservations = savedReservations;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void onSeriesSaved() {
+            this.seriesSaved = true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void onSeriesIncomplete() {
+            this.seriesIncomplete = true;
+        }
+
+        /**
+         * Request the job to stop, as the job manager does.
+         */
+        void requestStop() {
+            this.stopRequested = true;
+        }
+
+        /**
+         * Get the status code of the job.
+         *
+         * @return the status code
+         */
+        int getCode() {
+            return this.status.getCode();
+        }
+
+        /**
+         * Get the number of occurrences reported as saved.
+         *
+         * @return the current number
+         */
+        long getCurrentNumber() {
+            return this.status.getCurrentNumber();
+        }
+
+        /**
+         * Get the status message of the job.
+         *
+         * @return the message
+         */
+        String getMessage() {
+            return this.status.getMessage();
+        }
+
+        /**
+         * Create the occurrences of a daily series starting tomorrow.
+         *
+         * @return the occurrences
+         */
+        private static OccurrenceIterator createOccurrences() {
+            final Calendar calendar = Calendar.getInstance();
+            calendar.add(Calendar.DATE, 1);
+            return new DailyPattern(TimePeriod.clearTime(calendar.getTime()), 1, OCCURRENCES)
+                .getOccurrences(true);
+        }
+    }
+
+}
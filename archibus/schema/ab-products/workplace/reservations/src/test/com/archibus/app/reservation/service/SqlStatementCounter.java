@@ -0,0 +1,121 @@
+package com.archibus.app.reservation.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.*;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Log appender that counts the SQL statements executed by each thread.
+ * <p>
+ * The data source layer writes each statement it executes to its logger at debug level. Attached
+ * to that logger, this appender counts the messages that start with SELECT, INSERT, UPDATE or
+ * DELETE, per thread name. A thread can compare its count before and after an operation to get
+ * the number of statements executed by that operation.
+ *
+ * @author Yorik Gerlo
+ * @since 21.3
+ */
+public class SqlStatementCounter extends AppenderSkeleton {
+
+    /** Messages that contain an SQL statement, optionally after a label such as "SQL:". */
+    private static final Pattern STATEMENT = Pattern.compile(
+        "^\\s*(\\w+\\s*:\\s*)?(SELECT|INSERT|UPDATE|DELETE)\\s.*", Pattern.CASE_INSENSITIVE
+                | Pattern.DOTALL);
+
+    /** The number of statements per thread name. */
+    private final Map<String, AtomicLong> counts = new ConcurrentHashMap<String, AtomicLong>();
+
+    /** The logger this counter is attached to. */
+    private Logger logger;
+
+    /** Level of the logger before attaching. */
+    private Level previousLevel;
+
+    /** Additivity of the logger before attaching. */
+    private boolean previousAdditivity;
+
+    /**
+     * Attach this counter to the logger of the data source layer. The logger is set to debug
+     * level and no longer forwards its messages to the parent loggers until detached.
+     *
+     * @param loggerName the name of the logger the SQL statements are written to
+     */
+    public void attach(final String loggerName) {
+        this.logger = Logger.getLogger(loggerName);
+        this.previousLevel = this.logger.getLevel();
+        this.previousAdditivity = this.logger.getAdditivity();
+        this.logger.setAdditivity(false);
+        this.logger.setLevel(Level.DEBUG);
+        this.logger.addAppender(this);
+    }
+
+    /**
+     * Detach this counter and restore the level and additivity of the logger.
+     */
+    public void detach() {
+        if (this.logger != null) {
+            this.logger.removeAppender(this);
+            this.logger.setLevel(this.previousLevel);
+            this.logger.setAdditivity(this.previousAdditivity);
+            this.logger = null;
+        }
+    }
+
+    /**
+     * Get the number of statements executed by the current thread since the counter was attached.
+     *
+     * @return the number of statements
+     */
+    public long getCountForCurrentThread() {
+        final AtomicLong count = this.counts.get(Thread.currentThread().getName());
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Get the number of statements executed by all threads since the counter was attached.
+     *
+     * @return the number of statements
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (final AtomicLong count : this.counts.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void append(final LoggingEvent event) {
+        if (STATEMENT.matcher(String.valueOf(event.getMessage())).matches()) {
+            AtomicLong count = this.counts.get(event.getThreadName());
+            if (count == null) {
+                // only the thread itself creates its counter, so there is no race
+                count = new AtomicLong();
+                this.counts.put(event.getThreadName(), count);
+            }
+            count.incrementAndGet();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() {
+        this.counts.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean requiresLayout() {
+        return false;
+    }
+
+}
@@ -1,16 +1,24 @@
 package com.archibus.app.reservation.service;
 
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
 
 import junit.framework.Assert;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
+import com.archibus.app.reservation.domain.CalendarEvent;
+import com.archibus.app.reservation.domain.ICalendarEvent;
+import com.archibus.app.reservation.domain.RoomAllocation;
 import com.archibus.app.reservation.domain.RoomReservation;
+import com.archibus.app.reservation.service.helpers.TimelineServiceHelper;
 import com.archibus.datasource.data.DataRecord;
 
 
@@ -36,6 +44,12 @@ public class TimelineServiceTest extends RoomReservationServiceTestBase {
     /** The Constant RESERVE_RES_ID. */
     private static final String RESERVE_RES_ID = "reserve.res_id";
 
+    /** The Constant VERSION. */
+    private static final String VERSION = "version";
+
+    /** The Constant REMOVED. */
+    private static final String REMOVED = "removed";
+
 
     /** The Constant THREE. */
     private static final int THREE = 3;
@@ -61,6 +75,66 @@ public class TimelineServiceTest extends RoomReservationServiceTestBase {
         Assert.assertNotNull(timeline.get(EVENTS));
     }
 
+    /**
+     * Test loading the changes in the room timeline after moving and cancelling an allocation.
+     */
+    public void testLoadRoomTimelineChanges() {
+        final Map<String, String> filter = new HashMap<String, String>();
+        filter.put("bl_id", BL_ID);
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTime(this.startDate);
+        calendar.add(Calendar.DATE, 1);
+        final Date nextDate = calendar.getTime();
+
+        final DataRecord reservation = this.createAndSaveRoomReservation(false);
+        final String token =
+                this.timelineService.loadRoomArrangementTimeLine(this.startDate, this.endDate,
+                    this.startTime, this.endTime, filter, null, null).getString(VERSION);
+        final String nextToken =
+                this.timelineService.loadRoomArrangementTimeLine(nextDate, nextDate,
+                    this.startTime, this.endTime, filter, null, null).getString(VERSION);
+
+        // move the allocation to the next day
+        final RoomAllocation allocation =
+                this.roomReservationDataSource.get(reservation.getInt(RESERVE_RES_ID))
+                    .getRoomAllocations().get(0);
+        allocation.setStartDate(nextDate);
+        allocation.setEndDate(nextDate);
+        this.roomAllocationDataSource.checkAndUpdate(allocation);
+
+        // the event is removed from the first day and added on the next day
+        JSONObject changes =
+                this.timelineService.loadRoomArrangementTimeLineChanges(this.startDate,
+                    this.endDate, this.startTime, this.endTime, filter, null, null, token);
+        Assert.assertFalse(changes.getBoolean("full"));
+        Assert.assertEquals(allocation.getId().intValue(),
+            changes.getJSONArray(REMOVED).getInt(0));
+        Assert.assertFalse(containsEvent(changes, allocation.getId()));
+        final String renewedToken = changes.getString(VERSION);
+
+        changes =
+                this.timelineService.loadRoomArrangementTimeLineChanges(nextDate, nextDate,
+                    this.startTime, this.endTime, filter, null, null, nextToken);
+        Assert.assertTrue(containsEvent(changes, allocation.getId()));
+
+        // cancelling removes the event from the next day only
+        this.roomAllocationDataSource.cancel(allocation);
+        changes =
+                this.timelineService.loadRoomArrangementTimeLineChanges(nextDate, nextDate,
+                    this.startTime, this.endTime, filter, null, null,
+                    changes.getString(VERSION));
+        Assert.assertEquals(1, changes.getJSONArray(REMOVED).length());
+        Assert.assertEquals(allocation.getId().intValue(),
+            changes.getJSONArray(REMOVED).getInt(0));
+        Assert.assertFalse(containsEvent(changes, allocation.getId()));
+
+        changes =
+                this.timelineService.loadRoomArrangementTimeLineChanges(this.startDate,
+                    this.endDate, this.startTime, this.endTime, filter, null, null,
+                    renewedToken);
+        Assert.assertEquals(0, changes.getJSONArray(REMOVED).length());
+    }
+
     /**
      * Test load attendee timeline.
      */
@@ -84,6 +158,32 @@ public class TimelineServiceTest extends RoomReservationServiceTestBase {
         Assert.assertEquals(THREE, timeline.getJSONArray(RESOURCES).length());
     }
 
+    /**
+     * Test finding the next available time slots.
+     */
+    public void testFindNextAvailableSlots() {
+        final Map<String, String> searchFilter = new HashMap<String, String>();
+        searchFilter.put("bl_id", "HQ");
+
+        final JSONObject result =
+                this.timelineService.findNextAvailableSlots(this.startDate, this.startTime,
+                    this.endTime, searchFilter, null,
+                    Arrays.asList("tom.winters@mailinator.com"), "", null, THREE, THREE);
+        Assert.assertNotNull(result.get("message"));
+
+        final JSONArray slots = result.getJSONArray("slots");
+        Assert.assertTrue(slots.length() <= THREE);
+        String previous = "";
+        for (int i = 0; i < slots.length(); ++i) {
+            final JSONObject slot = slots.getJSONObject(i);
+            Assert.assertEquals("HQ", slot.getString("bl_id"));
+            // the slots are sorted on date and start time
+            final String current = slot.getString("date") + slot.getString("startTime");
+            Assert.assertTrue(current.compareTo(previous) > 0);
+            previous = current;
+        }
+    }
+
     /**
      * Test get first and last date of a recurrence pattern.
      */
@@ -124,6 +224,76 @@ public class TimelineServiceTest extends RoomReservationServiceTestBase {
     }
  
     
+    /**
+     * Test filtering the attendee events of the complete range to the days of the occurrences.
+     */
+    public void testIsOnOccurrenceDay() {
+        // monthly: events between the occurrences are loaded but not shown
+        final NavigableSet<Date> days = createDays(0, 30, 61);
+        Assert.assertTrue(TimelineServiceHelper.isOnOccurrenceDay(days, createEvent(30, 30)));
+        Assert.assertFalse(TimelineServiceHelper.isOnOccurrenceDay(days, createEvent(1, 1)));
+        Assert.assertFalse(TimelineServiceHelper.isOnOccurrenceDay(days, createEvent(31, 60)));
+
+        // an event spanning several days is shown if one of them has an occurrence
+        Assert.assertTrue(TimelineServiceHelper.isOnOccurrenceDay(days, createEvent(29, 31)));
+        Assert.assertTrue(TimelineServiceHelper.isOnOccurrenceDay(days, createEvent(60, 61)));
+
+        // an event without end date only takes place on its start date
+        Assert.assertTrue(TimelineServiceHelper.isOnOccurrenceDay(days, createEvent(0, -1)));
+    }
+
+    /**
+     * Check whether the timeline changes contain an event for the given allocation.
+     *
+     * @param changes the timeline changes
+     * @param allocationId the allocation id
+     * @return true if an event for the allocation is included
+     */
+    private static boolean containsEvent(final JSONObject changes, final Integer allocationId) {
+        boolean found = false;
+        final JSONArray events = changes.getJSONArray(EVENTS);
+        for (int i = 0; i < events.length(); ++i) {
+            if (allocationId.intValue() == events.getJSONObject(i).getInt("eventId")) {
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Create a sorted set of days.
+     *
+     * @param offsets the number of days after 2 March 2015 of each day
+     * @return the days
+     */
+    private static NavigableSet<Date> createDays(final int... offsets) {
+        final NavigableSet<Date> days = new TreeSet<Date>();
+        for (final int offset : offsets) {
+            final Calendar calendar = Calendar.getInstance();
+            calendar.clear();
+            calendar.set(2015, Calendar.MARCH, 2);
+            calendar.add(Calendar.DATE, offset);
+            days.add(calendar.getTime());
+        }
+        return days;
+    }
+
+    /**
+     * Create a calendar event.
+     *
+     * @param startOffset the number of days after 2 March 2015 of the start date
+     * @param endOffset the number of days after 2 March 2015 of the end date, negative for none
+     * @return the calendar event
+     */
+    private static ICalendarEvent createEvent(final int startOffset, final int endOffset) {
+        final ICalendarEvent event = new CalendarEvent();
+        event.setStartDate(createDays(startOffset).first());
+        if (endOffset >= 0) {
+            event.setEndDate(createDays(endOffset).first());
+        }
+        return event;
+    }
+
     /**
      * Sets the timeline service.
      *
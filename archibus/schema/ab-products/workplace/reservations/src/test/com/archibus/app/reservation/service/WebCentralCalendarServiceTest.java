@@ -15,6 +15,12 @@ public class WebCentralCalendarServiceTest extends ReservationServiceTestBase {
     /** First email address used for testing. */
     private static final String EMAIL1 = "afm@tgd.com";
     
+    /** Attendee that remains invited. */
+    private static final String ATTENDEE = "jason@mailinator.com";
+    
+    /** Attendee that is removed from the reservation. */
+    private static final String REMOVED_ATTENDEE = "martin@mailinator.com";
+    
     /** The Calendar service instance being tested. */
     private WebCentralCalendarService webCentralCalendarService;
     
@@ -41,6 +47,27 @@ public class WebCentralCalendarServiceTest extends ReservationServiceTestBase {
         Assert.assertNotNull(events);
     }
     
+    /**
+     * Test that the attendees are found via the attendee table after saving, editing and
+     * cancelling a reservation.
+     */
+    public void testAttendeeAvailabilityAfterChanges() {
+        final RoomReservation reservation = createRoomReservation();
+        this.reservationService.saveReservation(reservation);
+        final String eventId = reservation.getReserveId().toString();
+        // the email address is not case sensitive
+        Assert.assertTrue(containsEvent(REMOVED_ATTENDEE.toUpperCase(), eventId));
+        
+        reservation.setAttendees(ATTENDEE + ReservationServiceTestBase.SEMICOLON
+                + "linda@mailinator.com");
+        this.reservationService.saveReservation(reservation);
+        Assert.assertFalse(containsEvent(REMOVED_ATTENDEE, eventId));
+        Assert.assertTrue(containsEvent(ATTENDEE, eventId));
+        
+        this.cancelReservationService.cancelReservation(reservation);
+        Assert.assertFalse(containsEvent(ATTENDEE, eventId));
+    }
+    
     /**
      * Test sending an invitation for a new appointment.
      */
@@ -90,4 +117,20 @@ public class WebCentralCalendarServiceTest extends ReservationServiceTestBase {
         }
     }
     
+    /**
+     * Check whether the availability of an attendee contains an event.
+     * 
+     * @param email the email address of the attendee
+     * @param eventId the event id to look for
+     * @return true if the event was found
+     */
+    private boolean containsEvent(final String email, final String eventId) {
+        boolean found = false;
+        for (final ICalendarEvent event : this.webCentralCalendarService.findAttendeeAvailability(
+            this.startDate, this.endDate, TimeZone.getDefault(), email)) {
+            found |= eventId.equals(event.getEventId());
+        }
+        return found;
+    }
+    
 }
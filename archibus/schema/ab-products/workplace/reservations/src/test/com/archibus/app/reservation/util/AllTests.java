@@ -28,8 +28,14 @@ public class AllTests extends TestCase {
      */
     public static Test suite() {
         final TestSuite suite = new TestSuite();
+        suite.addTestSuite(AvailableSlotFinderTest.class);
         suite.addTestSuite(DataSourceUtilsTest.class);
         suite.addTestSuite(ReservationsContextHelperTest.class);
+        suite.addTestSuite(ReservationIndexesTest.class);
+        suite.addTestSuite(ReservationTablesTest.class);
+        suite.addTestSuite(ThreadSafeDateFormatTest.class);
+        suite.addTestSuite(TimelineHelperTest.class);
+        suite.addTestSuite(TimelineRowWindowTest.class);
         suite.addTestSuite(TimeZoneConverterTest.class);
         return suite;
     }
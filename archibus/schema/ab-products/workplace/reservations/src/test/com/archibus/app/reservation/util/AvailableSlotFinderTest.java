@@ -0,0 +1,84 @@
+package com.archibus.app.reservation.util;
+
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Test for AvailableSlotFinder.
+ */
+public class AvailableSlotFinderTest extends TestCase {
+
+    /** Duration of the meeting used for testing. */
+    private static final int DURATION = 60;
+
+    /** Step between start times used for testing. */
+    private static final int STEP = 30;
+
+    /** 08:00 in minutes. */
+    private static final int EIGHT = 480;
+
+    /** 09:00 in minutes. */
+    private static final int NINE = 540;
+
+    /** 10:00 in minutes. */
+    private static final int TEN = 600;
+
+    /** 11:00 in minutes. */
+    private static final int ELEVEN = 660;
+
+    /** 12:00 in minutes. */
+    private static final int TWELVE = 720;
+
+    /** 13:00 in minutes. */
+    private static final int THIRTEEN = 780;
+
+    /** 18:00 in minutes. */
+    private static final int EIGHTEEN = 1080;
+
+    /** Block length used for testing. */
+    private static final int BLOCK = 15;
+
+    /** Maximum number of start times used for testing. */
+    private static final int MAX = 3;
+
+    /**
+     * Test finding start times when the room and the attendees are busy at different times.
+     */
+    public void testFindStartTimes() {
+        final AvailableSlotFinder finder = new AvailableSlotFinder(DURATION, STEP);
+        finder.addAttendeeBusyPeriod(TEN, ELEVEN);
+        final List<int[]> roomBusy = new ArrayList<int[]>();
+        roomBusy.add(new int[] { EIGHT, NINE });
+        roomBusy.add(new int[] { ELEVEN, TWELVE });
+
+        // 09:00-10:00 is free, then 12:00 is the first time both are free
+        Assert.assertEquals(Arrays.asList(NINE, TWELVE, TWELVE + STEP),
+            finder.findStartTimes(EIGHT, EIGHT, EIGHTEEN, 0, 0, roomBusy, MAX));
+    }
+
+    /**
+     * Test the pre- and post-block of the room and the reservable hours.
+     */
+    public void testBlocksAndDayEnd() {
+        final AvailableSlotFinder finder = new AvailableSlotFinder(DURATION, STEP);
+        final List<int[]> roomBusy = new ArrayList<int[]>();
+        roomBusy.add(new int[] { ELEVEN, TWELVE });
+
+        // the post-block excludes 10:00, the pre-block moves 12:00 to 12:30
+        // and the post-block makes 12:30 the last start time before the end of the day
+        Assert.assertEquals(Arrays.asList(NINE, NINE + STEP, TWELVE + STEP),
+            finder.findStartTimes(NINE, EIGHT, THIRTEEN + STEP + BLOCK, BLOCK, BLOCK, roomBusy,
+                MAX + 1));
+    }
+
+    /**
+     * Test that a time between two steps is rounded up.
+     */
+    public void testAlignToStep() {
+        final AvailableSlotFinder finder = new AvailableSlotFinder(DURATION, STEP);
+        Assert.assertEquals(Arrays.asList(NINE),
+            finder.findStartTimes(NINE - BLOCK, EIGHT, TEN, 0, 0, new ArrayList<int[]>(), MAX));
+    }
+
+}
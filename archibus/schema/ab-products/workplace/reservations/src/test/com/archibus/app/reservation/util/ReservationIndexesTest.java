@@ -0,0 +1,63 @@
+package com.archibus.app.reservation.util;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import com.archibus.app.reservation.util.ReservationIndexes.IndexDefinition;
+
+/**
+ * Test for ReservationIndexes.
+ */
+public class ReservationIndexesTest extends TestCase {
+
+    /**
+     * Test that all index names are unique and short enough for all databases.
+     */
+    public void testIndexNames() {
+        final Set<String> names = new HashSet<String>();
+        for (final IndexDefinition index : ReservationIndexes.getDefinitions()) {
+            assertTrue(index.getName(),
+                index.getName().length() <= ReservationIndexes.MAX_NAME_LENGTH);
+            assertTrue(index.getName(), names.add(index.getName().toLowerCase()));
+        }
+    }
+
+    /**
+     * Test that no index contains the same column twice.
+     */
+    public void testIndexColumns() {
+        for (final IndexDefinition index : ReservationIndexes.getDefinitions()) {
+            assertFalse(index.getColumnNames().isEmpty());
+            assertEquals(index.getName(), index.getColumnNames().size(), new HashSet<String>(
+                index.getColumnNames()).size());
+        }
+    }
+
+    /**
+     * Test the access paths of the room and resource availability queries: the equality columns
+     * must come first.
+     */
+    public void testAvailabilityAccessPaths() {
+        final Map<String, IndexDefinition> indexes = new HashMap<String, IndexDefinition>();
+        for (final IndexDefinition index : ReservationIndexes.getDefinitions()) {
+            indexes.put(index.getName(), index);
+        }
+        assertEquals(Arrays.asList("bl_id", "fl_id", "rm_id", "date_start", "status"), indexes
+            .get("reserve_rm_room_date").getColumnNames().subList(0, 5));
+        assertEquals(Arrays.asList("resource_id", "date_start", "status"),
+            indexes.get("reserve_rs_resource_date").getColumnNames().subList(0, 3));
+        assertEquals(Arrays.asList("res_parent", "status"),
+            indexes.get("reserve_parent_status").getColumnNames().subList(0, 2));
+    }
+
+    /**
+     * Test generating the CREATE INDEX statement.
+     */
+    public void testGetCreateStatement() {
+        final IndexDefinition index =
+                new IndexDefinition("reserve_email_date", "reserve", "email", "date_start");
+        assertEquals("CREATE INDEX reserve_email_date ON reserve (email, date_start)",
+            index.getCreateStatement());
+    }
+}
@@ -0,0 +1,96 @@
+package com.archibus.app.reservation.util;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import com.archibus.app.reservation.util.ReservationTables.*;
+
+/**
+ * Test for ReservationTables.
+ */
+public class ReservationTablesTest extends TestCase {
+
+    /**
+     * Test that all table and column names are unique and short enough for all databases and
+     * that each table has a primary key.
+     */
+    public void testDefinitions() {
+        final Set<String> tableNames = new HashSet<String>();
+        for (final TableDefinition table : ReservationTables.getDefinitions()) {
+            assertTrue(table.getName(),
+                table.getName().length() <= ReservationIndexes.MAX_NAME_LENGTH);
+            assertTrue(table.getName(), tableNames.add(table.getName()));
+
+            final Set<String> columnNames = new HashSet<String>();
+            boolean hasPrimaryKey = false;
+            for (final ColumnDefinition column : table.getColumns()) {
+                assertTrue(column.getName(), columnNames.add(column.getName()));
+                hasPrimaryKey |= column.isPrimaryKey();
+            }
+            assertTrue(table.getName(), hasPrimaryKey);
+        }
+    }
+
+    /**
+     * Test that every index on a reservation table refers to its columns.
+     */
+    public void testIndexColumns() {
+        for (final TableDefinition table : ReservationTables.getDefinitions()) {
+            final Set<String> columnNames = new HashSet<String>();
+            for (final ColumnDefinition column : table.getColumns()) {
+                columnNames.add(column.getName());
+            }
+            for (final ReservationIndexes.IndexDefinition index : ReservationIndexes
+                .getDefinitions()) {
+                if (index.getTableName().equals(table.getName())) {
+                    assertTrue(index.getName(), columnNames.containsAll(index.getColumnNames()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test generating the CREATE TABLE statement for the attendee table.
+     */
+    public void testGetCreateStatement() {
+        final TableDefinition attendeeTable = getTable(ReservationTables.RESERVE_ATTENDEE);
+        assertEquals("CREATE TABLE reserve_attendee (res_id INTEGER NOT NULL,"
+                + " email VARCHAR2(128) NOT NULL, PRIMARY KEY (res_id, email))",
+            attendeeTable.getCreateStatement(true));
+        assertEquals("CREATE TABLE reserve_attendee (res_id INTEGER NOT NULL,"
+                + " email VARCHAR(128) NOT NULL, PRIMARY KEY (res_id, email))",
+            attendeeTable.getCreateStatement(false));
+    }
+
+    /**
+     * Test the column types of the room utilization summary on both kinds of databases.
+     */
+    public void testSummaryColumnTypes() {
+        final TableDefinition summaryTable = getTable(ReservationTables.RESERVE_RM_SUM);
+        final String oracle = summaryTable.getCreateStatement(true);
+        assertTrue(oracle, oracle.contains("date_start DATE NOT NULL"));
+        assertTrue(oracle, oracle.contains("cost_rmres NUMERIC(12, 2) NULL"));
+        assertTrue(oracle, oracle.endsWith("PRIMARY KEY (bl_id, fl_id, rm_id, date_start))"));
+        final String sqlServer = summaryTable.getCreateStatement(false);
+        assertTrue(sqlServer, sqlServer.contains("date_start DATETIME NOT NULL"));
+        assertTrue(sqlServer, sqlServer.contains("bl_id VARCHAR(8) NOT NULL"));
+    }
+
+    /**
+     * Get a table definition by name.
+     *
+     * @param tableName the table name
+     * @return the table definition
+     */
+    private static TableDefinition getTable(final String tableName) {
+        TableDefinition result = null;
+        for (final TableDefinition table : ReservationTables.getDefinitions()) {
+            if (tableName.equals(table.getName())) {
+                result = table;
+            }
+        }
+        assertNotNull(tableName, result);
+        return result;
+    }
+}
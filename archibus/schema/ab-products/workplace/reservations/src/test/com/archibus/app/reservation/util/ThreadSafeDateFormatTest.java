@@ -0,0 +1,103 @@
+package com.archibus.app.reservation.util;
+
+import java.text.ParseException;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Test for ThreadSafeDateFormat.
+ */
+public class ThreadSafeDateFormatTest extends TestCase {
+
+    /** Number of threads used for testing. */
+    private static final int THREADS = 4;
+
+    /** Number of values formatted by each thread. */
+    private static final int ITERATIONS = 2000;
+
+    /** Number of days between the dates used for testing. */
+    private static final int DAYS = 400;
+
+    /**
+     * Test formatting and parsing the reservation formats.
+     *
+     * @throws ParseException when the test fails
+     */
+    public void testFormatAndParse() throws ParseException {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2014, Calendar.MARCH, 5, 14, 7, 9);
+        final Date date = calendar.getTime();
+
+        Assert.assertEquals("2014-03-05", ThreadSafeDateFormat.ISO_DATE.format(date));
+        Assert.assertEquals("1899-12-30 14:07", ThreadSafeDateFormat.TIMELINE_TIME.format(date));
+        Assert.assertEquals("20140305", ThreadSafeDateFormat.ICAL_DATE.format(date));
+        Assert.assertEquals("140709", ThreadSafeDateFormat.ICAL_TIME.format(date));
+
+        calendar.clear();
+        calendar.set(2014, Calendar.MARCH, 5);
+        Assert.assertEquals(calendar.getTime(), ThreadSafeDateFormat.ISO_DATE.parse("2014-03-05"));
+
+        calendar.setTime(ThreadSafeDateFormat.PARAMETER_TIME.parse("09:30.00.000"));
+        Assert.assertEquals(9, calendar.get(Calendar.HOUR_OF_DAY));
+
+        try {
+            ThreadSafeDateFormat.ISO_DATE.parse("invalid");
+            Assert.fail("Parsing an invalid date must fail.");
+        } catch (final ParseException exception) {
+            // expected
+            Assert.assertNotNull(exception.getMessage());
+        }
+    }
+
+    /**
+     * Test using the same format in several threads at the same time.
+     *
+     * @throws InterruptedException when the test is interrupted
+     */
+    public void testConcurrentUse() throws InterruptedException {
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; ++i) {
+            final int offset = i;
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    checkRoundTrips(offset, failures);
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue(failures.toString(), failures.isEmpty());
+    }
+
+    /**
+     * Format and parse a series of dates, registering the values that don't match.
+     *
+     * @param offset the offset of the first date, in days
+     * @param failures the list to add the values that don't match to
+     */
+    private static void checkRoundTrips(final int offset, final List<String> failures) {
+        final Calendar calendar = Calendar.getInstance();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            calendar.clear();
+            calendar.set(2014, Calendar.JANUARY, 1);
+            calendar.add(Calendar.DATE, offset + i % DAYS);
+            final Date date = calendar.getTime();
+            try {
+                final String text = ThreadSafeDateFormat.ISO_DATE.format(date);
+                if (!date.equals(ThreadSafeDateFormat.ISO_DATE.parse(text))) {
+                    failures.add(text);
+                }
+            } catch (final ParseException exception) {
+                failures.add(exception.getMessage());
+            }
+        }
+    }
+
+}
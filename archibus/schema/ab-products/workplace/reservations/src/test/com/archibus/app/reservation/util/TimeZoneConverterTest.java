@@ -35,6 +35,16 @@ public class TimeZoneConverterTest extends DataSourceTestBase {
      */
     private static final String REQUESTOR_TIMEZONE_ID = "Europe/Brussels";
     
+    /**
+     * Number of quarter hours to check around the daylight saving time changes: 16 days.
+     */
+    private static final int QUARTERS_TO_CHECK = 16 * 24 * 4;
+    
+    /**
+     * Number of minutes in a quarter hour.
+     */
+    private static final int MINUTES_PER_QUARTER = 15;
+    
     /**
      * Date of the requestor to be converted to local time.
      */
@@ -159,6 +169,43 @@ public class TimeZoneConverterTest extends DataSourceTestBase {
         Assert.assertEquals(this.requestorDateTime, calculatedRequestorDateTime);
     }
     
+    /**
+     * Test the single and batch conversion on each quarter hour around the daylight saving time
+     * changes of both time zones, comparing with the offsets reported by TimeZone.
+     */
+    public void testCalculateDateTimesAcrossDstChange() {
+        final TimeZone requestorTimeZone = TimeZone.getTimeZone(REQUESTOR_TIMEZONE_ID);
+        final TimeZone utcTimeZone = TimeZone.getTimeZone(Constants.TIMEZONE_UTC);
+        final Calendar calendar = Calendar.getInstance(utcTimeZone);
+        calendar.clear();
+        // the US changes on March 11th, Europe on March 25th
+        calendar.set(2012, Calendar.MARCH, 10);
+        final long[] dateTimes = new long[QUARTERS_TO_CHECK];
+        final Date[] expected = new Date[QUARTERS_TO_CHECK];
+        for (int i = 0; i < QUARTERS_TO_CHECK; ++i) {
+            dateTimes[i] = calendar.getTimeInMillis();
+            final int difference =
+                    requestorTimeZone.getOffset(dateTimes[i])
+                            - utcTimeZone.getOffset(dateTimes[i]);
+            expected[i] = new Date(dateTimes[i] + difference);
+            Assert.assertEquals(expected[i], TimeZoneConverter.calculateDateTime(
+                new Date(dateTimes[i]), Constants.TIMEZONE_UTC, REQUESTOR_TIMEZONE_ID, true));
+            // backwards, the offset is determined for the converted time
+            Assert.assertEquals(
+                new Date(expected[i].getTime()
+                        - requestorTimeZone.getOffset(expected[i].getTime())),
+                TimeZoneConverter.calculateDateTime(expected[i], Constants.TIMEZONE_UTC,
+                    REQUESTOR_TIMEZONE_ID, false));
+            calendar.add(Calendar.MINUTE, MINUTES_PER_QUARTER);
+        }
+        
+        TimeZoneConverter.calculateDateTimes(dateTimes, Constants.TIMEZONE_UTC,
+            REQUESTOR_TIMEZONE_ID, true);
+        for (int i = 0; i < QUARTERS_TO_CHECK; ++i) {
+            Assert.assertEquals(expected[i], new Date(dateTimes[i]));
+        }
+    }
+    
     /**
      * Test method for TimeZoneConverter.getDateValue().
      */
@@ -0,0 +1,64 @@
+package com.archibus.app.reservation.util;
+
+import java.sql.Time;
+
+import junit.framework.Assert;
+
+import org.json.*;
+
+import com.archibus.datasource.DataSourceTestBase;
+
+/**
+ * Test for TimelineHelper.
+ */
+public class TimelineHelperTest extends DataSourceTestBase {
+
+    /** JSON property name for timemarks. */
+    private static final String JSON_TIMEMARKS = "timemarks";
+
+    /** Timeline start hour used for testing. */
+    private static final int START_HOUR = 8;
+
+    /** Number of minor segments per hour used for testing. */
+    private static final int SEGMENTS = 4;
+
+    /** Number of timemark columns used for testing. */
+    private static final int MAX_COLUMN = 40;
+
+    /**
+     * Test creating the timeline twice with the same parameters.
+     */
+    public void testCreateTimeline() {
+        final JSONObject timeline = TimelineHelper.createTimeline();
+        final JSONArray timemarks = timeline.getJSONArray(JSON_TIMEMARKS);
+        final int startHour = timeline.getInt("timelineStartHour");
+        final int endHour = timeline.getInt("timelineEndHour");
+        final int segments = timeline.getInt("minorToMajorRatio");
+        Assert.assertEquals((endHour - startHour) * segments, timemarks.length());
+
+        final JSONObject other = TimelineHelper.createTimeline();
+        Assert.assertNotSame(timeline, other);
+        Assert.assertSame(timemarks, other.getJSONArray(JSON_TIMEMARKS));
+        Assert.assertEquals(timeline.getString("dateTimeEnd"), other.getString("dateTimeEnd"));
+    }
+
+    /**
+     * Test calculating the column of a time on the timeline.
+     */
+    public void testGetTimeColumn() {
+        Assert.assertEquals(0,
+            TimelineHelper.getTimeColumn(START_HOUR, SEGMENTS, Time.valueOf("07:00:00"),
+                MAX_COLUMN));
+        Assert.assertEquals(SEGMENTS + 2,
+            TimelineHelper.getTimeColumn(START_HOUR, SEGMENTS, Time.valueOf("09:30:00"),
+                MAX_COLUMN));
+        // a time between two timemarks is rounded up
+        Assert.assertEquals(SEGMENTS + 1,
+            TimelineHelper.getTimeColumn(START_HOUR, SEGMENTS, Time.valueOf("09:05:00"),
+                MAX_COLUMN));
+        Assert.assertEquals(MAX_COLUMN,
+            TimelineHelper.getTimeColumn(START_HOUR, SEGMENTS, Time.valueOf("23:00:00"),
+                MAX_COLUMN));
+    }
+
+}
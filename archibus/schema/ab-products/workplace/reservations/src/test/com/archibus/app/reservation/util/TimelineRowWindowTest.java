@@ -0,0 +1,96 @@
+package com.archibus.app.reservation.util;
+
+import junit.framework.*;
+
+import org.json.*;
+
+/**
+ * Test for TimelineRowWindow.
+ */
+public class TimelineRowWindowTest extends TestCase {
+
+    /** JSON property name used for testing. */
+    private static final String START_HOUR = "timelineStartHour";
+
+    /** JSON property name used for testing. */
+    private static final String ROW = "row";
+
+    /** Value of the start hour used for testing. */
+    private static final int EIGHT = 8;
+
+    /** Number of rows used for testing. */
+    private static final int ROWS = 3;
+
+    /**
+     * Test adding rows to the timeline.
+     */
+    public void testAddRows() {
+        final JSONObject timeline = createTimeline(0, Integer.MAX_VALUE);
+
+        Assert.assertEquals(EIGHT, timeline.getInt(START_HOUR));
+        Assert.assertEquals(ROWS, timeline.getJSONArray(TimelineRowWindow.RESOURCES).length());
+        // row i has i events, so 0 + 1 + 2
+        Assert.assertEquals(ROWS, timeline.getJSONArray(TimelineRowWindow.EVENTS).length());
+        Assert.assertEquals(1, timeline.getJSONArray(TimelineRowWindow.MESSAGE).length());
+    }
+
+    /**
+     * Test a timeline without rows.
+     */
+    public void testWithoutRows() {
+        final JSONObject timeline = new JSONObject();
+        timeline.put(START_HOUR, EIGHT);
+        Assert.assertSame(timeline, new TimelineRowWindow(timeline).getTimeline());
+        Assert.assertFalse(timeline.has(TimelineRowWindow.EVENTS));
+        Assert.assertFalse(timeline.has(TimelineRowWindow.RESOURCES));
+    }
+
+    /**
+     * Test retrieving a window of rows.
+     */
+    public void testRowWindow() {
+        final JSONObject timeline = createTimeline(1, 1);
+
+        Assert.assertEquals(ROWS, timeline.getInt(TimelineRowWindow.TOTAL_ROWS));
+        Assert.assertEquals(1, timeline.getInt(TimelineRowWindow.FIRST_ROW));
+        final JSONArray resources = timeline.getJSONArray(TimelineRowWindow.RESOURCES);
+        Assert.assertEquals(1, resources.length());
+        // the row keeps its index in the complete timeline
+        Assert.assertEquals(1, resources.getJSONObject(0).getInt(ROW));
+        final JSONArray events = timeline.getJSONArray(TimelineRowWindow.EVENTS);
+        Assert.assertEquals(1, events.length());
+        Assert.assertEquals(1, events.getJSONObject(0).getInt("resourceRow"));
+    }
+
+    /**
+     * Create a timeline with a few rows, of which only the rows in the window are added.
+     *
+     * @param firstRow the first row of the window
+     * @param maxRows the maximum number of rows in the window
+     * @return the timeline with the rows in the window
+     */
+    private JSONObject createTimeline(final int firstRow, final int maxRows) {
+        final JSONObject timeline = new JSONObject();
+        timeline.put(START_HOUR, EIGHT);
+        timeline.put(TimelineRowWindow.MESSAGE, new JSONArray());
+
+        final TimelineRowWindow rows = new TimelineRowWindow(timeline);
+        rows.setRowWindow(firstRow, maxRows);
+        rows.startRows(ROWS);
+        for (int row = 0; row < ROWS; ++row) {
+            final JSONObject resource = new JSONObject();
+            resource.put(ROW, row);
+            // only add events for the rows in the window
+            for (int i = 0; rows.isRowInWindow(row) && i < row; ++i) {
+                final JSONObject event = new JSONObject();
+                event.put("resourceRow", row);
+                event.put("eventId", i);
+                rows.getEvents().put(event);
+            }
+            rows.addRow(resource);
+        }
+        timeline.getJSONArray(TimelineRowWindow.MESSAGE).put("failed@example.com");
+        return rows.getTimeline();
+    }
+
+}